@@ -5,12 +5,15 @@ import io.jsonwebtoken.MalformedJwtException;
 import jakarta.enterprise.context.RequestScoped;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import model.entity.Utente;
 import model.exception.AppException;
 import model.exception.LoginFailed;
 import model.exception.RegisterFailed;
+import model.utility.HashExecutor;
 
 
 import java.util.HashMap;
@@ -23,11 +26,19 @@ public class AutanticateAPI {
     @Inject
     private AutanticateMenager auth;
 
+    @Inject
+    private HashExecutor hashExecutor;
+
     @POST
     @Path("/login")
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response login (Utente loginData){
+    public void login (Utente loginData, @Suspended AsyncResponse async){
+        // login, register e newPassword fanno BCrypt: girano sul pool dedicato
+        hashExecutor.esegui(async, () -> esitoLogin(loginData));
+    }
+
+    private Response esitoLogin (Utente loginData){
         try{
             if(loginData == null){
                 return Response.status(Response.Status.NO_CONTENT).build();
@@ -48,7 +59,11 @@ public class AutanticateAPI {
     @Path("/register")
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response register (Utente registerData){
+    public void register (Utente registerData, @Suspended AsyncResponse async){
+        hashExecutor.esegui(async, () -> esitoRegister(registerData));
+    }
+
+    private Response esitoRegister (Utente registerData){
         try{
             if(registerData == null){
                 return Response.status(Response.Status.NO_CONTENT).build();
@@ -63,6 +78,7 @@ public class AutanticateAPI {
     }
 
     @POST
+    @Secured
     @Path("/logout")
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
@@ -82,10 +98,15 @@ public class AutanticateAPI {
     }
 
     @POST
+    @Secured
     @Path("/newPassword")
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response cambiapassword (Map<String,String> body, @HeaderParam("Authorization") String authHeader) {
+    public void cambiapassword (Map<String,String> body, @HeaderParam("Authorization") String authHeader, @Suspended AsyncResponse async) {
+        hashExecutor.esegui(async, () -> esitoCambiaPassword(body, authHeader));
+    }
+
+    private Response esitoCambiaPassword (Map<String,String> body, String authHeader) {
         try {
             if (body == null || body.isEmpty()) {
                 return Response.status(Response.Status.NO_CONTENT).build();
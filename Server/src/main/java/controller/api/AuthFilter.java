@@ -0,0 +1,61 @@
+package controller.api;
+
+import jakarta.annotation.Priority;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.Provider;
+import model.exception.AppException;
+import model.utility.JWT_Provider;
+import model.utility.SessionLog;
+import model.utility.SessionPrincipal;
+
+@Secured
+@Provider
+@Priority(Priorities.AUTHENTICATION)
+public class AuthFilter implements ContainerRequestFilter {
+
+    @Inject
+    private SessionLog logBeble;
+
+    @Inject
+    private JWT_Provider jwtProvider;
+
+    @Inject
+    private SessionPrincipal principal;
+
+    public AuthFilter() {
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        principal.clear();
+
+        String authHeader = requestContext.getHeaderString(HttpHeaders.AUTHORIZATION);
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            // header mancante o malformato: la risposta resta a carico dell'endpoint
+            return;
+        }
+        String token = authHeader.replace("Bearer ", "");
+
+        try {
+            if (!logBeble.isAlive(token)) {
+                requestContext.abortWith(Response.status(Response.Status.UNAUTHORIZED).build());
+                return;
+            }
+
+            principal.resolve(
+                    token,
+                    jwtProvider.getIdFromToken(token),
+                    jwtProvider.getRoleFromToken(token),
+                    jwtProvider.getExpirationFromToken(token),
+                    logBeble.getUtente(token)
+            );
+        } catch (AppException | IllegalArgumentException e) {
+            requestContext.abortWith(Response.status(Response.Status.UNAUTHORIZED).build());
+        }
+    }
+}
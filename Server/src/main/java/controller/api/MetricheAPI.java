@@ -0,0 +1,102 @@
+package controller.api;
+
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import model.mapper.EntityRefresher;
+import model.utility.CacheQuiz;
+import model.utility.ChiaveLog;
+import model.utility.ClassificaService;
+import model.utility.CodaTentativi;
+import model.utility.CompletatiLog;
+import model.utility.HashExecutor;
+import model.utility.MonitorPinning;
+import model.utility.PassCrypt;
+import model.utility.PoolConnessioni;
+import model.utility.SessionLog;
+import model.utility.StatisticheService;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// stato interno del server (code, pool, cache): non passa dalle sessioni utente ma da una chiave
+// fissata al deploy in QUIZ_METRICHE_CHIAVE. senza chiave configurata l'endpoint non esiste
+@Path("/metriche")
+@RequestScoped
+public class MetricheAPI {
+
+    public static final String CHIAVE = "QUIZ_METRICHE_CHIAVE";
+    public static final String HEADER = "X-Metriche-Chiave";
+
+    private String chiave = System.getenv(CHIAVE);
+
+    @Inject
+    private CodaTentativi codaTentativi;
+
+    @Inject
+    private HashExecutor hashExecutor;
+
+    @Inject
+    private PassCrypt crypt;
+
+    @Inject
+    private SessionLog sessioni;
+
+    @Inject
+    private PoolConnessioni connessioni;
+
+    @Inject
+    private CacheQuiz cacheQuiz;
+
+    @Inject
+    private MonitorPinning pinning;
+
+    @Inject
+    private CompletatiLog completati;
+
+    @Inject
+    private ClassificaService classifiche;
+
+    @Inject
+    private StatisticheService statistiche;
+
+    @Inject
+    private EntityRefresher refresher;
+
+    @Inject
+    private ChiaveLog chiavi;
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response metriche(@HeaderParam(HEADER) String chiaveRichiesta) {
+        if (chiave == null || chiave.isBlank()) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        if (chiaveRichiesta == null || !MessageDigest.isEqual(
+                chiave.getBytes(StandardCharsets.UTF_8), chiaveRichiesta.getBytes(StandardCharsets.UTF_8))) {
+            return Response.status(Response.Status.UNAUTHORIZED).build();
+        }
+
+        Map<String, Object> metriche = new LinkedHashMap<>();
+        metriche.put("codaTentativi", codaTentativi.getMetriche());
+        metriche.put("hashPool", hashExecutor.getMetriche());
+        metriche.put("bcrypt", crypt.getMetriche());
+        metriche.put("sessioni", sessioni.getMetriche());
+        metriche.put("connessioni", connessioni.getMetriche());
+        metriche.put("cache", cacheQuiz.getMetriche());
+        metriche.put("threadVirtuali", pinning.getMetriche());
+        metriche.put("completati", completati.getMetriche());
+        metriche.put("classifiche", classifiche.getMetriche());
+        metriche.put("statistiche", statistiche.getMetriche());
+        metriche.put("refresher", refresher.getMetriche());
+        metriche.put("chiavi", chiavi.getMetriche());
+        return Response.ok(metriche).build();
+    }
+}
@@ -7,5 +7,6 @@ import org.glassfish.jersey.server.ResourceConfig;
 public class MyApplicationConfig extends ResourceConfig {
     public MyApplicationConfig() {
         packages("src.main.java");
+        register(AuthFilter.class);
     }
 }
@@ -9,14 +9,19 @@ import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import model.dto.GetQuizDTO;
+import model.dto.QuizDTO;
 import model.entity.Quiz;
 import model.exception.AppException;
+import model.exception.QuizNonTrovatoException;
+import model.utility.PageCursor;
+import model.utility.StatisticheService;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 @Path("/quiz-manage")
+@Secured
 @RequestScoped
 public class QuizCreatorAPI {
 
@@ -131,7 +136,18 @@ public class QuizCreatorAPI {
                 return Response.status(Response.Status.BAD_REQUEST).build();
             }
 
-            List<Quiz> quizList = menager.getQuizzes(page.getPage(), token);
+            // paginazione a cursore: il client invia "cursor" (vuoto per la prima pagina)
+            if (page.getCursor() != null) {
+                List<QuizDTO> quizList = menager.getQuizzesByCursor(page.getCursor(), token);
+
+                Map<String, Object> response = new HashMap<>();
+                response.put("quizzes", quizList);
+                response.put("nextCursor", PageCursor.next(quizList));
+
+                return Response.ok(response).build();
+            }
+
+            List<QuizDTO> quizList = menager.getQuizzes(page.getPage(), token);
             return Response.ok(quizList).build();
         } catch (MalformedJwtException e) {
             e.printStackTrace();
@@ -141,4 +157,27 @@ public class QuizCreatorAPI {
             return Response.status(Response.Status.BAD_REQUEST).build();
         }
     }
+
+    @GET
+    @Path("/stats/{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response statistiche(@HeaderParam("Authorization") String authHeader, @PathParam("id") int quizId) {
+        try {
+            if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+                return Response.status(Response.Status.BAD_REQUEST).build();
+            }
+            String token = authHeader.replace("Bearer ", "");
+
+            StatisticheService.Riepilogo riepilogo = menager.getStatistiche(quizId, token);
+            return Response.ok(riepilogo).build();
+        } catch (MalformedJwtException e) {
+            e.printStackTrace();
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        } catch (QuizNonTrovatoException e) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }  catch (AppException e) {
+            e.printStackTrace();
+            return Response.status(Response.Status.UNAUTHORIZED).build();
+        }
+    }
 }
@@ -5,6 +5,8 @@ import io.jsonwebtoken.MalformedJwtException;
 import jakarta.enterprise.context.RequestScoped;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import model.dto.CompletaQuizDTO;
@@ -13,18 +15,28 @@ import model.entity.Domanda;
 import model.entity.Quiz;
 import model.entity.Risposta;
 import model.exception.AppException;
+import model.exception.CodaPienaException;
+import model.exception.QuizGiaCompletatoException;
+import model.exception.TroppiTentativiException;
+import model.utility.Classifica;
+import model.utility.HashExecutor;
+import model.utility.PageCursor;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 @Path("/quiz-use")
+@Secured
 @RequestScoped
 public class QuizUserAPI {
 
     @Inject
     private QuizUserMenager useMenager;
 
+    @Inject
+    private HashExecutor hashExecutor;
+
     public QuizUserAPI() {
     }
 
@@ -68,11 +80,22 @@ public class QuizUserAPI {
                 return Response.status(Response.Status.BAD_REQUEST).build();
             }
 
+            // ogni quiz porta "completato"; con "nascondiCompletati": "true" quelli già svolti non tornano
+            boolean nascondiCompletati = Boolean.parseBoolean(body.get("nascondiCompletati"));
+
+            // paginazione a cursore: il client invia "cursor" (vuoto per la prima pagina)
+            if (body.containsKey("cursor")) {
+                List<QuizDTO> quizList = useMenager.getQuizzesByCursor(body.get("cursor"), nascondiCompletati, token);
+
+                Map<String, Object> response = new HashMap<>();
+                response.put("quizzes", quizList);
+                response.put("nextCursor", PageCursor.next(quizList));
+
+                return Response.ok(response).build();
+            }
+
             int page = Integer.parseInt(body.get("page"));
-            List<Quiz> quizList = useMenager.getQuizzes(page, token);
-            List<QuizDTO> quizSummaries = quizList.stream()
-                    .map(QuizDTO::new)
-                    .toList();
+            List<QuizDTO> quizSummaries = useMenager.getQuizzes(page, nascondiCompletati, token);
 
             return Response.ok(quizSummaries).build();
         } catch (MalformedJwtException e) {
@@ -120,7 +143,12 @@ public class QuizUserAPI {
     @Path("/startQuiz_password")
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response startQuizByPass(@HeaderParam("Authorization") String authHeader, Quiz quiz){
+    public void startQuizByPass(@HeaderParam("Authorization") String authHeader, Quiz quiz, @Suspended AsyncResponse async){
+        // la password del quiz è verificata con BCrypt: stesso pool del login
+        hashExecutor.esegui(async, () -> esitoStartQuizByPass(authHeader, quiz));
+    }
+
+    private Response esitoStartQuizByPass(String authHeader, Quiz quiz){
         try {
             if(authHeader == null || !authHeader.startsWith("Bearer ")) {
                 return Response.status(Response.Status.BAD_REQUEST).build();
@@ -143,6 +171,10 @@ public class QuizUserAPI {
         } catch (MalformedJwtException e) {
             e.printStackTrace();
             return Response.status(Response.Status.BAD_REQUEST).build();
+        } catch (TroppiTentativiException e) {
+            return Response.status(Response.Status.TOO_MANY_REQUESTS)
+                    .header("Retry-After", String.valueOf(e.getAttesaSecondi()))
+                    .build();
         }  catch (AppException e) {
             e.printStackTrace();
             return Response.status(Response.Status.UNAUTHORIZED).build();
@@ -179,6 +211,57 @@ public class QuizUserAPI {
         } catch (MalformedJwtException e) {
             e.printStackTrace();
             return Response.status(Response.Status.BAD_REQUEST).build();
+        } catch (CodaPienaException e) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).header("Retry-After", "1").build();
+        } catch (QuizGiaCompletatoException e) {
+            return Response.status(Response.Status.CONFLICT).entity(Map.of("errore", e.getMessage())).build();
+        }  catch (AppException e) {
+            e.printStackTrace();
+            return Response.status(Response.Status.UNAUTHORIZED).build();
+        }
+    }
+
+    @GET
+    @Path("/classifica/{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response classifica(@HeaderParam("Authorization") String authHeader, @PathParam("id") int quizId,
+                               @QueryParam("n") @DefaultValue("10") int quanti) {
+        try {
+            if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+                return Response.status(Response.Status.BAD_REQUEST).build();
+            }
+            String token = authHeader.replace("Bearer ", "");
+
+            List<Classifica.Voce> primi = useMenager.getClassifica(quizId, quanti, token);
+            return Response.ok(primi).build();
+        } catch (MalformedJwtException e) {
+            e.printStackTrace();
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }  catch (AppException e) {
+            e.printStackTrace();
+            return Response.status(Response.Status.UNAUTHORIZED).build();
+        }
+    }
+
+    // 404 finché l'utente non ha svolto il quiz
+    @GET
+    @Path("/classifica/{id}/posizione")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response posizione(@HeaderParam("Authorization") String authHeader, @PathParam("id") int quizId) {
+        try {
+            if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+                return Response.status(Response.Status.BAD_REQUEST).build();
+            }
+            String token = authHeader.replace("Bearer ", "");
+
+            Classifica.Voce voce = useMenager.getPosizione(quizId, token);
+            if (voce == null) {
+                return Response.status(Response.Status.NOT_FOUND).build();
+            }
+            return Response.ok(voce).build();
+        } catch (MalformedJwtException e) {
+            e.printStackTrace();
+            return Response.status(Response.Status.BAD_REQUEST).build();
         }  catch (AppException e) {
             e.printStackTrace();
             return Response.status(Response.Status.UNAUTHORIZED).build();
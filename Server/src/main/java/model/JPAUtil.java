@@ -6,9 +6,24 @@ import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.context.RequestScoped;
 import jakarta.enterprise.inject.Disposes;
 import jakarta.enterprise.inject.Produces;
+import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.Persistence;
+import model.utility.CacheQuiz;
+import model.utility.CodaTentativi;
+import model.utility.JWT_Provider;
+import model.utility.JdbcSessionStore;
+import model.utility.MemorySessionStore;
+import model.utility.Migrazioni;
+import model.utility.PoolConnessioni;
+import model.utility.RevocaLog;
+import model.utility.SessionStore;
+import model.utility.StatelessSessionStore;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
 
 @ApplicationScoped
 public class JPAUtil {
@@ -17,9 +32,41 @@ public class JPAUtil {
 
     private EntityManagerFactory emf;
 
+    @Inject
+    private CodaTentativi codaTentativi;
+
+    @Inject
+    private JWT_Provider jwtProvider;
+
+    @Inject
+    private RevocaLog revoche;
+
+    @Inject
+    private PoolConnessioni pool;
+
+    @Inject
+    private CacheQuiz cacheQuiz;
+
+    @Inject
+    private Migrazioni migrazioni;
+
     @PostConstruct
     void init() {
-        emf = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT_NAME);
+        Map<String, Object> props = new HashMap<>();
+        // insert raggruppati: un tentativo con tutte le sue risposte in pochi round trip
+        props.put("hibernate.jdbc.batch_size", "50");
+        props.put("hibernate.order_inserts", "true");
+        props.putAll(cacheQuiz.proprieta());
+        DataSource dataSource = pool.avvia();
+        migrazioni.applica(dataSource);
+        if (dataSource != null) {
+            props.put("jakarta.persistence.nonJtaDataSource", dataSource);
+            // il pool consegna connessioni con autocommit già spento
+            props.put("hibernate.connection.provider_disables_autocommit", "true");
+        }
+        emf = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT_NAME, props);
+        cacheQuiz.avvia(emf);
+        codaTentativi.avvia(emf);
     }
 
     @Produces
@@ -28,6 +75,21 @@ public class JPAUtil {
         return emf.createEntityManager();
     }
 
+    // SESSION_STORE=jdbc: sessioni nel db, condivise tra i nodi; stateless: solo claim del JWT e revoche;
+    // altrimenti in memoria come prima
+    @Produces
+    @ApplicationScoped
+    public SessionStore produceSessionStore() {
+        String tipo = System.getenv(SessionStore.TIPO);
+        if ("jdbc".equalsIgnoreCase(tipo)) {
+            return new JdbcSessionStore(emf);
+        }
+        if ("stateless".equalsIgnoreCase(tipo)) {
+            return new StatelessSessionStore(jwtProvider, revoche, emf);
+        }
+        return new MemorySessionStore();
+    }
+
     public void closeEntityManager(@Disposes EntityManager em) {
         if (em.isOpen()) {
             em.close();
@@ -37,7 +99,10 @@ public class JPAUtil {
     @PreDestroy
     void shutdown() {
         if (emf != null && emf.isOpen()) {
+            // i tentativi ancora in coda vanno scritti prima di chiudere la factory
+            codaTentativi.ferma();
             emf.close();
         }
+        pool.chiudi();
     }
 }
\ No newline at end of file
@@ -2,17 +2,26 @@ package model.dao;
 
 import jakarta.enterprise.context.Dependent;
 import jakarta.inject.Inject;
+import jakarta.persistence.EntityExistsException;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.persistence.EntityTransaction;
 import model.entity.Fa;
 import model.entity.Quiz;
+import model.entity.Risponde;
 import model.entity.Utente;
 import model.exception.AppException;
 import model.exception.EmptyFild;
 import model.exception.RegisterFailed;
+import model.exception.TentativoRifiutatoException;
 import model.exception.UserNotFoundException;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.exception.DataException;
 
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 @Dependent
@@ -24,6 +33,11 @@ public class FaDAO {
     public FaDAO() {
     }
 
+    // per chi scrive fuori da una richiesta, con un EntityManager proprio
+    public FaDAO(EntityManager em) {
+        this.em = em;
+    }
+
     public Fa faindById(int id) throws AppException, EntityNotFoundException {
         if(id <= 0){
             throw new AppException("id invalido");
@@ -44,6 +58,55 @@ public class FaDAO {
                 .getSingleResult();
     }
 
+    // solo esistenza: una riga letta da uk_fa_utente_quiz, nessuna entity caricata e nessuna eccezione se manca
+    public boolean existsByUtenteQuiz(int utenteId, int quizId) throws AppException {
+        if (utenteId <= 0)
+            throw new AppException("utente non valido");
+
+        if (quizId <= 0)
+            throw new AppException("quiz non valido");
+
+        return !em.createNamedQuery("Fa.existsByUserAndQuiz", Integer.class)
+                .setParameter("utente", utenteId)
+                .setParameter("quiz", quizId)
+                .setMaxResults(1)
+                .getResultList()
+                .isEmpty();
+    }
+
+    // id dei quiz completati dall'utente, letti dal solo indice (id_utente, id_quiz)
+    public List<Integer> findQuizIdsByUtente(int utenteId) throws AppException {
+        if (utenteId <= 0)
+            throw new AppException("utente non valido");
+
+        return em.createNamedQuery("Fa.findQuizIdsByUtente", Integer.class)
+                .setParameter("utente", utenteId)
+                .getResultList();
+    }
+
+    // righe {id utente, username, punteggio, completato_il} di un quiz per costruire la classifica, senza entity
+    public List<Object[]> findPunteggiByQuiz(int quizId) throws AppException {
+        if (quizId <= 0)
+            throw new AppException("quiz non valido");
+
+        return em.createNamedQuery("Fa.findPunteggiByQuiz", Object[].class)
+                .setParameter("quiz", quizId)
+                .getResultList();
+    }
+
+    // {tentativi, somma dei punteggi} di un quiz in una sola aggregazione
+    public long[] findTotaliByQuiz(int quizId) throws AppException {
+        if (quizId <= 0)
+            throw new AppException("quiz non valido");
+
+        Object[] totali = em.createNamedQuery("Fa.totaliByQuiz", Object[].class)
+                .setParameter("quiz", quizId)
+                .getSingleResult();
+        return new long[]{
+                totali[0] != null ? ((Number) totali[0]).longValue() : 0,
+                totali[1] != null ? ((Number) totali[1]).longValue() : 0};
+    }
+
     public List<Fa> findAll(int pageNumber, int pageSize) throws AppException, EntityNotFoundException {
         if (pageNumber <= 0 || pageSize <= 0) {
             throw new AppException("Pagina invalida");
@@ -89,6 +152,84 @@ public class FaDAO {
         }
     }
 
+    private void collega(Fa f, List<Risponde> risposte) throws EmptyFild {
+        if (f == null || f.getUtente()== null || f.getUtente().getId()==null || f.getUtente().getId()<= 0) {
+            throw new EmptyFild("Fa invalida");
+        }
+        if (f.getQuiz() == null || f.getQuiz().getId() == null || f.getQuiz().getId() <= 0) {
+            throw new EmptyFild("Fa invalida");
+        }
+        if (risposte == null || risposte.isEmpty()) {
+            throw new EmptyFild("La lista delle risposte è vuota o nulla");
+        }
+        for (Risponde ris : risposte) {
+            if (ris == null || ris.getUtente() == null || ris.getUtente().getId() == null || ris.getUtente().getId() <= 0) {
+                throw new EmptyFild("Risponde invalido");
+            }
+            ris.setTentativo(f);
+        }
+        f.setRisposteDate(risposte);
+    }
+
+    // tentativo e risposte in una sola transazione; con hibernate.jdbc.batch_size gli insert vanno in batch
+    public void insertTentativo(Fa f, List<Risponde> risposte) throws EmptyFild {
+        insertTentativi(Collections.singletonList(f), Collections.singletonList(risposte));
+    }
+
+    // group commit di più tentativi, ognuno con le sue risposte già in risposteDate
+    public void insertTentativi(List<Fa> tentativi) throws EmptyFild {
+        if (tentativi == null || tentativi.isEmpty()) {
+            throw new EmptyFild("La lista dei tentativi è vuota o nulla");
+        }
+        List<List<Risponde>> risposte = new ArrayList<>(tentativi.size());
+        for (Fa f : tentativi) {
+            risposte.add(f != null ? f.getRisposteDate() : null);
+        }
+        insertTentativi(tentativi, risposte);
+    }
+
+    private void insertTentativi(List<Fa> tentativi, List<List<Risponde>> risposte) throws EmptyFild {
+        for (int i = 0; i < tentativi.size(); i++) {
+            collega(tentativi.get(i), risposte.get(i));
+        }
+
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            // le risposte seguono il Fa per cascade
+            for (Fa f : tentativi) {
+                em.persist(f);
+            }
+            tx.commit();
+        }catch (Exception e) {
+            if (tx.isActive()) tx.rollback();
+            e.printStackTrace();
+            if (isRifiuto(e)) {
+                throw new TentativoRifiutatoException("Tentativo rifiutato dal database");
+            }
+            // connessione, timeout, lock: il tentativo è valido e si può riprovare
+            throw new RegisterFailed("Errore durante la registrazione");
+        }
+    }
+
+    // vincoli (uk_fa_utente_quiz, chiavi esterne) e validazione: lo stesso tentativo fallirebbe di nuovo
+    static boolean isRifiuto(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof ConstraintViolationException
+                    || t instanceof DataException
+                    || t instanceof jakarta.validation.ConstraintViolationException
+                    || t instanceof EntityExistsException
+                    || t instanceof SQLIntegrityConstraintViolationException) {
+                return true;
+            }
+            // classe 23: violazione di integrità
+            if (t instanceof SQLException sql && sql.getSQLState() != null && sql.getSQLState().startsWith("23")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public void update(Fa f) throws EmptyFild {
         if (f == null || f.getId() == null || f.getId() <= 0) {
             throw new EmptyFild("Fa invalida");
@@ -5,6 +5,7 @@ import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.persistence.EntityTransaction;
+import model.dto.QuizDTO;
 import model.entity.Domanda;
 import model.entity.Quiz;
 import model.entity.Risposta;
@@ -13,12 +14,18 @@ import model.exception.AppException;
 import model.exception.EmptyFild;
 import model.exception.RegisterFailed;
 import model.exception.UserNotFoundException;
+import model.utility.CacheQuiz;
+import org.hibernate.jpa.HibernateHints;
 
 import java.util.List;
 
 @Dependent
 public class QuizDAO {
 
+    // proiezione per le liste: solo le colonne mostrate, nessun caricamento lazy di domande e risposte
+    private static final String SELECT_SUMMARY = "SELECT new model.dto.QuizDTO(q.id, q.titolo, q.descrizione, q.difficolta, q.tempo, q.numeroDomande, "
+            + "CASE WHEN q.passwordQuiz IS NULL OR TRIM(q.passwordQuiz) = '' THEN false ELSE true END) FROM Quiz q ";
+
     @Inject
     private EntityManager em;
 
@@ -32,6 +39,62 @@ public class QuizDAO {
         return em.find(Quiz.class, id);
     }
 
+    // quiz -> domande -> risposte in due query: due liste non si possono fetchare insieme (MultipleBagFetchException)
+    public Quiz findGraphById(int id) throws AppException {
+        if (id <= 0) {
+            throw new AppException("Id invalido");
+        }
+
+        List<Quiz> quiz = em.createNamedQuery("Quiz.findGraphById", Quiz.class)
+                .setParameter("id", id)
+                .getResultList();
+        if (quiz.isEmpty()) {
+            return null;
+        }
+
+        Quiz q = quiz.get(0);
+        if (q.getDomande() != null && !q.getDomande().isEmpty()) {
+            // le risposte finiscono nello stesso persistence context delle domande già caricate
+            em.createNamedQuery("Domanda.fetchRisposteByQuiz", Domanda.class)
+                    .setParameter("id", id)
+                    .getResultList();
+        }
+        return q;
+    }
+
+    // righe {id risposta, id domanda, corretta, punti giusta, punti sbagliata, titolo}: nessuna entity caricata
+    public List<Object[]> findChiaveRisposte(int id) throws AppException {
+        if (id <= 0) {
+            throw new AppException("Id invalido");
+        }
+
+        return em.createNamedQuery("Risposta.chiaveByQuiz", Object[].class)
+                .setParameter("id", id)
+                .getResultList();
+    }
+
+    // solo l'id dell'autore, senza caricare il quiz: null se il quiz non esiste, 0 se non ha autore
+    public Integer findProprietario(int id) throws AppException {
+        if (id <= 0) {
+            throw new AppException("Id invalido");
+        }
+
+        List<Integer> autore = em.createNamedQuery("Quiz.findProprietario", Integer.class)
+                .setParameter("id", id)
+                .getResultList();
+        if (autore.isEmpty()) {
+            return null;
+        }
+        return autore.get(0) != null ? autore.get(0) : 0;
+    }
+
+    public Quiz getReference(int id) throws AppException {
+        if (id <= 0) {
+            throw new AppException("Id invalido");
+        }
+        return em.getReference(Quiz.class, id);
+    }
+
     public List<Quiz> findAll(int pageNumber, int pageSize) throws EntityNotFoundException, AppException {
         if (pageNumber <= 0 || pageSize <= 0) {
             throw new AppException("Pagina invalida");
@@ -59,6 +122,64 @@ public class QuizDAO {
                 .getResultList();
     }
 
+    // le pagine del catalogo vanno nella query cache: hibernate le scarta a ogni scrittura sulla tabella quiz
+    public List<QuizDTO> findAllSummary(int pageNumber, int pageSize) throws AppException {
+        if (pageNumber <= 0 || pageSize <= 0) {
+            throw new AppException("Pagina invalida");
+        }
+
+        return em.createQuery(SELECT_SUMMARY + "ORDER BY q.id", QuizDTO.class)
+                .setHint(HibernateHints.HINT_CACHEABLE, true)
+                .setHint(HibernateHints.HINT_CACHE_REGION, CacheQuiz.PAGINE)
+                .setFirstResult((pageNumber - 1) * pageSize)
+                .setMaxResults(pageSize)
+                .getResultList();
+    }
+
+    public List<QuizDTO> findAllByUtenteSummary(int pageNumber, Utente utente) throws AppException, EmptyFild {
+        if (utente == null || utente.getId() == null || utente.getId() <= 0) {
+            throw new EmptyFild("Utente invalido");
+        }
+        if (pageNumber <= 0) {
+            throw new AppException("Pagina invalida");
+        }
+
+        int pageSize = 10;
+        return em.createQuery(SELECT_SUMMARY + "WHERE q.utente = :utente ORDER BY q.id", QuizDTO.class)
+                .setParameter("utente", utente)
+                .setFirstResult((pageNumber - 1) * pageSize)
+                .setMaxResults(pageSize)
+                .getResultList();
+    }
+
+    public List<QuizDTO> findAllAfter(int lastId, int pageSize) throws AppException {
+        if (lastId < 0 || pageSize <= 0) {
+            throw new AppException("Cursore invalido");
+        }
+
+        return em.createQuery(SELECT_SUMMARY + "WHERE q.id > :lastId ORDER BY q.id", QuizDTO.class)
+                .setHint(HibernateHints.HINT_CACHEABLE, true)
+                .setHint(HibernateHints.HINT_CACHE_REGION, CacheQuiz.PAGINE)
+                .setParameter("lastId", lastId)
+                .setMaxResults(pageSize)
+                .getResultList();
+    }
+
+    public List<QuizDTO> findAllByUtenteAfter(int lastId, int pageSize, Utente utente) throws AppException, EmptyFild {
+        if (utente == null || utente.getId() == null || utente.getId() <= 0) {
+            throw new EmptyFild("Utente invalido");
+        }
+        if (lastId < 0 || pageSize <= 0) {
+            throw new AppException("Cursore invalido");
+        }
+
+        return em.createQuery(SELECT_SUMMARY + "WHERE q.utente = :utente AND q.id > :lastId ORDER BY q.id", QuizDTO.class)
+                .setParameter("utente", utente)
+                .setParameter("lastId", lastId)
+                .setMaxResults(pageSize)
+                .getResultList();
+    }
+
     public void insert(Quiz quiz) throws EntityNotFoundException, EmptyFild {
         if (quiz == null) {
             throw new EmptyFild("Quiz invalido");
@@ -94,6 +215,9 @@ public class QuizDAO {
                         .getResultStream()
                         .findFirst()
                         .orElseThrow(() -> new EntityNotFoundException("quiz non trovato"));
+            } else if (!em.contains(q)) {
+                // il quiz arriva dalla cache detached: si modifica la copia managed, mai quella condivisa
+                q = em.merge(q);
             }
 
             // 2. Aggiorniamo i dati semplici di Quiz
@@ -0,0 +1,69 @@
+package model.dao;
+
+import jakarta.enterprise.context.Dependent;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityTransaction;
+import model.entity.Revoca;
+import model.exception.AppException;
+import model.exception.EmptyFild;
+import model.exception.RegisterFailed;
+
+import java.util.List;
+
+@Dependent
+public class RevocaDAO {
+
+    @Inject
+    private EntityManager em;
+
+    public RevocaDAO() {
+    }
+
+    // per lo store stateless, che lavora fuori da una richiesta con un EntityManager proprio
+    public RevocaDAO(EntityManager em) {
+        this.em = em;
+    }
+
+    // il jti è la chiave primaria: tra due nodi che revocano lo stesso token l'insert riesce a uno solo
+    public void insert(String jti, long scadenza, long revocata) throws EmptyFild {
+        if (jti == null || jti.isEmpty()) {
+            throw new EmptyFild("jti non valido");
+        }
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            em.persist(new Revoca(jti, scadenza, revocata));
+            tx.commit();
+        } catch (Exception e) {
+            if (tx.isActive()) tx.rollback();
+            throw new RegisterFailed("token già revocato");
+        } finally {
+            em.clear();
+        }
+    }
+
+    // revoche registrate da "da" in poi e non ancora scadute
+    public List<Revoca> findDal(long da, long ora) {
+        return em.createNamedQuery("Revoca.findDal", Revoca.class)
+                .setParameter("da", da)
+                .setParameter("ora", ora)
+                .getResultList();
+    }
+
+    public int deleteScadute(long ora) {
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            int righe = em.createNamedQuery("Revoca.deleteScadute")
+                    .setParameter("ora", ora)
+                    .executeUpdate();
+            tx.commit();
+            return righe;
+        } catch (Exception e) {
+            if (tx.isActive()) tx.rollback();
+            e.printStackTrace();
+            throw new AppException("Errore durante la pulizia delle revoche");
+        }
+    }
+}
@@ -12,12 +12,18 @@ import model.exception.AppException;
 import model.exception.EmptyFild;
 import model.exception.RegisterFailed;
 import model.exception.UserNotFoundException;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.query.Query;
 
 import java.util.List;
+import java.util.function.IntConsumer;
 
 @Dependent
 public class RispondeDAO {
 
+    static final int FETCH_SCORRIMENTO = 500;
+
     @Inject
     private EntityManager em;
 
@@ -43,6 +49,28 @@ public class RispondeDAO {
                 .getResultList();
     }
 
+    // id delle risposte scelte in un quiz, letti in avanti a blocchi di FETCH_SCORRIMENTO righe:
+    // né entity né liste in memoria, qualunque sia la dimensione di risponde. restituisce le righe lette
+    @SuppressWarnings("unchecked")
+    public long scorriScelteByQuiz(int quizId, IntConsumer scelta) throws AppException {
+        if (quizId <= 0) {
+            throw new AppException("Id invalido");
+        }
+
+        Query<Integer> query = em.createNamedQuery("Risponde.scelteByQuiz", Integer.class).unwrap(Query.class);
+        long righe = 0;
+        try (ScrollableResults<Integer> scorrimento = query
+                .setParameter("quiz", quizId)
+                .setFetchSize(FETCH_SCORRIMENTO)
+                .scroll(ScrollMode.FORWARD_ONLY)) {
+            while (scorrimento.next()) {
+                scelta.accept(scorrimento.get());
+                righe++;
+            }
+        }
+        return righe;
+    }
+
     public List<Risponde> findAllByUtente(Utente utente, int pageNumber, int pageSize) throws EntityNotFoundException, EmptyFild {
         if (utente == null || utente.getId() == null || utente.getId() <= 0) {
             throw new EmptyFild("Utente invalido");
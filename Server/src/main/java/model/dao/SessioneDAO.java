@@ -0,0 +1,127 @@
+package model.dao;
+
+import jakarta.enterprise.context.Dependent;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityTransaction;
+import model.entity.Sessione;
+import model.entity.Utente;
+import model.exception.AppException;
+import model.exception.EmptyFild;
+import model.exception.RegisterFailed;
+
+import java.util.List;
+
+@Dependent
+public class SessioneDAO {
+
+    @Inject
+    private EntityManager em;
+
+    public SessioneDAO() {
+    }
+
+    // per lo store di sessioni, che lavora fuori da una richiesta con un EntityManager proprio
+    public SessioneDAO(EntityManager em) {
+        this.em = em;
+    }
+
+    public Sessione findByToken(String token) throws EmptyFild {
+        if (token == null || token.isEmpty()) {
+            throw new EmptyFild("token non valido");
+        }
+        List<Sessione> trovate = em.createNamedQuery("Sessione.findByToken", Sessione.class)
+                .setParameter("token", token)
+                .getResultList();
+        return trovate.isEmpty() ? null : trovate.get(0);
+    }
+
+    public String findTokenByUtente(int utenteId) throws EmptyFild {
+        if (utenteId <= 0) {
+            throw new EmptyFild("utente non valido");
+        }
+        List<String> trovati = em.createNamedQuery("Sessione.tokenByUtente", String.class)
+                .setParameter("id", utenteId)
+                .getResultList();
+        return trovati.isEmpty() ? null : trovati.get(0);
+    }
+
+    // il vincolo unique su id_utente rende l'insert atomico anche tra nodi diversi
+    public void insert(String token, int utenteId, long scadenza) throws EmptyFild {
+        if (token == null || token.isEmpty() || utenteId <= 0) {
+            throw new EmptyFild("sessione non valida");
+        }
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            em.persist(new Sessione(token, em.getReference(Utente.class, utenteId), scadenza));
+            tx.commit();
+        } catch (Exception e) {
+            if (tx.isActive()) tx.rollback();
+            throw new RegisterFailed("sessione già presente");
+        } finally {
+            em.clear();
+        }
+    }
+
+    public boolean deleteByToken(String token) throws EmptyFild {
+        if (token == null || token.isEmpty()) {
+            throw new EmptyFild("token non valido");
+        }
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            int righe = em.createNamedQuery("Sessione.deleteByToken")
+                    .setParameter("token", token)
+                    .executeUpdate();
+            tx.commit();
+            return righe > 0;
+        } catch (Exception e) {
+            if (tx.isActive()) tx.rollback();
+            e.printStackTrace();
+            throw new AppException("Errore durante la rimozione della sessione");
+        }
+    }
+
+    // cambia la chiave della riga solo se il vecchio token c'è ancora
+    public boolean updateToken(String vecchio, String nuovo, long scadenza) throws EmptyFild {
+        if (vecchio == null || vecchio.isEmpty() || nuovo == null || nuovo.isEmpty()) {
+            throw new EmptyFild("token non valido");
+        }
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            int righe = em.createNamedQuery("Sessione.updateToken")
+                    .setParameter(1, nuovo)
+                    .setParameter(2, scadenza)
+                    .setParameter(3, vecchio)
+                    .executeUpdate();
+            tx.commit();
+            return righe > 0;
+        } catch (Exception e) {
+            if (tx.isActive()) tx.rollback();
+            e.printStackTrace();
+            throw new AppException("Errore durante il cambio della sessione");
+        }
+    }
+
+    public int deleteScadute(long ora) {
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            int righe = em.createNamedQuery("Sessione.deleteScadute")
+                    .setParameter("ora", ora)
+                    .executeUpdate();
+            tx.commit();
+            return righe;
+        } catch (Exception e) {
+            if (tx.isActive()) tx.rollback();
+            e.printStackTrace();
+            throw new AppException("Errore durante la pulizia delle sessioni");
+        }
+    }
+
+    public long count() {
+        return em.createNamedQuery("Sessione.count", Long.class).getSingleResult();
+    }
+}
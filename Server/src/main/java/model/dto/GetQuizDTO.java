@@ -4,6 +4,7 @@ import java.io.Serializable;
 
 public class GetQuizDTO implements Serializable {
     private int page;
+    private String cursor;
 
     public GetQuizDTO() {
     }
@@ -19,4 +20,12 @@ public class GetQuizDTO implements Serializable {
     public void setPage(int page) {
         this.page = page;
     }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
 }
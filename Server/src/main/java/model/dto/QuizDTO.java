@@ -12,10 +12,23 @@ public class QuizDTO implements Serializable {
     private String descrizione;
     private int numero_domande;
     private Boolean passwordRichiesta;
+    // valorizzato solo nel catalogo del compilatore
+    private Boolean completato;
 
     public QuizDTO() {
     }
 
+    // usato dalle proiezioni JPQL di QuizDAO (SELECT new model.dto.QuizDTO(...))
+    public QuizDTO(Integer id, String titolo, String descrizione, String difficolta, String tempo, Integer numeroDomande, Boolean passwordRichiesta) {
+        this.id = id;
+        this.titolo = titolo;
+        this.descrizione = descrizione;
+        this.difficolta = difficolta;
+        this.tempo = tempo;
+        this.numero_domande = numeroDomande != null ? numeroDomande : 0;
+        this.passwordRichiesta = passwordRichiesta;
+    }
+
     public QuizDTO(Quiz quiz) {
         this.id = quiz.getId();
         this.titolo = quiz.getTitolo();
@@ -76,6 +89,14 @@ public class QuizDTO implements Serializable {
         this.passwordRichiesta = passwordRichiesta;
     }
 
+    public Boolean getCompletato() {
+        return completato;
+    }
+
+    public void setCompletato(Boolean completato) {
+        this.completato = completato;
+    }
+
     public String getTitolo() {
         return titolo;
     }
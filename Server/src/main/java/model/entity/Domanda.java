@@ -5,6 +5,8 @@ import com.fasterxml.jackson.annotation.JsonManagedReference;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotNull;
 import jakarta.xml.bind.annotation.XmlRootElement;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.OnDelete;
 import org.hibernate.annotations.OnDeleteAction;
 
@@ -14,9 +16,12 @@ import java.util.List;
 
 @Entity
 @Table(name = "domanda")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "domanda")
 @NamedQueries({
         @NamedQuery(name = "Domanda.findAll", query = "SELECT d FROM Domanda d"),
-        @NamedQuery(name = "Domanda.findAllByQuiz", query = "SELECT d FROM Domanda d WHERE d.quiz = :quiz")
+        @NamedQuery(name = "Domanda.findAllByQuiz", query = "SELECT d FROM Domanda d WHERE d.quiz = :quiz"),
+        @NamedQuery(name = "Domanda.fetchRisposteByQuiz", query = "SELECT DISTINCT d FROM Domanda d LEFT JOIN FETCH d.risposte WHERE d.quiz.id = :id")
 })
 @XmlRootElement
 public class Domanda implements Serializable {
@@ -48,6 +53,7 @@ public class Domanda implements Serializable {
     private Integer puntiRispostaSbagliata;
 
     @OneToMany(mappedBy = "domanda", cascade = CascadeType.ALL, fetch = FetchType.LAZY, orphanRemoval = true)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "domanda.risposte")
     @JsonManagedReference("domanda-risposte")
     private List<Risposta> risposte;
 
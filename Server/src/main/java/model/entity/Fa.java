@@ -13,18 +13,29 @@ import java.util.List;
 
 
 @Entity
-@Table(name = "fa")
+// un solo tentativo per utente e quiz (db/migrazioni/V2)
+@Table(name = "fa", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_fa_utente_quiz", columnNames = {"id_utente", "id_quiz"})
+})
 @NamedQueries({
         @NamedQuery(name = "Fa.findAll", query = "SELECT fa FROM Fa fa"),
-        @NamedQuery(name = "Fa.findAllByUtente", query = "SELECT fa FROM Fa fa WHERE fa.utente = :utente"),
-        @NamedQuery(name = "Fa.findByUserAndQuiz", query = "SELECT fa FROM Fa fa WHERE fa.utente = :utente AND fa.quiz = :quiz")
+        @NamedQuery(name = "Fa.findAllByUtente", query = "SELECT fa FROM Fa fa WHERE fa.utente = :utente ORDER BY fa.id"),
+        @NamedQuery(name = "Fa.findByUserAndQuiz", query = "SELECT fa FROM Fa fa WHERE fa.utente = :utente AND fa.quiz = :quiz"),
+        @NamedQuery(name = "Fa.existsByUserAndQuiz", query = "SELECT 1 FROM Fa fa WHERE fa.utente.id = :utente AND fa.quiz.id = :quiz"),
+        @NamedQuery(name = "Fa.findQuizIdsByUtente", query = "SELECT fa.quiz.id FROM Fa fa WHERE fa.utente.id = :utente"),
+        @NamedQuery(name = "Fa.findPunteggiByQuiz", query = "SELECT fa.utente.id, fa.utente.username, fa.punteggio, fa.completatoIl FROM Fa fa WHERE fa.quiz.id = :quiz ORDER BY fa.completatoIl, fa.id"),
+        @NamedQuery(name = "Fa.totaliByQuiz", query = "SELECT COUNT(fa), SUM(fa.punteggio) FROM Fa fa WHERE fa.quiz.id = :quiz")
 })
 @XmlRootElement
 public class Fa implements Serializable {
     private static final long serialVersionUID = 1L;
 
+    // id da tabella con allocazione a blocchi: gli insert di Fa e Risponde si possono raggruppare in batch
+    // (il contatore parte da MAX(id_fa), seminato da db/migrazioni/V3)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "fa_gen")
+    @TableGenerator(name = "fa_gen", table = "id_generatori", pkColumnName = "entita",
+            valueColumnName = "prossimo_id", pkColumnValue = "fa", allocationSize = 50)
     @Column(name = "id_fa", nullable = false)
     private Integer id;
 
@@ -46,6 +57,11 @@ public class Fa implements Serializable {
     @Column(name = "punteggio")
     private Integer punteggio;
 
+    // istante di completamento in millisecondi, fissato alla creazione: con la coda write-behind e gli id
+    // a blocchi l'ordine di id_fa non è l'ordine di arrivo (db/migrazioni/V5)
+    @Column(name = "completato_il", nullable = false)
+    private long completatoIl;
+
     @OneToMany(mappedBy = "tentativo", cascade = CascadeType.ALL)
     @JsonManagedReference(value = "fa-risponde")
     private List<Risponde> risposteDate;
@@ -57,6 +73,7 @@ public class Fa implements Serializable {
         this.utente = utente;
         this.quiz = quiz;
         this.punteggio = punteggio;
+        this.completatoIl = System.currentTimeMillis();
     }
 
     public Integer getId() {
@@ -98,4 +115,12 @@ public class Fa implements Serializable {
     public void setPunteggio(@NotNull Integer punteggio) {
         this.punteggio = punteggio;
     }
-}
\ No newline at end of file
+
+    public long getCompletatoIl() {
+        return completatoIl;
+    }
+
+    public void setCompletatoIl(long completatoIl) {
+        this.completatoIl = completatoIl;
+    }
+}
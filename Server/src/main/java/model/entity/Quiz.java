@@ -8,6 +8,8 @@ import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
 import jakarta.xml.bind.annotation.XmlRootElement;
 import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.OnDelete;
 import org.hibernate.annotations.OnDeleteAction;
 
@@ -18,10 +20,19 @@ import java.util.List;
 
 
 @Entity
-@Table(name = "quiz")
+@Table(name = "quiz", indexes = {
+        @Index(name = "idx_quiz_utente_id", columnList = "id_utente, id_quiz")
+})
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "quiz")
 @NamedQueries({
-        @NamedQuery(name = "Quiz.findAll", query = "SELECT q FROM Quiz q"),
-        @NamedQuery(name = "Quiz.findAllByUtente", query = "SELECT q FROM Quiz q WHERE q.utente = :utente")
+        @NamedQuery(name = "Quiz.findAll", query = "SELECT q FROM Quiz q ORDER BY q.id", hints = {
+                @QueryHint(name = "org.hibernate.cacheable", value = "true"),
+                @QueryHint(name = "org.hibernate.cacheRegion", value = "quiz.pagine")
+        }),
+        @NamedQuery(name = "Quiz.findAllByUtente", query = "SELECT q FROM Quiz q WHERE q.utente = :utente ORDER BY q.id"),
+        @NamedQuery(name = "Quiz.findGraphById", query = "SELECT DISTINCT q FROM Quiz q LEFT JOIN FETCH q.domande WHERE q.id = :id"),
+        @NamedQuery(name = "Quiz.findProprietario", query = "SELECT u.id FROM Quiz q LEFT JOIN q.utente u WHERE q.id = :id")
 })
 @XmlRootElement
 public class Quiz implements Serializable {
@@ -69,6 +80,7 @@ public class Quiz implements Serializable {
     private String passwordQuiz;
 
     @OneToMany(mappedBy = "quiz", cascade = CascadeType.ALL, fetch = FetchType.LAZY, orphanRemoval = true)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "quiz.domande")
     @JsonManagedReference("quiz-domande")
     private List<Domanda> domande;
 
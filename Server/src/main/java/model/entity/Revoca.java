@@ -0,0 +1,68 @@
+package model.entity;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+
+import java.io.Serializable;
+
+
+// token revocato in modalità stateless, condiviso tra i nodi: la riga serve solo fino all'exp del JWT
+@Entity
+@Table(name = "revoca", indexes = {
+        @Index(name = "idx_revoca_revocata", columnList = "revocata"),
+        @Index(name = "idx_revoca_scadenza", columnList = "scadenza")
+})
+@NamedQueries({
+        @NamedQuery(name = "Revoca.findDal", query = "SELECT r FROM Revoca r WHERE r.revocata >= :da AND r.scadenza > :ora"),
+        @NamedQuery(name = "Revoca.deleteScadute", query = "DELETE FROM Revoca r WHERE r.scadenza <= :ora")
+})
+public class Revoca implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(name = "jti", nullable = false, length = 64)
+    private String jti;
+
+    // exp del JWT in millisecondi
+    @NotNull
+    @Column(name = "scadenza", nullable = false)
+    private Long scadenza;
+
+    // quando è stato revocato, in millisecondi: gli altri nodi leggono solo le revoche nuove
+    @NotNull
+    @Column(name = "revocata", nullable = false)
+    private Long revocata;
+
+    public Revoca() {
+    }
+
+    public Revoca(String jti, Long scadenza, Long revocata) {
+        this.jti = jti;
+        this.scadenza = scadenza;
+        this.revocata = revocata;
+    }
+
+    public String getJti() {
+        return jti;
+    }
+
+    public void setJti(String jti) {
+        this.jti = jti;
+    }
+
+    public Long getScadenza() {
+        return scadenza;
+    }
+
+    public void setScadenza(Long scadenza) {
+        this.scadenza = scadenza;
+    }
+
+    public Long getRevocata() {
+        return revocata;
+    }
+
+    public void setRevocata(Long revocata) {
+        this.revocata = revocata;
+    }
+}
@@ -18,14 +18,17 @@ import java.time.LocalDateTime;
 @Table(name = "risponde")
 @NamedQueries({
         @NamedQuery(name = "Risponde.faindAll", query = "SELECT ris FROM Risponde ris"),
-        @NamedQuery(name = "Risponde.faindAllByUtente", query = "SELECT ris FROM Risponde ris WHERE ris.utente = :utente")
+        @NamedQuery(name = "Risponde.faindAllByUtente", query = "SELECT ris FROM Risponde ris WHERE ris.utente = :utente ORDER BY ris.id"),
+        @NamedQuery(name = "Risponde.scelteByQuiz", query = "SELECT ris.risposta.id FROM Risponde ris WHERE ris.risposta.domanda.quiz.id = :quiz")
 })
 @XmlRootElement
 public class Risponde implements Serializable {
     private static final long serialVersionUID = 1L;
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "risponde_gen")
+    @TableGenerator(name = "risponde_gen", table = "id_generatori", pkColumnName = "entita",
+            valueColumnName = "prossimo_id", pkColumnValue = "risponde", allocationSize = 50)
     @Column(name = "id_risponde", nullable = false)
     private Integer id;
 
@@ -6,6 +6,8 @@ import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
 import jakarta.xml.bind.annotation.XmlRootElement;
 import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.OnDelete;
 import org.hibernate.annotations.OnDeleteAction;
 
@@ -14,9 +16,13 @@ import java.io.Serializable;
 
 @Entity
 @Table(name = "risposta")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "risposta")
 @NamedQueries({
         @NamedQuery(name = "Risposta.faindAll", query = "SELECT r FROM Risposta r"),
-        @NamedQuery(name = "Risposta.faindAllByDomanda", query = "SELECT r FROM Risposta r WHERE r.domanda = :domanda")
+        @NamedQuery(name = "Risposta.faindAllByDomanda", query = "SELECT r FROM Risposta r WHERE r.domanda = :domanda"),
+        @NamedQuery(name = "Risposta.chiaveByQuiz", query = "SELECT r.id, d.id, r.flagRispostaCorretta, d.puntiRispostaCorretta, d.puntiRispostaSbagliata, q.titolo " +
+                "FROM Risposta r JOIN r.domanda d JOIN d.quiz q WHERE q.id = :id ORDER BY r.id")
 })
 @XmlRootElement
 public class Risposta implements Serializable {
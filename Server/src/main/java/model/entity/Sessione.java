@@ -0,0 +1,73 @@
+package model.entity;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.io.Serializable;
+
+
+// sessione condivisa tra i nodi: una sola per utente, rimossa al logout o dopo l'exp del JWT
+@Entity
+@Table(name = "sessione", indexes = @Index(name = "idx_sessione_scadenza", columnList = "scadenza"))
+@NamedQueries({
+        @NamedQuery(name = "Sessione.findByToken", query = "SELECT s FROM Sessione s JOIN FETCH s.utente WHERE s.token = :token"),
+        @NamedQuery(name = "Sessione.tokenByUtente", query = "SELECT s.token FROM Sessione s WHERE s.utente.id = :id"),
+        @NamedQuery(name = "Sessione.deleteByToken", query = "DELETE FROM Sessione s WHERE s.token = :token"),
+        @NamedQuery(name = "Sessione.deleteScadute", query = "DELETE FROM Sessione s WHERE s.scadenza <= :ora"),
+        @NamedQuery(name = "Sessione.count", query = "SELECT COUNT(s) FROM Sessione s")
+})
+// il token è la chiave primaria: JPQL non la aggiorna, serve l'update nativo
+@NamedNativeQuery(name = "Sessione.updateToken", query = "UPDATE sessione SET token = ?1, scadenza = ?2 WHERE token = ?3")
+public class Sessione implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(name = "token", nullable = false, length = 512)
+    private String token;
+
+    @NotNull
+    @OneToOne(fetch = FetchType.LAZY, optional = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @JoinColumn(name = "id_utente", nullable = false, unique = true)
+    private Utente utente;
+
+    // exp del JWT in millisecondi
+    @NotNull
+    @Column(name = "scadenza", nullable = false)
+    private Long scadenza;
+
+    public Sessione() {
+    }
+
+    public Sessione(String token, Utente utente, Long scadenza) {
+        this.token = token;
+        this.utente = utente;
+        this.scadenza = scadenza;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public Utente getUtente() {
+        return utente;
+    }
+
+    public void setUtente(Utente utente) {
+        this.utente = utente;
+    }
+
+    public Long getScadenza() {
+        return scadenza;
+    }
+
+    public void setScadenza(Long scadenza) {
+        this.scadenza = scadenza;
+    }
+}
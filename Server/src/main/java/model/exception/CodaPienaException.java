@@ -0,0 +1,7 @@
+package model.exception;
+
+public class CodaPienaException extends AppException {
+    public CodaPienaException(String message) {
+        super(message);
+    }
+}
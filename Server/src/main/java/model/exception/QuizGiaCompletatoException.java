@@ -0,0 +1,7 @@
+package model.exception;
+
+public class QuizGiaCompletatoException extends QuizUseException {
+    public QuizGiaCompletatoException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package model.exception;
+
+public class QuizNonTrovatoException extends QuizServiceException {
+    public QuizNonTrovatoException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package model.exception;
+
+// il database ha rifiutato il tentativo (vincolo o validazione): riprovare non serve
+public class TentativoRifiutatoException extends RegisterFailed {
+    public TentativoRifiutatoException(String message) {
+        super(message);
+    }
+}
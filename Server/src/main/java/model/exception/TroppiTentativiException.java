@@ -0,0 +1,15 @@
+package model.exception;
+
+public class TroppiTentativiException extends AppException {
+
+    private final long attesaSecondi;
+
+    public TroppiTentativiException(String message, long attesaSecondi) {
+        super(message);
+        this.attesaSecondi = attesaSecondi;
+    }
+
+    public long getAttesaSecondi() {
+        return attesaSecondi;
+    }
+}
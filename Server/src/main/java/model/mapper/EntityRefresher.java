@@ -4,7 +4,11 @@ package model.mapper;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
+import model.entity.Quiz;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 @ApplicationScoped
@@ -13,9 +17,37 @@ public class EntityRefresher {
     @Inject
     private EntityManager em;
 
+    private final AtomicLong mergeEvitati = new AtomicLong();
+
     public <T> T reattach(T entity) {
         if (entity == null) return null;
 
         return em.merge(entity);
     }
+
+    // letture dalla cache: l'entità resta detached, nessun merge e nessuna query
+    public <T> T perLettura(T entity) {
+        if (entity == null) return null;
+
+        mergeEvitati.incrementAndGet();
+        return entity;
+    }
+
+    // i quiz del catalogo sono condivisi: a chi legge va una copia con liste non modificabili
+    public Quiz perLettura(Quiz quiz) {
+        if (quiz == null) return null;
+
+        mergeEvitati.incrementAndGet();
+        return QuizMapper.copia(quiz);
+    }
+
+    public long getMergeEvitati() {
+        return mergeEvitati.get();
+    }
+
+    public Map<String, Object> getMetriche() {
+        Map<String, Object> metriche = new LinkedHashMap<>();
+        metriche.put("mergeEvitati", mergeEvitati.get());
+        return metriche;
+    }
 }
@@ -0,0 +1,71 @@
+package model.mapper;
+
+import model.entity.Domanda;
+import model.entity.Quiz;
+import model.entity.Risposta;
+import model.entity.Utente;
+import org.hibernate.Hibernate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// copie dei quiz del catalogo condiviso: chi le riceve può modificarle senza toccare la cache
+public final class QuizMapper {
+
+    private QuizMapper() {
+    }
+
+    public static Quiz copia(Quiz quiz) {
+        if (quiz == null) return null;
+
+        Quiz copia = new Quiz();
+        copia.setId(quiz.getId());
+        copia.setTempo(quiz.getTempo());
+        copia.setDifficolta(quiz.getDifficolta());
+        copia.setTitolo(quiz.getTitolo());
+        copia.setDescrizione(quiz.getDescrizione());
+        copia.setNumeroDomande(quiz.getNumeroDomande());
+        copia.setCreatoIl(quiz.getCreatoIl());
+        copia.setPasswordQuiz(quiz.getPasswordQuiz());
+
+        // dell'autore serve solo l'id: su un proxy non inizializzato non fa query
+        if (quiz.getUtente() != null) {
+            Utente autore = new Utente();
+            autore.setId(quiz.getUtente().getId());
+            copia.setUtente(autore);
+        }
+
+        // una collezione mai caricata resta tale, così chi legge sa che deve andare sul database
+        if (!Hibernate.isInitialized(quiz.getDomande()) || quiz.getDomande() == null) {
+            copia.setDomande(quiz.getDomande());
+            return copia;
+        }
+
+        List<Domanda> domande = new ArrayList<>(quiz.getDomande().size());
+        for (Domanda d : quiz.getDomande()) {
+            domande.add(copia(d, copia));
+        }
+        copia.setDomande(Collections.unmodifiableList(domande));
+        return copia;
+    }
+
+    private static Domanda copia(Domanda domanda, Quiz quiz) {
+        Domanda copia = new Domanda(domanda.getQuesito(), domanda.getPuntiRispostaCorretta(), quiz, domanda.getPuntiRispostaSbagliata());
+        copia.setId(domanda.getId());
+
+        if (!Hibernate.isInitialized(domanda.getRisposte()) || domanda.getRisposte() == null) {
+            copia.setRisposte(domanda.getRisposte());
+            return copia;
+        }
+
+        List<Risposta> risposte = new ArrayList<>(domanda.getRisposte().size());
+        for (Risposta r : domanda.getRisposte()) {
+            Risposta risposta = new Risposta(r.getAffermazione(), r.getFlagRispostaCorretta(), copia);
+            risposta.setId(r.getId());
+            risposte.add(risposta);
+        }
+        copia.setRisposte(Collections.unmodifiableList(risposte));
+        return copia;
+    }
+}
@@ -1,10 +1,13 @@
 package model.menager;
 
 import model.utility.AccessControlService;
+import model.utility.CompletatiLog;
 import model.utility.PassCrypt;
 import model.utility.SessionLog;
+import model.utility.SessionPrincipal;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import model.dao.FaDAO;
 import model.dao.UtenteDAO;
 import model.entity.Utente;
 import model.exception.*;
@@ -23,6 +26,15 @@ public class AutanticateMenager {
     @Inject
     private AccessControlService accessControlService;
 
+    @Inject
+    private SessionPrincipal principal;
+
+    @Inject
+    private FaDAO daoFa;
+
+    @Inject
+    private CompletatiLog completati;
+
     public AutanticateMenager() {
     }
 
@@ -34,9 +46,11 @@ public class AutanticateMenager {
             if (!crypt.verificaPassword(password, u.getPasswordHash())) {
                 throw new LoginFailed("login fallito");
             }
+            rehash(u, password);
 
             token = accessControlService.newTokenByRole("compilatore", u);
             logBeble.aggiungi(token, u);
+            caricaCompletati(u);
 
             return token;
 
@@ -46,6 +60,32 @@ public class AutanticateMenager {
         }
     }
 
+    // costo BCrypt cambiato: la password in chiaro è disponibile solo qui, si riscrive l'hash
+    private void rehash(Utente u, String password) {
+        if (!crypt.richiedeRehash(u.getPasswordHash())) {
+            return;
+        }
+        String vecchioHash = u.getPasswordHash();
+        try {
+            u.setPasswordHash(crypt.hashPassword(password));
+            dao.update(u);
+        } catch (RuntimeException e) {
+            // il login resta valido con il vecchio hash, si riprova al prossimo accesso
+            u.setPasswordHash(vecchioHash);
+            e.printStackTrace();
+        }
+    }
+
+    // i quiz già completati entrano subito nella bitmap: startQuiz non dovrà chiederli al database
+    private void caricaCompletati(Utente u) {
+        try {
+            completati.carica(u.getId(), daoFa.findQuizIdsByUtente(u.getId()));
+        } catch (RuntimeException e) {
+            // senza bitmap il controllo passa dal database, il login resta valido
+            e.printStackTrace();
+        }
+    }
+
     public void logout(String token) {
         logBeble.rimuovi(token);
     }
@@ -79,11 +119,19 @@ public class AutanticateMenager {
 
     public void newPassword(String password, String oldPassword, String token) throws AppException {
         try {
-            if (!logBeble.isAlive(token)) {
-                throw new AppException("Sessione non attiva o token non valido");
+            Utente u;
+            if (principal.isResolved(token)) {
+                u = principal.getUtente();
+            } else {
+                if (!logBeble.isAlive(token)) {
+                    throw new AppException("Sessione non attiva o token non valido");
+                }
+                u = logBeble.getUtente(token);
+            }
+            if (u.getPasswordHash() == null) {
+                // in modalità stateless l'utente della sessione ha solo i claim del token
+                u = dao.findById(u.getId());
             }
-
-            Utente u = logBeble.getUtente(token);
             if(!crypt.verificaPassword(oldPassword, u.getPasswordHash())){
                 throw new AppException("password non cambiata");
             }
@@ -3,16 +3,25 @@ package model.menager;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.persistence.EntityNotFoundException;
+import model.dao.FaDAO;
 import model.dao.QuizDAO;
+import model.dao.RispondeDAO;
+import model.dto.QuizDTO;
 import model.entity.Domanda;
 import model.entity.Quiz;
 import model.entity.Risposta;
 import model.entity.Utente;
 import model.exception.*;
 import model.utility.AccessControlService;
+import model.utility.ChiaveLog;
+import model.utility.ClassificaService;
+import model.utility.StatisticheService;
+import model.utility.PermessoLog;
+import model.utility.PageCursor;
 import model.utility.PassCrypt;
 import model.utility.QuizLog;
 import model.utility.SessionLog;
+import model.utility.SessionPrincipal;
 
 import java.util.List;
 
@@ -28,35 +37,66 @@ public class QuizCreatorMenager {
     @Inject
     private AccessControlService accessControl;
 
+    @Inject
+    private SessionPrincipal principal;
+
     @Inject
     private QuizDAO dao;
 
     @Inject
     private QuizLog quizLog;
 
+    @Inject
+    private ChiaveLog chiavi;
+
+    @Inject
+    private PermessoLog permessi;
+
+    @Inject
+    private ClassificaService classifiche;
+
+    @Inject
+    private StatisticheService statistiche;
+
+    @Inject
+    private FaDAO daoFa;
+
+    @Inject
+    private RispondeDAO daoRisponde;
+
     public QuizCreatorMenager() {
     }
 
     private void tokenCheck(String token) throws TokenExpiredException, InvalidToken, InvalidRole, AppException {
+        if (principal.isResolved(token)) {
+            accessControl.checkCreatore(principal);
+            return;
+        }
         if (!logBeble.isAlive(token)) {
             throw new AppException("Sessione non attiva o token non valido");
         }
         accessControl.checkCreatore(token);
     }
 
+    private Utente getUtente(String token) throws TokenExpiredException, AppException {
+        if (principal.isResolved(token)) {
+            return principal.getUtente();
+        }
+        return logBeble.getUtente(token);
+    }
+
 
     public String upUserRole(String token) throws AppException {
-        if (!logBeble.isAlive(token)) {
+        if (!principal.isResolved(token) && !logBeble.isAlive(token)) {
             throw new AppException("Sessione non attiva o token non valido");
         }
         String newToken = "";
 
-        Utente u = logBeble.getUtente(token);
+        Utente u = getUtente(token);
         if (u.getIsCreatore()) {
             newToken = accessControl.newTokenByRole("creatore", u);
-            logBeble.rimuovi(token);
-            logBeble.aggiungi(newToken, u);
-            quizLog.clearQuiz(u);
+            // la vista dei quiz in QuizLog non dipende dal ruolo: resta calda
+            logBeble.sostituisci(token, newToken);
             return newToken;
         }
         throw new AppException("Unauthorized");
@@ -73,7 +113,7 @@ public class QuizCreatorMenager {
                 }
             }
 
-            Utente u = logBeble.getUtente(token);
+            Utente u = getUtente(token);
             quiz.setUtente(u);
 
             if (quiz.getDomande() != null) {
@@ -108,10 +148,14 @@ public class QuizCreatorMenager {
         try {
             tokenCheck(token);
 
-            Utente u = logBeble.getUtente(token);
-            quizLog.rimuoviSingoloQuiz(u, quiz.getId());
+            Utente u = getUtente(token);
 
             dao.delete(quiz.getId(), u);
+            quizLog.invalida(quiz.getId());
+            chiavi.invalida(quiz.getId());
+            permessi.invalida(quiz.getId());
+            classifiche.invalida(quiz.getId());
+            statistiche.invalida(quiz.getId());
 
         } catch (TokenExpiredException e) {
             throw new QuizServiceException("token expired, logout forzato");
@@ -130,11 +174,27 @@ public class QuizCreatorMenager {
         try {
             tokenCheck(token);
 
-            Utente u = logBeble.getUtente(token);
+            Utente u = getUtente(token);
+            // la cache restituisce una copia: dao.update non lavora mai sull'istanza del catalogo
             Quiz oldQuiz = quizLog.getQuiz(u, quiz.getId());
+            if (oldQuiz != null) {
+                // con il quiz dalla cache dao.update non rifà la query sul proprietario: il controllo va fatto qui
+                if (oldQuiz.getUtente() == null || oldQuiz.getUtente().getId() == null) {
+                    oldQuiz = null;
+                } else if (u == null || !oldQuiz.getUtente().getId().equals(u.getId())) {
+                    throw new QuizServiceException("Unauthorized");
+                }
+            }
 
             dao.update(quiz, oldQuiz, u);
-            quizLog.aggiornaSingoloQuiz(u, quiz);
+            // il catalogo è condiviso: il payload ha domande senza id e la nuova password, si rilegge dal database
+            quizLog.invalida(quiz.getId());
+            chiavi.invalida(quiz.getId());
+            permessi.invalida(quiz.getId());
+            // domande e risposte possono essere cambiate: i contatori vanno riallineati alla nuova chiave
+            statistiche.invalida(quiz.getId());
+            // e la classifica si rilegge da fa, come dopo deleteQuiz
+            classifiche.invalida(quiz.getId());
 
         } catch (TokenExpiredException e) {
             throw new QuizServiceException("token expired, logout forzato");
@@ -149,33 +209,55 @@ public class QuizCreatorMenager {
         }
     }
 
-    public List<Quiz> getQuizzes(int pageNumber, String token) throws QuizServiceException, InvalidRole {
+    // solo l'autore del quiz vede le statistiche; dopo la prima ricostruzione nessuna query
+    public StatisticheService.Riepilogo getStatistiche(int quizId, String token) throws QuizServiceException, InvalidRole {
         try {
             tokenCheck(token);
-            if(pageNumber < 0)
-                throw new QuizServiceException("pagina invalida");
+            Utente u = getUtente(token);
 
-            Utente u = logBeble.getUtente(token);
+            // prima l'autore, poi l'eventuale ricostruzione: chi non è il proprietario non fa scorrere risponde
+            StatisticheService.Contatori contatori = statistiche.get(quizId);
+            Integer proprietario = contatori != null ? Integer.valueOf(contatori.getProprietario()) : dao.findProprietario(quizId);
+            if (proprietario == null) {
+                throw new QuizNonTrovatoException("Quiz not exist");
+            }
+            if (u == null || u.getId() == null || proprietario.intValue() != u.getId()) {
+                throw new QuizServiceException("Unauthorized");
+            }
+            if (contatori == null) {
+                contatori = ricostruisciStatistiche(quizId, proprietario);
+            }
+            return contatori.riepilogo();
 
-            int pageSize = 10;
+        } catch (QuizNonTrovatoException e) {
+            throw e;
+        } catch (TokenExpiredException e) {
+            throw new QuizServiceException("token expired, logout forzato");
+        } catch (AppException e) {
+            e.printStackTrace();
+            throw new QuizServiceException("Error getting stats");
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new QuizServiceException("Error getting stats");
+        }
+    }
 
-            List<Quiz> pagedQuizzes = quizLog.getQuizPaginati(u, pageNumber, pageSize);
+    private StatisticheService.Contatori ricostruisciStatistiche(int quizId, int proprietario) throws AppException {
+        long[] totali = daoFa.findTotaliByQuiz(quizId);
 
-            if (pagedQuizzes.isEmpty()) {
-                pagedQuizzes = dao.findAllByUtente(pageNumber, u);
+        return statistiche.ricostruisci(quizId, proprietario, dao.findChiaveRisposte(quizId),
+                scelta -> daoRisponde.scorriScelteByQuiz(quizId, scelta), totali[0], totali[1]);
+    }
 
-                if(pagedQuizzes != null && !pagedQuizzes.isEmpty()) {
-                    for (Quiz quiz : pagedQuizzes) {
-                        try {
-                            quizLog.aggiungi(u, quiz);
-                        } catch (AppException e) {
+    public List<QuizDTO> getQuizzes(int pageNumber, String token) throws QuizServiceException, InvalidRole {
+        try {
+            tokenCheck(token);
+            if(pageNumber < 0)
+                throw new QuizServiceException("pagina invalida");
 
-                        }
-                    }
-                }
-            }
+            Utente u = getUtente(token);
 
-            return pagedQuizzes;
+            return dao.findAllByUtenteSummary(pageNumber, u);
 
         } catch (TokenExpiredException e) {
             throw new QuizServiceException("token expired, logout forzato");
@@ -186,4 +268,22 @@ public class QuizCreatorMenager {
             throw new QuizServiceException("Error creating quiz");
         }
     }
+
+    public List<QuizDTO> getQuizzesByCursor(String cursor, String token) throws QuizServiceException, InvalidRole {
+        try {
+            tokenCheck(token);
+
+            Utente u = getUtente(token);
+            int lastId = PageCursor.decode(cursor);
+            return dao.findAllByUtenteAfter(lastId, PageCursor.DIMENSIONE_PAGINA, u);
+
+        } catch (TokenExpiredException e) {
+            throw new QuizServiceException("token expired, logout forzato");
+        } catch (AppException e) {
+            throw new QuizServiceException("Error getting quizzes");
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new QuizServiceException("Error getting quizzes");
+        }
+    }
 }
@@ -2,28 +2,40 @@ package model.menager;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
-import jakarta.persistence.EntityNotFoundException;
-import jakarta.persistence.NoResultException;
 import jakarta.transaction.Transactional;
 import model.dao.FaDAO;
 import model.dao.QuizDAO;
-import model.dao.RispondeDAO;
+import model.dto.QuizDTO;
 import model.entity.*;
 import model.exception.*;
+import model.mapper.QuizMapper;
 import model.utility.AccessControlService;
+import model.utility.ChiaveLog;
+import model.utility.ChiaveRisposte;
+import model.utility.Classifica;
+import model.utility.ClassificaService;
+import model.utility.CompletatiLog;
+import model.utility.CodaTentativi;
+import model.utility.PageCursor;
 import model.utility.PassCrypt;
+import model.utility.PermessoLog;
 import model.utility.QuizLog;
 import model.utility.SessionLog;
+import model.utility.SessionPrincipal;
+import model.utility.StatisticheService;
 import org.hibernate.Hibernate;
 
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @ApplicationScoped
 @Transactional
 public class QuizUserMenager {
 
+    // righe lette al massimo per query quando il catalogo nasconde i completati
+    static final int MAX_LETTURA_CATALOGO = 200;
+    static final int MAX_CLASSIFICA = 100;
+
     @Inject
     private PassCrypt crypt;
 
@@ -33,116 +45,192 @@ public class QuizUserMenager {
     @Inject
     private QuizLog quizLog;
 
+    @Inject
+    private ChiaveLog chiavi;
+
+    @Inject
+    private CodaTentativi codaTentativi;
+
+    @Inject
+    private PermessoLog permessi;
+
+    @Inject
+    private CompletatiLog completati;
+
+    @Inject
+    private ClassificaService classifiche;
+
+    @Inject
+    private StatisticheService statistiche;
+
     @Inject
     private AccessControlService accessControl;
 
     @Inject
-    private QuizDAO dao;
+    private SessionPrincipal principal;
 
     @Inject
-    private FaDAO daoFa;
+    private QuizDAO dao;
 
     @Inject
-    private RispondeDAO daoRisponde;
+    private FaDAO daoFa;
 
     public QuizUserMenager() {
     }
 
     private void tokenCheck(String token) throws TokenExpiredException, InvalidToken, InvalidRole, AppException {
+        if (principal.isResolved(token)) {
+            accessControl.checkCompilatore(principal);
+            return;
+        }
         if (!logBeble.isAlive(token)) {
             throw new AppException("Sessione non attiva o token non valido");
         }
         accessControl.checkCompilatore(token);
     }
 
-    private int punteggioRisposta(List<Domanda> domande, List<Risposta> risposte) throws AppException {
-        Map<Integer, Domanda> domandeById = domande.stream()
-                .collect(Collectors.toMap(
-                        Domanda::getId,
-                        d -> d
-                ));
-
-        int punteggio = 0;
-        Set<Integer> domandeRisposte = new HashSet<>();
+    private Utente getUtente(String token) throws TokenExpiredException, AppException {
+        if (principal.isResolved(token)) {
+            return principal.getUtente();
+        }
+        return logBeble.getUtente(token);
+    }
 
-        for (Risposta risposta : risposte) {
+    // chiave di correzione dalla cache, altrimenti costruita con una sola query di proiezione
+    private ChiaveRisposte caricaChiave(int quizId) throws AppException {
+        ChiaveRisposte chiave = chiavi.getChiave(quizId);
+        if (chiave != null) {
+            return chiave;
+        }
 
-            if (risposta.getDomanda() == null || risposta.getDomanda().getId() == null)
-                throw new AppException("Risposta non valida");
+        long epoca = chiavi.getEpoca();
+        chiave = ChiaveRisposte.da(dao.findChiaveRisposte(quizId));
+        if (chiave != null) {
+            chiavi.aggiungi(quizId, chiave, epoca);
+        }
+        return chiave;
+    }
 
-            Integer domandaId = risposta.getDomanda().getId();
+    // i quiz in cache sono detached: vanno bene solo se domande e risposte sono già state caricate
+    private boolean grafoCaricato(Quiz q) {
+        if (!Hibernate.isInitialized(q.getDomande())) return false;
 
-            Domanda d = domandeById.get(domandaId);
-            if(d == null)
-                throw new AppException("Domanda non valida");
+        if (q.getDomande() != null) {
+            for (Domanda d : q.getDomande()) {
+                if (!Hibernate.isInitialized(d.getRisposte())) return false;
+            }
+        }
+        return true;
+    }
 
-            if(!domandeRisposte.add(domandaId))
-                throw new AppException("Domanda risposta piu volte");
+    // quiz dalla cache, altrimenti dal database con tutto il grafo, che entra nel catalogo condiviso
+    private Quiz caricaQuiz(Utente u, int quizId) throws AppException {
+        Quiz q = quizLog.getQuiz(u, quizId);
+        if (q != null && grafoCaricato(q)) {
+            return q;
+        }
 
-            if(risposta.getFlagRispostaCorretta()) {
-                punteggio += d.getPuntiRispostaCorretta();
-            } else {
-                punteggio += d.getPuntiRispostaSbagliata();
+        q = dao.findGraphById(quizId);
+        if (q != null && u.getId() != null && u.getId() > 0) {
+            try {
+                quizLog.aggiungi(u, q);
+            } catch (AppException e) {
+                // già in vista ma con il grafo incompleto: si sostituisce
+                quizLog.aggiornaSingoloQuiz(u, q);
             }
+            // l'istanza appena caricata ora è quella del catalogo: al chiamante ne va una copia
+            return QuizMapper.copia(q);
         }
-        return punteggio;
+        return q;
     }
 
-    private Boolean isComplete(Utente u, Quiz Quiz) {
-        try {
-            daoFa.findByUtenteQuiz(Quiz, u);
-            return true;
-        } catch (NoResultException e) {
-            return false;
-        } catch (EntityNotFoundException e) {
-            return false;
+    // prima la bitmap dei completati; se l'utente non è caricato basta sapere se la riga esiste
+    private boolean isComplete(Utente u, Quiz quiz) throws AppException {
+        if (u.getId() == null) throw new EmptyFild("utente non valido");
+
+        Boolean noto = completati.isCompletato(u.getId(), quiz.getId());
+        if (noto != null) {
+            return noto;
         }
+        return daoFa.existsByUtenteQuiz(u.getId(), quiz.getId());
     }
 
     public String downUserRole (String token) throws AppException {
-        if (!logBeble.isAlive(token)) {
+        if (!principal.isResolved(token) && !logBeble.isAlive(token)) {
             throw new AppException("Sessione non attiva o token non valido");
         }
         String newToken = "";
 
-        Utente u = logBeble.getUtente(token);
+        Utente u = getUtente(token);
         if (u.getIsCompilatore()) {
             newToken = accessControl.newTokenByRole("compilatore", u);
-            logBeble.rimuovi(token);
-            quizLog.clearQuiz(u);
-            logBeble.aggiungi(newToken, u);
+            // la vista dei quiz in QuizLog non dipende dal ruolo: resta calda
+            logBeble.sostituisci(token, newToken);
             return newToken;
         }
         throw new AppException("Unauthorized");
     }
 
-    public List<Quiz> getQuizzes(int pageNumber, String token) throws QuizUseException, InvalidRole {
+    public List<QuizDTO> getQuizzes(int pageNumber, String token) throws QuizUseException, InvalidRole {
+        return getQuizzes(pageNumber, false, token);
+    }
+
+    // con nascondiCompletati la pagina può restare più corta: per un elenco pieno si usa il cursore.
+    // l'elenco non passa dal catalogo di QuizLog: la proiezione legge solo i campi del riepilogo in un
+    // solo statement, mentre il catalogo tiene i quiz completi aperti dai giocatori
+    public List<QuizDTO> getQuizzes(int pageNumber, boolean nascondiCompletati, String token) throws QuizUseException, InvalidRole {
         try {
             tokenCheck(token);
 
             if(pageNumber < 0)
                 throw new QuizUseException("pagina invalida");
 
-            Utente u = logBeble.getUtente(token);
-            int pageSize = 10;
-            List<Quiz> pagedQuizzes = quizLog.getQuizPaginati(u, pageNumber, pageSize);
+            List<QuizDTO> pagina = dao.findAllSummary(pageNumber, PageCursor.DIMENSIONE_PAGINA);
+            List<QuizDTO> risultato = new ArrayList<>(pagina.size());
+            segnaCompletati(pagina, completatiDi(getUtente(token)), nascondiCompletati, risultato, PageCursor.DIMENSIONE_PAGINA);
+            return risultato;
+
+        } catch (TokenExpiredException e) {
+            throw new QuizUseException("token expired, logout forzato");
+        } catch (AppException e) {
+            throw new QuizUseException("Error getting quizzes");
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new QuizUseException("Error getting quiz");
+        }
+    }
+
+    public List<QuizDTO> getQuizzesByCursor(String cursor, String token) throws QuizUseException, InvalidRole {
+        return getQuizzesByCursor(cursor, false, token);
+    }
 
+    public List<QuizDTO> getQuizzesByCursor(String cursor, boolean nascondiCompletati, String token) throws QuizUseException, InvalidRole {
+        try {
+            tokenCheck(token);
+
+            int lastId = PageCursor.decode(cursor);
+            int[] fatti = completatiDi(getUtente(token));
+            List<QuizDTO> risultato = new ArrayList<>(PageCursor.DIMENSIONE_PAGINA);
 
-            if(pagedQuizzes == null || pagedQuizzes.isEmpty()) {
-                pagedQuizzes = dao.findAll(pageNumber, pageSize);
+            if (!nascondiCompletati) {
+                segnaCompletati(dao.findAllAfter(lastId, PageCursor.DIMENSIONE_PAGINA), fatti, false, risultato, PageCursor.DIMENSIONE_PAGINA);
+                return risultato;
+            }
 
-                if(pagedQuizzes != null && !pagedQuizzes.isEmpty()) {
-                    for (Quiz quiz : pagedQuizzes) {
-                        try {
-                            quizLog.aggiungi(u, quiz);
-                        } catch (AppException e) {
+            // si legge la pagina più i completati che possono cadere dopo il cursore: di solito basta una query.
+            // la pagina si chiude sull'ultimo quiz restituito, così il cursore successivo non salta nulla
+            while (risultato.size() < PageCursor.DIMENSIONE_PAGINA) {
+                int daSaltare = CompletatiLog.contaDopo(fatti, lastId);
+                int lettura = Math.min(PageCursor.DIMENSIONE_PAGINA + daSaltare, MAX_LETTURA_CATALOGO);
 
-                        }
-                    }
+                List<QuizDTO> letti = dao.findAllAfter(lastId, lettura);
+                segnaCompletati(letti, fatti, true, risultato, PageCursor.DIMENSIONE_PAGINA);
+                if (letti.size() < lettura) {
+                    break;
                 }
+                lastId = letti.get(letti.size() - 1).getId();
             }
-
-            return pagedQuizzes;
+            return risultato;
 
         } catch (TokenExpiredException e) {
             throw new QuizUseException("token expired, logout forzato");
@@ -154,21 +242,99 @@ public class QuizUserMenager {
         }
     }
 
+    // quiz completati dall'utente, id ordinati: da CompletatiLog o, se non caricati, con una sola lettura di fa
+    private int[] completatiDi(Utente u) throws AppException {
+        if (u == null || u.getId() == null) throw new EmptyFild("utente non valido");
+
+        int[] fatti = completati.getCompletati(u.getId());
+        if (fatti != null) {
+            return fatti;
+        }
+        completati.carica(u.getId(), daoFa.findQuizIdsByUtente(u.getId()));
+        fatti = completati.getCompletati(u.getId());
+        return fatti != null ? fatti : new int[0];
+    }
+
+    private static void segnaCompletati(List<QuizDTO> letti, int[] fatti, boolean nascondi, List<QuizDTO> risultato, int massimo) {
+        for (QuizDTO q : letti) {
+            if (risultato.size() >= massimo) {
+                return;
+            }
+            boolean fatto = CompletatiLog.contiene(fatti, q.getId());
+            if (nascondi && fatto) {
+                continue;
+            }
+            q.setCompletato(fatto);
+            risultato.add(q);
+        }
+    }
+
+    public List<Classifica.Voce> getClassifica(int quizId, int quanti, String token) throws QuizUseException, InvalidRole {
+        try {
+            tokenCheck(token);
+
+            if (quanti <= 0 || quanti > MAX_CLASSIFICA)
+                throw new QuizUseException("numero di posizioni non valido");
+
+            return caricaClassifica(quizId).primi(quanti);
+
+        } catch (TokenExpiredException e) {
+            throw new QuizUseException("token expired, logout forzato");
+        } catch (AppException e) {
+            throw new QuizUseException("Error getting leaderboard");
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new QuizUseException("Error getting leaderboard");
+        }
+    }
+
+    // null se l'utente non ha ancora svolto il quiz
+    public Classifica.Voce getPosizione(int quizId, String token) throws QuizUseException, InvalidRole {
+        try {
+            tokenCheck(token);
+            Utente u = getUtente(token);
+            if (u == null || u.getId() == null)
+                throw new EmptyFild("utente non valido");
+
+            return caricaClassifica(quizId).posizione(u.getId());
+
+        } catch (TokenExpiredException e) {
+            throw new QuizUseException("token expired, logout forzato");
+        } catch (AppException e) {
+            throw new QuizUseException("Error getting leaderboard");
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new QuizUseException("Error getting leaderboard");
+        }
+    }
+
+    // classifica in memoria; il database si legge solo la prima volta o dopo la scadenza
+    private Classifica caricaClassifica(int quizId) throws AppException {
+        Classifica classifica = classifiche.get(quizId);
+        if (classifica != null) {
+            return classifica;
+        }
+        return classifiche.carica(quizId, daoFa.findPunteggiByQuiz(quizId));
+    }
+
     public List<Domanda> startQuiz(Quiz quiz, String password, String token) throws QuizUseException, InvalidRole  {
         try {
             tokenCheck(token);
-            Utente u = logBeble.getUtente(token);
-            Quiz q = quizLog.getQuiz(u, quiz.getId());
+            Utente u = getUtente(token);
+            long epoca = permessi.getEpoca();
+            Quiz q = caricaQuiz(u, quiz.getId());
 
-            if( q == null) {
-                q = dao.findById(quiz.getId());
-                if(q == null) {
-                    throw new QuizUseException("Quiz not exist");
-                }
+            if(q == null) {
+                throw new QuizUseException("Quiz not exist");
             }
 
-            if(!crypt.verificaPassword(password, q.getPasswordQuiz())) {
-                throw new QuizUseException("impossibile accedere al quiz");
+            // quiz già sbloccato da questo utente: niente BCrypt
+            if (!permessi.isConcesso(u.getId(), q.getId())) {
+                permessi.tentativo(u.getId(), q.getId());
+                if(!crypt.verificaPassword(password, q.getPasswordQuiz())) {
+                    throw new QuizUseException("impossibile accedere al quiz");
+                }
+                permessi.concedi(u.getId(), q.getId(), epoca);
             }
 
             if(!isComplete(u, q))
@@ -177,6 +343,8 @@ public class QuizUserMenager {
                 return null;
         } catch (TokenExpiredException e) {
             throw new QuizUseException("token expired, logout forzato");
+        } catch (TroppiTentativiException e) {
+            throw e;
         } catch (AppException e) {
             throw new QuizUseException("Error start quizzes");
         } catch (Exception e) {
@@ -188,31 +356,20 @@ public class QuizUserMenager {
     public List<Domanda> startQuiz(Quiz quiz, String token) throws QuizUseException, InvalidRole  {
         try {
             tokenCheck(token);
-            Utente u = logBeble.getUtente(token);
-            Quiz q = quizLog.getQuiz(u, quiz.getId());
+            Utente u = getUtente(token);
+            Quiz q = caricaQuiz(u, quiz.getId());
 
-            if( q == null) {
-                q = dao.findById(quiz.getId());
-                if(q == null) {
-                    throw new QuizUseException("Quiz not exist");
-                }
+            if(q == null) {
+                throw new QuizUseException("Quiz not exist");
             }
 
             if (q.getPasswordQuiz() != null && !q.getPasswordQuiz().isBlank()) {
                 throw new QuizUseException("password is allowed");
             }
 
-            if (!isComplete(u, q)) {
-                List<Domanda> domande = q.getDomande();
-
-                Hibernate.initialize(domande);
-
-                for(Domanda d : domande) {
-                    Hibernate.initialize(d.getRisposte());
-                }
-
-                return domande;
-            } else
+            if (!isComplete(u, q))
+                return q.getDomande();
+            else
                 return null;
         } catch (TokenExpiredException e) {
             e.printStackTrace();
@@ -228,33 +385,63 @@ public class QuizUserMenager {
     public int completaQuiz(Quiz quiz, List<Risposta> risposteClient, String token) throws QuizUseException, InvalidRole {
         try {
             tokenCheck(token);
-            Utente u = logBeble.getUtente(token);
+            Utente u = getUtente(token);
 
-            Quiz quizCorretto = quizLog.getQuiz(u, quiz.getId());
+            ChiaveRisposte chiave = caricaChiave(quiz.getId());
 
-            if (quizCorretto == null) {
-                quizCorretto = dao.findById(quiz.getId());
-                if (quizCorretto == null) {
-                    throw new QuizUseException("Quiz non trovato");
-                }
+            if (chiave == null) {
+                throw new QuizUseException("Quiz non trovato");
             }
 
-            List<Domanda> domandeDb = quizCorretto.getDomande();
+            int punteggio = chiave.punteggio(risposteClient);
 
-            if (domandeDb == null || risposteClient == null)
-                throw new AppException("liste mancanti");
+            if (isComplete(u, quiz)) {
+                throw new QuizGiaCompletatoException("Quiz già completato");
+            }
+            // la prenotazione nei completati fa passare una sola di due richieste concorrenti.
+            // in write-behind la coda non vede il vincolo unico: si carica l'utente per poter prenotare
+            boolean accoda = codaTentativi.isAttiva();
+            Boolean prenotato = completati.prenota(u.getId(), quiz.getId());
+            if (prenotato == null && accoda) {
+                completati.carica(u.getId(), daoFa.findQuizIdsByUtente(u.getId()));
+                prenotato = completati.prenota(u.getId(), quiz.getId());
+            }
+            if (Boolean.FALSE.equals(prenotato)) {
+                throw new QuizGiaCompletatoException("Quiz già completato");
+            }
 
-            int punteggio = punteggioRisposta(domandeDb, risposteClient);
-            Fa fa = new Fa(u, quizCorretto, punteggio);
+            Fa fa = new Fa(u, dao.getReference(quiz.getId()), punteggio);
             List<Risponde> risposte = new ArrayList<>();
             for (Risposta r : risposteClient) {
-                risposte.add(new Risponde(r, u, quizCorretto.getTitolo(), LocalDateTime.now()));
+                risposte.add(new Risponde(r, u, chiave.getTitolo(), LocalDateTime.now()));
+            }
+            try {
+                // in modalità write-behind il punteggio torna subito, la scrittura avviene a gruppi
+                if (accoda) {
+                    codaTentativi.accoda(fa, risposte);
+                } else {
+                    daoFa.insertTentativo(fa, risposte);
+                }
+            } catch (TentativoRifiutatoException e) {
+                // senza prenotazione (utente non caricato) il vincolo unico ferma il doppione qui
+                if (daoFa.existsByUtenteQuiz(u.getId(), quiz.getId())) {
+                    throw new QuizGiaCompletatoException("Quiz già completato");
+                }
+                completati.annulla(u.getId(), quiz.getId());
+                throw e;
+            } catch (AppException e) {
+                completati.annulla(u.getId(), quiz.getId());
+                throw e;
             }
-            daoFa.insert(fa);
-            daoRisponde.insertAll(risposte);
+
+            // contatori derivati solo per un tentativo scritto o accettato dalla coda
+            statistiche.registra(quiz.getId(), punteggio, risposteClient);
+            classifiche.registra(quiz.getId(), u.getId(), u.getUsername(), punteggio, fa.getCompletatoIl());
 
             return punteggio;
 
+        } catch (CodaPienaException | QuizGiaCompletatoException e) {
+            throw e;
         } catch (TokenExpiredException e) {
             throw new QuizUseException("token expired, logout forzato");
         } catch (AppException e) {
@@ -39,6 +39,20 @@ public class AccessControlService {
         }
     }
 
+    public void checkCreatore(SessionPrincipal principal) throws InvalidRole {
+        checkRole(principal, "creatore");
+    }
+
+    public void checkCompilatore(SessionPrincipal principal) throws InvalidRole {
+        checkRole(principal, "compilatore");
+    }
+
+    private void checkRole(SessionPrincipal principal, String role) throws InvalidRole {
+        if (principal == null || !role.equals(principal.getRole())) {
+            throw new InvalidRole("Unauthorized");
+        }
+    }
+
     public String newTokenByRole(String role, Utente u)throws IllegalArgumentException {
         return jwtProvider.generateToken(u, role);
     }
@@ -0,0 +1,124 @@
+package model.utility;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import jakarta.inject.Singleton;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+
+import javax.cache.CacheManager;
+import javax.cache.spi.CachingProvider;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+
+// cache di secondo livello per il contenuto dei quiz (letto spesso, scritto solo da QuizCreatorMenager).
+// le scritture passano tutte da entity e cascade, quindi hibernate invalida da solo voci e collezioni;
+// la cache è locale al nodo: con più nodi una modifica fatta altrove si vede al massimo dopo DURATA_MS
+@Singleton
+public class CacheQuiz {
+
+    public static final String ABILITAZIONE = "QUIZ_CACHE";
+
+    public static final String QUIZ = "quiz";
+    public static final String DOMANDA = "domanda";
+    public static final String RISPOSTA = "risposta";
+    public static final String DOMANDE = "quiz.domande";
+    public static final String RISPOSTE = "domanda.risposte";
+    public static final String PAGINE = "quiz.pagine";
+
+    static final List<String> REGIONI_ENTITA = List.of(QUIZ, DOMANDA, RISPOSTA, DOMANDE, RISPOSTE);
+
+    private static final long DURATA_MS = 300_000;
+    private static final long MAX_VOCI = 20_000;
+    private static final long MAX_PAGINE = 1_000;
+
+    private final boolean abilitata;
+    private volatile Statistics statistiche;
+
+    public CacheQuiz() {
+        this(!"false".equalsIgnoreCase(System.getenv(ABILITAZIONE)));
+    }
+
+    CacheQuiz(boolean abilitata) {
+        this.abilitata = abilitata;
+    }
+
+    // impostazioni da passare alla factory; le regioni vengono ricreate vuote a ogni factory
+    public Map<String, Object> proprieta() {
+        Map<String, Object> props = new HashMap<>();
+        if (!abilitata) {
+            props.put("hibernate.cache.use_second_level_cache", "false");
+            props.put("hibernate.cache.use_query_cache", "false");
+            return props;
+        }
+
+        CachingProvider provider = new CaffeineCachingProvider();
+        CacheManager cacheManager = provider.getCacheManager(provider.getDefaultURI(), provider.getDefaultClassLoader());
+        for (String regione : REGIONI_ENTITA) {
+            crea(cacheManager, regione, MAX_VOCI);
+        }
+        crea(cacheManager, PAGINE, MAX_PAGINE);
+
+        props.put("hibernate.cache.use_second_level_cache", "true");
+        props.put("hibernate.cache.use_query_cache", "true");
+        props.put("hibernate.cache.region.factory_class", "jcache");
+        props.put("hibernate.javax.cache.cache_manager", cacheManager);
+        // la regione dei timestamp non deve scadere: la crea hibernate senza limiti
+        props.put("hibernate.javax.cache.missing_cache_strategy", "create");
+        props.put("jakarta.persistence.sharedCache.mode", "ENABLE_SELECTIVE");
+        // hit/miss per regione
+        props.put("hibernate.generate_statistics", "true");
+        return props;
+    }
+
+    private void crea(CacheManager cacheManager, String regione, long massimo) {
+        if (cacheManager.getCache(regione) != null) {
+            cacheManager.destroyCache(regione);
+        }
+        CaffeineConfiguration<Object, Object> config = new CaffeineConfiguration<>();
+        config.setMaximumSize(OptionalLong.of(massimo));
+        config.setExpireAfterWrite(OptionalLong.of(TimeUnit.MILLISECONDS.toNanos(DURATA_MS)));
+        cacheManager.createCache(regione, config);
+    }
+
+    public void avvia(EntityManagerFactory emf) {
+        if (abilitata) {
+            statistiche = emf.unwrap(SessionFactory.class).getStatistics();
+        }
+    }
+
+    public boolean isAttiva() {
+        return statistiche != null;
+    }
+
+    public Map<String, Object> getMetriche() {
+        Map<String, Object> metriche = new LinkedHashMap<>();
+        metriche.put("attiva", isAttiva());
+        Statistics s = statistiche;
+        if (s == null) {
+            return metriche;
+        }
+        for (String regione : REGIONI_ENTITA) {
+            metriche.put(regione, regione(s.getDomainDataRegionStatistics(regione)));
+        }
+        metriche.put(PAGINE, regione(s.getQueryRegionStatistics(PAGINE)));
+        return metriche;
+    }
+
+    private Map<String, Object> regione(CacheRegionStatistics r) {
+        Map<String, Object> metriche = new LinkedHashMap<>();
+        long hit = r != null ? r.getHitCount() : 0;
+        long miss = r != null ? r.getMissCount() : 0;
+        metriche.put("hit", hit);
+        metriche.put("miss", miss);
+        metriche.put("put", r != null ? r.getPutCount() : 0L);
+        metriche.put("hitRatio", hit + miss == 0 ? 0.0 : (double) hit / (hit + miss));
+        return metriche;
+    }
+}
@@ -0,0 +1,72 @@
+package model.utility;
+
+import jakarta.inject.Singleton;
+import model.exception.EmptyFild;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Singleton
+public class ChiaveLog {
+
+    static final int MAX_CHIAVI = 1000;
+
+    private final AtomicLong evizioni = new AtomicLong();
+
+    // LRU in ordine di accesso: piena, esce la chiave usata meno di recente invece di smettere di salvare
+    private final Map<Integer, ChiaveRisposte> chiavi = Collections.synchronizedMap(
+            new LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, ChiaveRisposte> eldest) {
+                    if (size() > MAX_CHIAVI) {
+                        evizioni.incrementAndGet();
+                        return true;
+                    }
+                    return false;
+                }
+            });
+
+    // cresce a ogni invalidazione: una chiave letta dal db prima di un update non viene più salvata
+    private final AtomicLong epoca = new AtomicLong();
+
+    public ChiaveLog() {
+    }
+
+    public ChiaveRisposte getChiave(int quizId) {
+        return chiavi.get(quizId);
+    }
+
+    public long getEpoca() {
+        return epoca.get();
+    }
+
+    public void aggiungi(int quizId, ChiaveRisposte chiave, long epocaLettura) throws EmptyFild {
+        if (quizId <= 0) throw new EmptyFild("id non valido");
+        if (chiave == null) throw new EmptyFild("chiave non valida");
+
+        chiavi.put(quizId, chiave);
+        if (epoca.get() != epocaLettura) {
+            chiavi.remove(quizId, chiave);
+        }
+    }
+
+    public void invalida(Integer quizId) throws EmptyFild {
+        if (quizId == null || quizId <= 0) throw new EmptyFild("id non valido");
+
+        epoca.incrementAndGet();
+        chiavi.remove(quizId);
+    }
+
+    public int size() {
+        return chiavi.size();
+    }
+
+    public Map<String, Object> getMetriche() {
+        Map<String, Object> metriche = new LinkedHashMap<>();
+        metriche.put("chiavi", chiavi.size());
+        metriche.put("evizioni", evizioni.get());
+        return metriche;
+    }
+}
@@ -0,0 +1,121 @@
+package model.utility;
+
+import model.entity.Risposta;
+import model.exception.AppException;
+
+import java.util.Arrays;
+import java.util.List;
+
+// chiave di correzione immutabile di un quiz: solo array di int, costruita una volta e condivisa
+public final class ChiaveRisposte {
+
+    private final String titolo;
+
+    // id delle risposte in ordine crescente, con la loro domanda e se sono corrette
+    private final int[] risposte;
+    private final int[] domandaDi;
+    private final boolean[] corretta;
+
+    // id delle domande in ordine crescente con i punti assegnati
+    private final int[] domande;
+    private final int[] puntiGiusta;
+    private final int[] puntiSbagliata;
+
+    private ChiaveRisposte(String titolo, int[] risposte, int[] domandaDi, boolean[] corretta,
+                           int[] domande, int[] puntiGiusta, int[] puntiSbagliata) {
+        this.titolo = titolo;
+        this.risposte = risposte;
+        this.domandaDi = domandaDi;
+        this.corretta = corretta;
+        this.domande = domande;
+        this.puntiGiusta = puntiGiusta;
+        this.puntiSbagliata = puntiSbagliata;
+    }
+
+    // righe di QuizDAO.findChiaveRisposte, ordinate per id risposta; null se il quiz non ha risposte
+    public static ChiaveRisposte da(List<Object[]> righe) {
+        if (righe == null || righe.isEmpty()) {
+            return null;
+        }
+
+        int n = righe.size();
+        int[] risposte = new int[n];
+        int[] idDomanda = new int[n];
+        boolean[] corretta = new boolean[n];
+        int[] tutteLeDomande = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            Object[] riga = righe.get(i);
+            risposte[i] = (Integer) riga[0];
+            idDomanda[i] = (Integer) riga[1];
+            corretta[i] = Boolean.TRUE.equals(riga[2]);
+            tutteLeDomande[i] = idDomanda[i];
+        }
+        if (!ordinato(risposte)) {
+            throw new AppException("righe della chiave non ordinate");
+        }
+
+        Arrays.sort(tutteLeDomande);
+        int[] domande = Arrays.stream(tutteLeDomande).distinct().toArray();
+        int[] puntiGiusta = new int[domande.length];
+        int[] puntiSbagliata = new int[domande.length];
+        int[] domandaDi = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            Object[] riga = righe.get(i);
+            int indice = Arrays.binarySearch(domande, idDomanda[i]);
+            domandaDi[i] = indice;
+            puntiGiusta[indice] = riga[3] != null ? (Integer) riga[3] : 0;
+            puntiSbagliata[indice] = riga[4] != null ? (Integer) riga[4] : 0;
+        }
+
+        return new ChiaveRisposte((String) righe.get(0)[5], risposte, domandaDi, corretta,
+                domande, puntiGiusta, puntiSbagliata);
+    }
+
+    private static boolean ordinato(int[] valori) {
+        for (int i = 1; i < valori.length; i++) {
+            if (valori[i - 1] >= valori[i]) return false;
+        }
+        return true;
+    }
+
+    // il punteggio dipende solo dall'id della risposta scelta, il flag inviato dal client viene ignorato
+    public int punteggio(List<Risposta> scelte) throws AppException {
+        if (scelte == null) {
+            throw new AppException("liste mancanti");
+        }
+
+        boolean[] risposta = new boolean[domande.length];
+        int punteggio = 0;
+
+        for (Risposta scelta : scelte) {
+            if (scelta == null || scelta.getId() == null)
+                throw new AppException("Risposta non valida");
+
+            int i = Arrays.binarySearch(risposte, scelta.getId());
+            if (i < 0)
+                throw new AppException("Risposta non valida");
+
+            int d = domandaDi[i];
+            if (scelta.getDomanda() != null && scelta.getDomanda().getId() != null
+                    && scelta.getDomanda().getId() != domande[d])
+                throw new AppException("Domanda non valida");
+
+            if (risposta[d])
+                throw new AppException("Domanda risposta piu volte");
+            risposta[d] = true;
+
+            punteggio += corretta[i] ? puntiGiusta[d] : puntiSbagliata[d];
+        }
+        return punteggio;
+    }
+
+    public String getTitolo() {
+        return titolo;
+    }
+
+    public int getNumeroDomande() {
+        return domande.length;
+    }
+}
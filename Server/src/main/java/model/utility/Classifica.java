@@ -0,0 +1,149 @@
+package model.utility;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+// classifica di un quiz: treap ordinato per punteggio decrescente e, a parità, per istante di completamento
+// (fa.completato_il); nello stesso millisecondo decide l'ordine di inserimento.
+// ogni nodo conosce la dimensione del suo sottoalbero, così inserimento e posizione costano O(log n)
+// e i primi N si leggono con una visita in ordine che si ferma a N
+public final class Classifica {
+
+    public record Voce(int posizione, String username, int punteggio) {
+    }
+
+    private static final class Nodo {
+        final int utenteId;
+        final String username;
+        final int punteggio;
+        final long completatoIl;
+        final long arrivo;
+        final int priorita = ThreadLocalRandom.current().nextInt();
+        Nodo sx;
+        Nodo dx;
+        int dimensione = 1;
+
+        Nodo(int utenteId, String username, int punteggio, long completatoIl, long arrivo) {
+            this.utenteId = utenteId;
+            this.username = username;
+            this.punteggio = punteggio;
+            this.completatoIl = completatoIl;
+            this.arrivo = arrivo;
+        }
+    }
+
+    private Nodo radice;
+    private final Map<Integer, Nodo> perUtente = new HashMap<>();
+    private long arrivi;
+
+    // un solo tentativo per utente e quiz (uk_fa_utente_quiz): il secondo viene ignorato
+    public synchronized boolean aggiungi(int utenteId, String username, int punteggio, long completatoIl) {
+        if (perUtente.containsKey(utenteId)) {
+            return false;
+        }
+        Nodo nuovo = new Nodo(utenteId, username, punteggio, completatoIl, arrivi++);
+        perUtente.put(utenteId, nuovo);
+        radice = inserisci(radice, nuovo);
+        return true;
+    }
+
+    // null se l'utente non ha svolto il quiz
+    public synchronized Voce posizione(int utenteId) {
+        Nodo cercato = perUtente.get(utenteId);
+        if (cercato == null) {
+            return null;
+        }
+        int prima = 0;
+        Nodo n = radice;
+        while (n != cercato) {
+            if (precede(cercato, n)) {
+                n = n.sx;
+            } else {
+                prima += dimensione(n.sx) + 1;
+                n = n.dx;
+            }
+        }
+        prima += dimensione(n.sx);
+        return new Voce(prima + 1, cercato.username, cercato.punteggio);
+    }
+
+    public synchronized List<Voce> primi(int quanti) {
+        List<Voce> risultato = new ArrayList<>(Math.min(quanti, perUtente.size()));
+        Deque<Nodo> pila = new ArrayDeque<>();
+        Nodo n = radice;
+        while (risultato.size() < quanti && (n != null || !pila.isEmpty())) {
+            while (n != null) {
+                pila.push(n);
+                n = n.sx;
+            }
+            n = pila.pop();
+            risultato.add(new Voce(risultato.size() + 1, n.username, n.punteggio));
+            n = n.dx;
+        }
+        return risultato;
+    }
+
+    public synchronized int size() {
+        return perUtente.size();
+    }
+
+    private static boolean precede(Nodo a, Nodo b) {
+        if (a.punteggio != b.punteggio) {
+            return a.punteggio > b.punteggio;
+        }
+        if (a.completatoIl != b.completatoIl) {
+            return a.completatoIl < b.completatoIl;
+        }
+        return a.arrivo < b.arrivo;
+    }
+
+    private static int dimensione(Nodo n) {
+        return n == null ? 0 : n.dimensione;
+    }
+
+    private static void aggiorna(Nodo n) {
+        n.dimensione = 1 + dimensione(n.sx) + dimensione(n.dx);
+    }
+
+    private static Nodo inserisci(Nodo n, Nodo nuovo) {
+        if (n == null) {
+            return nuovo;
+        }
+        if (nuovo.priorita > n.priorita) {
+            Nodo[] parti = dividi(n, nuovo);
+            nuovo.sx = parti[0];
+            nuovo.dx = parti[1];
+            aggiorna(nuovo);
+            return nuovo;
+        }
+        if (precede(nuovo, n)) {
+            n.sx = inserisci(n.sx, nuovo);
+        } else {
+            n.dx = inserisci(n.dx, nuovo);
+        }
+        aggiorna(n);
+        return n;
+    }
+
+    // [nodi che precedono chiave, nodi che la seguono]
+    private static Nodo[] dividi(Nodo n, Nodo chiave) {
+        if (n == null) {
+            return new Nodo[]{null, null};
+        }
+        if (precede(n, chiave)) {
+            Nodo[] parti = dividi(n.dx, chiave);
+            n.dx = parti[0];
+            aggiorna(n);
+            return new Nodo[]{n, parti[1]};
+        }
+        Nodo[] parti = dividi(n.sx, chiave);
+        n.sx = parti[1];
+        aggiorna(n);
+        return new Nodo[]{parti[0], n};
+    }
+}
@@ -0,0 +1,97 @@
+package model.utility;
+
+import jakarta.inject.Singleton;
+import model.exception.EmptyFild;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+// classifiche per quiz in memoria: costruite una volta dai tentativi in fa, poi aggiornate da completaQuiz.
+// le letture non toccano il database finché la classifica è valida; dopo DURATA_MS si ricarica,
+// così i tentativi registrati da altri nodi entrano al più tardi alla scadenza
+@Singleton
+public class ClassificaService {
+
+    static final int MAX_QUIZ = 10_000;
+    static final long DURATA_MS = 5 * 60 * 1000L;
+
+    private record Caricata(Classifica classifica, long caricata) {
+    }
+
+    private final Map<Integer, Caricata> perQuiz = new ConcurrentHashMap<>();
+    private final LongSupplier orologio;
+
+    public ClassificaService() {
+        this(System::currentTimeMillis);
+    }
+
+    ClassificaService(LongSupplier orologio) {
+        this.orologio = orologio;
+    }
+
+    // null se il quiz non è caricato o è scaduto: le righe vanno lette da FaDAO e passate a carica
+    public Classifica get(int quizId) throws EmptyFild {
+        if (quizId <= 0) throw new EmptyFild("id non valido");
+
+        Caricata c = perQuiz.get(quizId);
+        if (c == null) {
+            return null;
+        }
+        if (orologio.getAsLong() - c.caricata() >= DURATA_MS) {
+            perQuiz.remove(quizId, c);
+            return null;
+        }
+        return c.classifica();
+    }
+
+    // righe {utenteId, username, punteggio, completatoIl} come da Fa.findPunteggiByQuiz. se nel frattempo un'altra richiesta
+    // ha caricato lo stesso quiz le righe si uniscono alla sua classifica: i doppioni per utente sono ignorati
+    public Classifica carica(int quizId, List<Object[]> righe) throws EmptyFild {
+        if (quizId <= 0) throw new EmptyFild("id non valido");
+
+        if (perQuiz.size() >= MAX_QUIZ && !perQuiz.containsKey(quizId)) {
+            // pieno: si riparte da vuoto, le classifiche si ricostruiscono alla prossima lettura
+            perQuiz.clear();
+        }
+        long ora = orologio.getAsLong();
+        Caricata c = perQuiz.compute(quizId, (k, vecchia) -> {
+            if (vecchia != null && ora - vecchia.caricata() < DURATA_MS) {
+                return vecchia;
+            }
+            return new Caricata(new Classifica(), ora);
+        });
+        for (Object[] riga : righe) {
+            c.classifica().aggiungi(((Number) riga[0]).intValue(), (String) riga[1], ((Number) riga[2]).intValue(),
+                    ((Number) riga[3]).longValue());
+        }
+        return c.classifica();
+    }
+
+    // solo sulle classifiche già caricate: le altre leggeranno il tentativo dal database
+    public void registra(int quizId, int utenteId, String username, int punteggio, long completatoIl) throws EmptyFild {
+        if (quizId <= 0 || utenteId <= 0) throw new EmptyFild("id non valido");
+
+        Classifica classifica = get(quizId);
+        if (classifica != null) {
+            classifica.aggiungi(utenteId, username, punteggio, completatoIl);
+        }
+    }
+
+    public void invalida(int quizId) {
+        perQuiz.remove(quizId);
+    }
+
+    public int size() {
+        return perQuiz.size();
+    }
+
+    public Map<String, Object> getMetriche() {
+        Map<String, Object> metriche = new LinkedHashMap<>();
+        metriche.put("quiz", perQuiz.size());
+        metriche.put("tentativi", perQuiz.values().stream().mapToLong(c -> c.classifica().size()).sum());
+        return metriche;
+    }
+}
@@ -0,0 +1,342 @@
+package model.utility;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import model.dao.FaDAO;
+import model.entity.Fa;
+import model.entity.Risponde;
+import model.exception.AppException;
+import model.exception.CodaPienaException;
+import model.exception.EmptyFild;
+import model.exception.TentativoRifiutatoException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// write-behind dei tentativi: completaQuiz accoda, un solo thread scrive a gruppi con FaDAO.
+// si scarta solo quello che il database rifiuta (vincoli, validazione): con il database irraggiungibile
+// i tentativi restano allo scrittore e si riprovano con attese crescenti, intanto la coda si riempie
+// e accoda risponde CodaPienaException invece di accettare tentativi che non potrebbe scrivere
+@Singleton
+public class CodaTentativi {
+
+    public static final String ABILITAZIONE = "QUIZ_WRITE_BEHIND";
+
+    private static final int CAPACITA = 10_000;
+    private static final int MAX_BATCH = 200;
+    private static final long ATTESA_MS = 200;
+    private static final long ATTESA_CHIUSURA_MS = 10_000;
+    static final long ATTESA_RIPROVA_MS = 500;
+    static final long MAX_ATTESA_RIPROVA_MS = 30_000;
+    // alla chiusura si riprova per al più questo tempo, dentro l'attesa di ferma
+    static final long RIPROVA_CHIUSURA_MS = 8_000;
+
+    private final boolean abilitata;
+    private final BlockingQueue<Fa> coda;
+
+    // accoda prende il lock in lettura, ferma in scrittura: dopo la chiusura non entra più nulla
+    private final ReadWriteLock chiusura = new ReentrantReadWriteLock();
+    private volatile boolean inChiusura;
+    private volatile Thread scrittore;
+    private EntityManagerFactory emf;
+
+    // completaQuiz li aggiorna quando accoda: un tentativo che non arriva al database va tolto anche da qui
+    @Inject
+    private CompletatiLog completati;
+
+    @Inject
+    private ClassificaService classifiche;
+
+    @Inject
+    private StatisticheService statistiche;
+
+    private final AtomicLong rifiutati = new AtomicLong();
+    private final AtomicLong scritti = new AtomicLong();
+    private final AtomicLong scartati = new AtomicLong();
+    private final AtomicLong riprovati = new AtomicLong();
+    private final AtomicLong persi = new AtomicLong();
+    private volatile int inRiprova;
+    private final AtomicLong flush = new AtomicLong();
+    private final AtomicLong latenzaTotaleNanos = new AtomicLong();
+    private final AtomicLong ultimaLatenzaNanos = new AtomicLong();
+
+    public CodaTentativi() {
+        this(Boolean.parseBoolean(System.getenv(ABILITAZIONE)), CAPACITA);
+    }
+
+    CodaTentativi(boolean abilitata, int capacita) {
+        this.abilitata = abilitata;
+        this.coda = new ArrayBlockingQueue<>(capacita);
+    }
+
+    public synchronized void avvia(EntityManagerFactory emf) {
+        if (!abilitata || scrittore != null || inChiusura) {
+            return;
+        }
+        this.emf = emf;
+        Thread t = new Thread(this::ciclo, "coda-tentativi");
+        t.setDaemon(true);
+        scrittore = t;
+        t.start();
+    }
+
+    public boolean isAttiva() {
+        return scrittore != null && !inChiusura;
+    }
+
+    public void accoda(Fa tentativo, List<Risponde> risposte) throws AppException {
+        if (tentativo == null || risposte == null) {
+            throw new AppException("tentativo non valido");
+        }
+        for (Risponde r : risposte) {
+            r.setTentativo(tentativo);
+        }
+        tentativo.setRisposteDate(risposte);
+
+        chiusura.readLock().lock();
+        try {
+            if (!isAttiva()) {
+                throw new AppException("coda tentativi non attiva");
+            }
+            if (!coda.offer(tentativo)) {
+                rifiutati.incrementAndGet();
+                throw new CodaPienaException("coda tentativi piena");
+            }
+        } finally {
+            chiusura.readLock().unlock();
+        }
+    }
+
+    // chiamato da JPAUtil prima di chiudere la factory: attende lo scrittore e scrive quello che resta
+    public void ferma() {
+        chiusura.writeLock().lock();
+        try {
+            inChiusura = true;
+        } finally {
+            chiusura.writeLock().unlock();
+        }
+
+        Thread t = scrittore;
+        if (t == null) {
+            return;
+        }
+        try {
+            t.join(ATTESA_CHIUSURA_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!coda.isEmpty()) {
+            // lo scrittore non ha finito in tempo: quello che è ancora in coda lo scrive chi chiude
+            EntityManager em = emf.createEntityManager();
+            try {
+                svuota(new FaDAO(em), em, new ArrayList<>(), System.currentTimeMillis() + RIPROVA_CHIUSURA_MS);
+            } finally {
+                em.close();
+            }
+        }
+    }
+
+    private void ciclo() {
+        EntityManager em = emf.createEntityManager();
+        List<Fa> batch = new ArrayList<>(MAX_BATCH);
+        try {
+            FaDAO dao = new FaDAO(em);
+            long attesa = ATTESA_RIPROVA_MS;
+            while (!inChiusura) {
+                if (batch.isEmpty()) {
+                    Fa primo = coda.poll(ATTESA_MS, TimeUnit.MILLISECONDS);
+                    if (primo == null) {
+                        continue;
+                    }
+                    batch.add(primo);
+                }
+                coda.drainTo(batch, MAX_BATCH - batch.size());
+                List<Fa> daRiprovare = scrivi(dao, em, batch);
+                batch.clear();
+                inRiprova = daRiprovare.size();
+                if (daRiprovare.isEmpty()) {
+                    attesa = ATTESA_RIPROVA_MS;
+                    continue;
+                }
+                batch.addAll(daRiprovare);
+                attendi(attesa);
+                attesa = Math.min(attesa * 2, MAX_ATTESA_RIPROVA_MS);
+            }
+            svuota(dao, em, batch, System.currentTimeMillis() + RIPROVA_CHIUSURA_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            perdi(batch);
+        } finally {
+            em.close();
+        }
+    }
+
+    // si esce prima se arriva la chiusura: i tentativi in attesa passano a svuota
+    private void attendi(long ms) throws InterruptedException {
+        long fine = System.currentTimeMillis() + ms;
+        long resto;
+        while (!inChiusura && (resto = fine - System.currentTimeMillis()) > 0) {
+            Thread.sleep(Math.min(resto, ATTESA_MS));
+        }
+    }
+
+    // scrive anche i tentativi rimasti allo scrittore; con il database ancora giù riprova fino a scadenza
+    private void svuota(FaDAO dao, EntityManager em, List<Fa> inAttesa, long scadenza) {
+        List<Fa> batch = new ArrayList<>(inAttesa);
+        long attesa = ATTESA_RIPROVA_MS;
+        while (true) {
+            coda.drainTo(batch, Math.max(0, MAX_BATCH - batch.size()));
+            if (batch.isEmpty()) {
+                inRiprova = 0;
+                return;
+            }
+            List<Fa> daRiprovare = scrivi(dao, em, batch);
+            batch.clear();
+            inRiprova = daRiprovare.size();
+            if (daRiprovare.isEmpty()) {
+                attesa = ATTESA_RIPROVA_MS;
+                continue;
+            }
+            if (System.currentTimeMillis() + attesa > scadenza) {
+                perdi(daRiprovare);
+                List<Fa> resto = new ArrayList<>();
+                coda.drainTo(resto);
+                perdi(resto);
+                return;
+            }
+            batch.addAll(daRiprovare);
+            try {
+                Thread.sleep(attesa);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                perdi(batch);
+                return;
+            }
+            attesa = Math.min(attesa * 2, MAX_ATTESA_RIPROVA_MS);
+        }
+    }
+
+    // il processo si sta fermando con il database giù: contati in persi e tolti dallo stato in memoria
+    private void perdi(List<Fa> tentativi) {
+        for (Fa fa : tentativi) {
+            persi.incrementAndGet();
+            annullaEffetti(fa, false);
+        }
+        inRiprova = 0;
+    }
+
+    // classifica e statistiche del quiz si ricostruiscono dal database alla prossima lettura.
+    // un tentativo perso non è nel database e si toglie dai completati; uno rifiutato può essere un doppione
+    // già scritto: l'utente si ricarica dal database
+    private void annullaEffetti(Fa fa, boolean rifiutato) {
+        Integer quizId = fa.getQuiz() != null ? fa.getQuiz().getId() : null;
+        Integer utenteId = fa.getUtente() != null ? fa.getUtente().getId() : null;
+        if (quizId == null || quizId <= 0) {
+            return;
+        }
+        if (completati != null && utenteId != null && utenteId > 0) {
+            if (rifiutato) {
+                completati.rimuovi(utenteId);
+            } else {
+                completati.annulla(utenteId, quizId);
+            }
+        }
+        if (classifiche != null) {
+            classifiche.invalida(quizId);
+        }
+        if (statistiche != null) {
+            statistiche.invalida(quizId);
+        }
+    }
+
+    // restituisce i tentativi non scritti per un errore transitorio, da riprovare nello stesso ordine
+    List<Fa> scrivi(FaDAO dao, EntityManager em, List<Fa> batch) {
+        long inizio = System.nanoTime();
+        List<Fa> daRiprovare = new ArrayList<>();
+        try {
+            dao.insertTentativi(batch);
+            scritti.addAndGet(batch.size());
+        } catch (AppException e) {
+            em.clear();
+            if (!isRifiuto(e)) {
+                daRiprovare.addAll(batch);
+            } else {
+                // un tentativo rifiutato non deve far perdere gli altri del gruppo: si riprova uno alla volta
+                for (int i = 0; i < batch.size(); i++) {
+                    Fa fa = batch.get(i);
+                    azzeraId(fa);
+                    try {
+                        dao.insertTentativi(List.of(fa));
+                        scritti.incrementAndGet();
+                    } catch (AppException ex) {
+                        em.clear();
+                        if (isRifiuto(ex)) {
+                            scartati.incrementAndGet();
+                            annullaEffetti(fa, true);
+                        } else {
+                            daRiprovare.addAll(batch.subList(i, batch.size()));
+                            break;
+                        }
+                    }
+                }
+            }
+            // gli id presi dal generatore prima del rollback non valgono più
+            for (Fa fa : daRiprovare) {
+                azzeraId(fa);
+            }
+            riprovati.addAndGet(daRiprovare.size());
+        } finally {
+            em.clear();
+            long durata = System.nanoTime() - inizio;
+            ultimaLatenzaNanos.set(durata);
+            latenzaTotaleNanos.addAndGet(durata);
+            flush.incrementAndGet();
+        }
+        return daRiprovare;
+    }
+
+    private static boolean isRifiuto(AppException e) {
+        return e instanceof EmptyFild || e instanceof TentativoRifiutatoException;
+    }
+
+    private void azzeraId(Fa fa) {
+        fa.setId(null);
+        if (fa.getRisposteDate() != null) {
+            for (Risponde r : fa.getRisposteDate()) {
+                r.setId(null);
+            }
+        }
+    }
+
+    public int getProfondita() {
+        return coda.size();
+    }
+
+    public Map<String, Object> getMetriche() {
+        long flushEseguiti = flush.get();
+        Map<String, Object> metriche = new LinkedHashMap<>();
+        metriche.put("attiva", isAttiva());
+        metriche.put("profondita", coda.size());
+        metriche.put("capacita", coda.size() + coda.remainingCapacity());
+        metriche.put("rifiutati", rifiutati.get());
+        metriche.put("scritti", scritti.get());
+        metriche.put("scartati", scartati.get());
+        metriche.put("inRiprova", inRiprova);
+        metriche.put("riprovati", riprovati.get());
+        metriche.put("persi", persi.get());
+        metriche.put("flush", flushEseguiti);
+        metriche.put("ultimoFlushMs", ultimaLatenzaNanos.get() / 1_000_000.0);
+        metriche.put("flushMedioMs", flushEseguiti == 0 ? 0.0 : latenzaTotaleNanos.get() / 1_000_000.0 / flushEseguiti);
+        return metriche;
+    }
+}
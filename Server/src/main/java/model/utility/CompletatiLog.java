@@ -0,0 +1,172 @@
+package model.utility;
+
+import jakarta.inject.Singleton;
+import model.exception.EmptyFild;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// quiz completati per utente, id ordinati in un int[] (4 byte per quiz fatto, non un bit per ogni id del catalogo): caricati al login e aggiornati da completaQuiz,
+// così il controllo di startQuiz di solito non va sul database.
+// una voce vale DURATA_MS: un completamento registrato da un altro nodo qui si vede al più tardi alla scadenza,
+// fino ad allora il vincolo unico su (id_utente, id_quiz) scarta il secondo tentativo
+@Singleton
+public class CompletatiLog {
+
+    static final int MAX_UTENTI = 50_000;
+    static final long DURATA_MS = 10 * 60 * 1000L;
+
+    // l'array non viene mai modificato dopo la pubblicazione: ogni aggiornamento ne crea uno nuovo
+    private record Voce(int[] quiz, long caricata) {
+    }
+
+    private final Map<Integer, Voce> perUtente = new ConcurrentHashMap<>();
+    private final LongSupplier orologio;
+
+    private final AtomicLong hit = new AtomicLong();
+    private final AtomicLong miss = new AtomicLong();
+
+    public CompletatiLog() {
+        this(System::currentTimeMillis);
+    }
+
+    CompletatiLog(LongSupplier orologio) {
+        this.orologio = orologio;
+    }
+
+    private Voce valida(int utenteId) {
+        Voce voce = perUtente.get(utenteId);
+        if (voce != null && orologio.getAsLong() - voce.caricata() >= DURATA_MS) {
+            perUtente.remove(utenteId, voce);
+            return null;
+        }
+        return voce;
+    }
+
+    // gli id già presenti restano: un tentativo ancora in coda di scrittura non è ancora nel database
+    public void carica(int utenteId, Collection<Integer> quizIds) throws EmptyFild {
+        if (utenteId <= 0) throw new EmptyFild("id non valido");
+
+        int[] letti = quizIds.stream().filter(id -> id != null && id > 0).mapToInt(Integer::intValue).toArray();
+        if (perUtente.size() >= MAX_UTENTI && !perUtente.containsKey(utenteId)) {
+            // pieno: si riparte da vuoto, le voci si ricaricano al prossimo login
+            perUtente.clear();
+        }
+        long ora = orologio.getAsLong();
+        perUtente.compute(utenteId, (k, vecchia) -> {
+            int[] quiz = letti;
+            if (vecchia != null && ora - vecchia.caricata() < DURATA_MS) {
+                quiz = Arrays.copyOf(letti, letti.length + vecchia.quiz().length);
+                System.arraycopy(vecchia.quiz(), 0, quiz, letti.length, vecchia.quiz().length);
+            }
+            return new Voce(ordinati(quiz), ora);
+        });
+    }
+
+    // null se l'utente non è caricato: la risposta va chiesta al database
+    public Boolean isCompletato(int utenteId, int quizId) throws EmptyFild {
+        if (utenteId <= 0 || quizId <= 0) throw new EmptyFild("id non valido");
+
+        Voce voce = valida(utenteId);
+        if (voce == null) {
+            miss.incrementAndGet();
+            return null;
+        }
+        hit.incrementAndGet();
+        return contiene(voce.quiz(), quizId);
+    }
+
+    // copia degli id ordinati per marcare una pagina di catalogo; null come isCompletato
+    public int[] getCompletati(int utenteId) throws EmptyFild {
+        if (utenteId <= 0) throw new EmptyFild("id non valido");
+
+        Voce voce = valida(utenteId);
+        if (voce == null) {
+            miss.incrementAndGet();
+            return null;
+        }
+        hit.incrementAndGet();
+        return voce.quiz().clone();
+    }
+
+    // senza voce non si crea niente: gli altri completati non sono noti
+    public void segna(int utenteId, int quizId) throws EmptyFild {
+        prenota(utenteId, quizId);
+    }
+
+    // segna il quiz e dice se prima non c'era, in un solo passo: di due completamenti concorrenti
+    // dello stesso quiz ne passa uno. null se l'utente non è caricato
+    public Boolean prenota(int utenteId, int quizId) throws EmptyFild {
+        if (utenteId <= 0 || quizId <= 0) throw new EmptyFild("id non valido");
+
+        boolean[] nuovo = new boolean[1];
+        Voce voce = perUtente.computeIfPresent(utenteId, (k, vecchia) -> {
+            int pos = Arrays.binarySearch(vecchia.quiz(), quizId);
+            if (pos >= 0) {
+                return vecchia;
+            }
+            nuovo[0] = true;
+            return new Voce(inserisci(vecchia.quiz(), -pos - 1, quizId), vecchia.caricata());
+        });
+        return voce == null ? null : nuovo[0];
+    }
+
+    // toglie una prenotazione il cui tentativo non è stato scritto
+    public void annulla(int utenteId, int quizId) throws EmptyFild {
+        if (utenteId <= 0 || quizId <= 0) throw new EmptyFild("id non valido");
+
+        perUtente.computeIfPresent(utenteId, (k, vecchia) -> {
+            int pos = Arrays.binarySearch(vecchia.quiz(), quizId);
+            if (pos < 0) {
+                return vecchia;
+            }
+            int[] quiz = new int[vecchia.quiz().length - 1];
+            System.arraycopy(vecchia.quiz(), 0, quiz, 0, pos);
+            System.arraycopy(vecchia.quiz(), pos + 1, quiz, pos, quiz.length - pos);
+            return new Voce(quiz, vecchia.caricata());
+        });
+    }
+
+    public static boolean contiene(int[] quiz, int quizId) {
+        return Arrays.binarySearch(quiz, quizId) >= 0;
+    }
+
+    // quanti id sono maggiori di dopoId
+    public static int contaDopo(int[] quiz, int dopoId) {
+        int pos = Arrays.binarySearch(quiz, dopoId);
+        return quiz.length - (pos >= 0 ? pos + 1 : -pos - 1);
+    }
+
+    private static int[] inserisci(int[] quiz, int pos, int quizId) {
+        int[] nuovo = new int[quiz.length + 1];
+        System.arraycopy(quiz, 0, nuovo, 0, pos);
+        nuovo[pos] = quizId;
+        System.arraycopy(quiz, pos, nuovo, pos + 1, quiz.length - pos);
+        return nuovo;
+    }
+
+    private static int[] ordinati(int[] quiz) {
+        return Arrays.stream(quiz).sorted().distinct().toArray();
+    }
+
+    public void rimuovi(int utenteId) {
+        perUtente.remove(utenteId);
+    }
+
+    public int size() {
+        return perUtente.size();
+    }
+
+    public Map<String, Object> getMetriche() {
+        Map<String, Object> metriche = new LinkedHashMap<>();
+        metriche.put("utenti", perUtente.size());
+        metriche.put("hit", hit.get());
+        metriche.put("miss", miss.get());
+        return metriche;
+    }
+}
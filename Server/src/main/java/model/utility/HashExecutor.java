@@ -0,0 +1,170 @@
+package model.utility;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.control.RequestContextController;
+import jakarta.enterprise.inject.Instance;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.core.Response;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// pool dedicato alle richieste che fanno BCrypt: i thread del container non restano fermi sull'hash
+@Singleton
+public class HashExecutor {
+
+    public static final String THREAD = "HASH_THREAD";
+    public static final String CAPACITA = "HASH_CODA";
+
+    private static final int CAPACITA_DEFAULT = 64;
+    private static final long ATTESA_MAX_MS = 5_000;
+    private static final String RIPROVA_DOPO = "1";
+
+    private final ThreadPoolExecutor pool;
+    private final int capacita;
+
+    // il lavoro usa bean @RequestScoped (EntityManager, SessionPrincipal): sui thread del pool va attivato un contesto
+    @Inject
+    private Instance<RequestContextController> contesti;
+
+    // quello risolto da AuthFilter sul thread della richiesta: nel contesto nuovo si riparte da una copia,
+    // così i menager non tornano a SessionLog per un token già validato
+    @Inject
+    private SessionPrincipal principal;
+
+    private final AtomicLong rifiutati = new AtomicLong();
+    private final AtomicLong scaduti = new AtomicLong();
+    private final AtomicLong completati = new AtomicLong();
+    private final AtomicLong attesaTotaleNanos = new AtomicLong();
+    private final AtomicLong esecuzioneTotaleNanos = new AtomicLong();
+    private final AtomicLong ultimaEsecuzioneNanos = new AtomicLong();
+
+    public HashExecutor() {
+        this(leggi(THREAD, Runtime.getRuntime().availableProcessors()), leggi(CAPACITA, CAPACITA_DEFAULT));
+    }
+
+    HashExecutor(int thread, int capacita) {
+        this.capacita = capacita;
+        AtomicInteger numero = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(thread, thread, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacita),
+                r -> {
+                    Thread t = new Thread(r, "hash-" + numero.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    private static int leggi(String variabile, int predefinito) {
+        String valore = System.getenv(variabile);
+        if (valore == null || valore.isBlank()) {
+            return predefinito;
+        }
+        try {
+            int n = Integer.parseInt(valore.trim());
+            return n > 0 ? n : predefinito;
+        } catch (NumberFormatException e) {
+            return predefinito;
+        }
+    }
+
+    // coda piena o lavoro rimasto troppo in attesa: 503 subito invece di accumulare richieste
+    public void esegui(AsyncResponse async, Supplier<Response> lavoro) {
+        long accodato = System.nanoTime();
+        SessionPrincipal risolto = null;
+        if (principal != null) {
+            risolto = new SessionPrincipal();
+            risolto.copiaDa(principal);
+        }
+        SessionPrincipal daPortare = risolto;
+        try {
+            pool.execute(() -> lavora(async, lavoro, accodato, daPortare));
+        } catch (RejectedExecutionException e) {
+            rifiutati.incrementAndGet();
+            async.resume(occupato());
+        }
+    }
+
+    private void lavora(AsyncResponse async, Supplier<Response> lavoro, long accodato, SessionPrincipal risolto) {
+        long inizio = System.nanoTime();
+        long attesa = inizio - accodato;
+        attesaTotaleNanos.addAndGet(attesa);
+        if (TimeUnit.NANOSECONDS.toMillis(attesa) > ATTESA_MAX_MS) {
+            scaduti.incrementAndGet();
+            async.resume(occupato());
+            return;
+        }
+
+        RequestContextController contesto = contesti != null ? contesti.get() : null;
+        boolean attivato = contesto != null && contesto.activate();
+        try {
+            if (risolto != null && principal != null) {
+                principal.copiaDa(risolto);
+            }
+            async.resume(lavoro.get());
+        } catch (RuntimeException e) {
+            async.resume(e);
+        } finally {
+            if (attivato) {
+                contesto.deactivate();
+            }
+            if (contesto != null) {
+                contesti.destroy(contesto);
+            }
+            long durata = System.nanoTime() - inizio;
+            ultimaEsecuzioneNanos.set(durata);
+            esecuzioneTotaleNanos.addAndGet(durata);
+            completati.incrementAndGet();
+        }
+    }
+
+    private Response occupato() {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header("Retry-After", RIPROVA_DOPO)
+                .build();
+    }
+
+    @PreDestroy
+    public void ferma() {
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(ATTESA_MAX_MS, TimeUnit.MILLISECONDS)) {
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getProfondita() {
+        return pool.getQueue().size();
+    }
+
+    public Map<String, Object> getMetriche() {
+        long eseguiti = completati.get();
+        long avviati = eseguiti + scaduti.get();
+        Map<String, Object> metriche = new LinkedHashMap<>();
+        metriche.put("thread", pool.getMaximumPoolSize());
+        metriche.put("attivi", pool.getActiveCount());
+        metriche.put("profondita", pool.getQueue().size());
+        metriche.put("capacita", capacita);
+        metriche.put("rifiutati", rifiutati.get());
+        metriche.put("scaduti", scaduti.get());
+        metriche.put("completati", eseguiti);
+        metriche.put("attesaMediaMs", avviati == 0 ? 0.0 : attesaTotaleNanos.get() / 1_000_000.0 / avviati);
+        metriche.put("ultimaRichiestaMs", ultimaEsecuzioneNanos.get() / 1_000_000.0);
+        metriche.put("richiestaMediaMs", eseguiti == 0 ? 0.0 : esecuzioneTotaleNanos.get() / 1_000_000.0 / eseguiti);
+        return metriche;
+    }
+}
@@ -1,5 +1,8 @@
 package model.utility;
 
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import jakarta.enterprise.context.ApplicationScoped;
@@ -10,6 +13,9 @@ import model.exception.TokenExpiredException;
 
 import javax.crypto.SecretKey;
 import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 @ApplicationScoped
 public class JWT_Provider {
@@ -17,10 +23,27 @@ public class JWT_Provider {
     private static final long EXPIRATION_TIME = 86_400_000; // un giorno
     private static final String SECRET_STRING = "z2p7W8p5v9B8R3M1x8C4k7J2q5N0t3Z9";//da sostituire con variabile d'ambiente o mettere a caso
     private static final SecretKey SECRET_KEY = Keys.hmacShaKeyFor(SECRET_STRING.getBytes());
+    private static final long CLOCK_SKEW_SECONDS = 60;
+    private static final int MAX_CACHED_TOKENS = 10_000;
+
+    // il parser è immutabile e thread-safe: lo costruiamo una volta sola
+    private static final JwtParser PARSER = Jwts.parser()
+            .verifyWith(SECRET_KEY)
+            .clockSkewSeconds(CLOCK_SKEW_SECONDS)
+            .build();
+
+    // token -> claims gia' verificati, la firma viene controllata solo al primo accesso
+    private final Map<String, CachedClaims> claimsCache = new ConcurrentHashMap<>();
 
     public JWT_Provider() {
     }
 
+    private record CachedClaims(Claims claims, long expiresAt) {
+        boolean isExpired(long now, long skewMillis) {
+            return expiresAt > 0 && now > expiresAt + skewMillis;
+        }
+    }
+
     public String generateToken(Utente utente, String roole) {
         if (utente == null || utente.getId() == null || utente.getId() <= 0) {
             throw new IllegalArgumentException("Impossibile generare token: Utente o ID non validi");
@@ -32,9 +55,16 @@ public class JWT_Provider {
         Date now = new Date();
         Date expiryDate = new Date(now.getTime() + EXPIRATION_TIME);
 
+        // i flag di ruolo e la versione bastano a ricostruire l'utente senza stato sul server
         return Jwts.builder()
+                .id(UUID.randomUUID().toString())
                 .subject(roole)
                 .claim("id", utente.getId())
+                .claim("username", utente.getUsername())
+                .claim("creatore", Boolean.TRUE.equals(utente.getIsCreatore()))
+                .claim("compilatore", Boolean.TRUE.equals(utente.getIsCompilatore()))
+                .claim("manager", Boolean.TRUE.equals(utente.getIsManager()))
+                .claim("ver", now.getTime())
                 .issuedAt(now)
                 .expiration(expiryDate)
                 .signWith(SECRET_KEY)
@@ -47,11 +77,7 @@ public class JWT_Provider {
         }
 
         try {
-            Jwts.parser()
-                    .verifyWith(SECRET_KEY)
-                    .clockSkewSeconds(60)
-                    .build()
-                    .parseSignedClaims(token);
+            getClaims(token, CLOCK_SKEW_SECONDS * 1000);
         } catch (io.jsonwebtoken.ExpiredJwtException e) {
             throw new TokenExpiredException("Il token è scaduto. Effettua di nuovo il login.");
         } catch (Exception e) {
@@ -66,16 +92,10 @@ public class JWT_Provider {
         }
 
         try {
-            return Jwts.parser()
-                    .verifyWith(SECRET_KEY)
-                    .build()
-                    .parseSignedClaims(token)
-                    .getPayload()
-                    .get("id", Integer.class);
+            return getClaims(token, 0).get("id", Integer.class);
         }  catch (io.jsonwebtoken.ExpiredJwtException e) {
             throw new TokenExpiredException("Il token è scaduto. Effettua di nuovo il login.");
         } catch (Exception e) {
-            System.out.println("errore di validazione: " + e.getMessage());
             throw new AppException("critical error");
         }
     }
@@ -86,17 +106,93 @@ public class JWT_Provider {
         }
 
         try {
-            return Jwts.parser()
-                    .verifyWith(SECRET_KEY)
-                    .build()
-                    .parseSignedClaims(token)
-                    .getPayload()
-                    .getSubject();
+            return getClaims(token, 0).getSubject();
+        }  catch (io.jsonwebtoken.ExpiredJwtException e) {
+            throw new TokenExpiredException("Il token è scaduto. Effettua di nuovo il login.");
+        } catch (Exception e) {
+            throw new AppException("critical error");
+        }
+    }
+
+    public Date getExpirationFromToken(String token) throws TokenExpiredException, AppException {
+        if (token == null || token.isEmpty()) {
+            throw new IllegalArgumentException("token is empty or null");
+        }
+
+        try {
+            return getClaims(token, 0).getExpiration();
+        }  catch (io.jsonwebtoken.ExpiredJwtException e) {
+            throw new TokenExpiredException("Il token è scaduto. Effettua di nuovo il login.");
+        } catch (Exception e) {
+            throw new AppException("critical error");
+        }
+    }
+
+    // utente ricostruito dai claim firmati: solo id, username e flag di ruolo, il resto va letto dal db
+    public Utente getUtenteFromToken(String token) throws TokenExpiredException, AppException {
+        if (token == null || token.isEmpty()) {
+            throw new IllegalArgumentException("token is empty or null");
+        }
+
+        try {
+            Claims claims = getClaims(token, 0);
+            Utente u = new Utente();
+            u.setId(claims.get("id", Integer.class));
+            u.setUsername(claims.get("username", String.class));
+            u.setIsCreatore(Boolean.TRUE.equals(claims.get("creatore", Boolean.class)));
+            u.setIsCompilatore(Boolean.TRUE.equals(claims.get("compilatore", Boolean.class)));
+            u.setIsManager(Boolean.TRUE.equals(claims.get("manager", Boolean.class)));
+            return u;
         }  catch (io.jsonwebtoken.ExpiredJwtException e) {
             throw new TokenExpiredException("Il token è scaduto. Effettua di nuovo il login.");
         } catch (Exception e) {
-            System.out.println("errore di validazione: " + e.getMessage());
             throw new AppException("critical error");
         }
     }
+
+    // identificativo del singolo token, chiave della lista di revoca; i token senza jti usano la firma
+    public String getJtiFromToken(String token) throws TokenExpiredException, AppException {
+        if (token == null || token.isEmpty()) {
+            throw new IllegalArgumentException("token is empty or null");
+        }
+
+        try {
+            String jti = getClaims(token, 0).getId();
+            return jti != null ? jti : token.substring(token.lastIndexOf('.') + 1);
+        }  catch (io.jsonwebtoken.ExpiredJwtException e) {
+            throw new TokenExpiredException("Il token è scaduto. Effettua di nuovo il login.");
+        } catch (Exception e) {
+            throw new AppException("critical error");
+        }
+    }
+
+    private Claims getClaims(String token, long skewMillis) {
+        long now = System.currentTimeMillis();
+        CachedClaims cached = claimsCache.get(token);
+
+        if (cached == null) {
+            Claims claims = PARSER.parseSignedClaims(token).getPayload();
+            Date exp = claims.getExpiration();
+            cached = new CachedClaims(claims, exp != null ? exp.getTime() : 0);
+            cacheClaims(token, cached, now);
+        }
+
+        if (cached.isExpired(now, skewMillis)) {
+            if (cached.isExpired(now, CLOCK_SKEW_SECONDS * 1000)) {
+                claimsCache.remove(token, cached);
+            }
+            throw new ExpiredJwtException(null, cached.claims(), "token scaduto");
+        }
+        return cached.claims();
+    }
+
+    private void cacheClaims(String token, CachedClaims cached, long now) {
+        if (claimsCache.size() >= MAX_CACHED_TOKENS) {
+            claimsCache.values().removeIf(c -> c.isExpired(now, CLOCK_SKEW_SECONDS * 1000));
+            if (claimsCache.size() >= MAX_CACHED_TOKENS) {
+                return;
+            }
+        }
+        claimsCache.put(token, cached);
+    }
 }
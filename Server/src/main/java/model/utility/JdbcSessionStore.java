@@ -0,0 +1,171 @@
+package model.utility;
+
+import jakarta.enterprise.inject.Vetoed;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import model.dao.SessioneDAO;
+import model.entity.Sessione;
+import model.entity.Utente;
+import model.exception.AppException;
+import model.exception.RegisterFailed;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+// sessioni nella tabella sessione: sopravvivono al riavvio e sono viste da tutti i nodi.
+// le letture passano da una cache locale breve; un logout fatto su un altro nodo
+// qui resta visibile al massimo per TTL_VICINA_MS
+@Vetoed
+public class JdbcSessionStore implements SessionStore {
+
+    static final long TTL_VICINA_MS = 5_000;
+    static final int MAX_VICINA = 10_000;
+
+    private record Voce(Utente utente, long scadenza, long letta) {
+    }
+
+    private final EntityManagerFactory emf;
+    private final LongSupplier orologio;
+    private final Map<String, Voce> vicina = new ConcurrentHashMap<>();
+
+    private final AtomicLong hit = new AtomicLong();
+    private final AtomicLong miss = new AtomicLong();
+    private final AtomicLong scadute = new AtomicLong();
+
+    public JdbcSessionStore(EntityManagerFactory emf) {
+        this(emf, System::currentTimeMillis);
+    }
+
+    JdbcSessionStore(EntityManagerFactory emf, LongSupplier orologio) {
+        this.emf = emf;
+        this.orologio = orologio;
+    }
+
+    private <T> T conDao(Function<SessioneDAO, T> lavoro) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return lavoro.apply(new SessioneDAO(em));
+        } finally {
+            em.close();
+        }
+    }
+
+    @Override
+    public String inserisci(String token, Utente utente, long scadenza) throws AppException {
+        String esistente = conDao(dao -> dao.findTokenByUtente(utente.getId()));
+        if (esistente != null) {
+            return esistente;
+        }
+        try {
+            conDao(dao -> {
+                dao.insert(token, utente.getId(), scadenza);
+                return null;
+            });
+        } catch (RegisterFailed e) {
+            // un altro nodo ha inserito la sessione per lo stesso utente nel frattempo
+            esistente = conDao(dao -> dao.findTokenByUtente(utente.getId()));
+            if (esistente != null) {
+                return esistente;
+            }
+            throw new AppException("Impossibile salvare la sessione");
+        }
+        ricorda(token, utente, scadenza);
+        return null;
+    }
+
+    @Override
+    public Utente trova(String token) {
+        long ora = orologio.getAsLong();
+        Voce voce = vicina.get(token);
+        if (voce != null && ora - voce.letta() < TTL_VICINA_MS && voce.scadenza() > ora) {
+            hit.incrementAndGet();
+            return voce.utente();
+        }
+        miss.incrementAndGet();
+        Sessione sessione = conDao(dao -> dao.findByToken(token));
+        if (sessione == null || sessione.getScadenza() <= ora) {
+            vicina.remove(token);
+            return null;
+        }
+        ricorda(token, sessione.getUtente(), sessione.getScadenza());
+        return sessione.getUtente();
+    }
+
+    private void ricorda(String token, Utente utente, long scadenza) {
+        if (vicina.size() >= MAX_VICINA) {
+            // cache piena: si riparte da vuota, le voci si ricaricano dal db
+            vicina.clear();
+        }
+        vicina.put(token, new Voce(utente, scadenza, orologio.getAsLong()));
+    }
+
+    @Override
+    public boolean contiene(String token) {
+        return trova(token) != null;
+    }
+
+    @Override
+    public boolean rimuovi(String token) {
+        vicina.remove(token);
+        return conDao(dao -> dao.deleteByToken(token));
+    }
+
+    // l'utente è già salvato da UtenteDAO: basta controllare che la sessione esista e aggiornare la cache
+    @Override
+    public boolean aggiorna(String token, Utente utente) {
+        Sessione sessione = conDao(dao -> dao.findByToken(token));
+        if (sessione == null) {
+            vicina.remove(token);
+            return false;
+        }
+        ricorda(token, utente, sessione.getScadenza());
+        return true;
+    }
+
+    // l'update condizionato sul vecchio token è il compare-and-swap: tra due nodi vince uno solo
+    @Override
+    public boolean sostituisci(String vecchio, String nuovo, long scadenza) {
+        Voce voce = vicina.remove(vecchio);
+        if (!conDao(dao -> dao.updateToken(vecchio, nuovo, scadenza))) {
+            return false;
+        }
+        if (voce != null) {
+            ricorda(nuovo, voce.utente(), scadenza);
+        }
+        return true;
+    }
+
+    @Override
+    public String tokenDi(int utenteId) {
+        return conDao(dao -> dao.findTokenByUtente(utenteId));
+    }
+
+    @Override
+    public int pulisci(long ora) {
+        vicina.entrySet().removeIf(e -> e.getValue().scadenza() <= ora || ora - e.getValue().letta() >= TTL_VICINA_MS);
+        int rimosse = conDao(dao -> dao.deleteScadute(ora));
+        scadute.addAndGet(rimosse);
+        return rimosse;
+    }
+
+    @Override
+    public int size() {
+        return conDao(dao -> (int) dao.count());
+    }
+
+    @Override
+    public Map<String, Object> getMetriche() {
+        Map<String, Object> metriche = new LinkedHashMap<>();
+        metriche.put("tipo", "jdbc");
+        metriche.put("attive", size());
+        metriche.put("vicina", vicina.size());
+        metriche.put("hit", hit.get());
+        metriche.put("miss", miss.get());
+        metriche.put("scadute", scadute.get());
+        return metriche;
+    }
+}
@@ -0,0 +1,235 @@
+package model.utility;
+
+import jakarta.enterprise.inject.Vetoed;
+import model.entity.Utente;
+import model.exception.AppException;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+// sessioni nel singolo nodo: letture per token senza lock, scritture serializzate per utente su segmenti,
+// rimozione delle sessioni scadute in ordine di exp del JWT
+@Vetoed
+public class MemorySessionStore implements SessionStore {
+
+    static final int MAX_SESSIONI = 100_000;
+    private static final int SEGMENTI = 64;
+
+    private static final class Sessione implements Comparable<Sessione> {
+        final String token;
+        final int utenteId;
+        final long scadenza;
+        final long ordine;
+        volatile Utente utente;
+
+        Sessione(String token, Utente utente, long scadenza, long ordine) {
+            this.token = token;
+            this.utenteId = utente.getId();
+            this.utente = utente;
+            this.scadenza = scadenza;
+            this.ordine = ordine;
+        }
+
+        @Override
+        public int compareTo(Sessione altra) {
+            int c = Long.compare(scadenza, altra.scadenza);
+            return c != 0 ? c : Long.compare(ordine, altra.ordine);
+        }
+    }
+
+    private static final class Segmento {
+        final ReentrantLock lock = new ReentrantLock();
+        final Map<Integer, Sessione> perUtente = new HashMap<>();
+    }
+
+    private final Map<String, Sessione> perToken = new ConcurrentHashMap<>();
+    private final Segmento[] segmenti = new Segmento[SEGMENTI];
+    private final ConcurrentSkipListSet<Sessione> scadenze = new ConcurrentSkipListSet<>();
+
+    private final AtomicInteger attive = new AtomicInteger();
+    private final AtomicLong ordine = new AtomicLong();
+    private final AtomicLong scadute = new AtomicLong();
+    private final AtomicLong rifiutate = new AtomicLong();
+
+    private final LongSupplier orologio;
+
+    public MemorySessionStore() {
+        this(System::currentTimeMillis);
+    }
+
+    MemorySessionStore(LongSupplier orologio) {
+        this.orologio = orologio;
+        for (int i = 0; i < SEGMENTI; i++) {
+            segmenti[i] = new Segmento();
+        }
+    }
+
+    private Segmento segmento(int utenteId) {
+        return segmenti[Math.floorMod(utenteId, SEGMENTI)];
+    }
+
+    @Override
+    public String inserisci(String token, Utente utente, long scadenza) throws AppException {
+        pulisci(orologio.getAsLong());
+
+        Segmento s = segmento(utente.getId());
+        s.lock.lock();
+        try {
+            // controllo e inserimento sotto lo stesso lock: due login concorrenti non creano due sessioni
+            Sessione esistente = s.perUtente.get(utente.getId());
+            if (esistente != null) {
+                return esistente.token;
+            }
+            if (attive.incrementAndGet() > MAX_SESSIONI) {
+                attive.decrementAndGet();
+                rifiutate.incrementAndGet();
+                throw new AppException("Limite di sessioni attive raggiunto");
+            }
+            Sessione nuova = new Sessione(token, utente, scadenza, ordine.incrementAndGet());
+            s.perUtente.put(utente.getId(), nuova);
+            perToken.put(token, nuova);
+            scadenze.add(nuova);
+            return null;
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    // da chiamare con il lock del segmento
+    private boolean togli(Segmento s, Sessione sessione) {
+        s.perUtente.remove(sessione.utenteId, sessione);
+        scadenze.remove(sessione);
+        if (perToken.remove(sessione.token, sessione)) {
+            attive.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Utente trova(String token) {
+        Sessione sessione = perToken.get(token);
+        return sessione != null ? sessione.utente : null;
+    }
+
+    @Override
+    public boolean contiene(String token) {
+        return perToken.containsKey(token);
+    }
+
+    @Override
+    public boolean rimuovi(String token) {
+        Sessione sessione = perToken.get(token);
+        if (sessione == null) {
+            return false;
+        }
+        Segmento s = segmento(sessione.utenteId);
+        s.lock.lock();
+        try {
+            return togli(s, sessione);
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean aggiorna(String token, Utente utente) {
+        Sessione sessione = perToken.get(token);
+        if (sessione == null) {
+            return false;
+        }
+        Segmento s = segmento(sessione.utenteId);
+        s.lock.lock();
+        try {
+            if (perToken.get(token) != sessione) {
+                return false;
+            }
+            sessione.utente = utente;
+            return true;
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean sostituisci(String vecchio, String nuovo, long scadenza) {
+        Sessione attuale = perToken.get(vecchio);
+        if (attuale == null) {
+            return false;
+        }
+        Segmento s = segmento(attuale.utenteId);
+        s.lock.lock();
+        try {
+            if (s.perUtente.get(attuale.utenteId) != attuale) {
+                return false;
+            }
+            Sessione nuova = new Sessione(nuovo, attuale.utente, scadenza, ordine.incrementAndGet());
+            // prima il nuovo token e poi via il vecchio: le letture senza lock trovano sempre la sessione
+            perToken.put(nuovo, nuova);
+            s.perUtente.put(attuale.utenteId, nuova);
+            scadenze.add(nuova);
+            scadenze.remove(attuale);
+            perToken.remove(vecchio, attuale);
+            return true;
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    @Override
+    public String tokenDi(int utenteId) {
+        Segmento s = segmento(utenteId);
+        s.lock.lock();
+        try {
+            Sessione sessione = s.perUtente.get(utenteId);
+            return sessione != null ? sessione.token : null;
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    // le sessioni sono ordinate per scadenza: si scorre solo la testa già scaduta
+    @Override
+    public int pulisci(long ora) {
+        int rimosse = 0;
+        for (Sessione sessione : scadenze) {
+            if (sessione.scadenza > ora) {
+                break;
+            }
+            Segmento s = segmento(sessione.utenteId);
+            s.lock.lock();
+            try {
+                if (togli(s, sessione)) {
+                    rimosse++;
+                }
+            } finally {
+                s.lock.unlock();
+            }
+        }
+        scadute.addAndGet(rimosse);
+        return rimosse;
+    }
+
+    @Override
+    public int size() {
+        return attive.get();
+    }
+
+    @Override
+    public Map<String, Object> getMetriche() {
+        Map<String, Object> metriche = new LinkedHashMap<>();
+        metriche.put("tipo", "memoria");
+        metriche.put("attive", attive.get());
+        metriche.put("capacita", MAX_SESSIONI);
+        metriche.put("scadute", scadute.get());
+        metriche.put("rifiutate", rifiutate.get());
+        return metriche;
+    }
+}
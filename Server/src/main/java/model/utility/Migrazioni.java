@@ -0,0 +1,61 @@
+package model.utility;
+
+import jakarta.inject.Singleton;
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.output.MigrateResult;
+
+import javax.sql.DataSource;
+
+// versioni dello schema in db/migrazioni (V<n>__descrizione.sql), applicate da JPAUtil prima di creare la factory.
+// i database nati da docker-entrypoint-initdb.d non hanno storia: vengono registrati alla versione 1
+// e ricevono solo le migrazioni successive
+@Singleton
+public class Migrazioni {
+
+    public static final String ABILITAZIONE = "DB_MIGRAZIONI";
+
+    static final String POSIZIONE = "classpath:db/migrazioni";
+    static final String TABELLA = "schema_versione";
+    private static final String VERSIONE_BASE = "1";
+    // all'avvio il database può non essere ancora pronto (docker compose up a freddo): si riprova
+    // per circa un minuto prima di bloccare l'avvio
+    static final int TENTATIVI_CONNESSIONE = 20;
+    static final int ATTESA_CONNESSIONE_S = 3;
+
+    private final boolean abilitate;
+    private final int tentativiConnessione;
+    private final int attesaConnessioneS;
+
+    public Migrazioni() {
+        this(!"false".equalsIgnoreCase(System.getenv(ABILITAZIONE)));
+    }
+
+    Migrazioni(boolean abilitate) {
+        this(abilitate, TENTATIVI_CONNESSIONE, ATTESA_CONNESSIONE_S);
+    }
+
+    Migrazioni(boolean abilitate, int tentativiConnessione, int attesaConnessioneS) {
+        this.abilitate = abilitate;
+        this.tentativiConnessione = tentativiConnessione;
+        this.attesaConnessioneS = attesaConnessioneS;
+    }
+
+    // restituisce quante migrazioni sono state eseguite; un errore blocca l'avvio invece di partire con uno schema a metà
+    public int applica(DataSource dataSource) {
+        if (!abilitate || dataSource == null) {
+            // senza DB_URL la connessione è quella di persistence.xml: lo schema resta a carico di chi lo gestisce
+            return 0;
+        }
+        MigrateResult risultato = Flyway.configure()
+                .dataSource(dataSource)
+                .locations(POSIZIONE)
+                .table(TABELLA)
+                .baselineOnMigrate(true)
+                .baselineVersion(VERSIONE_BASE)
+                .connectRetries(tentativiConnessione)
+                .connectRetriesInterval(attesaConnessioneS)
+                .load()
+                .migrate();
+        return risultato.migrationsExecuted;
+    }
+}
@@ -0,0 +1,175 @@
+package model.utility;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Singleton;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// con QUIZ_VIRTUAL_THREADS=true il connettore di Tomcat esegue ogni richiesta su un thread virtuale (vedi Dockerfile).
+// un thread virtuale che si blocca dentro un synchronized resta attaccato al carrier (pinning):
+// su JDK 21+ si ascoltano gli eventi JFR jdk.VirtualThreadPinned e si contano per punto del codice
+@Singleton
+public class MonitorPinning {
+
+    public static final String ABILITAZIONE = "QUIZ_VIRTUAL_THREADS";
+
+    static final String EVENTO = "jdk.VirtualThreadPinned";
+    static final int MAX_PUNTI = 200;
+    private static final int PUNTI_RIPORTATI = 20;
+    private static final Duration SOGLIA = Duration.ofMillis(20);
+    private static final int JDK_VIRTUALI = 21;
+
+    // Thread.isVirtual esiste solo da JDK 21, il progetto compila per 17
+    private static final Method IS_VIRTUAL = cercaIsVirtual();
+
+    private record Punto(AtomicLong eventi, AtomicLong totaleNanos, AtomicLong maxNanos) {
+    }
+
+    private final boolean abilitata;
+    private final Map<String, Punto> punti = new ConcurrentHashMap<>();
+    private final AtomicLong eventi = new AtomicLong();
+    private final AtomicLong fuoriLimite = new AtomicLong();
+    private RecordingStream stream;
+
+    public MonitorPinning() {
+        this("true".equalsIgnoreCase(System.getenv(ABILITAZIONE)));
+    }
+
+    MonitorPinning(boolean abilitata) {
+        this.abilitata = abilitata;
+    }
+
+    private static Method cercaIsVirtual() {
+        try {
+            return Thread.class.getMethod("isVirtual");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    static boolean supportata() {
+        return Runtime.version().feature() >= JDK_VIRTUALI;
+    }
+
+    void avvio(@Observes @Initialized(ApplicationScoped.class) Object evento) {
+        avvia();
+    }
+
+    public synchronized boolean avvia() {
+        if (!abilitata || stream != null) {
+            return stream != null;
+        }
+        if (!supportata()) {
+            System.out.println("Thread virtuali richiesti ma non disponibili sul JDK " + Runtime.version().feature());
+            return false;
+        }
+        try {
+            RecordingStream rs = new RecordingStream();
+            rs.enable(EVENTO).withThreshold(SOGLIA).withStackTrace();
+            rs.onEvent(EVENTO, e -> registra(punto(e.getStackTrace()), e.getDuration().toNanos()));
+            rs.startAsync();
+            stream = rs;
+            return true;
+        } catch (RuntimeException e) {
+            // JFR disattivato nella JVM: le richieste restano su thread virtuali, manca solo il report
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public synchronized void ferma() {
+        if (stream != null) {
+            stream.close();
+            stream = null;
+        }
+    }
+
+    // il primo frame fuori dal JDK è il codice (nostro o di una libreria) che si è bloccato tenendo il monitor
+    private static String punto(RecordedStackTrace stack) {
+        if (stack == null || stack.getFrames().isEmpty()) {
+            return "sconosciuto";
+        }
+        RecordedFrame scelto = stack.getFrames().get(0);
+        for (RecordedFrame frame : stack.getFrames()) {
+            if (frame.isJavaFrame() && !delJdk(frame.getMethod().getType().getName())) {
+                scelto = frame;
+                break;
+            }
+        }
+        return scelto.getMethod().getType().getName() + "." + scelto.getMethod().getName()
+                + ":" + scelto.getLineNumber();
+    }
+
+    static boolean delJdk(String classe) {
+        return classe.startsWith("java.") || classe.startsWith("jdk.") || classe.startsWith("sun.");
+    }
+
+    void registra(String punto, long durataNanos) {
+        eventi.incrementAndGet();
+        Punto p = punti.get(punto);
+        if (p == null) {
+            if (punti.size() >= MAX_PUNTI) {
+                fuoriLimite.incrementAndGet();
+                return;
+            }
+            p = punti.computeIfAbsent(punto, k -> new Punto(new AtomicLong(), new AtomicLong(), new AtomicLong()));
+        }
+        p.eventi().incrementAndGet();
+        p.totaleNanos().addAndGet(durataNanos);
+        p.maxNanos().accumulateAndGet(durataNanos, Math::max);
+    }
+
+    public boolean isAttivo() {
+        return stream != null;
+    }
+
+    static boolean virtuale(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    // letto da una richiesta: richiestaVirtuale dice se il connettore sta davvero usando thread virtuali
+    public Map<String, Object> getMetriche() {
+        Map<String, Object> metriche = new LinkedHashMap<>();
+        metriche.put("richiesti", abilitata);
+        metriche.put("supportati", supportata());
+        metriche.put("richiestaVirtuale", virtuale(Thread.currentThread()));
+        metriche.put("monitor", isAttivo());
+        metriche.put("sogliaMs", SOGLIA.toMillis());
+        metriche.put("eventi", eventi.get());
+        metriche.put("fuoriLimite", fuoriLimite.get());
+
+        Map<String, Object> peggiori = new LinkedHashMap<>();
+        punti.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, Punto> e) -> e.getValue().eventi().get()).reversed())
+                .limit(PUNTI_RIPORTATI)
+                .forEach(e -> {
+                    Map<String, Object> punto = new LinkedHashMap<>();
+                    punto.put("eventi", e.getValue().eventi().get());
+                    punto.put("totaleMs", e.getValue().totaleNanos().get() / 1_000_000);
+                    punto.put("maxMs", e.getValue().maxNanos().get() / 1_000_000);
+                    peggiori.put(e.getKey(), punto);
+                });
+        metriche.put("punti", peggiori);
+        return metriche;
+    }
+}
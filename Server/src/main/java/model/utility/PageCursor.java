@@ -0,0 +1,56 @@
+package model.utility;
+
+import model.dto.QuizDTO;
+import model.exception.AppException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+public final class PageCursor {
+
+    public static final int DIMENSIONE_PAGINA = 10;
+
+    private static final String PREFISSO = "q:";
+
+    private PageCursor() {
+    }
+
+    public static String encode(int lastId) {
+        if (lastId <= 0) {
+            throw new AppException("id cursore non valido");
+        }
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString((PREFISSO + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // cursore assente o vuoto = prima pagina
+    public static int decode(String cursor) throws AppException {
+        if (cursor == null || cursor.isBlank()) {
+            return 0;
+        }
+        try {
+            String valore = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!valore.startsWith(PREFISSO)) {
+                throw new AppException("cursore non valido");
+            }
+
+            int lastId = Integer.parseInt(valore.substring(PREFISSO.length()));
+            if (lastId <= 0) {
+                throw new AppException("cursore non valido");
+            }
+            return lastId;
+        } catch (IllegalArgumentException e) {
+            throw new AppException("cursore non valido");
+        }
+    }
+
+    // una pagina incompleta è l'ultima: nessun cursore successivo
+    public static String next(List<QuizDTO> pagina) {
+        if (pagina == null || pagina.size() < DIMENSIONE_PAGINA) {
+            return null;
+        }
+        return encode(pagina.get(pagina.size() - 1).getId());
+    }
+}
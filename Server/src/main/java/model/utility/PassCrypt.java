@@ -1,15 +1,125 @@
 package model.utility;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
 import model.exception.EmptyFild;
 import org.mindrot.jbcrypt.BCrypt;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
 @ApplicationScoped
 public class PassCrypt {
 
-    private static final int COSTO = 12;
+    public static final String COSTO = "BCRYPT_COSTO";
+    public static final String OBIETTIVO = "BCRYPT_OBIETTIVO_MS";
+
+    private static final int COSTO_DEFAULT = 12;
+    private static final String COSTO_AUTOMATICO = "auto";
+    private static final long OBIETTIVO_DEFAULT_MS = 250;
+
+    // limiti di BCrypt per il costo configurato, più stretti per quello suggerito
+    private static final int COSTO_MIN = 4;
+    private static final int COSTO_MAX = 31;
+    private static final int COSTO_MIN_SUGGERITO = 10;
+    private static final int COSTO_MAX_SUGGERITO = 16;
+    private static final int COSTO_MISURA = 8;
+    private static final int MISURE = 3;
+
+    private volatile int costo;
+    private final boolean automatico;
+    private volatile int costoSuggerito = -1;
+
+    private final AtomicLong hashEseguiti = new AtomicLong();
+    private final AtomicLong hashTotaleNanos = new AtomicLong();
+    private final AtomicLong ultimoHashNanos = new AtomicLong();
 
     public PassCrypt() {
+        String valore = System.getenv(COSTO);
+        this.automatico = COSTO_AUTOMATICO.equalsIgnoreCase(valore == null ? null : valore.trim());
+        this.costo = automatico ? COSTO_DEFAULT : leggiCosto(valore);
+    }
+
+    PassCrypt(int costo) {
+        if (costo < COSTO_MIN || costo > COSTO_MAX) {
+            throw new IllegalArgumentException("costo BCrypt non valido: " + costo);
+        }
+        this.automatico = false;
+        this.costo = costo;
+    }
+
+    private static int leggiCosto(String valore) {
+        if (valore == null || valore.isBlank()) {
+            return COSTO_DEFAULT;
+        }
+        try {
+            int c = Integer.parseInt(valore.trim());
+            return c >= COSTO_MIN && c <= COSTO_MAX ? c : COSTO_DEFAULT;
+        } catch (NumberFormatException e) {
+            return COSTO_DEFAULT;
+        }
+    }
+
+    // all'avvio misura l'hardware e suggerisce il costo per BCRYPT_OBIETTIVO_MS; con BCRYPT_COSTO=auto lo adotta
+    void avvio(@Observes @Initialized(ApplicationScoped.class) Object evento) {
+        long obiettivo = OBIETTIVO_DEFAULT_MS;
+        String valore = System.getenv(OBIETTIVO);
+        if (valore != null && !valore.isBlank()) {
+            try {
+                obiettivo = Long.parseLong(valore.trim());
+            } catch (NumberFormatException e) {
+                obiettivo = OBIETTIVO_DEFAULT_MS;
+            }
+        }
+        costoSuggerito = suggerisciCosto(obiettivo);
+        if (automatico) {
+            costo = costoSuggerito;
+        }
+    }
+
+    // ogni punto di costo raddoppia il lavoro: si misura un costo basso e si estrapola
+    public int suggerisciCosto(long obiettivoMs) {
+        BCrypt.hashpw("benchmark", BCrypt.gensalt(COSTO_MISURA));
+        long migliore = Long.MAX_VALUE;
+        for (int i = 0; i < MISURE; i++) {
+            long inizio = System.nanoTime();
+            BCrypt.hashpw("benchmark", BCrypt.gensalt(COSTO_MISURA));
+            migliore = Math.min(migliore, System.nanoTime() - inizio);
+        }
+
+        double ms = migliore / 1_000_000.0;
+        int suggerito = COSTO_MISURA;
+        while (suggerito < COSTO_MAX_SUGGERITO && ms * 2 <= obiettivoMs) {
+            ms *= 2;
+            suggerito++;
+        }
+        return Math.max(suggerito, COSTO_MIN_SUGGERITO);
+    }
+
+    public int getCosto() {
+        return costo;
+    }
+
+    // hash generato con un costo più basso di quello in uso: va riscritto al prossimo login riuscito.
+    // mai verso il basso: con BCRYPT_COSTO=auto nodi e riavvii possono misurare costi diversi
+    // e gli hash rimbalzerebbero da un costo all'altro a ogni login
+    public boolean richiedeRehash(String hashDalDatabase) {
+        int costoHash = costoDi(hashDalDatabase);
+        return costoHash > 0 && costoHash < costo;
+    }
+
+    private static int costoDi(String hash) {
+        // formato $2a$12$<salt+hash>
+        if (hash == null || hash.length() < 7 || hash.charAt(0) != '$' || hash.charAt(3) != '$' || hash.charAt(6) != '$') {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(hash.substring(4, 6));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     private void emptyPassword(String password) {
@@ -21,17 +131,43 @@ public class PassCrypt {
     public String hashPassword(String passwordInChiaro) throws EmptyFild {
         emptyPassword(passwordInChiaro);
 
-        return BCrypt.hashpw(passwordInChiaro, BCrypt.gensalt(COSTO));
+        long inizio = System.nanoTime();
+        try {
+            return BCrypt.hashpw(passwordInChiaro, BCrypt.gensalt(costo));
+        } finally {
+            registra(inizio);
+        }
     }
 
     public boolean verificaPassword(String passwordInChiaro, String hashDalDatabase) throws EmptyFild {
         emptyPassword(passwordInChiaro);
         emptyPassword(hashDalDatabase);
+        long inizio = System.nanoTime();
         try {
             return BCrypt.checkpw(passwordInChiaro, hashDalDatabase);
         } catch (Exception e) {
 
             return false;
+        } finally {
+            registra(inizio);
         }
     }
+
+    private void registra(long inizio) {
+        long durata = System.nanoTime() - inizio;
+        ultimoHashNanos.set(durata);
+        hashTotaleNanos.addAndGet(durata);
+        hashEseguiti.incrementAndGet();
+    }
+
+    public Map<String, Object> getMetriche() {
+        long eseguiti = hashEseguiti.get();
+        Map<String, Object> metriche = new LinkedHashMap<>();
+        metriche.put("costo", costo);
+        metriche.put("costoSuggerito", costoSuggerito);
+        metriche.put("eseguiti", eseguiti);
+        metriche.put("ultimoHashMs", ultimoHashNanos.get() / 1_000_000.0);
+        metriche.put("hashMedioMs", eseguiti == 0 ? 0.0 : hashTotaleNanos.get() / 1_000_000.0 / eseguiti);
+        return metriche;
+    }
 }
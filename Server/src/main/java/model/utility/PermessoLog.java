@@ -0,0 +1,137 @@
+package model.utility;
+
+import jakarta.inject.Singleton;
+import model.exception.EmptyFild;
+import model.exception.TroppiTentativiException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// sblocchi dei quiz con password per (utente, quiz): chi ha già superato BCrypt non lo ripete,
+// chi sbaglia troppe volte aspetta prima di poter far girare un altro hash
+@Singleton
+public class PermessoLog {
+
+    static final int MAX_PERMESSI = 10_000;
+    static final long DURATA_PERMESSO_MS = 30 * 60 * 1000L;
+    static final int MAX_ERRORI = 5;
+    static final long FINESTRA_ERRORI_MS = 5 * 60 * 1000L;
+
+    // valore: istante di scadenza del permesso
+    private final Map<Long, Long> permessi = new ConcurrentHashMap<>();
+    private final Map<Long, Tentativi> tentativi = new ConcurrentHashMap<>();
+
+    // cresce a ogni invalidazione: un permesso verificato contro la vecchia password non viene salvato
+    private final AtomicLong epoca = new AtomicLong();
+
+    private final LongSupplier orologio;
+
+    public PermessoLog() {
+        this(System::currentTimeMillis);
+    }
+
+    PermessoLog(LongSupplier orologio) {
+        this.orologio = orologio;
+    }
+
+    private static final class Tentativi {
+        final long inizio;
+        final int usati;
+
+        Tentativi(long inizio, int usati) {
+            this.inizio = inizio;
+            this.usati = usati;
+        }
+    }
+
+    private static long chiave(int utenteId, int quizId) {
+        return ((long) utenteId << 32) | (quizId & 0xffffffffL);
+    }
+
+    private static void controlla(int utenteId, int quizId) throws EmptyFild {
+        if (utenteId <= 0 || quizId <= 0) throw new EmptyFild("id non valido");
+    }
+
+    public long getEpoca() {
+        return epoca.get();
+    }
+
+    public boolean isConcesso(int utenteId, int quizId) throws EmptyFild {
+        controlla(utenteId, quizId);
+
+        long k = chiave(utenteId, quizId);
+        Long scadenza = permessi.get(k);
+        if (scadenza == null) {
+            return false;
+        }
+        if (scadenza <= orologio.getAsLong()) {
+            permessi.remove(k, scadenza);
+            return false;
+        }
+        return true;
+    }
+
+    // prenota un tentativo prima dell'hash, così le richieste concorrenti non superano il limite
+    public void tentativo(int utenteId, int quizId) throws EmptyFild, TroppiTentativiException {
+        controlla(utenteId, quizId);
+
+        long ora = orologio.getAsLong();
+        long chiave = chiave(utenteId, quizId);
+        if (tentativi.size() >= MAX_PERMESSI) {
+            tentativi.values().removeIf(t -> t.inizio + FINESTRA_ERRORI_MS <= ora);
+            // pieno di finestre ancora aperte: scartarne una azzererebbe il blocco di qualcuno,
+            // quindi le coppie nuove aspettano che scada la più vecchia
+            if (tentativi.size() >= MAX_PERMESSI && !tentativi.containsKey(chiave)) {
+                long primo = tentativi.values().stream().mapToLong(t -> t.inizio).min().orElse(ora);
+                long attesa = Math.max(1, (primo + FINESTRA_ERRORI_MS - ora + 999) / 1000);
+                throw new TroppiTentativiException("troppi tentativi in corso", attesa);
+            }
+        }
+        // oltre MAX_ERRORI il contatore si ferma a MAX_ERRORI + 1: segna il blocco fino a fine finestra
+        Tentativi t = tentativi.compute(chiave, (k, vecchi) -> {
+            if (vecchi == null || vecchi.inizio + FINESTRA_ERRORI_MS <= ora) {
+                return new Tentativi(ora, 1);
+            }
+            return new Tentativi(vecchi.inizio, Math.min(vecchi.usati + 1, MAX_ERRORI + 1));
+        });
+        if (t.usati > MAX_ERRORI) {
+            long attesa = (t.inizio + FINESTRA_ERRORI_MS - ora + 999) / 1000;
+            throw new TroppiTentativiException("troppi tentativi per il quiz", attesa);
+        }
+    }
+
+    public void concedi(int utenteId, int quizId, long epocaLettura) throws EmptyFild {
+        controlla(utenteId, quizId);
+
+        long k = chiave(utenteId, quizId);
+        tentativi.remove(k);
+
+        long ora = orologio.getAsLong();
+        if (permessi.size() >= MAX_PERMESSI) {
+            permessi.values().removeIf(scadenza -> scadenza <= ora);
+            if (permessi.size() >= MAX_PERMESSI) {
+                return;
+            }
+        }
+        Long scadenza = ora + DURATA_PERMESSO_MS;
+        permessi.put(k, scadenza);
+        if (epoca.get() != epocaLettura) {
+            permessi.remove(k, scadenza);
+        }
+    }
+
+    // password cambiata o quiz eliminato: tutti gli sblocchi del quiz vanno rifatti
+    public void invalida(Integer quizId) throws EmptyFild {
+        if (quizId == null || quizId <= 0) throw new EmptyFild("id non valido");
+
+        epoca.incrementAndGet();
+        permessi.keySet().removeIf(k -> (int) k.longValue() == quizId);
+        tentativi.keySet().removeIf(k -> (int) k.longValue() == quizId);
+    }
+
+    public int size() {
+        return permessi.size();
+    }
+}
@@ -0,0 +1,126 @@
+package model.utility;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// pool HikariCP per la factory di JPAUtil, configurato dalle variabili di docker-compose.
+// senza DB_URL resta spento e vale la connessione della persistence unit
+@Singleton
+public class PoolConnessioni {
+
+    public static final String URL = "DB_URL";
+    public static final String UTENTE = "DB_USER";
+    public static final String PASSWORD = "DB_PASSWORD";
+    public static final String MASSIMO = "DB_POOL_MAX";
+    public static final String ATTESA = "DB_POOL_ATTESA_MS";
+
+    // poche connessioni bastano: richieste brevi, e MySQL rende meglio con pochi thread attivi
+    private static final int MASSIMO_DEFAULT = Runtime.getRuntime().availableProcessors() * 2 + 1;
+    private static final long ATTESA_DEFAULT_MS = 3_000;
+    private static final long VALIDAZIONE_MS = 1_000;
+    private static final long INATTIVITA_MS = 600_000;
+    private static final long VITA_MAX_MS = 1_800_000;
+
+    private final String url;
+    private final String utente;
+    private final String password;
+    private final int massimo;
+    private final long attesaMs;
+
+    private volatile HikariDataSource dataSource;
+
+    public PoolConnessioni() {
+        this(System.getenv(URL), System.getenv(UTENTE), System.getenv(PASSWORD),
+                leggi(MASSIMO, MASSIMO_DEFAULT), leggi(ATTESA, ATTESA_DEFAULT_MS));
+    }
+
+    PoolConnessioni(String url, String utente, String password, int massimo, long attesaMs) {
+        this.url = url;
+        this.utente = utente;
+        this.password = password;
+        this.massimo = massimo;
+        this.attesaMs = attesaMs;
+    }
+
+    private static int leggi(String variabile, int predefinito) {
+        return (int) leggi(variabile, (long) predefinito);
+    }
+
+    private static long leggi(String variabile, long predefinito) {
+        String valore = System.getenv(variabile);
+        if (valore == null || valore.isBlank()) {
+            return predefinito;
+        }
+        try {
+            long n = Long.parseLong(valore.trim());
+            return n > 0 ? n : predefinito;
+        } catch (NumberFormatException e) {
+            return predefinito;
+        }
+    }
+
+    // null se DB_URL non è impostata
+    public synchronized DataSource avvia() {
+        if (dataSource != null) {
+            return dataSource;
+        }
+        if (url == null || url.isBlank()) {
+            return null;
+        }
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("quizy");
+        config.setJdbcUrl(url);
+        config.setUsername(utente);
+        config.setPassword(password);
+        config.setMaximumPoolSize(massimo);
+        config.setMinimumIdle(massimo);
+        // fail-fast: chi non ottiene una connessione entro l'attesa riceve un errore invece di restare appeso
+        config.setConnectionTimeout(attesaMs);
+        config.setValidationTimeout(Math.min(VALIDAZIONE_MS, attesaMs));
+        config.setIdleTimeout(INATTIVITA_MS);
+        config.setMaxLifetime(VITA_MAX_MS);
+        // hibernate gestisce le transazioni: l'autocommit spento evita un round trip per transazione
+        config.setAutoCommit(false);
+        if (url.startsWith("jdbc:mysql:")) {
+            // con Connector/J il fetch size vale solo con i cursori lato server: senza, uno scroll riceve tutto il risultato
+            config.addDataSourceProperty("useCursorFetch", "true");
+        }
+        // il db di docker-compose può essere ancora in avvio: il pool parte e si connette appena può
+        config.setInitializationFailTimeout(-1);
+        dataSource = new HikariDataSource(config);
+        return dataSource;
+    }
+
+    public boolean isAttivo() {
+        HikariDataSource ds = dataSource;
+        return ds != null && !ds.isClosed();
+    }
+
+    @PreDestroy
+    public synchronized void chiudi() {
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+
+    public Map<String, Object> getMetriche() {
+        Map<String, Object> metriche = new LinkedHashMap<>();
+        metriche.put("attivo", isAttivo());
+        metriche.put("massimo", massimo);
+        metriche.put("attesaMaxMs", attesaMs);
+        HikariDataSource ds = dataSource;
+        HikariPoolMXBean pool = ds != null && !ds.isClosed() ? ds.getHikariPoolMXBean() : null;
+        metriche.put("attive", pool != null ? pool.getActiveConnections() : 0);
+        metriche.put("inattive", pool != null ? pool.getIdleConnections() : 0);
+        metriche.put("inAttesa", pool != null ? pool.getThreadsAwaitingConnection() : 0);
+        metriche.put("totali", pool != null ? pool.getTotalConnections() : 0);
+        return metriche;
+    }
+}
@@ -9,22 +9,62 @@ import model.exception.EmptyFild;
 import model.mapper.EntityRefresher;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
 
 @Singleton
 public class QuizLog {
 
+    private static final int MAX_QUIZ_IN_CATALOGO = 500;
+    static final int MAX_UTENTI_CON_VISTA = 10_000;
+
     @Inject
     private EntityRefresher refresher;
 
-    private final Map<Utente, Map<Integer, Quiz>> logQuizBible = new ConcurrentHashMap<>();
+    // catalogo condiviso: una sola copia per quiz, i meno usati vengono scartati (LRU)
+    private final Map<Integer, Quiz> catalogo = Collections.synchronizedMap(
+            new LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Quiz> eldest) {
+                    return size() > MAX_QUIZ_IN_CATALOGO;
+                }
+            });
+
+    // per ogni utente solo gli id dei quiz già caricati, in ordine crescente.
+    // anche le viste sono LRU: chi non si vede da tempo la perde e ricarica dal database
+    private final Map<Integer, NavigableSet<Integer>> vistePerUtente = Collections.synchronizedMap(
+            new LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, NavigableSet<Integer>> eldest) {
+                    return size() > MAX_UTENTI_CON_VISTA;
+                }
+            });
 
     public QuizLog() {
     }
 
+    private NavigableSet<Integer> vista(Utente utente) {
+        return utente.getId() != null ? vistePerUtente.get(utente.getId()) : null;
+    }
+
+    // restituisce i quiz della vista ancora presenti nel catalogo, ripulendo gli id scartati
+    private List<Quiz> risolvi(NavigableSet<Integer> vista, List<Integer> ids) {
+        List<Quiz> quizzes = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            Quiz quiz = catalogo.get(id);
+            if (quiz == null) {
+                vista.remove(id);
+            } else {
+                quizzes.add(quiz);
+            }
+        }
+        return quizzes;
+    }
+
     public void aggiungi(Utente utente, Quiz quiz) throws AppException {
         if(utente == null || utente.getId() == null || utente.getId() <= 0) {
             throw new EmptyFild("utente non valido");
@@ -32,78 +72,51 @@ public class QuizLog {
         if(quiz == null || quiz.getId() == null || quiz.getId() <= 0) {
             throw new EmptyFild("quiz non valido");
         }
-        Map<Integer, Quiz> userQuizzes = logQuizBible.computeIfAbsent(
-                utente,
-                u -> new ConcurrentHashMap<>()
+        NavigableSet<Integer> vista = vistePerUtente.computeIfAbsent(
+                utente.getId(),
+                id -> new ConcurrentSkipListSet<>()
         );
 
-        if (userQuizzes.putIfAbsent(quiz.getId(), quiz) != null) {
+        if (vista.contains(quiz.getId()) && catalogo.containsKey(quiz.getId())) {
             throw new AppException("Errore: Il quiz con ID " + quiz.getId() + " è già presente per questo utente.");
         }
+        catalogo.put(quiz.getId(), quiz);
+        vista.add(quiz.getId());
     }
 
     public List<Quiz> getQuiz(Utente utente) throws AppException {
         if(utente == null) throw new EmptyFild("utente non valido");
 
-        Map<Integer, Quiz> userQuizzes = logQuizBible.get(utente);
+        NavigableSet<Integer> vista = vista(utente);
+        List<Quiz> quizzes = vista != null ? risolvi(vista, new ArrayList<>(vista)) : List.of();
 
-        if (userQuizzes == null || userQuizzes.isEmpty()) {
+        if (quizzes.isEmpty()) {
             throw new AppException("Quiz non presenti");
         }
 
-        // MODIFICA: Uso stream per riagganciare ogni quiz
-        return userQuizzes.values().stream()
-                .map(quiz -> refresher.reattach(quiz))
-                .collect(Collectors.toList());
-    }
-
-    public void clearQuiz(Utente utente) throws AppException {
-        if(utente == null) throw new EmptyFild("utente non valido");
-
-        logQuizBible.remove(utente);
+        return quizzes.stream()
+                .map(quiz -> refresher.perLettura(quiz))
+                .toList();
     }
 
     public Quiz getQuiz(Utente utente, int id) throws AppException {
         if(utente == null) throw new EmptyFild("utente non valido");
         if(id <= 0) throw new EmptyFild("id non valido");
 
-        Map<Integer, Quiz> userQuizzes = logQuizBible.get(utente);
-
-        Quiz quiz = userQuizzes != null ? userQuizzes.get(id) : null;
-
-        return refresher.reattach(quiz);
-    }
-
-    public List<Quiz> getQuizPaginati(Utente utente, int pageNumber, int pageSize) {
-        if(utente == null) throw new EmptyFild("utente non valido");
-        if (pageNumber <= 0 || pageSize <= 0) {
-            throw new AppException("Pagina invalida");
-        }
-        Map<Integer, Quiz> userQuizzes = logQuizBible.get(utente);
-        if (userQuizzes == null || userQuizzes.isEmpty()) {
-            return new ArrayList<>();
+        NavigableSet<Integer> vista = vista(utente);
+        if (vista == null || !vista.contains(id)) {
+            return null;
         }
 
-
-        int offset = (pageNumber - 1) * pageSize;
-
-        return userQuizzes.values().stream()
-                .sorted((q1, q2) -> Integer.compare(q1.getId(), q2.getId()))
-                .skip(offset)
-                .limit(pageSize)
-                .map(quiz -> refresher.reattach(quiz)) // <--- QUI
-                .toList();
+        List<Quiz> quiz = risolvi(vista, List.of(id));
+        return quiz.isEmpty() ? null : refresher.perLettura(quiz.get(0));
     }
 
-    public void rimuoviSingoloQuiz(Utente utente, Integer quizId) throws AppException {
-        if(quizId == null || quizId <= 0) throw new EmptyFild("id non valido");
-        if(utente == null || utente.getId() == null || utente.getId() <= 0) throw new EmptyFild("utente non valido");
+    // rimuove il quiz dal catalogo condiviso per tutti gli utenti; le viste si ripuliscono alla lettura
+    public void invalida(Integer quizId) throws EmptyFild {
+        if (quizId == null || quizId <= 0) throw new EmptyFild("id non valido");
 
-        Map<Integer, Quiz> userQuizzes = logQuizBible.get(utente);
-
-        if (userQuizzes == null || userQuizzes.remove(quizId) == null) {
-            throw new AppException("Impossibile eliminare: Quiz con ID " + quizId + " non trovato per l'utente.");
-        }
+        catalogo.remove(quizId);
     }
 
     public void aggiornaSingoloQuiz(Utente utente, Quiz nuovoQuiz) throws AppException {
@@ -114,10 +127,11 @@ public class QuizLog {
             throw new AppException("Utente non valido");
         }
 
-        Map<Integer, Quiz> userQuizzes = logQuizBible.get(utente);
+        NavigableSet<Integer> vista = vista(utente);
 
-        if (userQuizzes == null || userQuizzes.replace(nuovoQuiz.getId(), nuovoQuiz) == null) {
+        if (vista == null || !vista.contains(nuovoQuiz.getId())) {
             throw new AppException("Impossibile aggiornare: Quiz con ID " + nuovoQuiz.getId() + " non trovato per l'utente.");
         }
+        catalogo.put(nuovoQuiz.getId(), nuovoQuiz);
     }
 }
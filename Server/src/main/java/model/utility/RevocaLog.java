@@ -0,0 +1,67 @@
+package model.utility;
+
+import jakarta.inject.Singleton;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// token revocati prima della scadenza (logout, cambio ruolo) in modalità stateless:
+// jti -> exp del JWT, la voce serve solo finché il token sarebbe ancora valido.
+// è la copia locale della tabella revoca, che StatelessSessionStore tiene allineata
+@Singleton
+public class RevocaLog {
+
+    private final Map<String, Long> revocati = new ConcurrentHashMap<>();
+    private final LongSupplier orologio;
+
+    private final AtomicLong revoche = new AtomicLong();
+    private final AtomicLong scadute = new AtomicLong();
+
+    public RevocaLog() {
+        this(System::currentTimeMillis);
+    }
+
+    RevocaLog(LongSupplier orologio) {
+        this.orologio = orologio;
+    }
+
+    // false se il token era già revocato
+    public boolean revoca(String jti, long scadenza) {
+        if (jti == null || jti.isEmpty() || scadenza <= orologio.getAsLong()) {
+            return false;
+        }
+        if (revocati.putIfAbsent(jti, scadenza) != null) {
+            return false;
+        }
+        revoche.incrementAndGet();
+        return true;
+    }
+
+    public boolean isRevocato(String jti) {
+        Long scadenza = revocati.get(jti);
+        return scadenza != null && scadenza > orologio.getAsLong();
+    }
+
+    public int pulisci(long ora) {
+        int prima = revocati.size();
+        revocati.values().removeIf(scadenza -> scadenza <= ora);
+        int rimosse = Math.max(0, prima - revocati.size());
+        scadute.addAndGet(rimosse);
+        return rimosse;
+    }
+
+    public int size() {
+        return revocati.size();
+    }
+
+    public Map<String, Object> getMetriche() {
+        Map<String, Object> metriche = new LinkedHashMap<>();
+        metriche.put("revocati", revocati.size());
+        metriche.put("revoche", revoche.get());
+        metriche.put("scadute", scadute.get());
+        return metriche;
+    }
+}
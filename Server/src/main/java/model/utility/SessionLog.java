@@ -1,5 +1,7 @@
 package model.utility;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import model.entity.Utente;
@@ -8,18 +10,64 @@ import model.exception.EmptyFild;
 import model.exception.InvalidToken;
 import model.exception.TokenExpiredException;
 
+import java.util.Date;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 
+// regole delle sessioni (validità del JWT, una sessione per utente); i dati stanno nel SessionStore
 @Singleton
 public class SessionLog {
 
-    private final Map<String, Utente> logBible = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<Integer, String> userIdToToken = new ConcurrentHashMap<>();
+    private static final long DURATA_DEFAULT_MS = 86_400_000;
+    private static final long INTERVALLO_PULIZIA_S = 30;
+
+    private final LongSupplier orologio;
+    private SessionStore store;
+    private ScheduledExecutorService pulizia;
+
     @Inject
     private JWT_Provider jwtProvider;
 
     public SessionLog() {
+        this(System::currentTimeMillis);
+    }
+
+    SessionLog(LongSupplier orologio) {
+        this.orologio = orologio;
+        this.store = new MemorySessionStore(orologio);
+    }
+
+    // nel container lo store arriva dal producer di JPAUtil
+    @Inject
+    public void usa(SessionStore store) {
+        this.store = store;
+    }
+
+    @PostConstruct
+    void avvia() {
+        pulizia = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sessioni-scadute");
+            t.setDaemon(true);
+            return t;
+        });
+        pulizia.scheduleWithFixedDelay(() -> {
+            try {
+                pulisci();
+            } catch (RuntimeException e) {
+                // un errore non deve fermare le pulizie successive
+                e.printStackTrace();
+            }
+        }, INTERVALLO_PULIZIA_S, INTERVALLO_PULIZIA_S, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    void ferma() {
+        if (pulizia != null) {
+            pulizia.shutdownNow();
+        }
     }
 
     public void aggiungi(String token, Utente utente) throws TokenExpiredException, AppException, IllegalArgumentException {
@@ -29,18 +77,29 @@ public class SessionLog {
         if(utente == null || utente.getId() == null || utente.getId() <= 0) {
             throw new EmptyFild("utente non valido");
         }
-        String existing = userIdToToken.putIfAbsent(utente.getId(), token);
+
+        String existing = store.inserisci(token, utente, scadenzaDi(token));
         if (existing != null) {
             try {
                 jwtProvider.validateToken(existing);
                 throw new AppException("Sessione già esistente per questo utente");
             } catch (TokenExpiredException e) {
-                userIdToToken.remove(utente.getId(), existing);
+                store.rimuovi(existing);
                 throw new TokenExpiredException("logOut Forzato");
             }
         }
+    }
 
-        logBible.put(token, utente);
+    private long scadenzaDi(String token) {
+        try {
+            Date exp = jwtProvider.getExpirationFromToken(token);
+            if (exp != null) {
+                return exp.getTime();
+            }
+        } catch (AppException e) {
+            // senza exp leggibile vale la durata standard del token
+        }
+        return orologio.getAsLong() + DURATA_DEFAULT_MS;
     }
 
     public Utente getUtente(String token) throws TokenExpiredException, IllegalArgumentException {
@@ -49,17 +108,15 @@ public class SessionLog {
         }
         jwtProvider.validateToken(token);
 
-        return logBible.get(token);
+        return store.trova(token);
     }
 
     public void rimuovi(String token)  {
         if (token == null || token.isEmpty()) {
             throw new IllegalArgumentException("token is empty or null");
         }
-        Utente u = getUtente(token);
-        if (u != null) {userIdToToken.remove(u.getId(), token);}
-        logBible.remove(token);
-
+        jwtProvider.validateToken(token);
+        store.rimuovi(token);
     }
 
     public boolean isAlive(String token) throws TokenExpiredException, AppException, IllegalArgumentException {
@@ -68,14 +125,12 @@ public class SessionLog {
         }
         try {
             jwtProvider.validateToken(token); // lancia eccezione se scaduto o invalido
-            return logBible.containsKey(token);
+            return store.contiene(token);
         } catch (TokenExpiredException e) {
-            userIdToToken.remove(jwtProvider.getIdFromToken(token));
-            logBible.remove(token); // rimuovi token scaduto
+            store.rimuovi(token); // rimuovi token scaduto
             throw e;
         } catch (InvalidToken e) {
-            userIdToToken.remove(jwtProvider.getIdFromToken(token));
-            logBible.remove(token); // rimuovi token invalido
+            store.rimuovi(token); // rimuovi token invalido
             throw new AppException("Token non valido");
         }
     }
@@ -88,9 +143,41 @@ public class SessionLog {
 
         jwtProvider.validateToken(token);
 
-        Utente precedente = logBible.replace(token, updatedUtente);
-        if (precedente == null) {
+        if (!store.aggiorna(token, updatedUtente)) {
             throw new AppException("Sessione non trovata per questo token");
         }
     }
+
+    // cambio ruolo: il nuovo token prende il posto del vecchio in un solo passo, senza finestra senza sessione
+    public void sostituisci(String vecchio, String nuovo) throws TokenExpiredException, AppException, IllegalArgumentException {
+        if (vecchio == null || vecchio.isEmpty() || nuovo == null || nuovo.isEmpty()) {
+            throw new IllegalArgumentException("token is empty or null");
+        }
+        jwtProvider.validateToken(vecchio);
+
+        if (!store.sostituisci(vecchio, nuovo, scadenzaDi(nuovo))) {
+            throw new AppException("Sessione non attiva o già sostituita");
+        }
+    }
+
+    public void pulisci() {
+        pulisci(orologio.getAsLong());
+    }
+
+    int pulisci(long ora) {
+        return store.pulisci(ora);
+    }
+
+    public int size() {
+        return store.size();
+    }
+
+    // token della sessione dell'utente, null se non ne ha
+    String tokenDi(int utenteId) {
+        return store.tokenDi(utenteId);
+    }
+
+    public Map<String, Object> getMetriche() {
+        return store.getMetriche();
+    }
 }
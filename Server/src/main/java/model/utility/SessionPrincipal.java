@@ -0,0 +1,72 @@
+package model.utility;
+
+import jakarta.enterprise.context.RequestScoped;
+import model.entity.Utente;
+
+import java.util.Date;
+
+@RequestScoped
+public class SessionPrincipal {
+
+    private String token;
+    private Integer userId;
+    private String role;
+    private Date expiration;
+    private Utente utente;
+
+    public SessionPrincipal() {
+    }
+
+    public void resolve(String token, Integer userId, String role, Date expiration, Utente utente) {
+        if (token == null || token.isEmpty()) {
+            throw new IllegalArgumentException("token is empty or null");
+        }
+        this.token = token;
+        this.userId = userId;
+        this.role = role;
+        this.expiration = expiration;
+        this.utente = utente;
+    }
+
+    public void clear() {
+        token = null;
+        userId = null;
+        role = null;
+        expiration = null;
+        utente = null;
+    }
+
+    // stato risolto da un'altra istanza: serve a portare il principal di una richiesta su un altro thread
+    public void copiaDa(SessionPrincipal altro) {
+        token = altro.token;
+        userId = altro.userId;
+        role = altro.role;
+        expiration = altro.expiration;
+        utente = altro.utente;
+    }
+
+    // vero solo se il filtro ha già validato proprio questo token nella richiesta corrente
+    public boolean isResolved(String token) {
+        return this.token != null && this.token.equals(token);
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public Date getExpiration() {
+        return expiration;
+    }
+
+    public Utente getUtente() {
+        return utente;
+    }
+}
@@ -0,0 +1,39 @@
+package model.utility;
+
+import model.entity.Utente;
+import model.exception.AppException;
+
+import java.util.Map;
+
+// dove vivono le sessioni: SessionLog valida i JWT e decide, lo store conserva.
+// SESSION_STORE=jdbc le mette nella tabella sessione, condivisa tra i nodi; stateless tiene solo le revoche;
+// altrimenti restano in memoria
+public interface SessionStore {
+
+    String TIPO = "SESSION_STORE";
+
+    // inserimento atomico per utente: null se inserita, altrimenti il token della sessione già presente
+    String inserisci(String token, Utente utente, long scadenza) throws AppException;
+
+    Utente trova(String token);
+
+    boolean contiene(String token);
+
+    boolean rimuovi(String token);
+
+    // false se il token non ha più una sessione
+    boolean aggiorna(String token, Utente utente);
+
+    // compare-and-swap del token della sessione (cambio ruolo): riesce solo se vecchio è ancora
+    // il token attuale dell'utente; la sessione e l'utente restano gli stessi
+    boolean sostituisci(String vecchio, String nuovo, long scadenza);
+
+    String tokenDi(int utenteId);
+
+    // rimuove le sessioni con exp <= ora, ritorna quante
+    int pulisci(long ora);
+
+    int size();
+
+    Map<String, Object> getMetriche();
+}
@@ -0,0 +1,183 @@
+package model.utility;
+
+import jakarta.enterprise.inject.Vetoed;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import model.dao.RevocaDAO;
+import model.entity.Revoca;
+import model.entity.Utente;
+import model.exception.AppException;
+import model.exception.RegisterFailed;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+// nessuna sessione sul server: l'utente arriva dai claim firmati del JWT e si ricorda solo cosa è stato revocato.
+// le revoche vanno nella tabella revoca e ogni nodo le copia in RevocaLog al più ogni INTERVALLO_LETTURA_MS:
+// un logout fatto su un altro nodo qui vale con quel ritardo, come per la cache di JdbcSessionStore.
+// senza factory le revoche restano in questo processo: va bene solo con un nodo.
+// non si può più imporre una sola sessione per utente
+@Vetoed
+public class StatelessSessionStore implements SessionStore {
+
+    static final long INTERVALLO_LETTURA_MS = 5_000;
+    // si rilegge anche un po' prima dell'ultima lettura: commit arrivati in ritardo e orologi non allineati tra i nodi
+    static final long MARGINE_LETTURA_MS = 60_000;
+
+    private final JWT_Provider jwtProvider;
+    private final RevocaLog revoche;
+    private final EntityManagerFactory emf;
+    private final LongSupplier orologio;
+
+    private volatile long prossimaLettura;
+    private volatile long ultimaLetturaRiuscita = -1;
+
+    private final AtomicLong letture = new AtomicLong();
+    private final AtomicLong erroriLettura = new AtomicLong();
+
+    // un solo nodo: le revoche non escono da questo processo
+    public StatelessSessionStore(JWT_Provider jwtProvider, RevocaLog revoche) {
+        this(jwtProvider, revoche, null, System::currentTimeMillis);
+    }
+
+    public StatelessSessionStore(JWT_Provider jwtProvider, RevocaLog revoche, EntityManagerFactory emf) {
+        this(jwtProvider, revoche, emf, System::currentTimeMillis);
+    }
+
+    StatelessSessionStore(JWT_Provider jwtProvider, RevocaLog revoche, EntityManagerFactory emf, LongSupplier orologio) {
+        this.jwtProvider = jwtProvider;
+        this.revoche = revoche;
+        this.emf = emf;
+        this.orologio = orologio;
+    }
+
+    private <T> T conDao(Function<RevocaDAO, T> lavoro) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return lavoro.apply(new RevocaDAO(em));
+        } finally {
+            em.close();
+        }
+    }
+
+    // porta in RevocaLog le revoche fatte dagli altri nodi; una sola lettura per intervallo, anche se fallisce
+    private void allinea() {
+        if (emf == null || orologio.getAsLong() < prossimaLettura) {
+            return;
+        }
+        synchronized (this) {
+            long ora = orologio.getAsLong();
+            if (ora < prossimaLettura) {
+                return;
+            }
+            prossimaLettura = ora + INTERVALLO_LETTURA_MS;
+            long da = ultimaLetturaRiuscita < 0 ? 0 : ultimaLetturaRiuscita - MARGINE_LETTURA_MS;
+            try {
+                List<Revoca> nuove = conDao(dao -> dao.findDal(da, ora));
+                for (Revoca r : nuove) {
+                    revoche.revoca(r.getJti(), r.getScadenza());
+                }
+                ultimaLetturaRiuscita = ora;
+                letture.incrementAndGet();
+            } catch (RuntimeException e) {
+                // database irraggiungibile: restano le revoche già note, si riprova al prossimo intervallo
+                erroriLettura.incrementAndGet();
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public String inserisci(String token, Utente utente, long scadenza) {
+        return null;
+    }
+
+    @Override
+    public Utente trova(String token) {
+        if (!contiene(token)) {
+            return null;
+        }
+        return jwtProvider.getUtenteFromToken(token);
+    }
+
+    @Override
+    public boolean contiene(String token) {
+        allinea();
+        return !revoche.isRevocato(jwtProvider.getJtiFromToken(token));
+    }
+
+    // con la tabella condivisa conta l'insert: tra due nodi che revocano lo stesso token vince uno solo
+    @Override
+    public boolean rimuovi(String token) {
+        String jti;
+        long scadenza;
+        try {
+            Date exp = jwtProvider.getExpirationFromToken(token);
+            jti = jwtProvider.getJtiFromToken(token);
+            scadenza = exp.getTime();
+        } catch (AppException e) {
+            // scaduto o illeggibile: non c'è niente da revocare
+            return false;
+        }
+        boolean locale = revoche.revoca(jti, scadenza);
+        if (emf == null) {
+            return locale;
+        }
+        try {
+            conDao(dao -> {
+                dao.insert(jti, scadenza, orologio.getAsLong());
+                return null;
+            });
+            return true;
+        } catch (RegisterFailed e) {
+            return false;
+        }
+    }
+
+    // l'utente aggiornato è già nel db, il token resta valido finché non è revocato
+    @Override
+    public boolean aggiorna(String token, Utente utente) {
+        return contiene(token);
+    }
+
+    // solo la prima revoca del vecchio token riesce: due cambi di ruolo concorrenti non danno due token
+    @Override
+    public boolean sostituisci(String vecchio, String nuovo, long scadenza) {
+        return rimuovi(vecchio);
+    }
+
+    @Override
+    public String tokenDi(int utenteId) {
+        return null;
+    }
+
+    @Override
+    public int pulisci(long ora) {
+        int rimosse = revoche.pulisci(ora);
+        if (emf != null) {
+            conDao(dao -> dao.deleteScadute(ora));
+        }
+        return rimosse;
+    }
+
+    @Override
+    public int size() {
+        return 0;
+    }
+
+    @Override
+    public Map<String, Object> getMetriche() {
+        Map<String, Object> metriche = new LinkedHashMap<>();
+        metriche.put("tipo", "stateless");
+        metriche.put("condivise", emf != null);
+        metriche.putAll(revoche.getMetriche());
+        metriche.put("letture", letture.get());
+        metriche.put("erroriLettura", erroriLettura.get());
+        return metriche;
+    }
+}
@@ -0,0 +1,214 @@
+package model.utility;
+
+import jakarta.inject.Singleton;
+import model.entity.Risposta;
+import model.exception.EmptyFild;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongSupplier;
+
+// contatori per quiz, domanda e risposta: ricostruiti una volta scorrendo risponde, poi aggiornati da completaQuiz.
+// come per le classifiche dopo DURATA_MS si ricostruiscono, così entrano i tentativi scritti da altri nodi
+@Singleton
+public class StatisticheService {
+
+    static final int MAX_QUIZ = 10_000;
+    static final long DURATA_MS = 5 * 60 * 1000L;
+
+    public record StatRisposta(int rispostaId, long scelte, double percentuale) {
+    }
+
+    public record StatDomanda(int domandaId, long risposte, double punteggioMedio, List<StatRisposta> scelte) {
+    }
+
+    public record Riepilogo(int quizId, long completamenti, double punteggioMedio, List<StatDomanda> domande) {
+    }
+
+    // array paralleli nello stesso ordine della chiave di correzione: id risposta crescenti, domande crescenti
+    public static final class Contatori {
+        private final int quizId;
+        private final int proprietario;
+        private final long caricati;
+
+        private final int[] risposte;
+        private final int[] domandaDi;
+        private final int[] punti;
+        private final int[] domande;
+
+        private final long[] scelte;
+        private final long[] risposteDomanda;
+        private final long[] puntiDomanda;
+        private long completamenti;
+        private long sommaPunteggi;
+
+        // ricostruito alla prima lettura dopo un aggiornamento, poi servito così com'è
+        private Riepilogo riepilogo;
+
+        private Contatori(int quizId, int proprietario, long caricati, List<Object[]> righe) {
+            this.quizId = quizId;
+            this.proprietario = proprietario;
+            this.caricati = caricati;
+
+            int n = righe.size();
+            risposte = new int[n];
+            punti = new int[n];
+            int[] idDomanda = new int[n];
+            for (int i = 0; i < n; i++) {
+                Object[] riga = righe.get(i);
+                risposte[i] = ((Number) riga[0]).intValue();
+                idDomanda[i] = ((Number) riga[1]).intValue();
+                Object valore = Boolean.TRUE.equals(riga[2]) ? riga[3] : riga[4];
+                punti[i] = valore != null ? ((Number) valore).intValue() : 0;
+            }
+            domande = Arrays.stream(idDomanda).sorted().distinct().toArray();
+            domandaDi = new int[n];
+            for (int i = 0; i < n; i++) {
+                domandaDi[i] = Arrays.binarySearch(domande, idDomanda[i]);
+            }
+            scelte = new long[n];
+            risposteDomanda = new long[domande.length];
+            puntiDomanda = new long[domande.length];
+        }
+
+        // le risposte che non sono più nella chiave (quiz modificato) vengono ignorate
+        private boolean conta(int rispostaId) {
+            int i = Arrays.binarySearch(risposte, rispostaId);
+            if (i < 0) {
+                return false;
+            }
+            scelte[i]++;
+            risposteDomanda[domandaDi[i]]++;
+            puntiDomanda[domandaDi[i]] += punti[i];
+            return true;
+        }
+
+        private synchronized void registra(int punteggio, List<Risposta> scelteClient) {
+            completamenti++;
+            sommaPunteggi += punteggio;
+            for (Risposta r : scelteClient) {
+                if (r != null && r.getId() != null) {
+                    conta(r.getId());
+                }
+            }
+            riepilogo = null;
+        }
+
+        public int getProprietario() {
+            return proprietario;
+        }
+
+        public synchronized Riepilogo riepilogo() {
+            if (riepilogo != null) {
+                return riepilogo;
+            }
+            // una sola passata sulle risposte: quelle della stessa domanda non sono per forza contigue
+            List<List<StatRisposta>> perRisposta = new ArrayList<>(domande.length);
+            for (int d = 0; d < domande.length; d++) {
+                perRisposta.add(new ArrayList<>());
+            }
+            for (int r = 0; r < risposte.length; r++) {
+                int d = domandaDi[r];
+                perRisposta.get(d).add(new StatRisposta(risposte[r], scelte[r], percentuale(scelte[r], risposteDomanda[d])));
+            }
+            List<StatDomanda> perDomanda = new ArrayList<>(domande.length);
+            for (int d = 0; d < domande.length; d++) {
+                perDomanda.add(new StatDomanda(domande[d], risposteDomanda[d], media(puntiDomanda[d], risposteDomanda[d]),
+                        List.copyOf(perRisposta.get(d))));
+            }
+            riepilogo = new Riepilogo(quizId, completamenti, media(sommaPunteggi, completamenti), List.copyOf(perDomanda));
+            return riepilogo;
+        }
+
+        private static double percentuale(long parte, long totale) {
+            return totale == 0 ? 0 : Math.round(parte * 10_000.0 / totale) / 100.0;
+        }
+
+        private static double media(long somma, long quanti) {
+            return quanti == 0 ? 0 : Math.round(somma * 100.0 / quanti) / 100.0;
+        }
+    }
+
+    private final Map<Integer, Contatori> perQuiz = new ConcurrentHashMap<>();
+    private final LongSupplier orologio;
+
+    private final AtomicLong ricostruzioni = new AtomicLong();
+    private final AtomicLong righeScorse = new AtomicLong();
+
+    public StatisticheService() {
+        this(System::currentTimeMillis);
+    }
+
+    StatisticheService(LongSupplier orologio) {
+        this.orologio = orologio;
+    }
+
+    // null se il quiz non è caricato o è scaduto: va ricostruito
+    public Contatori get(int quizId) throws EmptyFild {
+        if (quizId <= 0) throw new EmptyFild("id non valido");
+
+        Contatori c = perQuiz.get(quizId);
+        if (c != null && orologio.getAsLong() - c.caricati >= DURATA_MS) {
+            perQuiz.remove(quizId, c);
+            return null;
+        }
+        return c;
+    }
+
+    // righeChiave come QuizDAO.findChiaveRisposte; scorriScelte passa uno alla volta gli id delle risposte scelte
+    public Contatori ricostruisci(int quizId, int proprietario, List<Object[]> righeChiave,
+                                  Consumer<IntConsumer> scorriScelte, long completamenti, long sommaPunteggi) throws EmptyFild {
+        if (quizId <= 0) throw new EmptyFild("id non valido");
+
+        Contatori c = new Contatori(quizId, proprietario, orologio.getAsLong(), righeChiave);
+        synchronized (c) {
+            scorriScelte.accept(id -> {
+                c.conta(id);
+                righeScorse.incrementAndGet();
+            });
+            c.completamenti = completamenti;
+            c.sommaPunteggi = sommaPunteggi;
+        }
+        ricostruzioni.incrementAndGet();
+
+        if (perQuiz.size() >= MAX_QUIZ && !perQuiz.containsKey(quizId)) {
+            // pieno: si riparte da vuoto, i contatori si ricostruiscono alla prossima lettura
+            perQuiz.clear();
+        }
+        perQuiz.put(quizId, c);
+        return c;
+    }
+
+    // solo sui quiz già caricati: gli altri leggeranno il tentativo dal database alla ricostruzione
+    public void registra(int quizId, int punteggio, List<Risposta> scelte) throws EmptyFild {
+        if (quizId <= 0) throw new EmptyFild("id non valido");
+
+        Contatori c = get(quizId);
+        if (c != null) {
+            c.registra(punteggio, scelte);
+        }
+    }
+
+    public void invalida(int quizId) {
+        perQuiz.remove(quizId);
+    }
+
+    public int size() {
+        return perQuiz.size();
+    }
+
+    public Map<String, Object> getMetriche() {
+        Map<String, Object> metriche = new LinkedHashMap<>();
+        metriche.put("quiz", perQuiz.size());
+        metriche.put("ricostruzioni", ricostruzioni.get());
+        metriche.put("righeScorse", righeScorse.get());
+        return metriche;
+    }
+}
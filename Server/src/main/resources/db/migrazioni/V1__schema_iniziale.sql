@@ -0,0 +1,107 @@
+-- schema di partenza, lo stesso creato da docker-entrypoint-initdb.d.
+-- sui database già creati da quegli script non viene eseguito: la storia parte da qui (baseline 1)
+-- i nomi degli indici hanno il prefisso della tabella perché su H2 sono unici in tutto lo schema
+
+CREATE TABLE `utente` (
+  `id_utente` int NOT NULL AUTO_INCREMENT,
+  `nome` varchar(50) NOT NULL,
+  `cognome` varchar(50) NOT NULL,
+  `username` varchar(50) NOT NULL,
+  `password_hash` varchar(100) NOT NULL,
+  `is_creatore` tinyint(1) DEFAULT '1',
+  `is_compilatore` tinyint(1) DEFAULT '0',
+  `is_manager` tinyint(1) DEFAULT '0',
+  PRIMARY KEY (`id_utente`),
+  UNIQUE KEY `username` (`username`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE `quiz` (
+  `id_utente` int DEFAULT NULL,
+  `id_quiz` int NOT NULL AUTO_INCREMENT,
+  `tempo` varchar(50) NOT NULL,
+  `difficolta` varchar(50) NOT NULL,
+  `titolo` varchar(200) NOT NULL,
+  `descrizione` varchar(200) NOT NULL,
+  `numero_domande` int DEFAULT NULL,
+  `creato_il` datetime(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6),
+  `password` varchar(100) DEFAULT NULL,
+  PRIMARY KEY (`id_quiz`),
+  UNIQUE KEY `unique_quiz_utente` (`id_utente`,`titolo`),
+  CONSTRAINT `quiz_ibfk_1` FOREIGN KEY (`id_utente`) REFERENCES `utente` (`id_utente`) ON DELETE SET NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE `domanda` (
+  `id_domanda` int NOT NULL AUTO_INCREMENT,
+  `id_quiz` int NOT NULL,
+  `quesito` tinytext NOT NULL,
+  `punti_risposta_corretta` int NOT NULL,
+  `punti_risposta_sbagliata` int NOT NULL,
+  PRIMARY KEY (`id_domanda`),
+  KEY `idx_domanda_quiz` (`id_quiz`),
+  CONSTRAINT `domanda_ibfk_1` FOREIGN KEY (`id_quiz`) REFERENCES `quiz` (`id_quiz`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE `risposta` (
+  `id_risposta` int NOT NULL AUTO_INCREMENT,
+  `id_domanda` int NOT NULL,
+  `affermazione` varchar(150) NOT NULL,
+  `flag_risposta_corretta` tinyint(1) DEFAULT '0',
+  PRIMARY KEY (`id_risposta`),
+  KEY `idx_risposta_domanda` (`id_domanda`),
+  CONSTRAINT `risposta_ibfk_1` FOREIGN KEY (`id_domanda`) REFERENCES `domanda` (`id_domanda`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE `fa` (
+  `id_fa` int NOT NULL AUTO_INCREMENT,
+  `id_utente` int NOT NULL,
+  `id_quiz` int NOT NULL,
+  `punteggio` int NOT NULL,
+  PRIMARY KEY (`id_fa`),
+  KEY `idx_fa_utente` (`id_utente`),
+  KEY `idx_fa_quiz` (`id_quiz`),
+  CONSTRAINT `fa_ibfk_1` FOREIGN KEY (`id_utente`) REFERENCES `utente` (`id_utente`) ON DELETE CASCADE,
+  CONSTRAINT `fa_ibfk_2` FOREIGN KEY (`id_quiz`) REFERENCES `quiz` (`id_quiz`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE `risponde` (
+  `id_risponde` int NOT NULL AUTO_INCREMENT,
+  `id_utente` int NOT NULL,
+  `id_risposta` int NOT NULL,
+  `quiz` varchar(200) NOT NULL,
+  `scelto_il` datetime(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6),
+  `id_fa` int DEFAULT NULL,
+  PRIMARY KEY (`id_risponde`),
+  KEY `idx_risponde_utente` (`id_utente`),
+  KEY `idx_risponde_risposta` (`id_risposta`),
+  KEY `idx_risponde_fa` (`id_fa`),
+  CONSTRAINT `FK88k9y7n755cfj7s17qbplrgvc` FOREIGN KEY (`id_fa`) REFERENCES `fa` (`id_fa`),
+  CONSTRAINT `risponde_ibfk_1` FOREIGN KEY (`id_utente`) REFERENCES `utente` (`id_utente`) ON DELETE CASCADE,
+  CONSTRAINT `risponde_ibfk_2` FOREIGN KEY (`id_risposta`) REFERENCES `risposta` (`id_risposta`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE `ticket` (
+  `id_ticket` int NOT NULL AUTO_INCREMENT,
+  `id_utente` int NOT NULL,
+  `descrizione_ticket` tinytext NOT NULL,
+  `tipo_richiesta` tinytext NOT NULL,
+  `descrizione_richiesta` tinytext NOT NULL,
+  PRIMARY KEY (`id_ticket`),
+  KEY `idx_ticket_utente` (`id_utente`),
+  CONSTRAINT `ticket_ibfk_1` FOREIGN KEY (`id_utente`) REFERENCES `utente` (`id_utente`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE `sessione` (
+  `token` varchar(512) NOT NULL,
+  `id_utente` int NOT NULL,
+  `scadenza` bigint NOT NULL,
+  PRIMARY KEY (`token`),
+  UNIQUE KEY `uk_sessione_utente` (`id_utente`),
+  KEY `idx_sessione_scadenza` (`scadenza`),
+  CONSTRAINT `sessione_ibfk_1` FOREIGN KEY (`id_utente`) REFERENCES `utente` (`id_utente`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE `id_generatori` (
+  `entita` varchar(255) NOT NULL,
+  `prossimo_id` bigint DEFAULT NULL,
+  PRIMARY KEY (`entita`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
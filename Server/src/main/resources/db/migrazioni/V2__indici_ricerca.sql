@@ -0,0 +1,18 @@
+-- tentativi doppi dello stesso quiz (possibili prima del vincolo con due completamenti in parallelo):
+-- resta il primo e le risposte del doppione passano a quello
+UPDATE risponde SET id_fa = (
+    SELECT MIN(f2.id_fa) FROM fa f1
+    JOIN fa f2 ON f2.id_utente = f1.id_utente AND f2.id_quiz = f1.id_quiz
+    WHERE f1.id_fa = risponde.id_fa)
+WHERE id_fa IS NOT NULL;
+
+DELETE FROM fa WHERE id_fa NOT IN (
+    SELECT id_fa FROM (SELECT MIN(id_fa) AS id_fa FROM fa GROUP BY id_utente, id_quiz) primi);
+
+-- Fa.findByUserAndQuiz (isComplete a ogni startQuiz): una sola riga per utente e quiz, trovata dall'indice
+ALTER TABLE fa ADD CONSTRAINT uk_fa_utente_quiz UNIQUE (id_utente, id_quiz);
+
+-- quiz di un creatore ordinati per id: unique_quiz_utente è ordinato per titolo e obbligava a un sort.
+-- fa e risponde non ne hanno bisogno: in InnoDB l'indice su id_utente contiene già la chiave primaria
+-- ed è quindi ordinato per (id_utente, id)
+CREATE INDEX idx_quiz_utente_id ON quiz (id_utente, id_quiz);
@@ -0,0 +1,24 @@
+-- fa e risponde prendono gli id da id_generatori (blocchi di 50, ottimizzatore pooled di Hibernate).
+-- i database nati prima non hanno la tabella, o ce l'hanno vuota con righe già in fa e risponde:
+-- Hibernate partirebbe da 1 e il primo insert andrebbe sulla chiave primaria di una riga esistente
+CREATE TABLE IF NOT EXISTS `id_generatori` (
+  `entita` varchar(255) NOT NULL,
+  `prossimo_id` bigint DEFAULT NULL,
+  PRIMARY KEY (`entita`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+INSERT INTO id_generatori (entita, prossimo_id)
+SELECT 'fa', 0 FROM dual WHERE NOT EXISTS (SELECT 1 FROM id_generatori WHERE entita = 'fa');
+
+INSERT INTO id_generatori (entita, prossimo_id)
+SELECT 'risponde', 0 FROM dual WHERE NOT EXISTS (SELECT 1 FROM id_generatori WHERE entita = 'risponde');
+
+-- Hibernate salva l'ultimo valore usato: il prossimo blocco finisce a valore + 1 e comincia 49 più in basso,
+-- quindi MAX(id) + 49 lo fa partire da MAX(id) + 1. un valore già più alto (blocchi già distribuiti) resta
+UPDATE id_generatori
+SET prossimo_id = GREATEST(COALESCE(prossimo_id, 0), (SELECT COALESCE(MAX(id_fa), 0) + 49 FROM fa))
+WHERE entita = 'fa';
+
+UPDATE id_generatori
+SET prossimo_id = GREATEST(COALESCE(prossimo_id, 0), (SELECT COALESCE(MAX(id_risponde), 0) + 49 FROM risponde))
+WHERE entita = 'risponde';
@@ -0,0 +1,10 @@
+-- token revocati in modalità stateless (SESSION_STORE=stateless): un logout o un cambio di ruolo
+-- fatto su un nodo deve valere su tutti. ogni nodo rilegge le righe con revocata recente
+CREATE TABLE `revoca` (
+  `jti` varchar(64) NOT NULL,
+  `scadenza` bigint NOT NULL,
+  `revocata` bigint NOT NULL,
+  PRIMARY KEY (`jti`),
+  KEY `idx_revoca_revocata` (`revocata`),
+  KEY `idx_revoca_scadenza` (`scadenza`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
@@ -0,0 +1,4 @@
+-- istante di completamento del tentativo (millisecondi): a parità di punteggio la classifica premia chi
+-- ha finito prima. id_fa non basta, la coda write-behind e i blocchi di id_generatori ne alterano l'ordine.
+-- le righe già presenti restano a 0 e tra loro decide id_fa, come prima
+ALTER TABLE `fa` ADD COLUMN `completato_il` bigint NOT NULL DEFAULT 0;
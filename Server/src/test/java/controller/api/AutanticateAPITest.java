@@ -6,9 +6,11 @@ import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.Persistence;
 import jakarta.persistence.TypedQuery;
 import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.container.AsyncResponse;
 import jakarta.ws.rs.core.Application;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import model.dao.FaDAO;
 import model.dao.UtenteDAO;
 import model.entity.Utente;
 import model.exception.AppException;
@@ -16,9 +18,12 @@ import model.exception.LoginFailed;
 import model.exception.RegisterFailed;
 import model.menager.AutanticateMenager;
 import model.utility.AccessControlService;
+import model.utility.CompletatiLog;
+import model.utility.HashExecutor;
 import model.utility.JWT_Provider;
 import model.utility.PassCrypt;
 import model.utility.SessionLog;
+import model.utility.SessionPrincipal;
 import org.glassfish.jersey.internal.inject.AbstractBinder;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.test.JerseyTest;
@@ -26,10 +31,13 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
 import java.lang.reflect.Field;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -54,6 +62,7 @@ public class AutanticateAPITest {
             Field field = AutanticateAPI.class.getDeclaredField("auth");
             field.setAccessible(true);
             field.set(api, authMock);
+            injectMethod(api, hashSincrono(), "hashExecutor");
         }
 
         //login test
@@ -64,7 +73,7 @@ public class AutanticateAPITest {
             u.setPasswordHash("pwd");
             when(authMock.autenticate("pwd", "user")).thenReturn("token-123");
 
-            Response r = api.login(u);
+            Response r = risposta(a -> api.login(u, a));
             assertEquals(200, r.getStatus());
         }
 
@@ -76,14 +85,14 @@ public class AutanticateAPITest {
             u.setPasswordHash("pino1234");
 
             when(authMock.autenticate(anyString(), anyString())).thenThrow(new LoginFailed(""));
-            Response r = api.login(u);
+            Response r = risposta(a -> api.login(u, a));
             assertEquals(401, r.getStatus());
         }
 
         //test register
         @Test
         void register_ShouldReturn204_WhenContentIsNull(){
-            Response r = api.register(null);
+            Response r = risposta(a -> api.register(null, a));
             assertEquals(204, r.getStatus());
         }
 
@@ -96,7 +105,7 @@ public class AutanticateAPITest {
 
             doThrow(new RegisterFailed("")).when(authMock).registra(any(Utente.class));
 
-            Response r = api.register(u);
+            Response r = risposta(a -> api.register(u, a));
             assertEquals(400, r.getStatus());
         }
 
@@ -107,7 +116,7 @@ public class AutanticateAPITest {
             u.setUsername("pino");
             u.setPasswordHash("pino1234");
 
-            Response r = api.register(u);
+            Response r = risposta(a -> api.register(u, a));
             assertEquals(200, r.getStatus());
         }
 
@@ -150,13 +159,13 @@ public class AutanticateAPITest {
         //test cambiapassword
         @Test
         void cambiapassword_ShouldReturnNoContent_WhenBodyIsNull() {
-            Response response = api.cambiapassword(null, "Bearer token");
+            Response response = risposta(a -> api.cambiapassword(null, "Bearer token", a));
             assertEquals(204, response.getStatus());
         }
 
         @Test
         void cambiapassword_ShouldReturnNoContent_WhenBodyIsEmpty() {
-            Response response = api.cambiapassword(new HashMap<>(), "Bearer token");
+            Response response = risposta(a -> api.cambiapassword(new HashMap<>(), "Bearer token", a));
             assertEquals(204, response.getStatus());
         }
 
@@ -164,7 +173,7 @@ public class AutanticateAPITest {
         void cambiapassword_ShouldReturnUnauthorized_WhenHeaderIsNull() {
             Map<String, String> body = Map.of("password", "new", "oldPassword", "old");
 
-            Response response = api.cambiapassword(body, null);
+            Response response = risposta(a -> api.cambiapassword(body, null, a));
 
             assertEquals(401, response.getStatus());
         }
@@ -177,7 +186,7 @@ public class AutanticateAPITest {
 
             doThrow(MalformedJwtException.class).when(authMock).newPassword("new", "old", token);
 
-            Response response = api.cambiapassword(body, header);
+            Response response = risposta(a -> api.cambiapassword(body, header, a));
             assertEquals(400, response.getStatus());
         }
 
@@ -186,7 +195,7 @@ public class AutanticateAPITest {
             Map<String, String> body = Map.of("password", "new", "oldPassword", "old");
             String badHeader = "gegazgrs"; // Manca il token effettivo
 
-            Response response = api.cambiapassword(body, badHeader);
+            Response response = risposta(a -> api.cambiapassword(body, badHeader, a));
 
             assertEquals(401, response.getStatus());
         }
@@ -199,7 +208,7 @@ public class AutanticateAPITest {
 
             doThrow(new AppException("Error")).when(authMock).newPassword("new", "old", token);
 
-            Response response = api.cambiapassword(body, header);
+            Response response = risposta(a -> api.cambiapassword(body, header, a));
             assertEquals(400, response.getStatus());
         }
 
@@ -211,7 +220,7 @@ public class AutanticateAPITest {
 
             doNothing().when(authMock).newPassword("newPass123", "oldPass123", token);
 
-            Response response = api.cambiapassword(body, header);
+            Response response = risposta(a -> api.cambiapassword(body, header, a));
 
             assertEquals(200, response.getStatus());
             verify(authMock, times(1)).newPassword("newPass123", "oldPass123", token);
@@ -231,7 +240,9 @@ public class AutanticateAPITest {
         private PassCrypt crypt;
         private UtenteDAO dao;
         private AccessControlService service;
+        private SessionPrincipal principal;
         private AutanticateMenager menager;
+        private HashExecutor hashExecutor;
 
         private Utente alreadyLogTest;
         private String realToken;
@@ -244,7 +255,7 @@ public class AutanticateAPITest {
                 throw new RuntimeException("Errore nel setup dello stack reale", e);
             }
 
-            ResourceConfig config = new ResourceConfig(AutanticateAPI.class);
+            ResourceConfig config = new ResourceConfig(AutanticateAPI.class, AuthFilter.class);
 
             config.register(new AbstractBinder() {
                 @Override
@@ -252,9 +263,11 @@ public class AutanticateAPITest {
                     bind(menager).to(AutanticateMenager.class);
                     bind(log).to(SessionLog.class);
                     bind(service).to(AccessControlService.class);
+                    bind(principal).to(SessionPrincipal.class);
                     bind(jwtProvider).to(JWT_Provider.class);
                     bind(crypt).to(PassCrypt.class);
                     bind(dao).to(UtenteDAO.class);
+                    bind(hashExecutor).to(HashExecutor.class);
                 }
             });
 
@@ -280,6 +293,8 @@ public class AutanticateAPITest {
 
             service = new AccessControlService();
             injectMethod(service, jwtProvider, "jwtProvider");
+            principal = new SessionPrincipal();
+            hashExecutor = new HashExecutor();
 
             // Manager reale con tutte le dipendenze iniettate
             menager = new AutanticateMenager();
@@ -287,6 +302,9 @@ public class AutanticateAPITest {
             injectMethod(menager, crypt, "crypt");
             injectMethod(menager, dao, "dao");
             injectMethod(menager, service, "accessControlService");
+            injectMethod(menager, principal, "principal");
+            injectMethod(menager, new FaDAO(em), "daoFa");
+            injectMethod(menager, new CompletatiLog(), "completati");
 
             // Prepariamo i dati nel DB reale
             em.getTransaction().begin();
@@ -318,15 +336,7 @@ public class AutanticateAPITest {
 
         @AfterEach
         public void cleanUp() throws NoSuchFieldException, IllegalAccessException {
-            Field bibleField = SessionLog.class.getDeclaredField("logBible");
-            Field userToTokenField = SessionLog.class.getDeclaredField("userIdToToken");
-
-            bibleField.setAccessible(true);
-            userToTokenField.setAccessible(true);
-
-            ((Map<?, ?>) bibleField.get(log)).clear();
-            ((Map<?, ?>) userToTokenField.get(log)).clear();
-
+            if (hashExecutor != null) hashExecutor.ferma();
             if (em != null && em.isOpen()) em.close();
             if (emf != null && emf.isOpen()) emf.close();
         }
@@ -456,7 +466,8 @@ public class AutanticateAPITest {
                     .header("Authorization", fakeToken)
                     .post(Entity.json(null));
 
-            assertEquals(400, response.getStatus());
+            // rifiutato da AuthFilter prima di raggiungere la risorsa
+            assertEquals(401, response.getStatus());
         }
 
         @Test
@@ -511,13 +522,34 @@ public class AutanticateAPITest {
                     .header("Authorization", "Bearer " + tokenInesistente)
                     .post(Entity.json(body));
 
-            assertEquals(400, response.getStatus());
+            // rifiutato da AuthFilter prima di raggiungere la risorsa
+            assertEquals(401, response.getStatus());
         }
     }
 
     // =========================
     // ===== UTIL METHOD =======
     // =========================
+    // esegue il lavoro sul thread del test, come se il pool fosse libero
+    private HashExecutor hashSincrono() {
+        HashExecutor hash = mock(HashExecutor.class);
+        doAnswer(inv -> {
+            AsyncResponse async = inv.getArgument(0);
+            Supplier<Response> lavoro = inv.getArgument(1);
+            async.resume(lavoro.get());
+            return null;
+        }).when(hash).esegui(any(), any());
+        return hash;
+    }
+
+    private Response risposta(Consumer<AsyncResponse> chiamata) {
+        AsyncResponse async = mock(AsyncResponse.class);
+        chiamata.accept(async);
+        ArgumentCaptor<Response> captor = ArgumentCaptor.forClass(Response.class);
+        verify(async).resume(captor.capture());
+        return captor.getValue();
+    }
+
     private void injectMethod(Object component, Object injectComponent, String nameFild) throws Exception {
         Class<?> clazz = component.getClass();
 
@@ -0,0 +1,111 @@
+package controller.api;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import model.entity.Utente;
+import model.exception.TokenExpiredException;
+import model.utility.JWT_Provider;
+import model.utility.SessionLog;
+import model.utility.SessionPrincipal;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.lang.reflect.Field;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class AuthFilterTest {
+
+    @Mock
+    SessionLog logMock;
+
+    @Mock
+    JWT_Provider jwtMock;
+
+    @Mock
+    ContainerRequestContext requestContext;
+
+    AuthFilter filter;
+    SessionPrincipal principal;
+
+    @BeforeEach
+    void setup() throws Exception {
+        filter = new AuthFilter();
+        principal = new SessionPrincipal();
+        injectMethod(filter, logMock, "logBeble");
+        injectMethod(filter, jwtMock, "jwtProvider");
+        injectMethod(filter, principal, "principal");
+    }
+
+    @Test
+    void filter_ShouldLetResourceHandleRequest_WhenHeaderIsMissing() {
+        when(requestContext.getHeaderString(HttpHeaders.AUTHORIZATION)).thenReturn(null);
+
+        filter.filter(requestContext);
+
+        verify(requestContext, never()).abortWith(any());
+        verifyNoInteractions(logMock, jwtMock);
+    }
+
+    @Test
+    void filter_ShouldAbortWithUnauthorized_WhenSessionIsNotAlive() {
+        when(requestContext.getHeaderString(HttpHeaders.AUTHORIZATION)).thenReturn("Bearer token");
+        when(logMock.isAlive("token")).thenReturn(false);
+
+        filter.filter(requestContext);
+
+        ArgumentCaptor<Response> captor = ArgumentCaptor.forClass(Response.class);
+        verify(requestContext).abortWith(captor.capture());
+        assertEquals(401, captor.getValue().getStatus());
+        assertFalse(principal.isResolved("token"));
+    }
+
+    @Test
+    void filter_ShouldAbortWithUnauthorized_WhenTokenIsExpired() {
+        when(requestContext.getHeaderString(HttpHeaders.AUTHORIZATION)).thenReturn("Bearer token");
+        when(logMock.isAlive("token")).thenThrow(new TokenExpiredException("expired"));
+
+        filter.filter(requestContext);
+
+        verify(requestContext).abortWith(any(Response.class));
+        assertFalse(principal.isResolved("token"));
+    }
+
+    @Test
+    void filter_ShouldResolvePrincipal_WhenTokenIsValid() {
+        Utente u = new Utente();
+        u.setId(5);
+        Date exp = new Date(System.currentTimeMillis() + 60_000);
+
+        when(requestContext.getHeaderString(HttpHeaders.AUTHORIZATION)).thenReturn("Bearer token");
+        when(logMock.isAlive("token")).thenReturn(true);
+        when(logMock.getUtente("token")).thenReturn(u);
+        when(jwtMock.getIdFromToken("token")).thenReturn(5);
+        when(jwtMock.getRoleFromToken("token")).thenReturn("compilatore");
+        when(jwtMock.getExpirationFromToken("token")).thenReturn(exp);
+
+        filter.filter(requestContext);
+
+        verify(requestContext, never()).abortWith(any());
+        assertTrue(principal.isResolved("token"));
+        assertEquals(5, principal.getUserId());
+        assertEquals("compilatore", principal.getRole());
+        assertEquals(exp, principal.getExpiration());
+        assertSame(u, principal.getUtente());
+    }
+
+    private void injectMethod(Object component, Object injectComponent, String nameFild) throws Exception {
+        Field f = component.getClass().getDeclaredField(nameFild);
+        f.setAccessible(true);
+        f.set(component, injectComponent);
+    }
+}
@@ -0,0 +1,147 @@
+package controller.api;
+
+import jakarta.ws.rs.core.Response;
+import model.entity.Utente;
+import model.mapper.EntityRefresher;
+import model.utility.CacheQuiz;
+import model.utility.ChiaveLog;
+import model.utility.ClassificaService;
+import model.utility.CodaTentativi;
+import model.utility.CompletatiLog;
+import model.utility.HashExecutor;
+import model.utility.MonitorPinning;
+import model.utility.PassCrypt;
+import model.utility.PoolConnessioni;
+import model.utility.SessionLog;
+import model.utility.StatisticheService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricheAPITest {
+
+    @Nested
+    class UnitTests {
+        private MetricheAPI api;
+        private HashExecutor hashExecutor;
+        private EntityRefresher refresher;
+
+        @BeforeEach
+        void setUp() throws Exception {
+            api = new MetricheAPI();
+            injectMethod(api, "segreta", "chiave");
+            injectMethod(api, new CodaTentativi(), "codaTentativi");
+            hashExecutor = new HashExecutor();
+            injectMethod(api, hashExecutor, "hashExecutor");
+            injectMethod(api, new PassCrypt(), "crypt");
+            injectMethod(api, new SessionLog(), "sessioni");
+            injectMethod(api, new PoolConnessioni(), "connessioni");
+            injectMethod(api, new CacheQuiz(), "cacheQuiz");
+            injectMethod(api, new MonitorPinning(), "pinning");
+            injectMethod(api, new CompletatiLog(), "completati");
+            injectMethod(api, new ClassificaService(), "classifiche");
+            injectMethod(api, new StatisticheService(), "statistiche");
+            refresher = new EntityRefresher();
+            injectMethod(api, refresher, "refresher");
+            injectMethod(api, new ChiaveLog(), "chiavi");
+        }
+
+        @AfterEach
+        void tearDown() {
+            hashExecutor.ferma();
+        }
+
+        @Test
+        void metriche_ShouldReturn404_WhenNoKeyIsConfigured() throws Exception {
+            injectMethod(api, null, "chiave");
+            assertEquals(404, api.metriche("segreta").getStatus());
+
+            injectMethod(api, " ", "chiave");
+            assertEquals(404, api.metriche(" ").getStatus());
+        }
+
+        @Test
+        void metriche_ShouldReturn401_WhenKeyIsMissingOrWrong() {
+            assertEquals(401, api.metriche(null).getStatus());
+            assertEquals(401, api.metriche("sbagliata").getStatus());
+            assertEquals(401, api.metriche("Bearer segreta").getStatus());
+        }
+
+        @Test
+        void metriche_ShouldReturnCodaTentativi_WhenKeyMatches() {
+            Response response = api.metriche("segreta");
+
+            assertEquals(200, response.getStatus());
+            Map<String, Object> entity = (Map<String, Object>) response.getEntity();
+            Map<String, Object> coda = (Map<String, Object>) entity.get("codaTentativi");
+            assertEquals(false, coda.get("attiva"));
+            assertEquals(0, coda.get("profondita"));
+        }
+
+        @Test
+        void metriche_ShouldReturnHashPoolAndBcrypt_WhenKeyMatches() {
+            Response response = api.metriche("segreta");
+
+            Map<String, Object> entity = (Map<String, Object>) response.getEntity();
+            Map<String, Object> pool = (Map<String, Object>) entity.get("hashPool");
+            Map<String, Object> bcrypt = (Map<String, Object>) entity.get("bcrypt");
+            assertEquals(0, pool.get("profondita"));
+            assertEquals(0L, pool.get("rifiutati"));
+            assertEquals(0L, bcrypt.get("eseguiti"));
+            Map<String, Object> sessioni = (Map<String, Object>) entity.get("sessioni");
+            assertEquals(0, sessioni.get("attive"));
+        }
+
+        @Test
+        void metriche_ShouldReturnConnectionPool_WhenKeyMatches() {
+            Map<String, Object> entity = (Map<String, Object>) api.metriche("segreta").getEntity();
+            Map<String, Object> connessioni = (Map<String, Object>) entity.get("connessioni");
+
+            assertEquals(false, connessioni.get("attivo"));
+            assertEquals(0, connessioni.get("attive"));
+            assertEquals(0, connessioni.get("inAttesa"));
+            Map<String, Object> cache = (Map<String, Object>) entity.get("cache");
+            assertEquals(false, cache.get("attiva"));
+        }
+
+        @Test
+        void metriche_ShouldReturnVirtualThreads_WhenKeyMatches() {
+            Map<String, Object> entity = (Map<String, Object>) api.metriche("segreta").getEntity();
+            Map<String, Object> virtuali = (Map<String, Object>) entity.get("threadVirtuali");
+
+            assertEquals(false, virtuali.get("richiestaVirtuale"));
+            assertEquals(false, virtuali.get("monitor"));
+            assertEquals(0L, virtuali.get("eventi"));
+            Map<String, Object> completati = (Map<String, Object>) entity.get("completati");
+            assertEquals(0, completati.get("utenti"));
+            Map<String, Object> classifiche = (Map<String, Object>) entity.get("classifiche");
+            assertEquals(0, classifiche.get("quiz"));
+            Map<String, Object> statistiche = (Map<String, Object>) entity.get("statistiche");
+            assertEquals(0L, statistiche.get("ricostruzioni"));
+        }
+
+        @Test
+        void metriche_ShouldReturnAvoidedMerges_WhenKeyMatches() {
+            refresher.perLettura(new Utente());
+
+            Map<String, Object> entity = (Map<String, Object>) api.metriche("segreta").getEntity();
+            Map<String, Object> merge = (Map<String, Object>) entity.get("refresher");
+
+            assertEquals(1L, merge.get("mergeEvitati"));
+            Map<String, Object> chiavi = (Map<String, Object>) entity.get("chiavi");
+            assertEquals(0L, chiavi.get("evizioni"));
+        }
+    }
+
+    private void injectMethod(Object target, Object value, String fieldName) throws Exception {
+        Field field = target.getClass().getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+}
@@ -9,13 +9,17 @@ import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.core.Application;
 import jakarta.ws.rs.core.GenericType;
 import jakarta.ws.rs.core.Response;
+import model.dao.FaDAO;
 import model.dao.QuizDAO;
+import model.dao.RispondeDAO;
 import model.dto.GetQuizDTO;
+import model.dto.QuizDTO;
 import model.entity.Domanda;
 import model.entity.Quiz;
 import model.entity.Risposta;
 import model.entity.Utente;
 import model.exception.AppException;
+import model.exception.QuizNonTrovatoException;
 import model.mapper.EntityRefresher;
 import model.menager.QuizCreatorMenager;
 import model.utility.*;
@@ -281,7 +285,7 @@ public class QuizCreatorAPITest {
             String token = "Bearer valid_token";
             GetQuizDTO pageDto = new GetQuizDTO();
             pageDto.setPage(1);
-            List<Quiz> mockList = List.of(new Quiz(), new Quiz());
+            List<QuizDTO> mockList = List.of(new QuizDTO(), new QuizDTO());
 
             when(menagerMock.getQuizzes(1, "valid_token")).thenReturn(mockList);
 
@@ -291,6 +295,23 @@ public class QuizCreatorAPITest {
             assertEquals(mockList, response.getEntity());
         }
 
+        @Test
+        void getQuiz_CursorMode_Success() throws AppException {
+            String token = "Bearer valid_token";
+            GetQuizDTO pageDto = new GetQuizDTO();
+            pageDto.setCursor(PageCursor.encode(5));
+            List<QuizDTO> mockList = List.of(new QuizDTO(), new QuizDTO());
+
+            when(menagerMock.getQuizzesByCursor(pageDto.getCursor(), "valid_token")).thenReturn(mockList);
+
+            Response response = api.getQuiz(token, pageDto);
+
+            assertEquals(200, response.getStatus());
+            Map<String, Object> result = (Map<String, Object>) response.getEntity();
+            assertEquals(mockList, result.get("quizzes"));
+            assertNull(result.get("nextCursor"));
+        }
+
         @Test
         void getQuiz_HeaderMissing() {
             GetQuizDTO pageDto = new GetQuizDTO();
@@ -336,6 +357,46 @@ public class QuizCreatorAPITest {
             Response response = api.getQuiz(token, pageDto);
             assertEquals(400, response.getStatus());
         }
+
+        //test statistiche
+        @Test
+        void statistiche_Success() throws AppException {
+            String token = "Bearer valid_token";
+            StatisticheService.Riepilogo riepilogo = new StatisticheService.Riepilogo(1, 0, 0, List.of());
+
+            when(menagerMock.getStatistiche(1, "valid_token")).thenReturn(riepilogo);
+
+            Response response = api.statistiche(token, 1);
+
+            assertEquals(200, response.getStatus());
+            assertEquals(riepilogo, response.getEntity());
+        }
+
+        @Test
+        void statistiche_HeaderMissing() {
+            Response response = api.statistiche(null, 1);
+            assertEquals(400, response.getStatus());
+        }
+
+        @Test
+        void statistiche_AppException_Unauthorized() throws AppException {
+            String token = "Bearer valid_token";
+
+            when(menagerMock.getStatistiche(1, "valid_token")).thenThrow(new AppException("Unauthorized"));
+
+            Response response = api.statistiche(token, 1);
+            assertEquals(401, response.getStatus());
+        }
+
+        @Test
+        void statistiche_QuizNonTrovato_NotFound() throws AppException {
+            String token = "Bearer valid_token";
+
+            when(menagerMock.getStatistiche(1, "valid_token")).thenThrow(new QuizNonTrovatoException("Quiz not exist"));
+
+            Response response = api.statistiche(token, 1);
+            assertEquals(404, response.getStatus());
+        }
     }
 
     // =========================
@@ -351,6 +412,7 @@ public class QuizCreatorAPITest {
         private PassCrypt crypt;
         private SessionLog log;
         private AccessControlService service;
+        private SessionPrincipal principal;
         private QuizDAO dao;
         private QuizLog quizLog;
 
@@ -368,7 +430,7 @@ public class QuizCreatorAPITest {
             }
 
 
-            ResourceConfig config = new ResourceConfig(QuizCreatorAPI.class);
+            ResourceConfig config = new ResourceConfig(QuizCreatorAPI.class, AuthFilter.class);
 
             config.register(new AbstractBinder() {
                 @Override
@@ -380,6 +442,7 @@ public class QuizCreatorAPITest {
                     bind(quizLog).to(QuizLog.class);
                     bind(dao).to(QuizDAO.class);
                     bind(service).to(AccessControlService.class);
+                    bind(principal).to(SessionPrincipal.class);
                     bind(jwtProvider).to(JWT_Provider.class);
                     bind(crypt).to(PassCrypt.class);
                     bind(refresher).to(EntityRefresher.class);
@@ -408,6 +471,7 @@ public class QuizCreatorAPITest {
 
             injectMethod(log, jwtProvider, "jwtProvider");
             injectMethod(service, jwtProvider, "jwtProvider");
+            principal = new SessionPrincipal();
 
             // 4. Logica Specifica Quiz
             quizLog = new QuizLog();
@@ -418,8 +482,17 @@ public class QuizCreatorAPITest {
             injectMethod(menager, crypt, "crypt");
             injectMethod(menager, log, "logBeble"); // Nome variabile dal tuo setup
             injectMethod(menager, service, "accessControl");
+            injectMethod(menager, principal, "principal");
             injectMethod(menager, dao, "dao");
             injectMethod(menager, quizLog, "quizLog");
+            injectMethod(menager, new ChiaveLog(), "chiavi");
+            injectMethod(menager, new PermessoLog(), "permessi");
+            injectMethod(menager, new ClassificaService(), "classifiche");
+            injectMethod(menager, new StatisticheService(), "statistiche");
+            injectMethod(menager, new FaDAO(em), "daoFa");
+            RispondeDAO daoRisponde = new RispondeDAO();
+            injectMethod(daoRisponde, em, "em");
+            injectMethod(menager, daoRisponde, "daoRisponde");
 
             // 6. Popolamento DB (Transazionale)
             em.getTransaction().begin();
@@ -477,15 +550,6 @@ public class QuizCreatorAPITest {
 
         @AfterEach
         public void cleanUp() throws NoSuchFieldException, IllegalAccessException {
-            Field bibleField = SessionLog.class.getDeclaredField("logBible");
-            Field userToTokenField = SessionLog.class.getDeclaredField("userIdToToken");
-
-            bibleField.setAccessible(true);
-            userToTokenField.setAccessible(true);
-
-            ((Map<?, ?>) bibleField.get(log)).clear();
-            ((Map<?, ?>) userToTokenField.get(log)).clear();
-
             if (em != null && em.isOpen()) em.close();
             if (emf != null && emf.isOpen()) emf.close();
         }
@@ -645,7 +709,8 @@ public class QuizCreatorAPITest {
                     .header("Authorization", "Bearer " + tokenManomesso)
                     .post(Entity.json(quiz));
 
-            assertEquals(400, response.getStatus());
+            // rifiutato da AuthFilter prima di raggiungere la risorsa
+            assertEquals(401, response.getStatus());
         }
 
         @Test
@@ -692,14 +757,51 @@ public class QuizCreatorAPITest {
         void deleteQuiz_Integration_Failure_TokenNotAlive() {
             Quiz quiz = new Quiz();
             quiz.setId(1);
-            String tokenFuoriSessione = jwtProvider.generateToken(alreadyLogTest, "creatore");
+            // id diverso: il token non coincide mai con quello in sessione
+            Utente fuoriSessione = new Utente();
+            fuoriSessione.setId(alreadyLogTest.getId() + 1000);
+            String tokenFuoriSessione = jwtProvider.generateToken(fuoriSessione, "creatore");
 
             Response response = target("/quiz-manage/delete")
                     .request()
                     .header("Authorization", "Bearer " + tokenFuoriSessione)
                     .post(Entity.json(quiz));
 
-            assertEquals(400, response.getStatus());
+            // rifiutato da AuthFilter prima di raggiungere la risorsa
+            assertEquals(401, response.getStatus());
+        }
+
+        @Test
+        void statistiche_Integration_Success() {
+            Quiz quiz = em.createQuery("SELECT q FROM Quiz q WHERE q.utente = :u", Quiz.class)
+                    .setParameter("u", alreadyLogTest)
+                    .setMaxResults(1)
+                    .getSingleResult();
+
+            Response response = target("/quiz-manage/stats/" + quiz.getId())
+                    .request()
+                    .header("Authorization", "Bearer " + realToken)
+                    .get();
+
+            assertEquals(200, response.getStatus());
+            Map<String, Object> riepilogo = response.readEntity(Map.class);
+            assertEquals(quiz.getId(), ((Number) riepilogo.get("quizId")).intValue());
+            assertEquals(0, ((Number) riepilogo.get("completamenti")).intValue());
+        }
+
+        @Test
+        void statistiche_Integration_Failure_NotOwner() {
+            Quiz quiz = em.createQuery("SELECT q FROM Quiz q WHERE q.utente = :u", Quiz.class)
+                    .setParameter("u", alreadyLogTest)
+                    .setMaxResults(1)
+                    .getSingleResult();
+
+            Response response = target("/quiz-manage/stats/" + quiz.getId())
+                    .request()
+                    .header("Authorization", "Bearer " + realTokenUnauthorized)
+                    .get();
+
+            assertEquals(401, response.getStatus());
         }
 
         @Test
@@ -781,7 +883,7 @@ public class QuizCreatorAPITest {
         }
 
         @Test
-        void getQuiz_Integration_Success_LoadFromDBToLog() {
+        void getQuiz_Integration_Success_ReturnsProjectionsWithoutFillingLog() {
             GetQuizDTO dto = new GetQuizDTO();
             dto.setPage(1);
 
@@ -792,14 +894,14 @@ public class QuizCreatorAPITest {
 
             assertEquals(200, response.getStatus());
 
-            List<Quiz> quizzes = response.readEntity(new GenericType<List<Quiz>>() {});
+            List<QuizDTO> quizzes = response.readEntity(new GenericType<List<QuizDTO>>() {});
 
             assertFalse(quizzes.isEmpty());
             assertEquals(10, quizzes.size());
+            assertNotNull(quizzes.get(0).getTitolo());
 
-            Quiz inLog = quizLog.getQuiz(alreadyLogTest, quizzes.get(0).getId());
-            assertNotNull(inLog);
-            assertEquals(quizzes.get(0).getTitolo(), inLog.getTitolo());
+            // la lista viene dalla proiezione, il catalogo condiviso resta intatto
+            assertNull(quizLog.getQuiz(alreadyLogTest, quizzes.get(0).getId()));
         }
 
         @Test
@@ -854,14 +956,18 @@ public class QuizCreatorAPITest {
         void getQuiz_Integration_Failure_TokenNotAlive() {
             GetQuizDTO dto = new GetQuizDTO();
             dto.setPage(0);
-            String tokenFuoriSessione = jwtProvider.generateToken(alreadyLogTest, "creatore");
+            // id diverso: il token non coincide mai con quello in sessione
+            Utente fuoriSessione = new Utente();
+            fuoriSessione.setId(alreadyLogTest.getId() + 1000);
+            String tokenFuoriSessione = jwtProvider.generateToken(fuoriSessione, "creatore");
 
             Response response = target("/quiz-manage/getQuiz")
                     .request()
                     .header("Authorization", "Bearer " + tokenFuoriSessione)
                     .post(Entity.json(dto));
 
-            assertEquals(400, response.getStatus());
+            // rifiutato da AuthFilter prima di raggiungere la risorsa
+            assertEquals(401, response.getStatus());
         }
     }
 
@@ -5,6 +5,7 @@ import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.Persistence;
 import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.container.AsyncResponse;
 import jakarta.ws.rs.core.Application;
 import jakarta.ws.rs.core.GenericType;
 import jakarta.ws.rs.core.Response;
@@ -14,10 +15,14 @@ import model.dao.RispondeDAO;
 import model.dto.CompletaQuizDTO;
 import model.dto.QuizDTO;
 import model.entity.Domanda;
+import model.entity.Fa;
 import model.entity.Quiz;
 import model.entity.Risposta;
 import model.entity.Utente;
 import model.exception.AppException;
+import model.exception.CodaPienaException;
+import model.exception.QuizGiaCompletatoException;
+import model.exception.TroppiTentativiException;
 import model.mapper.EntityRefresher;
 import model.menager.QuizUserMenager;
 import model.utility.*;
@@ -28,16 +33,21 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class QuizUserAPITest {
@@ -56,6 +66,7 @@ public class QuizUserAPITest {
             useMenagerMock = mock(QuizUserMenager.class);
 
             injectMethod(api, useMenagerMock, "useMenager");
+            injectMethod(api, hashSincrono(), "hashExecutor");
         }
 
         //test downRole
@@ -109,16 +120,9 @@ public class QuizUserAPITest {
             Map<String, String> body = new HashMap<>();
             body.put("page", "1");
 
-            Quiz mockQuiz = new Quiz();
-            mockQuiz.setId(1);
-            mockQuiz.setTitolo("Test Quiz");
-            mockQuiz.setNumeroDomande(12);
-            mockQuiz.setDifficolta("media");
-            mockQuiz.setDescrizione("bello");
-            mockQuiz.setUtente(new Utente());
-            // QuizDTO si aspetta campi base popolati
+            QuizDTO mockQuiz = new QuizDTO(1, "Test Quiz", "bello", "media", null, 12, false);
 
-            when(useMenagerMock.getQuizzes(1, token)).thenReturn(List.of(mockQuiz));
+            when(useMenagerMock.getQuizzes(1, false, token)).thenReturn(List.of(mockQuiz));
 
             Response response = api.getQuiz("Bearer " + token, body);
 
@@ -128,6 +132,40 @@ public class QuizUserAPITest {
             assertEquals("Test Quiz", result.get(0).getTitolo());
         }
 
+        @Test
+        void getQuiz_CursorMode_ShouldReturnQuizzesAndNextCursor() throws Exception {
+            String token = "valid.token";
+            Map<String, String> body = new HashMap<>();
+            body.put("cursor", "");
+
+            QuizDTO mockQuiz = new QuizDTO(7, "Test Quiz", null, null, null, 3, false);
+
+            when(useMenagerMock.getQuizzesByCursor("", false, token)).thenReturn(List.of(mockQuiz));
+
+            Response response = api.getQuiz("Bearer " + token, body);
+
+            assertEquals(200, response.getStatus());
+            Map<String, Object> result = (Map<String, Object>) response.getEntity();
+            assertEquals(1, ((List<QuizDTO>) result.get("quizzes")).size());
+            assertTrue(result.containsKey("nextCursor"));
+            assertNull(result.get("nextCursor"));
+        }
+
+        @Test
+        void getQuiz_ShouldPassHideCompletedFlag_ToMenager() throws Exception {
+            String token = "valid.token";
+            Map<String, String> body = new HashMap<>();
+            body.put("cursor", "");
+            body.put("nascondiCompletati", "true");
+
+            when(useMenagerMock.getQuizzesByCursor("", true, token)).thenReturn(List.of());
+
+            Response response = api.getQuiz("Bearer " + token, body);
+
+            assertEquals(200, response.getStatus());
+            verify(useMenagerMock).getQuizzesByCursor("", true, token);
+        }
+
         @Test
         void getQuiz_Failure_NoHeader() {
             Response response = api.getQuiz(null, Map.of("page", "1"));
@@ -152,7 +190,7 @@ public class QuizUserAPITest {
         @Test
         void getQuiz_Failure_MalformedToken() throws Exception {
             String token = "bad-token";
-            when(useMenagerMock.getQuizzes(anyInt(), eq(token)))
+            when(useMenagerMock.getQuizzes(anyInt(), anyBoolean(), eq(token)))
                     .thenThrow(new MalformedJwtException("Invalid"));
 
             Response response = api.getQuiz("Bearer " + token, Map.of("page", "1"));
@@ -162,7 +200,7 @@ public class QuizUserAPITest {
         @Test
         void getQuiz_Failure_AppException() throws Exception {
             String token = "valid-token";
-            when(useMenagerMock.getQuizzes(anyInt(), eq(token)))
+            when(useMenagerMock.getQuizzes(anyInt(), anyBoolean(), eq(token)))
                     .thenThrow(new AppException("Generic Error"));
 
             Response response = api.getQuiz("Bearer " + token, Map.of("page", "1"));
@@ -242,7 +280,7 @@ public class QuizUserAPITest {
             List<Domanda> mockDomande = List.of(new Domanda());
             when(useMenagerMock.startQuiz(any(Quiz.class), eq("secret123"), eq(token))).thenReturn(mockDomande);
 
-            Response response = api.startQuizByPass("Bearer " + token, quizReq);
+            Response response = risposta(a -> api.startQuizByPass("Bearer " + token, quizReq, a));
 
             assertEquals(200, response.getStatus());
             List<Domanda> result = (List<Domanda>) response.getEntity();
@@ -251,13 +289,13 @@ public class QuizUserAPITest {
 
         @Test
         void startQuizByPass_Failure_NoHeader() {
-            Response response = api.startQuizByPass(null, new Quiz());
+            Response response = risposta(a -> api.startQuizByPass(null, new Quiz(), a));
             assertEquals(400, response.getStatus());
         }
 
         @Test
         void startQuizByPass_Failure_NullQuiz() {
-            Response response = api.startQuizByPass("Bearer token", null);
+            Response response = risposta(a -> api.startQuizByPass("Bearer token", null, a));
             assertEquals(400, response.getStatus());
         }
 
@@ -269,7 +307,7 @@ public class QuizUserAPITest {
 
             when(useMenagerMock.startQuiz(any(Quiz.class), eq("wrong_pass"), eq(token))).thenReturn(null);
 
-            Response response = api.startQuizByPass("Bearer " + token, quizReq);
+            Response response = risposta(a -> api.startQuizByPass("Bearer " + token, quizReq, a));
 
             assertEquals(451, response.getStatus());
         }
@@ -280,7 +318,7 @@ public class QuizUserAPITest {
             when(useMenagerMock.startQuiz(any(Quiz.class), anyString(), eq(token)))
                     .thenThrow(new MalformedJwtException("Invalid"));
 
-            Response response = api.startQuizByPass("B" + token, new Quiz());
+            Response response = risposta(a -> api.startQuizByPass("B" + token, new Quiz(), a));
             assertEquals(400, response.getStatus());
         }
 
@@ -293,10 +331,24 @@ public class QuizUserAPITest {
             when(useMenagerMock.startQuiz(any(Quiz.class), eq("pass"), eq(token)))
                     .thenThrow(new AppException("Unauthorized"));
 
-            Response response = api.startQuizByPass("Bearer " + token, quizReq);
+            Response response = risposta(a -> api.startQuizByPass("Bearer " + token, quizReq, a));
             assertEquals(401, response.getStatus());
         }
 
+        @Test
+        void startQuizByPass_Failure_TooManyAttempts() throws Exception {
+            String token = "valid.token";
+            Quiz quizReq = new Quiz();
+            quizReq.setPasswordQuiz("pass");
+
+            when(useMenagerMock.startQuiz(any(Quiz.class), eq("pass"), eq(token)))
+                    .thenThrow(new TroppiTentativiException("troppi tentativi", 42));
+
+            Response response = risposta(a -> api.startQuizByPass("Bearer " + token, quizReq, a));
+            assertEquals(429, response.getStatus());
+            assertEquals("42", response.getHeaderString("Retry-After"));
+        }
+
         //test completaQuiz
         @Test
         void completaQuiz_Success() throws Exception {
@@ -314,6 +366,87 @@ public class QuizUserAPITest {
             assertEquals(85, result.get("punteggio"));
         }
 
+        @Test
+        void completaQuiz_ShouldReturn503_WhenCodaTentativiIsFull() throws Exception {
+            String token = "valid.token";
+            CompletaQuizDTO dto = new CompletaQuizDTO();
+            dto.setQuiz(new Quiz());
+            dto.setRisposteClient(List.of(new Risposta()));
+
+            when(useMenagerMock.completaQuiz(any(Quiz.class), anyList(), eq(token)))
+                    .thenThrow(new CodaPienaException("coda tentativi piena"));
+
+            Response response = api.completaQuiz("Bearer " + token, dto);
+
+            assertEquals(503, response.getStatus());
+            assertEquals("1", response.getHeaderString("Retry-After"));
+        }
+
+        @Test
+        void completaQuiz_ShouldReturn409_WhenQuizIsAlreadyCompleted() throws Exception {
+            String token = "valid.token";
+            CompletaQuizDTO dto = new CompletaQuizDTO();
+            dto.setQuiz(new Quiz());
+            dto.setRisposteClient(List.of(new Risposta()));
+
+            when(useMenagerMock.completaQuiz(any(Quiz.class), anyList(), eq(token)))
+                    .thenThrow(new QuizGiaCompletatoException("Quiz già completato"));
+
+            Response response = api.completaQuiz("Bearer " + token, dto);
+
+            assertEquals(409, response.getStatus());
+            assertEquals(Map.of("errore", "Quiz già completato"), response.getEntity());
+        }
+
+        //test classifica e posizione
+        @Test
+        void classifica_Success() throws Exception {
+            String token = "valid.token";
+            List<Classifica.Voce> primi = List.of(new Classifica.Voce(1, "anna", 4));
+            when(useMenagerMock.getClassifica(3, 10, token)).thenReturn(primi);
+
+            Response response = api.classifica("Bearer " + token, 3, 10);
+
+            assertEquals(200, response.getStatus());
+            assertEquals(primi, response.getEntity());
+        }
+
+        @Test
+        void classifica_Failure_NoHeader() {
+            Response response = api.classifica(null, 3, 10);
+            assertEquals(400, response.getStatus());
+        }
+
+        @Test
+        void classifica_Failure_AppException() throws Exception {
+            String token = "valid.token";
+            when(useMenagerMock.getClassifica(3, 0, token)).thenThrow(new AppException("numero di posizioni non valido"));
+
+            Response response = api.classifica("Bearer " + token, 3, 0);
+            assertEquals(401, response.getStatus());
+        }
+
+        @Test
+        void posizione_Success() throws Exception {
+            String token = "valid.token";
+            Classifica.Voce voce = new Classifica.Voce(2, "anna", 4);
+            when(useMenagerMock.getPosizione(3, token)).thenReturn(voce);
+
+            Response response = api.posizione("Bearer " + token, 3);
+
+            assertEquals(200, response.getStatus());
+            assertEquals(voce, response.getEntity());
+        }
+
+        @Test
+        void posizione_ShouldReturn404_WhenQuizIsNotTaken() throws Exception {
+            String token = "valid.token";
+            when(useMenagerMock.getPosizione(3, token)).thenReturn(null);
+
+            Response response = api.posizione("Bearer " + token, 3);
+            assertEquals(404, response.getStatus());
+        }
+
         @Test
         void completaQuiz_Failure_NoHeader() {
             Response response = api.completaQuiz(null, new CompletaQuizDTO());
@@ -383,11 +516,13 @@ public class QuizUserAPITest {
         private SessionLog log;
         private QuizLog quizLog;
         private AccessControlService service;
+        private SessionPrincipal principal;
         private QuizDAO dao;
         private FaDAO daoFa;
         private RispondeDAO daoRisponde;
 
         private QuizUserMenager menager;
+        private HashExecutor hashExecutor;
 
         private Utente alreadyLogTest, alreadyLogTestUnauthorized;
         private  String realToken, realTokenUnauthorized;
@@ -417,9 +552,11 @@ public class QuizUserAPITest {
                     bind(quizLog).to(QuizLog.class);
                     bind(dao).to(QuizDAO.class);
                     bind(service).to(AccessControlService.class);
+                    bind(principal).to(SessionPrincipal.class);
                     bind(jwtProvider).to(JWT_Provider.class);
                     bind(crypt).to(PassCrypt.class);
                     bind(refresher).to(EntityRefresher.class);
+                    bind(hashExecutor).to(HashExecutor.class);
                 }
             });
 
@@ -433,6 +570,7 @@ public class QuizUserAPITest {
             // 1. Database H2 in memoria
             emf = Persistence.createEntityManagerFactory("testPU");
             em = emf.createEntityManager();
+            hashExecutor = new HashExecutor();
 
             // 2. DAO e Utility di persistenza
             dao = new QuizDAO();
@@ -453,6 +591,7 @@ public class QuizUserAPITest {
 
             injectMethod(log, jwtProvider, "jwtProvider");
             injectMethod(service, jwtProvider, "jwtProvider");
+            principal = new SessionPrincipal();
 
             // 4. Logica stato Quiz
             quizLog = new QuizLog();
@@ -463,10 +602,16 @@ public class QuizUserAPITest {
             injectMethod(menager, crypt, "crypt");
             injectMethod(menager, log, "logBeble");
             injectMethod(menager, service, "accessControl");
+            injectMethod(menager, principal, "principal");
             injectMethod(menager, dao, "dao");
             injectMethod(menager, quizLog, "quizLog");
+            injectMethod(menager, new ChiaveLog(), "chiavi");
+            injectMethod(menager, new PermessoLog(), "permessi");
+            injectMethod(menager, new ClassificaService(), "classifiche");
+            injectMethod(menager, new StatisticheService(), "statistiche");
+            injectMethod(menager, new CodaTentativi(), "codaTentativi");
             injectMethod(menager, daoFa, "daoFa");
-            injectMethod(menager, daoRisponde, "daoRisponde");
+            injectMethod(menager, new CompletatiLog(), "completati");
 
             // 6. Dati Iniziali
             em.getTransaction().begin();
@@ -531,15 +676,6 @@ public class QuizUserAPITest {
 
         @AfterEach
         public void cleanUp() throws NoSuchFieldException, IllegalAccessException {
-            Field bibleField = SessionLog.class.getDeclaredField("logBible");
-            Field userToTokenField = SessionLog.class.getDeclaredField("userIdToToken");
-
-            bibleField.setAccessible(true);
-            userToTokenField.setAccessible(true);
-
-            ((Map<?, ?>) bibleField.get(log)).clear();
-            ((Map<?, ?>) userToTokenField.get(log)).clear();
-
             if (em != null && em.isOpen()) {
                 em.getTransaction().begin();
                 // Disabilitiamo i vincoli per svuotare tutto senza errori di Foreign Key
@@ -559,6 +695,7 @@ public class QuizUserAPITest {
                 em.close();
             }
 
+            if (hashExecutor != null) hashExecutor.ferma();
             if (em != null && em.isOpen()) em.close();
             if (emf != null && emf.isOpen()) emf.close();
         }
@@ -595,6 +732,50 @@ public class QuizUserAPITest {
             assertFalse(resBody.isEmpty());
         }
 
+        @Test
+        void getQuiz_Integration_CursorMode() {
+            Map<String, String> body = new HashMap<>();
+            body.put("cursor", "");
+
+            Response response = target("/quiz-use/getQuiz")
+                    .request()
+                    .header("Authorization", "Bearer " + realTokenUnauthorized)
+                    .post(Entity.json(body));
+
+            assertEquals(200, response.getStatus());
+
+            Map<String, Object> resBody = response.readEntity(new GenericType<Map<String, Object>>() {});
+            List<?> quizzes = (List<?>) resBody.get("quizzes");
+            assertFalse(quizzes.isEmpty());
+            assertTrue(resBody.containsKey("nextCursor"));
+        }
+
+        @Test
+        void getQuiz_Integration_ShouldFlagAndHideCompletedQuizzes() {
+            Integer primo = em.createQuery("SELECT MIN(q.id) FROM Quiz q", Integer.class).getSingleResult();
+            em.getTransaction().begin();
+            em.persist(new Fa(em.find(Utente.class, alreadyLogTestUnauthorized.getId()), em.find(Quiz.class, primo), 1));
+            em.getTransaction().commit();
+
+            Response pagina = target("/quiz-use/getQuiz")
+                    .request()
+                    .header("Authorization", "Bearer " + realTokenUnauthorized)
+                    .post(Entity.json(Map.of("page", "1")));
+            List<Map<String, Object>> quizzes = pagina.readEntity(new GenericType<List<Map<String, Object>>>() {});
+            assertEquals(true, quizzes.get(0).get("completato"));
+            assertEquals(false, quizzes.get(1).get("completato"));
+
+            Response nascosti = target("/quiz-use/getQuiz")
+                    .request()
+                    .header("Authorization", "Bearer " + realTokenUnauthorized)
+                    .post(Entity.json(Map.of("cursor", "", "nascondiCompletati", "true")));
+            Map<String, Object> resBody = nascosti.readEntity(new GenericType<Map<String, Object>>() {});
+            List<Map<String, Object>> visibili = (List<Map<String, Object>>) resBody.get("quizzes");
+            assertEquals(PageCursor.DIMENSIONE_PAGINA, visibili.size());
+            assertTrue(visibili.stream().noneMatch(q -> primo.equals(((Number) q.get("id")).intValue())));
+            assertNotNull(resBody.get("nextCursor"));
+        }
+
         @Test
         void startQuiz_SenzaPassword_Integration_Success() {
             Quiz quizPubblico = (Quiz) em.createNativeQuery(
@@ -694,6 +875,45 @@ public class QuizUserAPITest {
             assertEquals(1, result.get("punteggio").intValue());
         }
 
+        @Test
+        void classifica_Integration_ShouldRankCompletedAttempts() {
+            em.getTransaction().begin();
+            em.persist(new Fa(em.find(Utente.class, alreadyLogTest.getId()), em.find(Quiz.class, idForStartQuiz), 3));
+            em.persist(new Fa(em.find(Utente.class, alreadyLogTestUnauthorized.getId()), em.find(Quiz.class, idForStartQuiz), 1));
+            em.getTransaction().commit();
+
+            Response primi = target("/quiz-use/classifica/" + idForStartQuiz)
+                    .queryParam("n", 5)
+                    .request()
+                    .header("Authorization", "Bearer " + realTokenUnauthorized)
+                    .get();
+
+            assertEquals(200, primi.getStatus());
+            List<Map<String, Object>> voci = primi.readEntity(new GenericType<List<Map<String, Object>>>() {});
+            assertEquals(2, voci.size());
+            assertEquals("pippo12", voci.get(0).get("username"));
+            assertEquals(3, ((Number) voci.get(0).get("punteggio")).intValue());
+
+            Response mia = target("/quiz-use/classifica/" + idForStartQuiz + "/posizione")
+                    .request()
+                    .header("Authorization", "Bearer " + realTokenUnauthorized)
+                    .get();
+
+            assertEquals(200, mia.getStatus());
+            Map<String, Object> voce = mia.readEntity(new GenericType<Map<String, Object>>() {});
+            assertEquals(2, ((Number) voce.get("posizione")).intValue());
+        }
+
+        @Test
+        void posizione_Integration_ShouldReturn404_WhenQuizIsNotTaken() {
+            Response response = target("/quiz-use/classifica/" + idForStartQuiz + "/posizione")
+                    .request()
+                    .header("Authorization", "Bearer " + realTokenUnauthorized)
+                    .get();
+
+            assertEquals(404, response.getStatus());
+        }
+
         @Test
         void completaQuiz_Integration_EmptyAnswers() {
             Map<String, Object> payload = new HashMap<>();
@@ -773,6 +993,26 @@ public class QuizUserAPITest {
     // =========================
     // ===== UTIL METHOD =======
     // =========================
+    // esegue il lavoro sul thread del test, come se il pool fosse libero
+    private HashExecutor hashSincrono() {
+        HashExecutor hash = mock(HashExecutor.class);
+        doAnswer(inv -> {
+            AsyncResponse async = inv.getArgument(0);
+            Supplier<Response> lavoro = inv.getArgument(1);
+            async.resume(lavoro.get());
+            return null;
+        }).when(hash).esegui(any(), any());
+        return hash;
+    }
+
+    private Response risposta(Consumer<AsyncResponse> chiamata) {
+        AsyncResponse async = mock(AsyncResponse.class);
+        chiamata.accept(async);
+        ArgumentCaptor<Response> captor = ArgumentCaptor.forClass(Response.class);
+        verify(async).resume(captor.capture());
+        return captor.getValue();
+    }
+
     private void injectMethod(Object component, Object injectComponent, String nameFild) throws Exception {
         Class<?> clazz = component.getClass();
 
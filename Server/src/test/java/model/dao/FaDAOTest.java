@@ -4,13 +4,19 @@ import jakarta.persistence.*;
 import model.entity.*;
 import model.exception.AppException;
 import model.exception.EmptyFild;
+import model.exception.RegisterFailed;
+import model.exception.TentativoRifiutatoException;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 
 import java.lang.reflect.Field;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -133,6 +139,77 @@ public class FaDAOTest {
 			assertThrows(AppException.class, () -> dao.findByUtenteQuiz(q, u));
 		}
 
+		/**
+		 * category partition per existsByUtenteQuiz e findQuizIdsByUtente
+		 * 1. input validi(utenteId>0, quizId>0)
+		 * 2. input non validi(utenteId<=0 o quizId<=0)
+		 */
+
+		@Test
+		void existsByUtenteQuiz_shouldReadAtMostOneRow_whenParametersAreValid() {
+			TypedQuery<Integer> mockedQuery = mock(TypedQuery.class);
+			when(em.createNamedQuery("Fa.existsByUserAndQuiz", Integer.class)).thenReturn(mockedQuery);
+			when(mockedQuery.setParameter("utente", 1)).thenReturn(mockedQuery);
+			when(mockedQuery.setParameter("quiz", 2)).thenReturn(mockedQuery);
+			when(mockedQuery.setMaxResults(1)).thenReturn(mockedQuery);
+			when(mockedQuery.getResultList()).thenReturn(List.of(1), List.of());
+
+			assertTrue(dao.existsByUtenteQuiz(1, 2));
+			assertFalse(dao.existsByUtenteQuiz(1, 2));
+			verify(mockedQuery, times(2)).setMaxResults(1);
+		}
+
+		@Test
+		void existsByUtenteQuiz_shouldThrowException_whenIdsAreInvalid() {
+			assertThrows(AppException.class, () -> dao.existsByUtenteQuiz(0, 1));
+			assertThrows(AppException.class, () -> dao.existsByUtenteQuiz(1, -1));
+			verifyNoInteractions(em);
+		}
+
+		@Test
+		void findQuizIdsByUtente_shouldReturnIds_whenUtenteIdIsValid() {
+			TypedQuery<Integer> mockedQuery = mock(TypedQuery.class);
+			when(em.createNamedQuery("Fa.findQuizIdsByUtente", Integer.class)).thenReturn(mockedQuery);
+			when(mockedQuery.setParameter("utente", 1)).thenReturn(mockedQuery);
+			when(mockedQuery.getResultList()).thenReturn(List.of(3, 5));
+
+			assertEquals(List.of(3, 5), dao.findQuizIdsByUtente(1));
+		}
+
+		@Test
+		void findQuizIdsByUtente_shouldThrowException_whenUtenteIdIsInvalid() {
+			assertThrows(AppException.class, () -> dao.findQuizIdsByUtente(0));
+			verifyNoInteractions(em);
+		}
+
+		@Test
+		void findPunteggiByQuiz_shouldReturnRows_whenQuizIdIsValid() {
+			TypedQuery<Object[]> mockedQuery = mock(TypedQuery.class);
+			List<Object[]> righe = List.<Object[]>of(new Object[]{1, "mario", 5, 0L});
+			when(em.createNamedQuery("Fa.findPunteggiByQuiz", Object[].class)).thenReturn(mockedQuery);
+			when(mockedQuery.setParameter("quiz", 3)).thenReturn(mockedQuery);
+			when(mockedQuery.getResultList()).thenReturn(righe);
+
+			assertSame(righe, dao.findPunteggiByQuiz(3));
+		}
+
+		@Test
+		void findTotaliByQuiz_shouldReturnZeros_whenQuizHasNoAttempts() {
+			TypedQuery<Object[]> mockedQuery = mock(TypedQuery.class);
+			when(em.createNamedQuery("Fa.totaliByQuiz", Object[].class)).thenReturn(mockedQuery);
+			when(mockedQuery.setParameter("quiz", 3)).thenReturn(mockedQuery);
+			when(mockedQuery.getSingleResult()).thenReturn(new Object[]{0L, null});
+
+			assertArrayEquals(new long[]{0, 0}, dao.findTotaliByQuiz(3));
+			assertThrows(AppException.class, () -> dao.findTotaliByQuiz(-1));
+		}
+
+		@Test
+		void findPunteggiByQuiz_shouldThrowException_whenQuizIdIsInvalid() {
+			assertThrows(AppException.class, () -> dao.findPunteggiByQuiz(0));
+			verifyNoInteractions(em);
+		}
+
 		/**
 		 * category partition per faintById:
 		 * 1. Input validi(id>0)
@@ -359,6 +436,112 @@ public class FaDAOTest {
 			assertThrows(EmptyFild.class, () -> dao.insert(faQuizIdNonValido));
 		}
 
+		/**
+		 * category partition per insertTentativo:
+		 * 1. input validi(Fa valido, lista di Risponde con utente valido)
+		 * 2. input non validi(Fa non valido)
+		 * 3. input non validi(lista null o vuota)
+		 * 4. input non validi(Risponde senza utente)
+		 */
+
+		@Test
+		void insertTentativo_shouldPersistFaAndLinkRisposte_whenParametersAreValid() {
+			Utente u = new Utente();
+			u.setId(1);
+			Quiz q = new Quiz();
+			q.setId(1);
+			Fa f = new Fa(u, q, 3);
+			Risponde r1 = new Risponde(new Risposta(), u, "quiz", null);
+			Risponde r2 = new Risponde(new Risposta(), u, "quiz", null);
+
+			EntityTransaction tx = mock(EntityTransaction.class);
+			when(em.getTransaction()).thenReturn(tx);
+
+			dao.insertTentativo(f, List.of(r1, r2));
+
+			verify(tx).begin();
+			verify(em, times(1)).persist(f);
+			verify(tx).commit();
+			assertSame(f, r1.getTentativo());
+			assertSame(f, r2.getTentativo());
+			assertEquals(2, f.getRisposteDate().size());
+		}
+
+		@Test
+		void insertTentativi_shouldPersistEveryFa_inOneTransaction() {
+			Utente u = new Utente();
+			u.setId(1);
+			Quiz q = new Quiz();
+			q.setId(1);
+			Fa f1 = new Fa(u, q, 1);
+			f1.setRisposteDate(List.of(new Risponde(new Risposta(), u, "quiz", null)));
+			Fa f2 = new Fa(u, q, 2);
+			f2.setRisposteDate(List.of(new Risponde(new Risposta(), u, "quiz", null)));
+
+			EntityTransaction tx = mock(EntityTransaction.class);
+			when(em.getTransaction()).thenReturn(tx);
+
+			dao.insertTentativi(List.of(f1, f2));
+
+			verify(tx, times(1)).begin();
+			verify(em).persist(f1);
+			verify(em).persist(f2);
+			verify(tx, times(1)).commit();
+			assertSame(f2, f2.getRisposteDate().get(0).getTentativo());
+		}
+
+		@Test
+		void insertTentativi_shouldTellRejectedAttempts_fromTransientFailures() {
+			Utente u = new Utente();
+			u.setId(1);
+			Quiz q = new Quiz();
+			q.setId(1);
+			Fa f = new Fa(u, q, 1);
+			f.setRisposteDate(List.of(new Risponde(new Risposta(), u, "quiz", null)));
+
+			EntityTransaction tx = mock(EntityTransaction.class);
+			when(em.getTransaction()).thenReturn(tx);
+			doThrow(new PersistenceException(new org.hibernate.exception.ConstraintViolationException(
+					"doppione", new SQLException("doppione", "23505"), "uk_fa_utente_quiz")))
+					.doThrow(new PersistenceException(new org.hibernate.exception.JDBCConnectionException(
+							"giù", new SQLException("giù", "08S01"))))
+					.when(tx).commit();
+
+			assertThrows(TentativoRifiutatoException.class, () -> dao.insertTentativi(List.of(f)));
+			RegisterFailed transitorio = assertThrows(RegisterFailed.class, () -> dao.insertTentativi(List.of(f)));
+			assertFalse(transitorio instanceof TentativoRifiutatoException);
+		}
+
+		@Test
+		void insertTentativi_shouldThrowException_whenListIsEmptyOrAttemptHasNoRisposte() {
+			Utente u = new Utente();
+			u.setId(1);
+			Quiz q = new Quiz();
+			q.setId(1);
+
+			assertThrows(EmptyFild.class, () -> dao.insertTentativi(null));
+			assertThrows(EmptyFild.class, () -> dao.insertTentativi(List.of()));
+			assertThrows(EmptyFild.class, () -> dao.insertTentativi(List.of(new Fa(u, q, 1))));
+			verifyNoInteractions(em);
+		}
+
+		@Test
+		void insertTentativo_shouldThrowException_whenParametersAreInvalid() {
+			Utente u = new Utente();
+			u.setId(1);
+			Quiz q = new Quiz();
+			q.setId(1);
+			Fa f = new Fa(u, q, 3);
+			Risponde senzaUtente = new Risponde(new Risposta(), null, "quiz", null);
+
+			assertThrows(EmptyFild.class, () -> dao.insertTentativo(null, List.of()));
+			assertThrows(EmptyFild.class, () -> dao.insertTentativo(new Fa(u, null, 0), List.of()));
+			assertThrows(EmptyFild.class, () -> dao.insertTentativo(f, null));
+			assertThrows(EmptyFild.class, () -> dao.insertTentativo(f, List.of()));
+			assertThrows(EmptyFild.class, () -> dao.insertTentativo(f, List.of(senzaUtente)));
+			verifyNoInteractions(em);
+		}
+
 		/**
 		 * category partition per Update:
 		 * 1. Input validi(fa != null fa.id != null, fa.id > 0, fa.Utente != null, fa.Utente.id != null, fa.Utente.id > 0)
@@ -657,6 +840,54 @@ public class FaDAOTest {
 				assertEquals(fa1.getQuiz().getId(), result.getQuiz().getId());
 			}
 
+			@Test
+			@DisplayName("existsByUtenteQuiz e findQuizIdsByUtente devono vedere solo i tentativi dell'utente")
+			void existsByUtenteQuiz_Integration(){
+				assertTrue(dao.existsByUtenteQuiz(utente1.getId(), quiz1.getId()));
+				assertFalse(dao.existsByUtenteQuiz(utente2.getId(), quiz1.getId()));
+
+				List<Integer> ids = dao.findQuizIdsByUtente(utente1.getId());
+				assertEquals(2, ids.size());
+				assertTrue(ids.containsAll(List.of(quiz1.getId(), quiz2.getId())));
+			}
+
+			@Test
+			@DisplayName("findTotaliByQuiz deve contare i tentativi e sommare i punteggi")
+			void findTotaliByQuiz_Integration() throws Exception {
+				em.getTransaction().begin();
+				em.find(Fa.class, fa2.getId()).setPunteggio(4);
+				em.find(Fa.class, fa3.getId()).setPunteggio(-1);
+				em.getTransaction().commit();
+
+				assertArrayEquals(new long[]{2, 3}, dao.findTotaliByQuiz(quiz2.getId()));
+			}
+
+			@Test
+			@DisplayName("findPunteggiByQuiz deve restituire utente e punteggio dei tentativi del quiz")
+			void findPunteggiByQuiz_Integration(){
+				List<Object[]> righe = dao.findPunteggiByQuiz(quiz2.getId());
+
+				assertEquals(2, righe.size());
+				assertEquals(utente2.getId(), ((Number) righe.get(0)[0]).intValue());
+				assertEquals("LucaBianchi", righe.get(0)[1]);
+				assertEquals(utente1.getId(), ((Number) righe.get(1)[0]).intValue());
+			}
+
+			@Test
+			@DisplayName("findPunteggiByQuiz deve ordinare per istante di completamento, non per id")
+			void findPunteggiByQuiz_ShouldOrderByCompletatoIl_Integration(){
+				em.getTransaction().begin();
+				em.find(Fa.class, fa2.getId()).setCompletatoIl(2_000L);
+				em.find(Fa.class, fa3.getId()).setCompletatoIl(1_000L);
+				em.getTransaction().commit();
+
+				List<Object[]> righe = dao.findPunteggiByQuiz(quiz2.getId());
+
+				assertEquals(utente1.getId(), ((Number) righe.get(0)[0]).intValue());
+				assertEquals(1_000L, ((Number) righe.get(0)[3]).longValue());
+				assertEquals(utente2.getId(), ((Number) righe.get(1)[0]).intValue());
+			}
+
 			@Test
 			@DisplayName("Integrazione: findAll con dati preesistenti")
 			void findAll_Integration(){
@@ -683,6 +914,49 @@ public class FaDAOTest {
 				assertEquals(fa1.getId(), result.get(0).getId());
 			}
 
+			@Test
+			@DisplayName("insertTentativo deve scrivere Fa e risposte in batch, collegando le risposte al tentativo")
+			void insertTentativo_Integration() throws Exception {
+				em.getTransaction().begin();
+				Domanda d = new Domanda();
+				d.setQuiz(quiz1);
+				d.setQuesito("domanda");
+				d.setPuntiRispostaCorretta(1);
+				d.setPuntiRispostaSbagliata(0);
+				em.persist(d);
+				List<Risposta> scelte = new ArrayList<>();
+				for (int i = 0; i < 40; i++) {
+					Risposta r = new Risposta("risposta " + i, i == 0, d);
+					em.persist(r);
+					scelte.add(r);
+				}
+				em.getTransaction().commit();
+				em.clear();
+
+				Utente u = em.find(Utente.class, utente2.getId());
+				Fa tentativo = new Fa(u, em.getReference(Quiz.class, quiz1.getId()), 1);
+				List<Risponde> risposte = new ArrayList<>();
+				for (Risposta r : scelte) {
+					risposte.add(new Risponde(r, u, "Titolo1", null));
+				}
+
+				Statistics stats = emf.unwrap(SessionFactory.class).getStatistics();
+				stats.setStatisticsEnabled(true);
+				stats.clear();
+
+				dao.insertTentativo(tentativo, risposte);
+
+				// senza batch sarebbero 41 insert preparati uno per uno
+				assertTrue(stats.getPrepareStatementCount() <= 8,
+						"statement eseguiti: " + stats.getPrepareStatementCount());
+
+				em.clear();
+				Long collegate = em.createQuery("SELECT COUNT(r) FROM Risponde r WHERE r.tentativo.id = :id", Long.class)
+						.setParameter("id", tentativo.getId())
+						.getSingleResult();
+				assertEquals(40L, collegate);
+			}
+
 			@Test
 			@DisplayName("Inserimento di Fa")
 			void insert_Integration() throws Exception {
@@ -1,17 +1,22 @@
 package model.dao;
 
 import jakarta.persistence.*;
+import model.dto.QuizDTO;
 import model.entity.Domanda;
 import model.entity.Quiz;
 import model.entity.Risposta;
 import model.entity.Utente;
 import model.exception.AppException;
 import model.exception.EmptyFild;
+import model.mapper.QuizMapper;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
@@ -83,6 +88,83 @@ public class QuizDAOTest {
             verifyNoInteractions(em);
         }
 
+        /**
+         * Category Partition per findGraphById:
+         * 1. Input Valido (ID esistente con domande) -> quiz + fetch delle risposte.
+         * 2. Input Valido (ID inesistente) -> Restituisce null senza seconda query.
+         * 3. Input Invalido (ID <= 0) -> Lancia eccezione.
+         */
+
+        @Test
+        void findGraphById_shouldFetchRisposte_whenQuizHasDomande() throws AppException {
+            Quiz fintoQuiz = new Quiz();
+            fintoQuiz.setDomande(new ArrayList<>(List.of(new Domanda())));
+            TypedQuery<Quiz> quizQuery = mock(TypedQuery.class);
+            TypedQuery<Domanda> domandeQuery = mock(TypedQuery.class);
+
+            when(em.createNamedQuery("Quiz.findGraphById", Quiz.class)).thenReturn(quizQuery);
+            when(quizQuery.setParameter("id", 1)).thenReturn(quizQuery);
+            when(quizQuery.getResultList()).thenReturn(List.of(fintoQuiz));
+            when(em.createNamedQuery("Domanda.fetchRisposteByQuiz", Domanda.class)).thenReturn(domandeQuery);
+            when(domandeQuery.setParameter("id", 1)).thenReturn(domandeQuery);
+
+            Quiz result = quizDAO.findGraphById(1);
+
+            assertEquals(fintoQuiz, result);
+            verify(domandeQuery).getResultList();
+        }
+
+        @Test
+        void findGraphById_shouldReturnNull_whenIdDoesNotExist() throws AppException {
+            TypedQuery<Quiz> quizQuery = mock(TypedQuery.class);
+
+            when(em.createNamedQuery("Quiz.findGraphById", Quiz.class)).thenReturn(quizQuery);
+            when(quizQuery.setParameter("id", 999)).thenReturn(quizQuery);
+            when(quizQuery.getResultList()).thenReturn(List.of());
+
+            assertNull(quizDAO.findGraphById(999));
+            verify(em, never()).createNamedQuery("Domanda.fetchRisposteByQuiz", Domanda.class);
+        }
+
+        @Test
+        void findGraphById_shouldThrowException_whenIdIsInvalid() {
+            assertThrows(AppException.class, () -> quizDAO.findGraphById(0));
+
+            verifyNoInteractions(em);
+        }
+
+        @Test
+        void findChiaveRisposte_shouldUseProjectionQuery_whenIdIsValid() throws AppException {
+            List<Object[]> righe = new ArrayList<>();
+            TypedQuery<Object[]> mockedQuery = mock(TypedQuery.class);
+
+            when(em.createNamedQuery("Risposta.chiaveByQuiz", Object[].class)).thenReturn(mockedQuery);
+            when(mockedQuery.setParameter("id", 3)).thenReturn(mockedQuery);
+            when(mockedQuery.getResultList()).thenReturn(righe);
+
+            assertEquals(righe, quizDAO.findChiaveRisposte(3));
+        }
+
+        @Test
+        void findProprietario_shouldReturnNull_whenQuizDoesNotExist() throws AppException {
+            TypedQuery<Integer> mockedQuery = mock(TypedQuery.class);
+
+            when(em.createNamedQuery("Quiz.findProprietario", Integer.class)).thenReturn(mockedQuery);
+            when(mockedQuery.setParameter("id", 3)).thenReturn(mockedQuery);
+            when(mockedQuery.getResultList()).thenReturn(new ArrayList<>());
+
+            assertNull(quizDAO.findProprietario(3));
+            assertThrows(AppException.class, () -> quizDAO.findProprietario(0));
+        }
+
+        @Test
+        void findChiaveRisposte_shouldThrowException_whenIdIsInvalid() {
+            assertThrows(AppException.class, () -> quizDAO.findChiaveRisposte(0));
+            assertThrows(AppException.class, () -> quizDAO.getReference(-1));
+
+            verifyNoInteractions(em);
+        }
+
         /**
          * Category Partition per findAll:
          * 1. Input Valido (pageNumber > 0, pageSize > 0) -> Restituisce lista di Quiz.
@@ -165,6 +247,108 @@ public class QuizDAOTest {
             assertThrows(EmptyFild.class, () -> quizDAO.findAllByUtente(1, null));
         }
 
+        /**
+         * Category Partition per findAllSummary / findAllByUtenteSummary:
+         * 1. Input Valido -> proiezione QuizDTO paginata a offset.
+         * 2. Input Invalido (pagina o utente) -> Lancia eccezione senza query.
+         */
+
+        @Test
+        void findAllSummary_shouldReturnProjection_whenInputsAreValid() throws AppException {
+            List<QuizDTO> expectedList = new ArrayList<>();
+            TypedQuery<QuizDTO> mockedQuery = mock(TypedQuery.class);
+
+            when(em.createQuery(startsWith("SELECT new model.dto.QuizDTO("), eq(QuizDTO.class))).thenReturn(mockedQuery);
+            when(mockedQuery.setHint(anyString(), any())).thenReturn(mockedQuery);
+            when(mockedQuery.setFirstResult(10)).thenReturn(mockedQuery);
+            when(mockedQuery.setMaxResults(10)).thenReturn(mockedQuery);
+            when(mockedQuery.getResultList()).thenReturn(expectedList);
+
+            List<QuizDTO> result = quizDAO.findAllSummary(2, 10);
+
+            assertEquals(expectedList, result);
+            // le pagine del catalogo passano dalla query cache
+            verify(mockedQuery).setHint("org.hibernate.cacheable", true);
+            verify(mockedQuery).setHint("org.hibernate.cacheRegion", "quiz.pagine");
+        }
+
+        @Test
+        void findAllSummary_shouldThrowException_whenInputsAreInvalid() {
+            assertThrows(AppException.class, () -> quizDAO.findAllSummary(0, 10));
+            assertThrows(AppException.class, () -> quizDAO.findAllSummary(1, 0));
+            verifyNoInteractions(em);
+        }
+
+        @Test
+        void findAllByUtenteSummary_shouldThrowException_whenInputsAreInvalid() {
+            Utente utenteValido = new Utente();
+            utenteValido.setId(1);
+
+            assertThrows(AppException.class, () -> quizDAO.findAllByUtenteSummary(0, utenteValido));
+            assertThrows(EmptyFild.class, () -> quizDAO.findAllByUtenteSummary(1, null));
+            verifyNoInteractions(em);
+        }
+
+        /**
+         * Category Partition per findAllAfter / findAllByUtenteAfter:
+         * 1. Input Valido (lastId >= 0, pageSize > 0) -> query a cursore senza offset.
+         * 2. Input Invalido (lastId < 0 o pageSize <= 0) -> Lancia AppException.
+         * 3. Utente invalido -> Lancia EmptyFild.
+         */
+
+        @Test
+        void findAllAfter_shouldSeekFromLastId_whenInputsAreValid() throws AppException {
+            List<QuizDTO> expectedList = new ArrayList<>();
+            TypedQuery<QuizDTO> mockedQuery = mock(TypedQuery.class);
+
+            when(em.createQuery(contains("q.id > :lastId"), eq(QuizDTO.class))).thenReturn(mockedQuery);
+            when(mockedQuery.setHint(anyString(), any())).thenReturn(mockedQuery);
+            when(mockedQuery.setParameter("lastId", 20)).thenReturn(mockedQuery);
+            when(mockedQuery.setMaxResults(10)).thenReturn(mockedQuery);
+            when(mockedQuery.getResultList()).thenReturn(expectedList);
+
+            List<QuizDTO> result = quizDAO.findAllAfter(20, 10);
+
+            assertEquals(expectedList, result);
+            verify(mockedQuery, never()).setFirstResult(anyInt());
+        }
+
+        @Test
+        void findAllAfter_shouldThrowException_whenInputsAreInvalid() {
+            assertThrows(AppException.class, () -> quizDAO.findAllAfter(-1, 10));
+            assertThrows(AppException.class, () -> quizDAO.findAllAfter(0, 0));
+        }
+
+        @Test
+        void findAllByUtenteAfter_shouldSeekFromLastId_whenInputsAreValid() throws AppException {
+            Utente utenteFinto = new Utente();
+            utenteFinto.setId(1);
+            List<QuizDTO> expectedList = new ArrayList<>();
+            TypedQuery<QuizDTO> mockedQuery = mock(TypedQuery.class);
+
+            when(em.createQuery(contains("q.utente = :utente AND q.id > :lastId"), eq(QuizDTO.class))).thenReturn(mockedQuery);
+            when(mockedQuery.setParameter(anyString(), any())).thenReturn(mockedQuery);
+            when(mockedQuery.setMaxResults(10)).thenReturn(mockedQuery);
+            when(mockedQuery.getResultList()).thenReturn(expectedList);
+
+            List<QuizDTO> result = quizDAO.findAllByUtenteAfter(0, 10, utenteFinto);
+
+            assertEquals(expectedList, result);
+            verify(mockedQuery).setParameter("utente", utenteFinto);
+            verify(mockedQuery).setParameter("lastId", 0);
+            verify(mockedQuery, never()).setFirstResult(anyInt());
+        }
+
+        @Test
+        void findAllByUtenteAfter_shouldThrowException_whenInputsAreInvalid() {
+            Utente utenteValido = new Utente();
+            utenteValido.setId(1);
+
+            assertThrows(AppException.class, () -> quizDAO.findAllByUtenteAfter(-1, 10, utenteValido));
+            assertThrows(AppException.class, () -> quizDAO.findAllByUtenteAfter(0, 0, utenteValido));
+            assertThrows(EmptyFild.class, () -> quizDAO.findAllByUtenteAfter(0, 10, null));
+        }
+
         /**
          * Category Partition per insert:
          * 1. Input Valido (Quiz != null) -> Persist su DB.
@@ -263,6 +447,7 @@ public class QuizDAOTest {
 
             EntityTransaction tx = mock(EntityTransaction.class);
             when(em.getTransaction()).thenReturn(tx);
+            when(em.contains(oldQuiz)).thenReturn(true);
 
             // Act
             quizDAO.update(newQuiz, oldQuiz, utente);
@@ -274,6 +459,35 @@ public class QuizDAOTest {
             assertEquals("Nuovo Titolo", oldQuiz.getTitolo());
         }
 
+        @Test
+        void update_shouldNotModifyCachedQuiz_whenOldQuizIsDetached() throws EntityNotFoundException, EmptyFild {
+            Quiz newQuiz = new Quiz();
+            newQuiz.setTitolo("Nuovo Titolo");
+            newQuiz.setDomande(new ArrayList<>());
+
+            Quiz cachedQuiz = new Quiz();
+            cachedQuiz.setTitolo("Vecchio Titolo");
+            cachedQuiz.setDomande(new ArrayList<>());
+
+            Quiz managedQuiz = new Quiz();
+            managedQuiz.setDomande(new ArrayList<>());
+
+            Utente utente = new Utente();
+            utente.setId(1);
+
+            EntityTransaction tx = mock(EntityTransaction.class);
+            when(em.getTransaction()).thenReturn(tx);
+            when(em.contains(cachedQuiz)).thenReturn(false);
+            when(em.merge(cachedQuiz)).thenReturn(managedQuiz);
+
+            quizDAO.update(newQuiz, cachedQuiz, utente);
+
+            verify(em).merge(managedQuiz);
+            verify(tx).commit();
+            assertEquals("Nuovo Titolo", managedQuiz.getTitolo());
+            assertEquals("Vecchio Titolo", cachedQuiz.getTitolo());
+        }
+
         @Test
         void update_shouldThrowEmptyFild_whenUtenteIsNull() {
             Quiz newQuiz = new Quiz();
@@ -473,6 +687,65 @@ public class QuizDAOTest {
             assertFalse(result.getDomande().isEmpty());
         }
 
+        @Test
+        @DisplayName("findGraphById deve caricare quiz, domande e risposte in al massimo due statement")
+        void findGraphById_Integration() throws Exception {
+            Quiz grande = creaQuizDiTest(testUser, "grande", "molte domande");
+            for (int i = 0; i < 20; i++) {
+                Domanda d = creaDomandaDiTest(grande, "domanda " + i);
+                creaRispostaDiTest(d, "giusta", true);
+                creaRispostaDiTest(d, "sbagliata", false);
+            }
+            em.getTransaction().begin();
+            em.persist(grande);
+            em.getTransaction().commit();
+            em.clear();
+
+            Statistics stats = emf.unwrap(SessionFactory.class).getStatistics();
+            stats.setStatisticsEnabled(true);
+            stats.clear();
+
+            Quiz result = quizDAO.findGraphById(grande.getId());
+
+            assertEquals(20, result.getDomande().size());
+            for (Domanda d : result.getDomande()) {
+                assertTrue(Hibernate.isInitialized(d.getRisposte()));
+                assertEquals(2, d.getRisposte().size());
+            }
+            assertTrue(stats.getPrepareStatementCount() <= 2,
+                    "statement eseguiti: " + stats.getPrepareStatementCount());
+        }
+
+        @Test
+        @DisplayName("findChiaveRisposte deve leggere la chiave con un solo statement e senza entity")
+        void findChiaveRisposte_Integration() throws Exception {
+            em.clear();
+            Statistics stats = emf.unwrap(SessionFactory.class).getStatistics();
+            stats.setStatisticsEnabled(true);
+            stats.clear();
+
+            List<Object[]> righe = quizDAO.findChiaveRisposte(quizTest1.getId());
+
+            assertFalse(righe.isEmpty());
+            assertEquals("matematica", righe.get(0)[5]);
+            assertEquals(1, stats.getPrepareStatementCount());
+            assertEquals(0, stats.getEntityLoadCount());
+            assertTrue(quizDAO.findChiaveRisposte(Integer.MAX_VALUE).isEmpty());
+        }
+
+        @Test
+        @DisplayName("findProprietario deve leggere solo l'id dell'autore")
+        void findProprietario_Integration() throws Exception {
+            em.clear();
+            Statistics stats = emf.unwrap(SessionFactory.class).getStatistics();
+            stats.setStatisticsEnabled(true);
+            stats.clear();
+
+            assertEquals(quizTest1.getUtente().getId(), quizDAO.findProprietario(quizTest1.getId()));
+            assertEquals(0, stats.getEntityLoadCount());
+            assertNull(quizDAO.findProprietario(Integer.MAX_VALUE));
+        }
+
         @Test
         @DisplayName("findAll deve ritornare una lista paginata di quiz")
         void findAll_Integration() throws Exception {
@@ -505,6 +778,66 @@ public class QuizDAOTest {
             assertTrue(page2.isEmpty());
         }
 
+        @Test
+        @DisplayName("findAllSummary deve leggere la pagina con un solo statement e senza caricare domande")
+        void findAllSummary_Integration() throws Exception {
+            em.getTransaction().begin();
+            Quiz protetto = em.find(Quiz.class, quizTest2.getId());
+            protetto.setPasswordQuiz("hash");
+            em.getTransaction().commit();
+            em.clear();
+
+            Statistics stats = emf.unwrap(SessionFactory.class).getStatistics();
+            stats.setStatisticsEnabled(true);
+            stats.clear();
+
+            List<QuizDTO> page = quizDAO.findAllSummary(1, 10);
+
+            assertEquals(3, page.size());
+            assertEquals("matematica", page.get(0).getTitolo());
+            assertFalse(page.get(0).getPasswordRichiesta());
+            assertTrue(page.get(1).getPasswordRichiesta());
+            assertEquals(1, stats.getPrepareStatementCount());
+            assertEquals(0, stats.getEntityLoadCount());
+        }
+
+        @Test
+        @DisplayName("findAllByUtenteSummary deve restituire solo i quiz dell'utente")
+        void findAllByUtenteSummary_Integration() throws Exception {
+            List<QuizDTO> page = quizDAO.findAllByUtenteSummary(1, testUser2);
+
+            assertEquals(1, page.size());
+            assertEquals("funzioni", page.get(0).getTitolo());
+        }
+
+        @Test
+        @DisplayName("findAllAfter deve continuare dall'ultimo id visto")
+        void findAllAfter_Integration() throws Exception {
+            List<QuizDTO> page1 = quizDAO.findAllAfter(0, 2);
+
+            assertEquals(2, page1.size());
+            assertTrue(page1.get(0).getId() < page1.get(1).getId());
+
+            List<QuizDTO> page2 = quizDAO.findAllAfter(page1.get(1).getId(), 2);
+
+            assertEquals(1, page2.size());
+            assertEquals((int) quizTest3.getId(), page2.get(0).getId());
+        }
+
+        @Test
+        @DisplayName("findAllByUtenteAfter deve restituire solo i quiz dell'utente dopo il cursore")
+        void findAllByUtenteAfter_Integration() throws Exception {
+            List<QuizDTO> page1 = quizDAO.findAllByUtenteAfter(0, 1, testUser);
+
+            assertEquals(1, page1.size());
+            assertEquals((int) quizTest1.getId(), page1.get(0).getId());
+
+            List<QuizDTO> page2 = quizDAO.findAllByUtenteAfter(page1.get(0).getId(), 1, testUser);
+            assertEquals((int) quizTest2.getId(), page2.get(0).getId());
+
+            assertTrue(quizDAO.findAllByUtenteAfter(page2.get(0).getId(), 1, testUser).isEmpty());
+        }
+
         @Test
         @DisplayName("insert deve persistere un NUOVO quiz con domande")
         void insert_Integration() throws Exception {
@@ -546,6 +879,29 @@ public class QuizDAOTest {
             );
         }
 
+        @Test
+        @DisplayName("update deve accettare la copia letta dalla cache lasciando intatto il catalogo")
+        void update_ConCopiaDallaCache_Integration() throws Exception {
+            em.clear();
+            Quiz inCatalogo = quizDAO.findGraphById(quizTest1.getId());
+            em.clear();
+            Quiz copia = QuizMapper.copia(inCatalogo);
+
+            Quiz datiAggiornati = creaQuizDiTest(testUser, "copia", "dalla cache");
+            Domanda d = creaDomandaDiTest(datiAggiornati, "Quanto fa 4+4?");
+            creaRispostaDiTest(d, "8", true);
+            datiAggiornati.setId(quizTest1.getId());
+
+            quizDAO.update(datiAggiornati, copia, testUser);
+
+            em.clear();
+            Quiz verificato = em.find(Quiz.class, quizTest1.getId());
+            assertEquals("copia", verificato.getTitolo());
+            assertEquals("Quanto fa 4+4?", verificato.getDomande().get(0).getQuesito());
+            assertEquals("matematica", inCatalogo.getTitolo());
+            assertEquals(quizTest1.getDomande().get(0).getQuesito(), inCatalogo.getDomande().get(0).getQuesito());
+        }
+
         @Test
         @DisplayName("delete deve rimuovere il quiz e tutte le domande/risposte collegate")
         void delete_Success_Integration() throws Exception {
@@ -0,0 +1,121 @@
+package model.dao;
+
+import jakarta.persistence.*;
+import model.entity.Revoca;
+import model.exception.AppException;
+import model.exception.EmptyFild;
+import model.exception.RegisterFailed;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class RevocaDAOTest {
+
+	EntityManager em;
+	RevocaDAO revocaDAO;
+
+	// =========================
+	// ===== UNIT TESTS ========
+	// =========================
+	@Nested
+	@Tag("unit")
+	class UnitTests {
+
+		@Mock
+		EntityManager mockEm;
+
+		@BeforeEach
+		void setup() {
+			em = mockEm;
+			revocaDAO = new RevocaDAO(em);
+		}
+
+		@Test
+		void insert_shouldThrowEmptyFild_whenJtiIsInvalid() {
+			assertThrows(EmptyFild.class, () -> revocaDAO.insert(null, 10L, 1L));
+			assertThrows(EmptyFild.class, () -> revocaDAO.insert("", 10L, 1L));
+			verifyNoInteractions(em);
+		}
+
+		@Test
+		void insert_shouldRollbackAndThrowRegisterFailed_whenPersistFails() {
+			EntityTransaction tx = mock(EntityTransaction.class);
+			when(em.getTransaction()).thenReturn(tx);
+			when(tx.isActive()).thenReturn(true);
+			doThrow(new PersistenceException("duplicato")).when(em).persist(any());
+
+			assertThrows(RegisterFailed.class, () -> revocaDAO.insert("jti", 10L, 1L));
+			verify(tx).rollback();
+			verify(em).clear();
+		}
+
+		@Test
+		void findDal_shouldPassWindowAndNow() {
+			TypedQuery<Revoca> query = mock(TypedQuery.class);
+			when(em.createNamedQuery("Revoca.findDal", Revoca.class)).thenReturn(query);
+			when(query.setParameter("da", 100L)).thenReturn(query);
+			when(query.setParameter("ora", 200L)).thenReturn(query);
+			when(query.getResultList()).thenReturn(List.of());
+
+			assertTrue(revocaDAO.findDal(100L, 200L).isEmpty());
+		}
+	}
+
+	// =========================
+	// === INTEGRATION TESTS ===
+	// =========================
+	@Nested
+	@Tag("integration")
+	class IntegrationTests {
+		EntityManagerFactory emf;
+
+		@BeforeEach
+		void setup() {
+			emf = Persistence.createEntityManagerFactory("testPU");
+			em = emf.createEntityManager();
+			revocaDAO = new RevocaDAO(em);
+		}
+
+		@AfterEach
+		void tearDown() {
+			if (em.isOpen()) em.close();
+			if (emf.isOpen()) emf.close();
+		}
+
+		@Test
+		void insert_shouldFail_whenJtiIsAlreadyRevoked() throws AppException {
+			revocaDAO.insert("jti-1", 5_000L, 100L);
+
+			assertThrows(RegisterFailed.class, () -> revocaDAO.insert("jti-1", 5_000L, 200L));
+			assertEquals(1, revocaDAO.findDal(0L, 0L).size());
+		}
+
+		@Test
+		void findDal_shouldReturnOnlyRecentAndStillValidRevocations() throws AppException {
+			revocaDAO.insert("vecchia", 5_000L, 100L);
+			revocaDAO.insert("nuova", 5_000L, 300L);
+			revocaDAO.insert("scaduta", 1_000L, 300L);
+
+			List<Revoca> trovate = revocaDAO.findDal(200L, 1_000L);
+
+			assertEquals(List.of("nuova"), trovate.stream().map(Revoca::getJti).toList());
+			assertEquals(5_000L, trovate.get(0).getScadenza());
+		}
+
+		@Test
+		void deleteScadute_shouldRemoveOnlyExpiredRevocations() throws AppException {
+			revocaDAO.insert("scaduta", 1_000L, 100L);
+			revocaDAO.insert("valida", 5_000L, 100L);
+
+			assertEquals(1, revocaDAO.deleteScadute(1_000L));
+			assertEquals(List.of("valida"), revocaDAO.findDal(0L, 0L).stream().map(Revoca::getJti).toList());
+		}
+	}
+}
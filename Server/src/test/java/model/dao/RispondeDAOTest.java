@@ -5,6 +5,8 @@ import model.entity.*;
 import model.exception.AppException;
 import model.exception.EmptyFild;
 import model.exception.UserNotFoundException;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
@@ -116,6 +118,35 @@ public class RispondeDAOTest {
             verify(mockedQuery).getResultList();
         }
 
+        //test scorriScelteByQuiz
+        @Test
+        void scorriScelteByQuiz_ShouldStreamForwardOnly_WithFetchSize() {
+            TypedQuery<Integer> typed = mock(TypedQuery.class);
+            org.hibernate.query.Query<Integer> query = mock(org.hibernate.query.Query.class);
+            ScrollableResults<Integer> scorrimento = mock(ScrollableResults.class);
+            Mockito.when(em.createNamedQuery("Risponde.scelteByQuiz", Integer.class)).thenReturn(typed);
+            Mockito.when(typed.unwrap(org.hibernate.query.Query.class)).thenReturn(query);
+            Mockito.when(query.setParameter("quiz", 3)).thenReturn(query);
+            Mockito.when(query.setFetchSize(RispondeDAO.FETCH_SCORRIMENTO)).thenReturn(query);
+            Mockito.when(query.scroll(ScrollMode.FORWARD_ONLY)).thenReturn(scorrimento);
+            Mockito.when(scorrimento.next()).thenReturn(true, true, false);
+            Mockito.when(scorrimento.get()).thenReturn(4, 9);
+
+            List<Integer> lette = new ArrayList<>();
+            long righe = dao.scorriScelteByQuiz(3, lette::add);
+
+            assertEquals(2, righe);
+            assertEquals(List.of(4, 9), lette);
+            verify(scorrimento).close();
+            verify(query, never()).getResultList();
+        }
+
+        @Test
+        void scorriScelteByQuiz_ShouldThrowAppException_WhenIdIsInvalid() {
+            assertThrows(AppException.class, () -> dao.scorriScelteByQuiz(0, id -> {}));
+            verifyNoInteractions(em);
+        }
+
         //test findAllByUtente
 
         @Test
@@ -580,6 +611,18 @@ public class RispondeDAOTest {
             assertEquals("matecatica-1", result.getQuiz());
         }
 
+        @Test
+        @DisplayName("scorriScelteByQuiz deve leggere solo le risposte scelte nel quiz")
+        void scorriScelteByQuiz_Integration() {
+            int quizId = ris1.getRisposta().getDomanda().getQuiz().getId();
+            List<Integer> lette = new ArrayList<>();
+
+            long righe = dao.scorriScelteByQuiz(quizId, lette::add);
+
+            assertEquals(1, righe);
+            assertEquals(List.of(ris1.getRisposta().getId()), lette);
+        }
+
         @Test
         @DisplayName("findAll deve ritornare una lista paginata di Entity")
         void findAll_Integration() throws Exception {
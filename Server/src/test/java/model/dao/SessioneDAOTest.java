@@ -0,0 +1,168 @@
+package model.dao;
+
+import jakarta.persistence.*;
+import model.entity.Sessione;
+import model.entity.Utente;
+import model.exception.AppException;
+import model.exception.EmptyFild;
+import model.exception.RegisterFailed;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class SessioneDAOTest {
+
+	EntityManager em;
+	SessioneDAO sessioneDAO;
+
+	// =========================
+	// ===== UNIT TESTS ========
+	// =========================
+	@Nested
+	@Tag("unit")
+	class UnitTests {
+
+		@Mock
+		EntityManager mockEm;
+
+		@BeforeEach
+		void setup() {
+			em = mockEm;
+			sessioneDAO = new SessioneDAO(em);
+		}
+
+		@Test
+		void findByToken_shouldReturnNull_whenNoRow() throws AppException {
+			TypedQuery<Sessione> query = mock(TypedQuery.class);
+			when(em.createNamedQuery("Sessione.findByToken", Sessione.class)).thenReturn(query);
+			when(query.setParameter("token", "t")).thenReturn(query);
+			when(query.getResultList()).thenReturn(List.of());
+
+			assertNull(sessioneDAO.findByToken("t"));
+		}
+
+		@Test
+		void shouldThrowEmptyFild_whenInputsAreInvalid() {
+			assertThrows(EmptyFild.class, () -> sessioneDAO.findByToken(""));
+			assertThrows(EmptyFild.class, () -> sessioneDAO.findTokenByUtente(0));
+			assertThrows(EmptyFild.class, () -> sessioneDAO.insert(null, 1, 10L));
+			assertThrows(EmptyFild.class, () -> sessioneDAO.deleteByToken(null));
+			verifyNoInteractions(em);
+		}
+
+		@Test
+		void insert_shouldRollbackAndThrowRegisterFailed_whenPersistFails() {
+			EntityTransaction tx = mock(EntityTransaction.class);
+			when(em.getTransaction()).thenReturn(tx);
+			when(tx.isActive()).thenReturn(true);
+			doThrow(new PersistenceException("duplicato")).when(em).persist(any());
+
+			assertThrows(RegisterFailed.class, () -> sessioneDAO.insert("t", 1, 10L));
+			verify(tx).rollback();
+			verify(em).clear();
+		}
+	}
+
+	// =========================
+	// === INTEGRATION TESTS ===
+	// =========================
+	@Nested
+	@Tag("integration")
+	class IntegrationTests {
+		EntityManagerFactory emf;
+		Utente utente;
+
+		@BeforeEach
+		void setup() {
+			emf = Persistence.createEntityManagerFactory("testPU");
+			em = emf.createEntityManager();
+			sessioneDAO = new SessioneDAO(em);
+
+			utente = new Utente();
+			utente.setNome("Mario");
+			utente.setCognome("Rossi");
+			utente.setUsername("mario_sessione");
+			utente.setPasswordHash("hash123");
+			em.getTransaction().begin();
+			em.persist(utente);
+			em.getTransaction().commit();
+			em.clear();
+		}
+
+		@AfterEach
+		void tearDown() {
+			if (em.isOpen()) em.close();
+			if (emf.isOpen()) emf.close();
+		}
+
+		@Test
+		void insert_shouldStoreSession_andFindItByTokenAndUser() throws AppException {
+			sessioneDAO.insert("token-1", utente.getId(), 1_000L);
+
+			Sessione trovata = sessioneDAO.findByToken("token-1");
+			assertNotNull(trovata);
+			assertEquals(utente.getId(), trovata.getUtente().getId());
+			assertEquals("mario_sessione", trovata.getUtente().getUsername());
+			assertEquals(1_000L, trovata.getScadenza());
+			assertEquals("token-1", sessioneDAO.findTokenByUtente(utente.getId()));
+			assertEquals(1L, sessioneDAO.count());
+		}
+
+		@Test
+		void insert_shouldFail_whenUserAlreadyHasASession() throws AppException {
+			sessioneDAO.insert("token-1", utente.getId(), 1_000L);
+
+			assertThrows(RegisterFailed.class, () -> sessioneDAO.insert("token-2", utente.getId(), 2_000L));
+			assertEquals("token-1", sessioneDAO.findTokenByUtente(utente.getId()));
+			assertNull(sessioneDAO.findByToken("token-2"));
+		}
+
+		@Test
+		void deleteScadute_shouldRemoveOnlyExpiredSessions() throws AppException {
+			Utente altro = new Utente();
+			altro.setNome("Luigi");
+			altro.setCognome("Verdi");
+			altro.setUsername("luigi_sessione");
+			altro.setPasswordHash("hash123");
+			em.getTransaction().begin();
+			em.persist(altro);
+			em.getTransaction().commit();
+
+			sessioneDAO.insert("scaduta", utente.getId(), 1_000L);
+			sessioneDAO.insert("valida", altro.getId(), 5_000L);
+
+			assertEquals(1, sessioneDAO.deleteScadute(1_000L));
+			assertNull(sessioneDAO.findByToken("scaduta"));
+			assertNotNull(sessioneDAO.findByToken("valida"));
+		}
+
+		@Test
+		void updateToken_shouldChangeKey_onlyWhenOldTokenIsCurrent() throws AppException {
+			sessioneDAO.insert("token-1", utente.getId(), 1_000L);
+
+			assertTrue(sessioneDAO.updateToken("token-1", "token-2", 2_000L));
+			assertFalse(sessioneDAO.updateToken("token-1", "token-3", 3_000L));
+
+			Sessione trovata = sessioneDAO.findByToken("token-2");
+			assertNotNull(trovata);
+			assertEquals(2_000L, trovata.getScadenza());
+			assertEquals("token-2", sessioneDAO.findTokenByUtente(utente.getId()));
+		}
+
+		@Test
+		void deleteByToken_shouldReturnFalse_whenTokenIsUnknown() throws AppException {
+			sessioneDAO.insert("token-1", utente.getId(), 1_000L);
+
+			assertTrue(sessioneDAO.deleteByToken("token-1"));
+			assertFalse(sessioneDAO.deleteByToken("token-1"));
+			assertEquals(0L, sessioneDAO.count());
+		}
+	}
+}
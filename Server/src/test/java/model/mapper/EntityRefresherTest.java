@@ -1,14 +1,22 @@
 package model.mapper;
 
 import jakarta.persistence.EntityManager;
+import model.entity.Domanda;
+import model.entity.Quiz;
+import model.entity.Risposta;
+import model.entity.Utente;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
@@ -46,4 +54,61 @@ public class EntityRefresherTest {
         assertEquals(managedEntity, result);
         verify(em).merge(detachedEntity);
     }
+
+    //test del metodo perLettura
+    @Test
+    void perLettura_ShouldReturnNull_WhenEntityIsNull() {
+        assertNull(entityRefresher.perLettura(null));
+
+        assertEquals(0, entityRefresher.getMergeEvitati());
+    }
+
+    @Test
+    void perLettura_ShouldReturnSameEntityAndCountAvoidedMerge() {
+        Object detachedEntity = new Object();
+
+        Object result = entityRefresher.perLettura(detachedEntity);
+
+        assertSame(detachedEntity, result);
+        assertEquals(1, entityRefresher.getMergeEvitati());
+        assertEquals(1L, entityRefresher.getMetriche().get("mergeEvitati"));
+        verifyNoInteractions(em);
+    }
+
+    @Test
+    void perLettura_ShouldReturnDetachedCopy_WhenEntityIsQuiz() {
+        Utente autore = new Utente();
+        autore.setId(3);
+        Quiz quiz = new Quiz();
+        quiz.setId(1);
+        quiz.setTitolo("titolo");
+        quiz.setUtente(autore);
+        Domanda domanda = new Domanda("quesito", 2, quiz, 0);
+        domanda.setId(10);
+        Risposta risposta = new Risposta("vero", true, domanda);
+        risposta.setId(100);
+        domanda.setRisposte(new ArrayList<>(List.of(risposta)));
+        quiz.setDomande(new ArrayList<>(List.of(domanda)));
+
+        Quiz copia = entityRefresher.perLettura(quiz);
+
+        assertNotSame(quiz, copia);
+        assertEquals("titolo", copia.getTitolo());
+        assertEquals(3, copia.getUtente().getId());
+        assertNotSame(autore, copia.getUtente());
+        Domanda domandaCopia = copia.getDomande().get(0);
+        assertNotSame(domanda, domandaCopia);
+        assertSame(copia, domandaCopia.getQuiz());
+        assertEquals(100, domandaCopia.getRisposte().get(0).getId());
+        assertSame(domandaCopia, domandaCopia.getRisposte().get(0).getDomanda());
+        assertThrows(UnsupportedOperationException.class, () -> copia.getDomande().clear());
+        assertThrows(UnsupportedOperationException.class, () -> domandaCopia.getRisposte().clear());
+
+        copia.setTitolo("modificato");
+        domandaCopia.getRisposte().get(0).setFlagRispostaCorretta(false);
+        assertEquals("titolo", quiz.getTitolo());
+        assertTrue(risposta.getFlagRispostaCorretta());
+        assertEquals(1, entityRefresher.getMergeEvitati());
+        verifyNoInteractions(em);
+    }
 }
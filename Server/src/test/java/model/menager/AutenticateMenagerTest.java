@@ -3,6 +3,7 @@ package model.menager;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.Persistence;
+import model.dao.FaDAO;
 import model.dao.UtenteDAO;
 import model.entity.Utente;
 import model.exception.AppException;
@@ -10,15 +11,19 @@ import model.exception.LoginFailed;
 import model.exception.RegisterFailed;
 import model.exception.UserNotFoundException;
 import model.utility.AccessControlService;
+import model.utility.CompletatiLog;
 import model.utility.JWT_Provider;
 import model.utility.PassCrypt;
 import model.utility.SessionLog;
+import model.utility.SessionPrincipal;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
+import org.mindrot.jbcrypt.BCrypt;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.lang.reflect.Field;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -46,6 +51,11 @@ public class AutenticateMenagerTest {
         @Mock
         AccessControlService serviceMock;
 
+        @Mock
+        FaDAO faDaoMock;
+
+        CompletatiLog completati;
+
         @BeforeEach
         void setup() throws Exception {
             menager = new AutanticateMenager();
@@ -54,6 +64,10 @@ public class AutenticateMenagerTest {
             injectMethod(menager, cryptMock, "crypt");
             injectMethod(menager, daoMock, "dao");
             injectMethod(menager, serviceMock, "accessControlService");
+            injectMethod(menager, new SessionPrincipal(), "principal");
+            injectMethod(menager, faDaoMock, "daoFa");
+            completati = new CompletatiLog();
+            injectMethod(menager, completati, "completati");
         }
 
         //test autenticate
@@ -124,6 +138,103 @@ public class AutenticateMenagerTest {
             verify(logMock).aggiungi(eq(token), any(Utente.class));
         }
 
+        @Test
+        void autenticate_ShouldLoadCompletedQuizzes_WhenLoginSucceeds() {
+            Utente test = new Utente();
+            test.setId(1);
+            test.setPasswordHash("hash");
+
+            when(daoMock.findForLogin("mario")).thenReturn(test);
+            when(cryptMock.verificaPassword("pw", "hash")).thenReturn(true);
+            when(serviceMock.newTokenByRole("compilatore", test)).thenReturn("token");
+            when(faDaoMock.findQuizIdsByUtente(1)).thenReturn(List.of(4, 9));
+
+            menager.autenticate("pw", "mario");
+
+            assertTrue(completati.isCompletato(1, 4));
+            assertTrue(completati.isCompletato(1, 9));
+            assertFalse(completati.isCompletato(1, 5));
+        }
+
+        @Test
+        void autenticate_ShouldStillLogin_WhenCompletedQuizzesCannotBeLoaded() {
+            Utente test = new Utente();
+            test.setId(1);
+            test.setPasswordHash("hash");
+
+            when(daoMock.findForLogin("mario")).thenReturn(test);
+            when(cryptMock.verificaPassword("pw", "hash")).thenReturn(true);
+            when(serviceMock.newTokenByRole("compilatore", test)).thenReturn("token");
+            when(faDaoMock.findQuizIdsByUtente(1)).thenThrow(new RuntimeException("db giù"));
+
+            assertEquals("token", menager.autenticate("pw", "mario"));
+            assertNull(completati.isCompletato(1, 4));
+        }
+
+        @Test
+        void autenticate_ShouldRehashPassword_WhenStoredCostDiffers() {
+            String username = "mario.rossi";
+            String password = "paswordDiprova123";
+            Utente test = new Utente();
+            test.setId(1);
+            test.setUsername(username);
+            test.setPasswordHash("vecchioHash");
+            test.setIsCompilatore(true);
+
+            when(daoMock.findForLogin(username)).thenReturn(test);
+            when(cryptMock.verificaPassword(password, "vecchioHash")).thenReturn(true);
+            when(cryptMock.richiedeRehash("vecchioHash")).thenReturn(true);
+            when(cryptMock.hashPassword(password)).thenReturn("nuovoHash");
+            when(serviceMock.newTokenByRole("compilatore", test)).thenReturn("token");
+
+            menager.autenticate(password, username);
+
+            assertEquals("nuovoHash", test.getPasswordHash());
+            verify(daoMock).update(test);
+        }
+
+        @Test
+        void autenticate_ShouldNotRehash_WhenStoredCostMatches() {
+            String username = "mario.rossi";
+            String password = "paswordDiprova123";
+            Utente test = new Utente();
+            test.setId(1);
+            test.setUsername(username);
+            test.setPasswordHash("hash");
+            test.setIsCompilatore(true);
+
+            when(daoMock.findForLogin(username)).thenReturn(test);
+            when(cryptMock.verificaPassword(password, "hash")).thenReturn(true);
+            when(cryptMock.richiedeRehash("hash")).thenReturn(false);
+            when(serviceMock.newTokenByRole("compilatore", test)).thenReturn("token");
+
+            menager.autenticate(password, username);
+
+            verify(cryptMock, never()).hashPassword(anyString());
+            verify(daoMock, never()).update(any(Utente.class));
+        }
+
+        @Test
+        void autenticate_ShouldStillLogin_WhenRehashUpdateFails() {
+            String username = "mario.rossi";
+            String password = "paswordDiprova123";
+            Utente test = new Utente();
+            test.setId(1);
+            test.setUsername(username);
+            test.setPasswordHash("vecchioHash");
+            test.setIsCompilatore(true);
+
+            when(daoMock.findForLogin(username)).thenReturn(test);
+            when(cryptMock.verificaPassword(password, "vecchioHash")).thenReturn(true);
+            when(cryptMock.richiedeRehash("vecchioHash")).thenReturn(true);
+            when(cryptMock.hashPassword(password)).thenReturn("nuovoHash");
+            doThrow(new AppException("Errore durante l'update")).when(daoMock).update(test);
+            when(serviceMock.newTokenByRole("compilatore", test)).thenReturn("token");
+
+            assertEquals("token", menager.autenticate(password, username));
+            assertEquals("vecchioHash", test.getPasswordHash());
+        }
+
         //test logout
         @Test
         void logout_ShouldCallRimuoviOnLog() {
@@ -223,6 +334,7 @@ public class AutenticateMenagerTest {
         void newPassword_ErroreDatabase_LanciaAppException() throws Exception {
             String token = "valid-token";
             Utente u = new Utente();
+            u.setPasswordHash("old-hash");
 
             when(logMock.isAlive(token)).thenReturn(true);
             when(logMock.getUtente(token)).thenReturn(u);
@@ -252,6 +364,28 @@ public class AutenticateMenagerTest {
             verify(daoMock).update(u);
             verify(logMock).update(token, u);
         }
+
+        @Test
+        void newPassword_UtenteDaiClaim_CaricaUtenteCompletoDalDb() throws Exception {
+            String token = "valid-token";
+            Utente daiClaim = new Utente();
+            daiClaim.setId(7);
+            Utente suDb = new Utente();
+            suDb.setId(7);
+            suDb.setPasswordHash("old-hash");
+
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(daiClaim);
+            when(daoMock.findById(7)).thenReturn(suDb);
+            when(cryptMock.verificaPassword("old-pass", "old-hash")).thenReturn(true);
+            when(cryptMock.hashPassword("new-pass")).thenReturn("new-hash");
+
+            menager.newPassword("new-pass", "old-pass", token);
+
+            assertEquals("new-hash", suDb.getPasswordHash());
+            verify(daoMock).update(suDb);
+            verify(logMock).update(token, suDb);
+        }
     }
 
     // =========================
@@ -296,6 +430,9 @@ public class AutenticateMenagerTest {
             injectMethod(menager, crypt, "crypt");
             injectMethod(menager, dao, "dao");
             injectMethod(menager, service, "accessControlService");
+            injectMethod(menager, new SessionPrincipal(), "principal");
+            injectMethod(menager, new FaDAO(em), "daoFa");
+            injectMethod(menager, new CompletatiLog(), "completati");
 
             //add utente per i test
             logTest = creaUtenteDiTest("Mario", "Rossi", "mariorossi", "hash123");
@@ -345,6 +482,23 @@ public class AutenticateMenagerTest {
             assertThrows(LoginFailed.class, () -> menager.autenticate("passwordSbagliata", logTest.getUsername()));
         }
 
+        @Test
+        @Tag("integration")
+        void autenticate_Integrazione_RiscriveHashConCostoDiverso() throws Exception {
+            String passwordChiaro = "testPass123";
+            em.getTransaction().begin();
+            logTest.setPasswordHash(BCrypt.hashpw(passwordChiaro, BCrypt.gensalt(4)));
+            em.merge(logTest);
+            em.getTransaction().commit();
+
+            menager.autenticate(passwordChiaro, logTest.getUsername());
+
+            em.clear();
+            String hash = em.find(Utente.class, logTest.getId()).getPasswordHash();
+            assertTrue(hash.startsWith(String.format("$2a$%02d$", crypt.getCosto())));
+            assertTrue(crypt.verificaPassword(passwordChiaro, hash));
+        }
+
         @Test
         @Tag("integration")
         void logout_ShouldActuallyRemoveSessionFromLog() throws Exception {
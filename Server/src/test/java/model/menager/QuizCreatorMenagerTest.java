@@ -4,11 +4,16 @@ import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.persistence.Persistence;
+import model.dao.FaDAO;
 import model.dao.QuizDAO;
+import model.dao.RispondeDAO;
 import model.dao.UtenteDAO;
+import model.dto.QuizDTO;
 import model.entity.Domanda;
+import model.entity.Fa;
 import model.entity.Quiz;
 import model.entity.Risposta;
+import model.entity.Risponde;
 import model.entity.Utente;
 import model.exception.*;
 import model.mapper.EntityRefresher;
@@ -59,6 +64,22 @@ public class QuizCreatorMenagerTest {
         @Mock
         QuizLog quizLogMock;
 
+        @Mock
+        ChiaveLog chiaviMock;
+
+        @Mock
+        PermessoLog permessiMock;
+
+        @Mock
+        FaDAO faDaoMock;
+
+        @Mock
+        RispondeDAO rispondeDaoMock;
+
+        ClassificaService classifiche;
+
+        StatisticheService statistiche;
+
         @BeforeEach
         void setup() throws Exception {
             menager = new QuizCreatorMenager();
@@ -66,8 +87,17 @@ public class QuizCreatorMenagerTest {
             injectMethod(menager, cryptMock, "crypt");
             injectMethod(menager, logMock, "logBeble");
             injectMethod(menager, serviceMock, "accessControl");
+            injectMethod(menager, new SessionPrincipal(), "principal");
             injectMethod(menager, daoMock, "dao");
             injectMethod(menager, quizLogMock, "quizLog");
+            injectMethod(menager, chiaviMock, "chiavi");
+            injectMethod(menager, permessiMock, "permessi");
+            classifiche = new ClassificaService();
+            injectMethod(menager, classifiche, "classifiche");
+            statistiche = new StatisticheService();
+            injectMethod(menager, statistiche, "statistiche");
+            injectMethod(menager, faDaoMock, "daoFa");
+            injectMethod(menager, rispondeDaoMock, "daoRisponde");
         }
 
         //test upUserRole
@@ -115,9 +145,9 @@ public class QuizCreatorMenagerTest {
 
             assertNotNull(result);
 
-            verify(logMock).rimuovi(token);
-            verify(logMock).aggiungi(eq(newToken), any(Utente.class));
-            verify(quizLogMock).clearQuiz(any(Utente.class));
+            verify(logMock).sostituisci(token, newToken);
+            verify(logMock, never()).rimuovi(anyString());
+            verifyNoInteractions(quizLogMock);
 
             assertEquals(newToken, result);
         }
@@ -268,11 +298,15 @@ public class QuizCreatorMenagerTest {
 
             when(logMock.isAlive(token)).thenReturn(true);
             when(logMock.getUtente(token)).thenReturn(u);
+            classifiche.carica(100, List.<Object[]>of(new Object[]{1, "mario", 5, 0L}));
 
             menager.deleteQuiz(quiz, token);
 
-            verify(quizLogMock).rimuoviSingoloQuiz(u, 100);
             verify(daoMock).delete(100, u);
+            verify(quizLogMock).invalida(100);
+            verify(chiaviMock).invalida(100);
+            verify(permessiMock).invalida(100);
+            assertNull(classifiche.get(100));
         }
 
         //test aggiornaQuiz
@@ -322,9 +356,11 @@ public class QuizCreatorMenagerTest {
             String token = "validToken";
             Quiz newQuiz = new Quiz();
             newQuiz.setId(50);
+            Utente u = new Utente();
+            u.setId(3);
             Quiz oldQuiz = new Quiz();
             oldQuiz.setId(50);
-            Utente u = new Utente();
+            oldQuiz.setUtente(u);
 
             when(logMock.isAlive(token)).thenReturn(true);
             when(logMock.getUtente(token)).thenReturn(u);
@@ -333,7 +369,148 @@ public class QuizCreatorMenagerTest {
             menager.aggiornaQuiz(newQuiz, token);
 
             verify(daoMock).update(newQuiz, oldQuiz, u);
-            verify(quizLogMock).aggiornaSingoloQuiz(u, newQuiz);
+            // il payload non entra nel catalogo condiviso: il prossimo lettore ricarica dal database
+            verify(quizLogMock).invalida(50);
+            verify(quizLogMock, never()).aggiornaSingoloQuiz(any(), any());
+            verify(chiaviMock).invalida(50);
+            verify(permessiMock).invalida(50);
+        }
+
+        @Test
+        void aggiornaQuiz_ShouldRejectCachedQuiz_OwnedByAnotherUser() throws Exception {
+            String token = "validToken";
+            Quiz newQuiz = new Quiz();
+            newQuiz.setId(50);
+            Utente autore = new Utente();
+            autore.setId(3);
+            Utente altro = new Utente();
+            altro.setId(4);
+            Quiz oldQuiz = new Quiz();
+            oldQuiz.setId(50);
+            oldQuiz.setUtente(autore);
+
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(altro);
+            when(quizLogMock.getQuiz(altro, 50)).thenReturn(oldQuiz);
+
+            assertThrows(QuizServiceException.class, () -> menager.aggiornaQuiz(newQuiz, token));
+            verify(daoMock, never()).update(any(), any(), any());
+            verify(quizLogMock, never()).invalida(anyInt());
+        }
+
+        @Test
+        void aggiornaQuiz_ShouldLetDaoCheckOwner_WhenCachedQuizHasNoAuthor() throws Exception {
+            String token = "validToken";
+            Quiz newQuiz = new Quiz();
+            newQuiz.setId(50);
+            Utente u = new Utente();
+            u.setId(3);
+            Quiz oldQuiz = new Quiz();
+            oldQuiz.setId(50);
+
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(u);
+            when(quizLogMock.getQuiz(u, 50)).thenReturn(oldQuiz);
+
+            menager.aggiornaQuiz(newQuiz, token);
+
+            verify(daoMock).update(newQuiz, null, u);
+        }
+
+        //test getStatistiche
+        @Test
+        void getStatistiche_ShouldRebuildOnce_ThenServeFromMemory() throws Exception {
+            String token = "validToken";
+            Utente autore = new Utente();
+            autore.setId(1);
+
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(autore);
+            when(daoMock.findProprietario(7)).thenReturn(1);
+            when(daoMock.findChiaveRisposte(7)).thenReturn(List.of(
+                    new Object[]{1, 10, true, 2, 0, "quiz"},
+                    new Object[]{2, 10, false, 2, 0, "quiz"}));
+            when(faDaoMock.findTotaliByQuiz(7)).thenReturn(new long[]{2, 2});
+            when(rispondeDaoMock.scorriScelteByQuiz(eq(7), any())).thenAnswer(invocation -> {
+                java.util.function.IntConsumer scelta = invocation.getArgument(1);
+                scelta.accept(1);
+                scelta.accept(2);
+                return 2L;
+            });
+
+            StatisticheService.Riepilogo riepilogo = menager.getStatistiche(7, token);
+            menager.getStatistiche(7, token);
+
+            assertEquals(2, riepilogo.completamenti());
+            assertEquals(1.0, riepilogo.punteggioMedio());
+            assertEquals(50.0, riepilogo.domande().get(0).scelte().get(0).percentuale());
+            verify(rispondeDaoMock, times(1)).scorriScelteByQuiz(eq(7), any());
+            verify(daoMock, times(1)).findProprietario(7);
+            verify(daoMock, never()).findById(anyInt());
+        }
+
+        @Test
+        void getStatistiche_ShouldThrowQuizServiceException_WhenUserIsNotTheAuthor() throws Exception {
+            String token = "validToken";
+            Utente altro = new Utente();
+            altro.setId(2);
+            statistiche.ricostruisci(7, 1, List.of(), scelta -> {}, 0, 0);
+
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(altro);
+
+            assertThrows(QuizServiceException.class, () -> menager.getStatistiche(7, token));
+            verifyNoInteractions(daoMock, faDaoMock, rispondeDaoMock);
+        }
+
+        @Test
+        void getStatistiche_ShouldNotRebuild_ForAnotherAuthorsQuiz() throws Exception {
+            String token = "validToken";
+            Utente altro = new Utente();
+            altro.setId(2);
+
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(altro);
+            when(daoMock.findProprietario(7)).thenReturn(1);
+
+            QuizServiceException e = assertThrows(QuizServiceException.class, () -> menager.getStatistiche(7, token));
+            assertFalse(e instanceof QuizNonTrovatoException);
+            verify(daoMock, never()).findChiaveRisposte(anyInt());
+            verifyNoInteractions(faDaoMock, rispondeDaoMock);
+            assertNull(statistiche.get(7));
+        }
+
+        @Test
+        void getStatistiche_ShouldThrowQuizServiceException_WhenQuizDoesNotExist() throws Exception {
+            String token = "validToken";
+            Utente autore = new Utente();
+            autore.setId(1);
+
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(autore);
+            when(daoMock.findProprietario(7)).thenReturn(null);
+
+            assertThrows(QuizNonTrovatoException.class, () -> menager.getStatistiche(7, token));
+            verifyNoInteractions(faDaoMock, rispondeDaoMock);
+            assertNull(statistiche.get(7));
+        }
+
+        @Test
+        void aggiornaQuiz_ShouldDropStatisticsAndClassifica_WhenQuizChanges() throws Exception {
+            String token = "validToken";
+            Utente u = new Utente();
+            Quiz quiz = new Quiz();
+            quiz.setId(7);
+            statistiche.ricostruisci(7, 1, List.of(), scelta -> {}, 0, 0);
+            classifiche.carica(7, List.<Object[]>of(new Object[]{1, "mario", 5, 0L}));
+
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(u);
+
+            menager.aggiornaQuiz(quiz, token);
+
+            assertNull(statistiche.get(7));
+            assertNull(classifiche.get(7));
         }
 
         //test getQuizzes
@@ -354,60 +531,68 @@ public class QuizCreatorMenagerTest {
         }
 
         @Test
-        void getQuizzes_ShouldReturnFromLog_WhenDataIsPresentInLog() throws Exception {
+        void getQuizzes_ShouldReturnProjectionsFromDao_WithoutTouchingQuizLog() throws Exception {
             String token = "validToken";
             Utente u = new Utente();
-            List<Quiz> logList = List.of(new Quiz(), new Quiz());
+            List<QuizDTO> daoList = List.of(new QuizDTO(), new QuizDTO());
 
             when(logMock.isAlive(token)).thenReturn(true);
             when(logMock.getUtente(token)).thenReturn(u);
-            when(quizLogMock.getQuizPaginati(u, 0, 10)).thenReturn(logList);
+            when(daoMock.findAllByUtenteSummary(1, u)).thenReturn(daoList);
 
-            List<Quiz> result = menager.getQuizzes(0, token);
+            List<QuizDTO> result = menager.getQuizzes(1, token);
 
             assertEquals(2, result.size());
-            verifyNoInteractions(daoMock);
+            verify(daoMock).findAllByUtenteSummary(1, u);
+            verifyNoInteractions(quizLogMock);
+        }
+
+        @Test
+        void getQuizzes_ShouldThrowQuizServiceException_WhenExceptionOccurs() throws Exception {
+            String token = "validToken";
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenThrow(new RuntimeException());
+
+            assertThrows(QuizServiceException.class, () -> menager.getQuizzes(0, token));
         }
 
+        //test getQuizzesByCursor
         @Test
-        void getQuizzes_ShouldReturnFromDaoAndPopulateLog_WhenLogIsEmpty() throws Exception {
+        void getQuizzesByCursor_ShouldSeekOwnQuizzesFromDecodedCursor() throws Exception {
             String token = "validToken";
             Utente u = new Utente();
-            Quiz q1 = new Quiz();
-            List<Quiz> daoList = List.of(q1);
+            QuizDTO q1 = new QuizDTO(31, "titolo", "desc", "facile", "10", 3, false);
 
             when(logMock.isAlive(token)).thenReturn(true);
             when(logMock.getUtente(token)).thenReturn(u);
-            when(quizLogMock.getQuizPaginati(u, 0, 10)).thenReturn(Collections.emptyList());
-            when(daoMock.findAllByUtente(0, u)).thenReturn(daoList);
+            when(daoMock.findAllByUtenteAfter(30, PageCursor.DIMENSIONE_PAGINA, u)).thenReturn(List.of(q1));
 
-            List<Quiz> result = menager.getQuizzes(0, token);
+            List<QuizDTO> result = menager.getQuizzesByCursor(PageCursor.encode(30), token);
 
             assertEquals(1, result.size());
-            verify(daoMock).findAllByUtente(0, u);
-            verify(quizLogMock).aggiungi(u, q1);
+            verifyNoInteractions(quizLogMock);
         }
 
         @Test
-        void getQuizzes_ShouldThrowQuizServiceException_WhenExceptionOccurs() throws Exception {
+        void getQuizzesByCursor_ShouldThrowQuizServiceException_WhenCursorIsInvalid() throws Exception {
             String token = "validToken";
             when(logMock.isAlive(token)).thenReturn(true);
-            when(logMock.getUtente(token)).thenThrow(new RuntimeException());
+            when(logMock.getUtente(token)).thenReturn(new Utente());
 
-            assertThrows(QuizServiceException.class, () -> menager.getQuizzes(0, token));
+            assertThrows(QuizServiceException.class, () -> menager.getQuizzesByCursor("???", token));
+            verifyNoInteractions(daoMock);
         }
 
         @Test
-        void getQuizzes_ShouldReturnEmptyList_WhenBothLogAndDaoAreEmpty() throws Exception {
+        void getQuizzes_ShouldReturnEmptyList_WhenDaoIsEmpty() throws Exception {
             String token = "validToken";
             Utente u = new Utente();
 
             when(logMock.isAlive(token)).thenReturn(true);
             when(logMock.getUtente(token)).thenReturn(u);
-            when(quizLogMock.getQuizPaginati(u, 0, 10)).thenReturn(Collections.emptyList());
-            when(daoMock.findAllByUtente(0, u)).thenReturn(Collections.emptyList());
+            when(daoMock.findAllByUtenteSummary(1, u)).thenReturn(Collections.emptyList());
 
-            List<Quiz> result = menager.getQuizzes(0, token);
+            List<QuizDTO> result = menager.getQuizzes(1, token);
 
             assertTrue(result.isEmpty());
         }
@@ -458,8 +643,17 @@ public class QuizCreatorMenagerTest {
             injectMethod(menager, crypt, "crypt");
             injectMethod(menager, log, "logBeble");
             injectMethod(menager, service, "accessControl");
+            injectMethod(menager, new SessionPrincipal(), "principal");
             injectMethod(menager, dao, "dao");
             injectMethod(menager, quizLog, "quizLog");
+            injectMethod(menager, new ChiaveLog(), "chiavi");
+            injectMethod(menager, new PermessoLog(), "permessi");
+            injectMethod(menager, new ClassificaService(), "classifiche");
+            injectMethod(menager, new StatisticheService(), "statistiche");
+            injectMethod(menager, new FaDAO(em), "daoFa");
+            RispondeDAO daoRisponde = new RispondeDAO();
+            injectMethod(daoRisponde, em, "em");
+            injectMethod(menager, daoRisponde, "daoRisponde");
 
             alreadyLogTestUnauthorized = creaUtenteDiTest("Mario", "Rossi", "mariorossi", "hash123");
             alreadyLogTest = creaUtenteDiTest("Pippo", "Alberti", "pippo12", "sc2435");
@@ -549,6 +743,31 @@ public class QuizCreatorMenagerTest {
             assertNull(quizLog.getQuiz(alreadyLogTest, id));
         }
 
+        @Test
+        @Tag("integration")
+        void getStatistiche_Integrazione_ScorreRispondeDelQuiz() throws Exception {
+            Quiz quiz = em.createQuery("SELECT q FROM Quiz q WHERE q.titolo = 'Quiz 1'", Quiz.class).getSingleResult();
+            Risposta giusta = quiz.getDomande().get(0).getRisposte().stream()
+                    .filter(Risposta::getFlagRispostaCorretta).findFirst().orElseThrow();
+
+            em.getTransaction().begin();
+            Fa fa = new Fa(alreadyLogTestUnauthorized, quiz, 1);
+            em.persist(fa);
+            Risponde scelta = new Risponde(giusta, alreadyLogTestUnauthorized, quiz.getTitolo(), null);
+            scelta.setTentativo(fa);
+            em.persist(scelta);
+            em.getTransaction().commit();
+
+            StatisticheService.Riepilogo riepilogo = menager.getStatistiche(quiz.getId(), realToken);
+
+            assertEquals(1, riepilogo.completamenti());
+            assertEquals(1.0, riepilogo.punteggioMedio());
+            StatisticheService.StatDomanda domanda = riepilogo.domande().get(0);
+            assertEquals(1, domanda.risposte());
+            assertTrue(domanda.scelte().contains(new StatisticheService.StatRisposta(giusta.getId(), 1, 100.0)));
+            assertThrows(QuizServiceException.class, () -> menager.getStatistiche(quiz.getId(), realTokenUnauthorized));
+        }
+
         @Test
         @Tag("integration")
         void aggiornaQuiz_Integrazione_ModificaDatiESincronizzazioneLog() throws Exception {
@@ -565,22 +784,62 @@ public class QuizCreatorMenagerTest {
             em.clear();
             Quiz aggiornato = em.find(Quiz.class, quiz.getId());
             assertEquals("Titolo Modificato", aggiornato.getTitolo());
-            assertEquals("Titolo Modificato", quizLog.getQuiz(alreadyLogTest, quiz.getId()).getTitolo());
+            // tolto dal catalogo condiviso: chi lo legge dopo lo ricarica dal database
+            assertNull(quizLog.getQuiz(alreadyLogTest, quiz.getId()));
+        }
+
+        @Test
+        @Tag("integration")
+        void aggiornaQuiz_Integrazione_QuizInCacheDiUnAltroAutore() throws Exception {
+            Quiz quiz = creaQuizDiTest(alreadyLogTest, "Titolo Originale", "Desc");
+            em.getTransaction().begin();
+            em.persist(quiz);
+            em.getTransaction().commit();
+            // il catalogo è condiviso: anche chi non è l'autore può averlo nella sua vista
+            quizLog.aggiungi(alreadyLogTestUnauthorized, quiz);
+
+            Quiz modifica = creaQuizDiTest(alreadyLogTestUnauthorized, "Titolo Rubato", "Desc");
+            modifica.setId(quiz.getId());
+
+            String altroCreatore = jwtProvider.generateToken(alreadyLogTestUnauthorized, "creatore");
+            log.sostituisci(realTokenUnauthorized, altroCreatore);
+
+            assertThrows(QuizServiceException.class, () -> menager.aggiornaQuiz(modifica, altroCreatore));
+
+            em.clear();
+            assertEquals("Titolo Originale", em.find(Quiz.class, quiz.getId()).getTitolo());
         }
 
         @Test
         @Tag("integration")
         void getQuizzes_Integrazione_Successo() throws Exception {
-            List<Quiz> result = menager.getQuizzes(1, realToken);
+            List<QuizDTO> result = menager.getQuizzes(1, realToken);
 
             assertEquals(10, result.size());
-            assertFalse(quizLog.getQuizPaginati(alreadyLogTest, 1, 10).isEmpty());
+            assertEquals("Quiz 1", result.get(0).getTitolo());
+            assertFalse(result.get(0).getPasswordRichiesta());
+        }
+
+        @Test
+        @Tag("integration")
+        void getQuizzesByCursor_Integrazione_PaginaSuccessivaSenzaSovrapposizioni() throws Exception {
+            List<QuizDTO> pagina1 = menager.getQuizzesByCursor(null, realToken);
+            String next = PageCursor.next(pagina1);
+
+            assertEquals(10, pagina1.size());
+            assertNotNull(next);
+
+            List<QuizDTO> pagina2 = menager.getQuizzesByCursor(next, realToken);
+
+            assertEquals(5, pagina2.size());
+            assertTrue(pagina2.get(0).getId() > pagina1.get(9).getId());
+            assertNull(PageCursor.next(pagina2));
         }
 
         @Test
         @Tag("integration")
         void getQuizzes_Integrazione_PaginaVuota() throws Exception {
-            List<Quiz> result = menager.getQuizzes(10, realToken);
+            List<QuizDTO> result = menager.getQuizzes(10, realToken);
             assertTrue(result.isEmpty());
         }
 
@@ -2,16 +2,19 @@ package model.menager;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
-import jakarta.persistence.NoResultException;
 import jakarta.persistence.Persistence;
 import model.dao.FaDAO;
 import model.dao.QuizDAO;
-import model.dao.RispondeDAO;
+import model.dto.QuizDTO;
 import model.entity.*;
 import model.exception.AppException;
+import model.exception.CodaPienaException;
 import model.exception.InvalidRole;
+import model.exception.QuizGiaCompletatoException;
 import model.exception.QuizServiceException;
 import model.exception.QuizUseException;
+import model.exception.TentativoRifiutatoException;
+import model.exception.TroppiTentativiException;
 import model.mapper.EntityRefresher;
 import model.utility.*;
 import org.junit.jupiter.api.*;
@@ -58,7 +61,21 @@ public class QuizUserMenagerTest {
         FaDAO faDAOMock;
 
         @Mock
-        RispondeDAO rispondeDAOMock;
+        ChiaveLog chiaviMock;
+
+        @Mock
+        CodaTentativi codaMock;
+
+        @Mock
+        PermessoLog permessiMock;
+
+        SessionPrincipal principal;
+
+        CompletatiLog completati;
+
+        ClassificaService classifiche;
+
+        StatisticheService statistiche;
 
         @BeforeEach
         void setup() throws Exception {
@@ -68,9 +85,19 @@ public class QuizUserMenagerTest {
             injectMethod(menager, logMock, "logBeble");
             injectMethod(menager, quizLogMock, "quizLog");
             injectMethod(menager, serviceMock, "accessControl");
+            principal = new SessionPrincipal();
+            injectMethod(menager, principal, "principal");
             injectMethod(menager, quizDAOMock, "dao");
             injectMethod(menager, faDAOMock, "daoFa");
-            injectMethod(menager, rispondeDAOMock, "daoRisponde");
+            injectMethod(menager, chiaviMock, "chiavi");
+            injectMethod(menager, codaMock, "codaTentativi");
+            injectMethod(menager, permessiMock, "permessi");
+            completati = new CompletatiLog();
+            injectMethod(menager, completati, "completati");
+            classifiche = new ClassificaService();
+            injectMethod(menager, classifiche, "classifiche");
+            statistiche = new StatisticheService();
+            injectMethod(menager, statistiche, "statistiche");
         }
 
         //test downUserRole
@@ -117,9 +144,9 @@ public class QuizUserMenagerTest {
             assertNotNull(result);
             assertEquals(newToken, result);
 
-            verify(logMock).rimuovi(token);
-            verify(quizLogMock).clearQuiz(test);
-            verify(logMock).aggiungi(eq(newToken), any(Utente.class));
+            verify(logMock).sostituisci(token, newToken);
+            verify(logMock, never()).rimuovi(anyString());
+            verifyNoInteractions(quizLogMock);
         }
 
         //test getQuizzes
@@ -149,38 +176,170 @@ public class QuizUserMenagerTest {
         }
 
         @Test
-        void getQuizzes_ShouldReturnQuizzesFromLog_WhenLogIsNotEmpty() throws Exception {
+        void getQuizzes_ShouldReturnProjectionsFromDao_WithoutTouchingQuizLog() throws Exception {
             String token = "validToken";
-            Utente u = new Utente();
-            List<Quiz> logQuizzes = List.of(new Quiz(), new Quiz());
+            List<QuizDTO> summaries = List.of(new QuizDTO(), new QuizDTO());
 
             when(logMock.isAlive(token)).thenReturn(true);
-            when(logMock.getUtente(token)).thenReturn(u);
-            when(quizLogMock.getQuizPaginati(u, 0, 10)).thenReturn(logQuizzes);
+            when(logMock.getUtente(token)).thenReturn(utenteConId(100));
+            when(quizDAOMock.findAllSummary(1, 10)).thenReturn(summaries);
 
-            List<Quiz> result = menager.getQuizzes(0, token);
+            List<QuizDTO> result = menager.getQuizzes(1, token);
 
             assertEquals(2, result.size());
-            verifyNoInteractions(quizDAOMock);
+            verifyNoInteractions(quizLogMock);
         }
 
         @Test
-        void getQuizzes_ShouldFetchFromDbAndPopulateLog_WhenLogIsEmpty() throws Exception {
+        void getQuizzes_ShouldSkipSessionLookup_WhenPrincipalIsResolved() throws Exception {
             String token = "validToken";
             Utente u = new Utente();
-            Quiz dbQuiz = new Quiz();
-            dbQuiz.setId(1);
-            List<Quiz> dbQuizzes = List.of(dbQuiz);
+            u.setId(1);
+            List<QuizDTO> summaries = List.of(new QuizDTO());
+            principal.resolve(token, 1, "compilatore", null, u);
+
+            doCallRealMethod().when(serviceMock).checkCompilatore(principal);
+            when(quizDAOMock.findAllSummary(1, 10)).thenReturn(summaries);
+
+            List<QuizDTO> result = menager.getQuizzes(1, token);
+
+            assertEquals(1, result.size());
+            verifyNoInteractions(logMock);
+        }
+
+        @Test
+        void getQuizzes_ShouldThrowQuizUseException_WhenPrincipalRoleIsNotCompilatore() throws Exception {
+            String token = "validToken";
+            principal.resolve(token, 1, "creatore", null, new Utente());
+
+            doCallRealMethod().when(serviceMock).checkCompilatore(principal);
+
+            assertThrows(QuizUseException.class, () -> menager.getQuizzes(1, token));
+            verifyNoInteractions(logMock);
+        }
+
+        @Test
+        void getQuizzes_ShouldThrowQuizUseException_WhenDaoRejectsPage() throws Exception {
+            String token = "validToken";
 
             when(logMock.isAlive(token)).thenReturn(true);
-            when(logMock.getUtente(token)).thenReturn(u);
-            when(quizLogMock.getQuizPaginati(u, 0, 10)).thenReturn(null);
-            when(quizDAOMock.findAll(0, 10)).thenReturn(dbQuizzes);
+            when(quizDAOMock.findAllSummary(0, 10)).thenThrow(new AppException("Pagina invalida"));
+
+            assertThrows(QuizUseException.class, () -> menager.getQuizzes(0, token));
+        }
+
+        //test getQuizzesByCursor
+        @Test
+        void getQuizzesByCursor_ShouldSeekFromDecodedCursor() throws Exception {
+            String token = "validToken";
+            QuizDTO summary = new QuizDTO(21, "titolo", "desc", "facile", "10", 3, false);
+
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(utenteConId(100));
+            when(quizDAOMock.findAllAfter(20, PageCursor.DIMENSIONE_PAGINA)).thenReturn(List.of(summary));
 
-            List<Quiz> result = menager.getQuizzes(0, token);
+            List<QuizDTO> result = menager.getQuizzesByCursor(PageCursor.encode(20), token);
 
             assertEquals(1, result.size());
-            verify(quizLogMock).aggiungi(u, dbQuiz);
+            verifyNoInteractions(quizLogMock);
+        }
+
+        @Test
+        void getQuizzesByCursor_ShouldStartFromFirstPage_WhenCursorIsEmpty() throws Exception {
+            String token = "validToken";
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(utenteConId(100));
+            when(quizDAOMock.findAllAfter(0, PageCursor.DIMENSIONE_PAGINA)).thenReturn(List.of());
+
+            assertTrue(menager.getQuizzesByCursor("", token).isEmpty());
+        }
+
+        @Test
+        void getQuizzes_ShouldFlagCompletedQuizzes_FromLoadedBitmap() throws Exception {
+            String token = "validToken";
+            QuizDTO fatto = new QuizDTO(3, "a", "d", "facile", "10", 1, false);
+            QuizDTO nuovo = new QuizDTO(4, "b", "d", "facile", "10", 1, false);
+            completati.carica(100, List.of(3));
+
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(utenteConId(100));
+            when(quizDAOMock.findAllSummary(1, 10)).thenReturn(List.of(fatto, nuovo));
+
+            List<QuizDTO> result = menager.getQuizzes(1, token);
+
+            assertEquals(List.of(true, false), result.stream().map(QuizDTO::getCompletato).toList());
+            assertEquals(1, menager.getQuizzes(1, true, token).size());
+            verify(faDAOMock, never()).findQuizIdsByUtente(anyInt());
+        }
+
+        @Test
+        void getQuizzes_ShouldLoadBitmapOnce_WhenUserIsNotLoaded() throws Exception {
+            String token = "validToken";
+
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(utenteConId(100));
+            when(faDAOMock.findQuizIdsByUtente(100)).thenReturn(List.of(3));
+            when(quizDAOMock.findAllSummary(1, 10)).thenReturn(List.of(new QuizDTO(3, "a", "d", "facile", "10", 1, false)));
+
+            assertEquals(true, menager.getQuizzes(1, token).get(0).getCompletato());
+            menager.getQuizzes(1, token);
+
+            verify(faDAOMock, times(1)).findQuizIdsByUtente(100);
+            assertTrue(completati.isCompletato(100, 3));
+        }
+
+        @Test
+        void getQuizzesByCursor_ShouldFillPage_WhenHidingCompletedQuizzes() throws Exception {
+            String token = "validToken";
+            // completati i quiz 1..5: la prima lettura chiede la pagina più i 5 da saltare
+            completati.carica(100, List.of(1, 2, 3, 4, 5));
+            List<QuizDTO> catalogo = new ArrayList<>();
+            for (int id = 1; id <= 15; id++) {
+                catalogo.add(new QuizDTO(id, "q" + id, "d", "facile", "10", 1, false));
+            }
+
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(utenteConId(100));
+            when(quizDAOMock.findAllAfter(0, PageCursor.DIMENSIONE_PAGINA + 5)).thenReturn(catalogo);
+
+            List<QuizDTO> result = menager.getQuizzesByCursor("", true, token);
+
+            assertEquals(PageCursor.DIMENSIONE_PAGINA, result.size());
+            assertEquals(6, result.get(0).getId());
+            assertEquals(15, result.get(result.size() - 1).getId());
+            assertTrue(result.stream().noneMatch(QuizDTO::getCompletato));
+            verify(quizDAOMock, times(1)).findAllAfter(anyInt(), anyInt());
+        }
+
+        @Test
+        void getQuizzesByCursor_ShouldReadAgainFromLastRow_WhenReadIsCapped() throws Exception {
+            String token = "validToken";
+            List<Integer> fatti = new ArrayList<>();
+            List<QuizDTO> primaLettura = new ArrayList<>();
+            for (int id = 1; id <= QuizUserMenager.MAX_LETTURA_CATALOGO; id++) {
+                fatti.add(id);
+                primaLettura.add(new QuizDTO(id, "q" + id, "d", "facile", "10", 1, false));
+            }
+            completati.carica(100, fatti);
+            QuizDTO libero = new QuizDTO(QuizUserMenager.MAX_LETTURA_CATALOGO + 1, "libero", "d", "facile", "10", 1, false);
+
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(utenteConId(100));
+            when(quizDAOMock.findAllAfter(0, QuizUserMenager.MAX_LETTURA_CATALOGO)).thenReturn(primaLettura);
+            when(quizDAOMock.findAllAfter(QuizUserMenager.MAX_LETTURA_CATALOGO, PageCursor.DIMENSIONE_PAGINA)).thenReturn(List.of(libero));
+
+            List<QuizDTO> result = menager.getQuizzesByCursor("", true, token);
+
+            assertEquals(List.of(libero), result);
+        }
+
+        @Test
+        void getQuizzesByCursor_ShouldThrowQuizUseException_WhenCursorIsInvalid() throws Exception {
+            String token = "validToken";
+            when(logMock.isAlive(token)).thenReturn(true);
+
+            assertThrows(QuizUseException.class, () -> menager.getQuizzesByCursor("non-un-cursore", token));
+            verifyNoInteractions(quizDAOMock);
         }
 
         @Test
@@ -222,7 +381,7 @@ public class QuizUserMenagerTest {
             when(logMock.isAlive(token)).thenReturn(true);
             when(logMock.getUtente(token)).thenReturn(u);
             when(quizLogMock.getQuiz(u, quizId)).thenReturn(null);
-            when(quizDAOMock.findById(quizId)).thenReturn(null);
+            when(quizDAOMock.findGraphById(quizId)).thenReturn(null);
 
             assertThrows(QuizUseException.class, () -> menager.startQuiz(inputQuiz, password, token));
         }
@@ -238,6 +397,7 @@ public class QuizUserMenagerTest {
             inputQuiz.setId(quizId);
 
             Utente u = new Utente();
+            u.setId(100);
 
             Quiz foundQuiz = new Quiz();
             foundQuiz.setId(quizId);
@@ -246,10 +406,65 @@ public class QuizUserMenagerTest {
             when(logMock.isAlive(token)).thenReturn(true);
             when(logMock.getUtente(token)).thenReturn(u);
             when(quizLogMock.getQuiz(u, quizId)).thenReturn(null);
-            when(quizDAOMock.findById(quizId)).thenReturn(foundQuiz);
+            when(quizDAOMock.findGraphById(quizId)).thenReturn(foundQuiz);
             when(cryptMock.verificaPassword(wrongPassword, correctPassword)).thenReturn(false);
 
             assertThrows(QuizUseException.class, () -> menager.startQuiz(inputQuiz, wrongPassword, token));
+            verify(permessiMock).tentativo(100, quizId);
+            verify(permessiMock, never()).concedi(anyInt(), anyInt(), anyLong());
+        }
+
+        @Test
+        void startQuizWhitPassword_ShouldSkipHash_WhenQuizIsAlreadyUnlocked() throws Exception {
+            String token = "validToken";
+            Integer quizId = 1;
+
+            Quiz inputQuiz = new Quiz();
+            inputQuiz.setId(quizId);
+
+            Utente u = new Utente();
+            u.setId(100);
+
+            Quiz foundQuiz = new Quiz();
+            foundQuiz.setId(quizId);
+            foundQuiz.setPasswordQuiz("hash");
+            foundQuiz.setDomande(List.of(new Domanda()));
+
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(u);
+            when(quizLogMock.getQuiz(u, quizId)).thenReturn(foundQuiz);
+            when(permessiMock.isConcesso(100, quizId)).thenReturn(true);
+            when(faDAOMock.existsByUtenteQuiz(anyInt(), anyInt())).thenReturn(false);
+
+            List<Domanda> result = menager.startQuiz(inputQuiz, "qualsiasi", token);
+
+            assertEquals(1, result.size());
+            verify(cryptMock, never()).verificaPassword(anyString(), anyString());
+            verify(permessiMock, never()).tentativo(anyInt(), anyInt());
+        }
+
+        @Test
+        void startQuizWhitPassword_ShouldPropagateTroppiTentativi_WhenThrottled() throws Exception {
+            String token = "validToken";
+            Integer quizId = 1;
+
+            Quiz inputQuiz = new Quiz();
+            inputQuiz.setId(quizId);
+
+            Utente u = new Utente();
+            u.setId(100);
+
+            Quiz foundQuiz = new Quiz();
+            foundQuiz.setId(quizId);
+            foundQuiz.setPasswordQuiz("hash");
+
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(u);
+            when(quizLogMock.getQuiz(u, quizId)).thenReturn(foundQuiz);
+            doThrow(new TroppiTentativiException("troppi", 60)).when(permessiMock).tentativo(100, quizId);
+
+            assertThrows(TroppiTentativiException.class, () -> menager.startQuiz(inputQuiz, "sbagliata", token));
+            verify(cryptMock, never()).verificaPassword(anyString(), anyString());
         }
 
         @Test
@@ -274,13 +489,15 @@ public class QuizUserMenagerTest {
             when(logMock.getUtente(token)).thenReturn(u);
             when(quizLogMock.getQuiz(u, quizId)).thenReturn(foundQuiz);
             when(cryptMock.verificaPassword(password, password)).thenReturn(true);
-            when(faDAOMock.findByUtenteQuiz(any(Quiz.class), any(Utente.class)))
-                    .thenThrow(new NoResultException());
+            when(faDAOMock.existsByUtenteQuiz(anyInt(), anyInt())).thenReturn(false);
+
+            when(permessiMock.getEpoca()).thenReturn(3L);
 
             List<Domanda> result = menager.startQuiz(inputQuiz, password, token);
 
             assertNotNull(result);
             assertEquals(expectedDomande.size(), result.size());
+            verify(permessiMock).concedi(100, quizId, 3L);
         }
 
         //test startQuiz
@@ -312,7 +529,7 @@ public class QuizUserMenagerTest {
             when(logMock.isAlive(token)).thenReturn(true);
             when(logMock.getUtente(token)).thenReturn(u);
             when(quizLogMock.getQuiz(any(Utente.class), eq(quizId))).thenReturn(null);
-            when(quizDAOMock.findById(quizId)).thenReturn(null);
+            when(quizDAOMock.findGraphById(quizId)).thenReturn(null);
 
             assertThrows(QuizUseException.class, () -> menager.startQuiz(inputQuiz, token));
         }
@@ -356,8 +573,7 @@ public class QuizUserMenagerTest {
             when(logMock.isAlive(token)).thenReturn(true);
             when(logMock.getUtente(token)).thenReturn(u);
             when(quizLogMock.getQuiz(any(Utente.class), eq(quizId))).thenReturn(foundQuiz);
-            when(faDAOMock.findByUtenteQuiz(any(Quiz.class), any(Utente.class)))
-                    .thenThrow(new NoResultException());
+            when(faDAOMock.existsByUtenteQuiz(anyInt(), anyInt())).thenReturn(false);
 
             List<Domanda> result = menager.startQuiz(inputQuiz, token);
 
@@ -365,7 +581,88 @@ public class QuizUserMenagerTest {
             assertEquals(expectedDomande.size(), result.size());
         }
 
+        @Test
+        void startQuiz_ShouldSkipDatabase_WhenCompletionIsKnown() throws Exception {
+            String token = "validToken";
+            Integer quizId = 1;
+            Quiz inputQuiz = new Quiz();
+            inputQuiz.setId(quizId);
+            Utente u = new Utente();
+            u.setId(100);
+
+            Quiz foundQuiz = new Quiz();
+            foundQuiz.setId(quizId);
+            foundQuiz.setDomande(new ArrayList<>());
+
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(u);
+            when(quizLogMock.getQuiz(any(Utente.class), eq(quizId))).thenReturn(foundQuiz);
+
+            completati.carica(100, List.of(quizId));
+            assertNull(menager.startQuiz(inputQuiz, token));
+
+            completati.rimuovi(100);
+            completati.carica(100, List.of(2));
+            assertNotNull(menager.startQuiz(inputQuiz, token));
+
+            verifyNoInteractions(faDAOMock);
+        }
+
+        @Test
+        void startQuiz_ShouldReloadFromDao_WhenCachedQuizGraphIsNotLoaded() throws Exception {
+            String token = "validToken";
+            Integer quizId = 1;
+            Quiz inputQuiz = new Quiz();
+            inputQuiz.setId(quizId);
+            Utente u = new Utente();
+            u.setId(100);
+
+            // quiz in cache detached con domande mai caricate
+            Quiz cachedQuiz = new Quiz();
+            cachedQuiz.setId(quizId);
+            cachedQuiz.setDomande(new org.hibernate.collection.spi.PersistentBag<>());
+
+            Quiz dbQuiz = new Quiz();
+            dbQuiz.setId(quizId);
+            Domanda d1 = new Domanda();
+            d1.setRisposte(new ArrayList<>());
+            dbQuiz.setDomande(List.of(d1));
+
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(u);
+            when(quizLogMock.getQuiz(any(Utente.class), eq(quizId))).thenReturn(cachedQuiz);
+            when(quizDAOMock.findGraphById(quizId)).thenReturn(dbQuiz);
+            when(faDAOMock.existsByUtenteQuiz(anyInt(), anyInt())).thenReturn(false);
+
+            List<Domanda> result = menager.startQuiz(inputQuiz, token);
+
+            assertEquals(1, result.size());
+            verify(quizDAOMock).findGraphById(quizId);
+        }
+
         //test completaQuiz
+        private Utente utenteConId(int id) {
+            Utente u = new Utente();
+            u.setId(id);
+            return u;
+        }
+
+        private Object[] riga(int rispostaId, int domandaId, boolean corretta, int giusta, int sbagliata) {
+            return new Object[]{rispostaId, domandaId, corretta, giusta, sbagliata, "Quiz Test"};
+        }
+
+        private Risposta scelta(int rispostaId, Integer domandaId, boolean flagClient) {
+            Risposta r = new Risposta();
+            r.setId(rispostaId);
+            if (domandaId != null) {
+                Domanda d = new Domanda();
+                d.setId(domandaId);
+                r.setDomanda(d);
+            }
+            r.setFlagRispostaCorretta(flagClient);
+            return r;
+        }
+
         @Test
         void completaQuiz_ShouldThrowQuizUseException_WhenQuizDoesNotExist() throws Exception {
             String token = "validToken";
@@ -376,10 +673,10 @@ public class QuizUserMenagerTest {
 
             when(logMock.isAlive(token)).thenReturn(true);
             when(logMock.getUtente(token)).thenReturn(u);
-            when(quizLogMock.getQuiz(any(Utente.class), eq(quizId))).thenReturn(null);
-            when(quizDAOMock.findById(quizId)).thenReturn(null);
+            when(quizDAOMock.findChiaveRisposte(quizId)).thenReturn(new ArrayList<>());
 
             assertThrows(QuizUseException.class, () -> menager.completaQuiz(inputQuiz, new ArrayList<>(), token));
+            verify(chiaviMock, never()).aggiungi(anyInt(), any(), anyLong());
         }
 
         @Test
@@ -389,13 +686,12 @@ public class QuizUserMenagerTest {
             Quiz inputQuiz = new Quiz();
             inputQuiz.setId(quizId);
             Utente u = new Utente();
-            Quiz foundQuiz = new Quiz();
-            foundQuiz.setId(quizId);
-            foundQuiz.setDomande(null);
+            List<Object[]> righe = new ArrayList<>();
+            righe.add(riga(500, 50, true, 2, -1));
 
             when(logMock.isAlive(token)).thenReturn(true);
             when(logMock.getUtente(token)).thenReturn(u);
-            when(quizLogMock.getQuiz(any(Utente.class), eq(quizId))).thenReturn(foundQuiz);
+            when(quizDAOMock.findChiaveRisposte(quizId)).thenReturn(righe);
 
             assertThrows(QuizUseException.class, () -> menager.completaQuiz(inputQuiz, null, token));
         }
@@ -404,120 +700,370 @@ public class QuizUserMenagerTest {
         void completaQuiz_ShouldCalculateScoreAndSave_WhenHappyPath() throws Exception {
             String token = "validToken";
             Integer quizId = 1;
-
+            Quiz inputQuiz = new Quiz();
+            inputQuiz.setId(quizId);
             Utente u = new Utente();
             u.setId(100);
+            Quiz reference = new Quiz();
+            reference.setId(quizId);
+            List<Object[]> righe = new ArrayList<>();
+            righe.add(riga(500, 50, true, 2, -1));
+            righe.add(riga(501, 50, false, 2, -1));
 
-            Domanda d1 = new Domanda();
-            d1.setId(50);
-            d1.setPuntiRispostaCorretta(2);
-            d1.setPuntiRispostaSbagliata(-1);
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(u);
+            when(chiaviMock.getEpoca()).thenReturn(7L);
+            when(quizDAOMock.findChiaveRisposte(quizId)).thenReturn(righe);
+            when(quizDAOMock.getReference(quizId)).thenReturn(reference);
 
-            Quiz foundQuiz = new Quiz();
-            foundQuiz.setId(quizId);
-            foundQuiz.setTitolo("Quiz Test");
-            foundQuiz.setDomande(List.of(d1));
+            // il flag del client è falso ma la risposta 500 è quella corretta
+            int result = menager.completaQuiz(inputQuiz, List.of(scelta(500, 50, false)), token);
 
-            Risposta rGiusta = new Risposta();
-            rGiusta.setId(500);
-            rGiusta.setFlagRispostaCorretta(true);
-            rGiusta.setDomanda(d1); // Necessario per punteggioRisposta
+            assertEquals(2, result);
+            verify(chiaviMock).aggiungi(eq(quizId), any(ChiaveRisposte.class), eq(7L));
+            verify(faDAOMock).insertTentativo(argThat(fa -> fa.getQuiz() == reference && fa.getPunteggio() == 2),
+                    argThat(l -> l.size() == 1 && "Quiz Test".equals(l.get(0).getQuiz())));
+            verify(quizDAOMock, never()).findGraphById(anyInt());
+        }
 
-            List<Risposta> risposteClient = List.of(rGiusta);
+        @Test
+        void completaQuiz_ShouldEnqueueAttempt_WhenWriteBehindIsActive() throws Exception {
+            String token = "validToken";
+            Integer quizId = 1;
+            Quiz inputQuiz = new Quiz();
+            inputQuiz.setId(quizId);
+            Utente u = new Utente();
+            u.setId(100);
+            List<Object[]> righe = new ArrayList<>();
+            righe.add(riga(500, 50, true, 2, -1));
 
             when(logMock.isAlive(token)).thenReturn(true);
             when(logMock.getUtente(token)).thenReturn(u);
-            when(quizLogMock.getQuiz(any(Utente.class), eq(quizId))).thenReturn(foundQuiz);
+            when(quizDAOMock.findChiaveRisposte(quizId)).thenReturn(righe);
+            when(codaMock.isAttiva()).thenReturn(true);
+            completati.carica(100, List.of());
 
-            int result = menager.completaQuiz(foundQuiz, risposteClient, token);
+            int result = menager.completaQuiz(inputQuiz, List.of(scelta(500, 50, false)), token);
 
             assertEquals(2, result);
-            verify(faDAOMock).insert(any(Fa.class));
-            verify(rispondeDAOMock).insertAll(anyList());
+            verify(codaMock).accoda(argThat(fa -> fa.getPunteggio() == 2), argThat(l -> l.size() == 1));
+            verifyNoInteractions(faDAOMock);
         }
 
         @Test
-        void completaQuiz_ShouldThrowQuizUseException_WhenDomandaNonAppartieneAlQuiz() throws Exception {
+        void completaQuiz_ShouldMarkQuizAsCompleted_BeforeAttemptIsWritten() throws Exception {
             String token = "validToken";
             Integer quizId = 1;
+            Quiz inputQuiz = new Quiz();
+            inputQuiz.setId(quizId);
             Utente u = new Utente();
+            u.setId(100);
+            List<Object[]> righe = new ArrayList<>();
+            righe.add(riga(500, 50, true, 2, -1));
 
-            Domanda dAppartenente = new Domanda();
-            dAppartenente.setId(1);
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(u);
+            when(quizDAOMock.findChiaveRisposte(quizId)).thenReturn(righe);
+            when(codaMock.isAttiva()).thenReturn(true);
+            completati.carica(100, List.of());
 
-            Quiz foundQuiz = new Quiz();
-            foundQuiz.setId(quizId);
-            foundQuiz.setDomande(List.of(dAppartenente));
+            menager.completaQuiz(inputQuiz, List.of(scelta(500, 50, false)), token);
 
-            Domanda dEstranea = new Domanda();
-            dEstranea.setId(999); // ID non presente nel quiz
+            // il tentativo è ancora in coda ma il quiz risulta già completato
+            assertTrue(completati.isCompletato(100, quizId));
+        }
 
-            Risposta rClient = new Risposta();
-            rClient.setDomanda(dEstranea);
+        @Test
+        void completaQuiz_ShouldUpdateLoadedLeaderboard() throws Exception {
+            String token = "validToken";
+            Integer quizId = 1;
+            Quiz inputQuiz = new Quiz();
+            inputQuiz.setId(quizId);
+            Utente u = utenteConId(100);
+            u.setUsername("mario");
+            List<Object[]> righe = new ArrayList<>();
+            righe.add(riga(500, 50, true, 2, -1));
 
             when(logMock.isAlive(token)).thenReturn(true);
             when(logMock.getUtente(token)).thenReturn(u);
-            when(quizLogMock.getQuiz(any(Utente.class), eq(quizId))).thenReturn(foundQuiz);
+            when(quizDAOMock.findChiaveRisposte(quizId)).thenReturn(righe);
+            when(codaMock.isAttiva()).thenReturn(true);
+            classifiche.carica(quizId, List.<Object[]>of(new Object[]{7, "luca", 1, 0L}));
+
+            menager.completaQuiz(inputQuiz, List.of(scelta(500, 50, true)), token);
 
-            assertThrows(QuizUseException.class, () -> menager.completaQuiz(foundQuiz, List.of(rClient), token));
+            assertEquals(new Classifica.Voce(1, "mario", 2), classifiche.get(quizId).posizione(100));
         }
 
         @Test
-        void completaQuiz_ShouldThrowQuizUseException_WhenDomandaRispostaPiuVolte() throws Exception {
+        void completaQuiz_ShouldUpdateLoadedStatistics() throws Exception {
             String token = "validToken";
             Integer quizId = 1;
-            Utente u = new Utente();
+            Quiz inputQuiz = new Quiz();
+            inputQuiz.setId(quizId);
+            Utente u = utenteConId(100);
+            List<Object[]> righe = new ArrayList<>();
+            righe.add(riga(500, 50, true, 2, -1));
 
-            Domanda d1 = new Domanda();
-            d1.setId(50);
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(u);
+            when(quizDAOMock.findChiaveRisposte(quizId)).thenReturn(righe);
+            when(codaMock.isAttiva()).thenReturn(true);
+            statistiche.ricostruisci(quizId, 1, righe, scorri -> {}, 0, 0);
 
-            Quiz foundQuiz = new Quiz();
-            foundQuiz.setId(quizId);
-            foundQuiz.setDomande(List.of(d1));
+            menager.completaQuiz(inputQuiz, List.of(scelta(500, 50, true)), token);
+
+            StatisticheService.Riepilogo riepilogo = statistiche.get(quizId).riepilogo();
+            assertEquals(1, riepilogo.completamenti());
+            assertEquals(2.0, riepilogo.punteggioMedio());
+            assertEquals(List.of(new StatisticheService.StatRisposta(500, 1, 100.0)), riepilogo.domande().get(0).scelte());
+        }
+
+        //test getClassifica e getPosizione
+        @Test
+        void getClassifica_ShouldBuildFromDaoOnce_ThenServeFromMemory() throws Exception {
+            String token = "validToken";
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(faDAOMock.findPunteggiByQuiz(1)).thenReturn(List.of(new Object[]{7, "luca", 1, 0L}, new Object[]{8, "anna", 4, 0L}));
+
+            List<Classifica.Voce> primi = menager.getClassifica(1, 10, token);
+            menager.getClassifica(1, 1, token);
+
+            assertEquals(List.of(new Classifica.Voce(1, "anna", 4), new Classifica.Voce(2, "luca", 1)), primi);
+            verify(faDAOMock, times(1)).findPunteggiByQuiz(1);
+        }
 
-            Risposta r1 = new Risposta();
-            r1.setDomanda(d1);
-            r1.setFlagRispostaCorretta(true);
+        @Test
+        void getClassifica_ShouldThrowQuizUseException_WhenSizeIsOutOfRange() throws Exception {
+            String token = "validToken";
+            when(logMock.isAlive(token)).thenReturn(true);
 
-            Risposta r2 = new Risposta();
-            r2.setDomanda(d1); // Stessa domanda
-            r2.setFlagRispostaCorretta(false);
+            assertThrows(QuizUseException.class, () -> menager.getClassifica(1, 0, token));
+            assertThrows(QuizUseException.class, () -> menager.getClassifica(1, QuizUserMenager.MAX_CLASSIFICA + 1, token));
+            verifyNoInteractions(faDAOMock);
+        }
+
+        @Test
+        void getPosizione_ShouldReturnRank_OrNullWhenNotTaken() throws Exception {
+            String token = "validToken";
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(utenteConId(8));
+            classifiche.carica(1, List.of(new Object[]{7, "luca", 1, 0L}, new Object[]{8, "anna", 4, 0L}));
+            classifiche.carica(2, List.of());
+
+            assertEquals(new Classifica.Voce(1, "anna", 4), menager.getPosizione(1, token));
+            assertNull(menager.getPosizione(2, token));
+            verifyNoInteractions(faDAOMock);
+        }
+
+        @Test
+        void completaQuiz_ShouldPropagateCodaPiena_WhenQueueIsFull() throws Exception {
+            String token = "validToken";
+            Integer quizId = 1;
+            Quiz inputQuiz = new Quiz();
+            inputQuiz.setId(quizId);
+            Utente u = utenteConId(100);
+            List<Object[]> righe = new ArrayList<>();
+            righe.add(riga(500, 50, true, 2, -1));
 
             when(logMock.isAlive(token)).thenReturn(true);
             when(logMock.getUtente(token)).thenReturn(u);
-            when(quizLogMock.getQuiz(any(Utente.class), eq(quizId))).thenReturn(foundQuiz);
+            when(quizDAOMock.findChiaveRisposte(quizId)).thenReturn(righe);
+            when(codaMock.isAttiva()).thenReturn(true);
+            doThrow(new CodaPienaException("coda tentativi piena")).when(codaMock).accoda(any(), anyList());
+            completati.carica(100, List.of());
+
+            assertThrows(CodaPienaException.class, () -> menager.completaQuiz(inputQuiz, List.of(scelta(500, 50, false)), token));
+            // il tentativo non è entrato: la prenotazione si toglie e l'utente può riprovare
+            assertFalse(completati.isCompletato(100, quizId));
+        }
+
+        @Test
+        void completaQuiz_ShouldUseCachedKey_WithoutQueryingDao() throws Exception {
+            String token = "validToken";
+            Integer quizId = 1;
+            Quiz inputQuiz = new Quiz();
+            inputQuiz.setId(quizId);
+            Utente u = utenteConId(100);
+            List<Object[]> righe = new ArrayList<>();
+            righe.add(riga(500, 50, true, 4, 0));
 
-            assertThrows(QuizUseException.class, () -> menager.completaQuiz(foundQuiz, List.of(r1, r2), token));
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(u);
+            when(chiaviMock.getChiave(quizId)).thenReturn(ChiaveRisposte.da(righe));
+
+            int result = menager.completaQuiz(inputQuiz, List.of(scelta(500, null, true)), token);
+
+            assertEquals(4, result);
+            verify(quizDAOMock, never()).findChiaveRisposte(anyInt());
+            verify(quizLogMock, never()).getQuiz(any(Utente.class), anyInt());
         }
 
         @Test
-        void completaQuiz_ShouldReturnNegativeScore_WhenAnswersAreWrong() throws Exception {
+        void completaQuiz_ShouldThrowQuizUseException_WhenDomandaNonAppartieneAlQuiz() throws Exception {
             String token = "validToken";
             Integer quizId = 1;
+            Quiz inputQuiz = new Quiz();
+            inputQuiz.setId(quizId);
             Utente u = new Utente();
+            List<Object[]> righe = new ArrayList<>();
+            righe.add(riga(500, 50, true, 2, -1));
 
-            Domanda d1 = new Domanda();
-            d1.setId(50);
-            d1.setPuntiRispostaCorretta(3);
-            d1.setPuntiRispostaSbagliata(-2);
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(u);
+            when(quizDAOMock.findChiaveRisposte(quizId)).thenReturn(righe);
 
-            Quiz foundQuiz = new Quiz();
-            foundQuiz.setId(quizId);
-            foundQuiz.setTitolo("Quiz");
-            foundQuiz.setDomande(List.of(d1));
+            assertThrows(QuizUseException.class, () -> menager.completaQuiz(inputQuiz, List.of(scelta(500, 999, true)), token));
+            verifyNoInteractions(faDAOMock);
+        }
 
-            Risposta rSbagliata = new Risposta();
-            rSbagliata.setDomanda(d1);
-            rSbagliata.setFlagRispostaCorretta(false);
+        @Test
+        void completaQuiz_ShouldThrowQuizUseException_WhenRispostaNonAppartieneAlQuiz() throws Exception {
+            String token = "validToken";
+            Integer quizId = 1;
+            Quiz inputQuiz = new Quiz();
+            inputQuiz.setId(quizId);
+            Utente u = new Utente();
+            List<Object[]> righe = new ArrayList<>();
+            righe.add(riga(500, 50, true, 2, -1));
 
             when(logMock.isAlive(token)).thenReturn(true);
             when(logMock.getUtente(token)).thenReturn(u);
-            when(quizLogMock.getQuiz(any(Utente.class), eq(quizId))).thenReturn(foundQuiz);
+            when(quizDAOMock.findChiaveRisposte(quizId)).thenReturn(righe);
+
+            assertThrows(QuizUseException.class, () -> menager.completaQuiz(inputQuiz, List.of(scelta(12345, 50, true)), token));
+            verifyNoInteractions(faDAOMock);
+        }
+
+        @Test
+        void completaQuiz_ShouldThrowQuizUseException_WhenDomandaRispostaPiuVolte() throws Exception {
+            String token = "validToken";
+            Integer quizId = 1;
+            Quiz inputQuiz = new Quiz();
+            inputQuiz.setId(quizId);
+            Utente u = new Utente();
+            List<Object[]> righe = new ArrayList<>();
+            righe.add(riga(500, 50, true, 2, -1));
+            righe.add(riga(501, 50, false, 2, -1));
+
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(u);
+            when(quizDAOMock.findChiaveRisposte(quizId)).thenReturn(righe);
 
-            int result = menager.completaQuiz(foundQuiz, List.of(rSbagliata), token);
+            assertThrows(QuizUseException.class,
+                    () -> menager.completaQuiz(inputQuiz, List.of(scelta(500, 50, true), scelta(501, 50, false)), token));
+        }
+
+        @Test
+        void completaQuiz_ShouldReturnNegativeScore_WhenAnswersAreWrong() throws Exception {
+            String token = "validToken";
+            Integer quizId = 1;
+            Quiz inputQuiz = new Quiz();
+            inputQuiz.setId(quizId);
+            Utente u = utenteConId(100);
+            List<Object[]> righe = new ArrayList<>();
+            righe.add(riga(500, 50, true, 3, -2));
+            righe.add(riga(501, 50, false, 3, -2));
+
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(u);
+            when(quizDAOMock.findChiaveRisposte(quizId)).thenReturn(righe);
+
+            // il client dichiara corretta una risposta sbagliata: conta solo la chiave
+            int result = menager.completaQuiz(inputQuiz, List.of(scelta(501, 50, true)), token);
 
             assertEquals(-2, result);
-            verify(faDAOMock).insert(argThat(fa -> fa.getPunteggio() == -2));
+            verify(faDAOMock).insertTentativo(argThat(fa -> fa.getPunteggio() == -2), anyList());
+        }
+
+        @Test
+        void completaQuiz_ShouldRejectRepeat_WithoutTouchingCounters() throws Exception {
+            String token = "validToken";
+            Integer quizId = 1;
+            Quiz inputQuiz = new Quiz();
+            inputQuiz.setId(quizId);
+            Utente u = utenteConId(100);
+            List<Object[]> righe = new ArrayList<>();
+            righe.add(riga(500, 50, true, 2, -1));
+
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(u);
+            when(quizDAOMock.findChiaveRisposte(quizId)).thenReturn(righe);
+            completati.carica(100, List.of(quizId));
+            statistiche.ricostruisci(quizId, 1, righe, scorri -> {}, 0, 0);
+            classifiche.carica(quizId, List.<Object[]>of(new Object[]{7, "luca", 1, 0L}));
+
+            assertThrows(QuizGiaCompletatoException.class,
+                    () -> menager.completaQuiz(inputQuiz, List.of(scelta(500, 50, true)), token));
+
+            verifyNoInteractions(faDAOMock, codaMock);
+            assertEquals(0, statistiche.get(quizId).riepilogo().completamenti());
+            assertEquals(List.of(new Classifica.Voce(1, "luca", 1)), classifiche.get(quizId).primi(10));
+        }
+
+        @Test
+        void completaQuiz_ShouldRejectRepeat_WhenUserIsNotLoaded() throws Exception {
+            String token = "validToken";
+            Integer quizId = 1;
+            Quiz inputQuiz = new Quiz();
+            inputQuiz.setId(quizId);
+            List<Object[]> righe = new ArrayList<>();
+            righe.add(riga(500, 50, true, 2, -1));
+
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(utenteConId(100));
+            when(quizDAOMock.findChiaveRisposte(quizId)).thenReturn(righe);
+            when(faDAOMock.existsByUtenteQuiz(100, quizId)).thenReturn(true);
+
+            assertThrows(QuizGiaCompletatoException.class,
+                    () -> menager.completaQuiz(inputQuiz, List.of(scelta(500, 50, true)), token));
+            verify(faDAOMock, never()).insertTentativo(any(), anyList());
+        }
+
+        @Test
+        void completaQuiz_ShouldRejectRepeat_WhenUniqueConstraintStopsIt() throws Exception {
+            String token = "validToken";
+            Integer quizId = 1;
+            Quiz inputQuiz = new Quiz();
+            inputQuiz.setId(quizId);
+            List<Object[]> righe = new ArrayList<>();
+            righe.add(riga(500, 50, true, 2, -1));
+
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(utenteConId(100));
+            when(quizDAOMock.findChiaveRisposte(quizId)).thenReturn(righe);
+            // un'altra richiesta scrive lo stesso quiz tra il controllo e l'insert
+            when(faDAOMock.existsByUtenteQuiz(100, quizId)).thenReturn(false, true);
+            doThrow(new TentativoRifiutatoException("Tentativo rifiutato dal database"))
+                    .when(faDAOMock).insertTentativo(any(), anyList());
+            statistiche.ricostruisci(quizId, 1, righe, scorri -> {}, 0, 0);
+
+            assertThrows(QuizGiaCompletatoException.class,
+                    () -> menager.completaQuiz(inputQuiz, List.of(scelta(500, 50, true)), token));
+            assertEquals(0, statistiche.get(quizId).riepilogo().completamenti());
+        }
+
+        @Test
+        void completaQuiz_ShouldLetOnlyOneOfTwoQueuedCompletionsThrough() throws Exception {
+            String token = "validToken";
+            Integer quizId = 1;
+            Quiz inputQuiz = new Quiz();
+            inputQuiz.setId(quizId);
+            List<Object[]> righe = new ArrayList<>();
+            righe.add(riga(500, 50, true, 2, -1));
+
+            when(logMock.isAlive(token)).thenReturn(true);
+            when(logMock.getUtente(token)).thenReturn(utenteConId(100));
+            when(quizDAOMock.findChiaveRisposte(quizId)).thenReturn(righe);
+            when(codaMock.isAttiva()).thenReturn(true);
+            when(faDAOMock.findQuizIdsByUtente(100)).thenReturn(List.of());
+
+            menager.completaQuiz(inputQuiz, List.of(scelta(500, 50, true)), token);
+
+            // il primo tentativo è ancora in coda: il database non lo conosce
+            assertThrows(QuizGiaCompletatoException.class,
+                    () -> menager.completaQuiz(inputQuiz, List.of(scelta(500, 50, true)), token));
+            verify(codaMock, times(1)).accoda(any(), anyList());
         }
     }
 
@@ -538,7 +1084,7 @@ public class QuizUserMenagerTest {
         AccessControlService service;
         QuizDAO dao;
         FaDAO daoFa;
-        RispondeDAO daoRisponde;
+        ChiaveLog chiavi;
 
         Utente alreadyLogTest, alreadyLogTestUnauthorized;
         String realToken, realTokenUnauthorized;
@@ -550,12 +1096,10 @@ public class QuizUserMenagerTest {
 
             dao = new QuizDAO();
             daoFa = new FaDAO();
-            daoRisponde = new RispondeDAO();
             refresher = new EntityRefresher();
             injectMethod(dao, em, "em");
             injectMethod(refresher, em, "em");
             injectMethod(daoFa, em, "em");
-            injectMethod(daoRisponde, em, "em");
 
             jwtProvider = new JWT_Provider();
             crypt = new PassCrypt();
@@ -568,14 +1112,22 @@ public class QuizUserMenagerTest {
             quizLog = new QuizLog();
             injectMethod(quizLog, refresher, "refresher");
 
+            chiavi = new ChiaveLog();
+
             menager = new QuizUserMenager();
             injectMethod(menager, crypt, "crypt");
             injectMethod(menager, log, "logBeble");
             injectMethod(menager, service, "accessControl");
+            injectMethod(menager, new SessionPrincipal(), "principal");
             injectMethod(menager, dao, "dao");
             injectMethod(menager, quizLog, "quizLog");
             injectMethod(menager, daoFa, "daoFa");
-            injectMethod(menager, daoRisponde, "daoRisponde");
+            injectMethod(menager, chiavi, "chiavi");
+            injectMethod(menager, new CodaTentativi(), "codaTentativi");
+            injectMethod(menager, new PermessoLog(), "permessi");
+            injectMethod(menager, new ClassificaService(), "classifiche");
+            injectMethod(menager, new StatisticheService(), "statistiche");
+            injectMethod(menager, new CompletatiLog(), "completati");
 
             alreadyLogTestUnauthorized = creaUtenteDiTest("Mario", "Rossi", "mariorossi", "hash123");
             alreadyLogTest = creaUtenteDiTest("Pippo", "Alberti", "pippo12", "sc2435");
@@ -619,15 +1171,36 @@ public class QuizUserMenagerTest {
         }
 
         @Test
-        void getQuizzes_Integration_ShouldFetchFromDbAndSyncWithQuizLog() throws Exception {
-            List<Quiz> quizzes = menager.getQuizzes(1, realTokenUnauthorized);
+        void downUserRole_Integration_ShouldKeepQuizLogWarm() throws Exception {
+            Quiz quiz = em.createQuery("SELECT q FROM Quiz q", Quiz.class).setMaxResults(1).getSingleResult();
+            quizLog.aggiungi(alreadyLogTest, quiz);
+
+            menager.downUserRole(realToken);
+
+            assertNotNull(quizLog.getQuiz(alreadyLogTest, quiz.getId()));
+        }
+
+        @Test
+        void downUserRole_Integration_ShouldFail_WhenOldTokenWasAlreadySwitched() throws Exception {
+            String newToken = menager.downUserRole(realToken);
+
+            // il vecchio token non ha più una sessione: un secondo cambio non crea un altro token
+            assertThrows(AppException.class, () -> menager.downUserRole(realToken));
+            assertTrue(log.isAlive(newToken));
+            assertEquals(1 + 1, log.size());
+        }
+
+        @Test
+        void getQuizzes_Integration_ShouldReturnProjectionsFromDb() throws Exception {
+            List<QuizDTO> quizzes = menager.getQuizzes(1, realTokenUnauthorized);
 
             assertNotNull(quizzes);
             assertFalse(quizzes.isEmpty());
             assertTrue(quizzes.size() <= 10);
 
-            Quiz firstQuiz = quizzes.get(0);
-            assertNotNull(quizLog.getQuiz(alreadyLogTestUnauthorized, firstQuiz.getId()));
+            QuizDTO firstQuiz = quizzes.get(0);
+            assertNotNull(firstQuiz.getTitolo());
+            assertNull(quizLog.getQuiz(alreadyLogTestUnauthorized, firstQuiz.getId()));
         }
 
         @Test
@@ -655,10 +1228,31 @@ public class QuizUserMenagerTest {
             em.persist(q);
             em.getTransaction().commit();
 
+            // prima la password sbagliata: dopo lo sblocco il permesso salta la verifica
+            assertThrows(QuizUseException.class, () -> menager.startQuiz(q, "wrongPassword", realTokenUnauthorized));
             List<Domanda> domande = menager.startQuiz(q, rawPassword, realTokenUnauthorized);
 
             assertNotNull(domande);
-            assertThrows(QuizUseException.class, () -> menager.startQuiz(q, "wrongPassword", realTokenUnauthorized));
+        }
+
+        @Test
+        void startQuiz_WithPassword_Integration_ShouldSkipHashOnRepeatedUnlock() throws Exception {
+            String rawPassword = "secretPassword";
+            String hashedPassword = crypt.hashPassword(rawPassword);
+
+            em.getTransaction().begin();
+            Quiz q = creaQuizDiTest(alreadyLogTest, "Quiz Protetto", "Desc");
+            q.setPasswordQuiz(hashedPassword);
+            em.persist(q);
+            em.getTransaction().commit();
+
+            menager.startQuiz(q, rawPassword, realTokenUnauthorized);
+            long hashDopoPrimo = (long) crypt.getMetriche().get("eseguiti");
+
+            List<Domanda> domande = menager.startQuiz(q, rawPassword, realTokenUnauthorized);
+
+            assertNotNull(domande);
+            assertEquals(hashDopoPrimo, crypt.getMetriche().get("eseguiti"));
         }
 
         @Test
@@ -688,10 +1282,38 @@ public class QuizUserMenagerTest {
 
             assertNotNull(fa);
             assertEquals(punteggio, fa.getPunteggio());
+            Long risposteDelTentativo = em.createQuery("SELECT COUNT(r) FROM Risponde r WHERE r.tentativo.id = :faId", Long.class)
+                    .setParameter("faId", fa.getId())
+                    .getSingleResult();
+            assertEquals(1L, risposteDelTentativo);
 
             // Integrazione: startQuiz deve tornare null perché isComplete() ora è true
             List<Domanda> resultDopoCompletamento = menager.startQuiz(q, realTokenUnauthorized);
             assertNull(resultDopoCompletamento);
+            assertNotNull(chiavi.getChiave(q.getId()));
+
+            assertThrows(QuizGiaCompletatoException.class, () -> menager.completaQuiz(q, List.of(r), realTokenUnauthorized));
+        }
+
+        @Test
+        void completaQuiz_Integration_ShouldIgnoreClientFlag() throws Exception {
+            Quiz q = em.createQuery("SELECT q FROM Quiz q WHERE q.passwordQuiz IS NULL", Quiz.class)
+                    .setMaxResults(1)
+                    .getSingleResult();
+
+            Risposta sbagliata = q.getDomande().get(0).getRisposte().stream()
+                    .filter(r -> !r.getFlagRispostaCorretta())
+                    .findFirst()
+                    .get();
+
+            // payload del client: stessa risposta ma dichiarata corretta
+            Risposta payload = new Risposta();
+            payload.setId(sbagliata.getId());
+            payload.setFlagRispostaCorretta(true);
+
+            int punteggio = menager.completaQuiz(q, List.of(payload), realTokenUnauthorized);
+
+            assertEquals(0, punteggio);
         }
 
         // --- HELPER METHOD PER CREARE QUIZ VALIDI ---
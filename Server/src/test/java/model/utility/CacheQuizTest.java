@@ -0,0 +1,217 @@
+package model.utility;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import model.dao.QuizDAO;
+import model.dto.QuizDTO;
+import model.entity.Domanda;
+import model.entity.Quiz;
+import model.entity.Risposta;
+import model.entity.Utente;
+import org.junit.jupiter.api.*;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CacheQuizTest {
+
+    CacheQuiz cache;
+
+    // =========================
+    // ===== UNIT TESTS ========
+    // =========================
+    @Nested
+    @Tag("unit")
+    class UnitTests {
+
+        @Test
+        void proprieta_ShouldDisableSecondLevelCache_WhenNotEnabled() {
+            cache = new CacheQuiz(false);
+
+            Map<String, Object> props = cache.proprieta();
+
+            assertEquals("false", props.get("hibernate.cache.use_second_level_cache"));
+            assertEquals("false", props.get("hibernate.cache.use_query_cache"));
+            assertFalse(cache.isAttiva());
+            assertEquals(Map.of("attiva", false), cache.getMetriche());
+        }
+    }
+
+    // =========================
+    // === INTEGRATION TESTS ===
+    // =========================
+    @Nested
+    @Tag("integration")
+    class IntegrationTests {
+        EntityManagerFactory emf;
+        Utente autore;
+        Quiz quiz;
+
+        @BeforeEach
+        void setup() {
+            cache = new CacheQuiz(true);
+            emf = Persistence.createEntityManagerFactory("testPU", cache.proprieta());
+            cache.avvia(emf);
+
+            autore = new Utente();
+            autore.setNome("Mario");
+            autore.setCognome("Rossi");
+            autore.setUsername("mario_cache");
+            autore.setPasswordHash("hash");
+
+            quiz = nuovoQuiz(autore, "Storia");
+            Domanda d = nuovaDomanda(quiz, "Anno fondazione di Roma?");
+            nuovaRisposta(d, "753 AC", true);
+            nuovaRisposta(d, "1492", false);
+
+            EntityManager em = emf.createEntityManager();
+            em.getTransaction().begin();
+            em.persist(autore);
+            em.persist(quiz);
+            em.getTransaction().commit();
+            em.close();
+        }
+
+        @AfterEach
+        void tearDown() {
+            if (emf.isOpen()) emf.close();
+        }
+
+        @Test
+        void findById_ShouldHitSecondLevelCache_FromAnotherEntityManager() throws Exception {
+            leggiGrafo(quiz.getId());
+            Map<String, Object> prima = regione(CacheQuiz.QUIZ);
+
+            Quiz letto = leggiGrafo(quiz.getId());
+
+            assertEquals("Storia", letto.getTitolo());
+            assertEquals(2, letto.getDomande().get(0).getRisposte().size());
+            assertTrue((long) regione(CacheQuiz.QUIZ).get("hit") > (long) prima.get("hit"));
+            assertTrue((long) regione(CacheQuiz.DOMANDE).get("hit") > 0);
+            assertTrue((long) regione(CacheQuiz.RISPOSTE).get("hit") > 0);
+        }
+
+        @Test
+        void update_ShouldInvalidateCachedCollections_WhenOrphansAreRemoved() throws Exception {
+            leggiGrafo(quiz.getId());
+
+            Quiz modificato = nuovoQuiz(autore, "Storia moderna");
+            modificato.setId(quiz.getId());
+            Domanda nuova = nuovaDomanda(modificato, "Scoperta dell'America?");
+            nuovaRisposta(nuova, "1492", true);
+
+            EntityManager em = emf.createEntityManager();
+            QuizDAO dao = dao(em);
+            dao.update(modificato, null, autore);
+            em.close();
+
+            Quiz letto = leggiGrafo(quiz.getId());
+            assertEquals("Storia moderna", letto.getTitolo());
+            assertEquals(1, letto.getDomande().size());
+            assertEquals("Scoperta dell'America?", letto.getDomande().get(0).getQuesito());
+            assertEquals(1, letto.getDomande().get(0).getRisposte().size());
+
+            EntityManager verifica = emf.createEntityManager();
+            Long domande = verifica.createQuery("SELECT COUNT(d) FROM Domanda d", Long.class).getSingleResult();
+            verifica.close();
+            assertEquals(1L, domande);
+        }
+
+        @Test
+        void findAllSummary_ShouldUseQueryCache_UntilQuizTableChanges() throws Exception {
+            assertEquals(1, pagina().size());
+            assertEquals(1, pagina().size());
+            assertTrue((long) regione(CacheQuiz.PAGINE).get("hit") >= 1);
+
+            Quiz altro = nuovoQuiz(autore, "Geografia");
+            EntityManager em = emf.createEntityManager();
+            dao(em).insert(altro);
+            em.close();
+
+            // la scrittura sulla tabella quiz rende vecchia la pagina in cache
+            assertEquals(2, pagina().size());
+        }
+
+        @Test
+        void getMetriche_ShouldReportEveryRegion() {
+            Map<String, Object> metriche = cache.getMetriche();
+
+            assertEquals(true, metriche.get("attiva"));
+            for (String regione : CacheQuiz.REGIONI_ENTITA) {
+                assertTrue(metriche.containsKey(regione), regione);
+            }
+            assertTrue(metriche.containsKey(CacheQuiz.PAGINE));
+        }
+
+        private List<QuizDTO> pagina() throws Exception {
+            EntityManager em = emf.createEntityManager();
+            try {
+                return dao(em).findAllSummary(1, 10);
+            } finally {
+                em.close();
+            }
+        }
+
+        private Quiz leggiGrafo(int id) throws Exception {
+            EntityManager em = emf.createEntityManager();
+            try {
+                Quiz q = dao(em).findById(id);
+                for (Domanda d : q.getDomande()) {
+                    d.getRisposte().size();
+                }
+                return q;
+            } finally {
+                em.close();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private Map<String, Object> regione(String nome) {
+            return (Map<String, Object>) cache.getMetriche().get(nome);
+        }
+    }
+
+    private QuizDAO dao(EntityManager em) throws Exception {
+        QuizDAO dao = new QuizDAO();
+        Field f = QuizDAO.class.getDeclaredField("em");
+        f.setAccessible(true);
+        f.set(dao, em);
+        return dao;
+    }
+
+    private Quiz nuovoQuiz(Utente autore, String titolo) {
+        Quiz q = new Quiz();
+        q.setUtente(autore);
+        q.setTitolo(titolo);
+        q.setDescrizione("descrizione");
+        q.setTempo("10");
+        q.setDifficolta("facile");
+        q.setNumeroDomande(1);
+        q.setDomande(new ArrayList<>());
+        return q;
+    }
+
+    private Domanda nuovaDomanda(Quiz quiz, String quesito) {
+        Domanda d = new Domanda();
+        d.setQuesito(quesito);
+        d.setQuiz(quiz);
+        d.setPuntiRispostaCorretta(1);
+        d.setPuntiRispostaSbagliata(0);
+        d.setRisposte(new ArrayList<>());
+        quiz.getDomande().add(d);
+        return d;
+    }
+
+    private void nuovaRisposta(Domanda domanda, String testo, boolean corretta) {
+        Risposta r = new Risposta();
+        r.setAffermazione(testo);
+        r.setFlagRispostaCorretta(corretta);
+        r.setDomanda(domanda);
+        domanda.getRisposte().add(r);
+    }
+}
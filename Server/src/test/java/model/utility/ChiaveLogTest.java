@@ -0,0 +1,81 @@
+package model.utility;
+
+import model.exception.EmptyFild;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChiaveLogTest {
+
+    ChiaveLog log;
+    ChiaveRisposte chiave;
+
+    @BeforeEach
+    void setup() {
+        log = new ChiaveLog();
+        List<Object[]> righe = new ArrayList<>();
+        righe.add(new Object[]{1, 1, true, 1, 0, "Quiz"});
+        chiave = ChiaveRisposte.da(righe);
+    }
+
+    //test aggiungi
+    @Test
+    void aggiungi_ShouldStoreChiave_WhenEpocaIsUnchanged() {
+        log.aggiungi(5, chiave, log.getEpoca());
+
+        assertSame(chiave, log.getChiave(5));
+    }
+
+    @Test
+    void aggiungi_ShouldDiscardChiave_WhenInvalidatedWhileLoading() {
+        long epoca = log.getEpoca();
+        log.invalida(5);
+
+        log.aggiungi(5, chiave, epoca);
+
+        assertNull(log.getChiave(5));
+    }
+
+    @Test
+    void aggiungi_ShouldEvictLeastRecentlyUsed_WhenFull() {
+        for (int id = 1; id <= ChiaveLog.MAX_CHIAVI; id++) {
+            log.aggiungi(id, chiave, log.getEpoca());
+        }
+        // la 1 è appena stata letta: esce la 2
+        log.getChiave(1);
+
+        log.aggiungi(ChiaveLog.MAX_CHIAVI + 1, chiave, log.getEpoca());
+
+        assertEquals(ChiaveLog.MAX_CHIAVI, log.size());
+        assertSame(chiave, log.getChiave(1));
+        assertNull(log.getChiave(2));
+        assertSame(chiave, log.getChiave(ChiaveLog.MAX_CHIAVI + 1));
+        assertEquals(1L, log.getMetriche().get("evizioni"));
+    }
+
+    @Test
+    void aggiungi_ShouldThrowEmptyFild_WhenInputIsInvalid() {
+        assertThrows(EmptyFild.class, () -> log.aggiungi(0, chiave, 0));
+        assertThrows(EmptyFild.class, () -> log.aggiungi(5, null, 0));
+    }
+
+    //test invalida
+    @Test
+    void invalida_ShouldRemoveChiave() {
+        log.aggiungi(5, chiave, log.getEpoca());
+
+        log.invalida(5);
+
+        assertNull(log.getChiave(5));
+    }
+
+    @Test
+    void invalida_ShouldThrowEmptyFild_WhenIdIsInvalid() {
+        assertThrows(EmptyFild.class, () -> log.invalida(null));
+        assertThrows(EmptyFild.class, () -> log.invalida(-1));
+    }
+}
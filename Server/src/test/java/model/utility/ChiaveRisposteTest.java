@@ -0,0 +1,97 @@
+package model.utility;
+
+import model.entity.Domanda;
+import model.entity.Risposta;
+import model.exception.AppException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChiaveRisposteTest {
+
+    private Object[] riga(int rispostaId, int domandaId, Boolean corretta, Integer giusta, Integer sbagliata) {
+        return new Object[]{rispostaId, domandaId, corretta, giusta, sbagliata, "Titolo"};
+    }
+
+    private Risposta scelta(Integer rispostaId, Integer domandaId) {
+        Risposta r = new Risposta();
+        r.setId(rispostaId);
+        if (domandaId != null) {
+            Domanda d = new Domanda();
+            d.setId(domandaId);
+            r.setDomanda(d);
+        }
+        return r;
+    }
+
+    private ChiaveRisposte chiave() {
+        List<Object[]> righe = new ArrayList<>();
+        righe.add(riga(10, 7, true, 3, -1));
+        righe.add(riga(11, 7, false, 3, -1));
+        righe.add(riga(12, 4, false, 2, 0));
+        righe.add(riga(13, 4, true, 2, 0));
+        return ChiaveRisposte.da(righe);
+    }
+
+    //test da
+    @Test
+    void da_ShouldReturnNull_WhenThereAreNoRows() {
+        assertNull(ChiaveRisposte.da(null));
+        assertNull(ChiaveRisposte.da(new ArrayList<>()));
+    }
+
+    @Test
+    void da_ShouldCountDistinctDomande() {
+        ChiaveRisposte chiave = chiave();
+
+        assertEquals(2, chiave.getNumeroDomande());
+        assertEquals("Titolo", chiave.getTitolo());
+    }
+
+    @Test
+    void da_ShouldThrowAppException_WhenRowsAreNotOrderedByRisposta() {
+        List<Object[]> righe = new ArrayList<>();
+        righe.add(riga(11, 7, true, 1, 0));
+        righe.add(riga(10, 7, false, 1, 0));
+
+        assertThrows(AppException.class, () -> ChiaveRisposte.da(righe));
+    }
+
+    //test punteggio
+    @Test
+    void punteggio_ShouldSumPointsFromKey_IgnoringClientFlag() {
+        Risposta giusta = scelta(10, 7);
+        giusta.setFlagRispostaCorretta(false);
+        Risposta sbagliata = scelta(12, null);
+        sbagliata.setFlagRispostaCorretta(true);
+
+        assertEquals(3, chiave().punteggio(List.of(giusta, sbagliata)));
+    }
+
+    @Test
+    void punteggio_ShouldHandleNullPoints() {
+        List<Object[]> righe = new ArrayList<>();
+        righe.add(riga(1, 1, null, null, null));
+
+        assertEquals(0, ChiaveRisposte.da(righe).punteggio(List.of(scelta(1, 1))));
+    }
+
+    @Test
+    void punteggio_ShouldReturnZero_WhenNothingIsAnswered() {
+        assertEquals(0, chiave().punteggio(new ArrayList<>()));
+    }
+
+    @Test
+    void punteggio_ShouldThrowAppException_WhenInputIsInvalid() {
+        ChiaveRisposte chiave = chiave();
+
+        assertThrows(AppException.class, () -> chiave.punteggio(null));
+        assertThrows(AppException.class, () -> chiave.punteggio(List.of(scelta(null, 7))));
+        assertThrows(AppException.class, () -> chiave.punteggio(List.of(scelta(99, 7))));
+        assertThrows(AppException.class, () -> chiave.punteggio(List.of(scelta(10, 4))));
+        assertThrows(AppException.class, () -> chiave.punteggio(List.of(scelta(10, 7), scelta(11, 7))));
+    }
+}
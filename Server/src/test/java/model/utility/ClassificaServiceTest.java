@@ -0,0 +1,125 @@
+package model.utility;
+
+import model.exception.EmptyFild;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClassificaServiceTest {
+
+    private static List<Object[]> righe(Object[]... righe) {
+        return new ArrayList<>(List.of(righe));
+    }
+
+    @Test
+    void get_ShouldReturnNull_UntilQuizIsLoaded() {
+        ClassificaService service = new ClassificaService();
+
+        assertNull(service.get(1));
+
+        Classifica caricata = service.carica(1, righe(new Object[]{1, "a", 5, 0L}, new Object[]{2, "b", 7, 0L}));
+
+        assertSame(caricata, service.get(1));
+        assertEquals(1, caricata.posizione(2).posizione());
+    }
+
+    @Test
+    void registra_ShouldUpdateLoadedQuiz_AndIgnoreOthers() {
+        ClassificaService service = new ClassificaService();
+        service.carica(1, righe(new Object[]{1, "a", 5, 0L}));
+
+        service.registra(1, 2, "b", 8, 0L);
+        service.registra(2, 2, "b", 8, 0L);
+
+        assertEquals(1, service.get(1).posizione(2).posizione());
+        assertNull(service.get(2));
+    }
+
+    @Test
+    void carica_ShouldMergeIntoLoadedQuiz_WithoutDuplicates() {
+        ClassificaService service = new ClassificaService();
+        Classifica prima = service.carica(1, righe(new Object[]{1, "a", 5, 0L}));
+        service.registra(1, 2, "b", 8, 0L);
+
+        // seconda lettura concorrente: il tentativo di b è già arrivato anche dal database
+        Classifica seconda = service.carica(1, righe(new Object[]{1, "a", 5, 0L}, new Object[]{2, "b", 8, 0L}));
+
+        assertSame(prima, seconda);
+        assertEquals(2, seconda.size());
+    }
+
+    @Test
+    void carica_ShouldMatchLiveOrder_WhenRebuiltFromDatabase() {
+        ClassificaService service = new ClassificaService();
+        service.carica(1, righe());
+        service.registra(1, 2, "b", 8, 2_000L);
+        service.registra(1, 1, "a", 8, 1_000L);
+        List<Classifica.Voce> dalVivo = service.get(1).primi(10);
+
+        service.invalida(1);
+        // righe come da Fa.findPunteggiByQuiz: per completato_il, anche se b ha l'id più basso
+        List<Classifica.Voce> ricostruita = service.carica(1, righe(new Object[]{1, "a", 8, 1_000L}, new Object[]{2, "b", 8, 2_000L})).primi(10);
+
+        assertEquals(dalVivo, ricostruita);
+        assertEquals("a", ricostruita.get(0).username());
+    }
+
+    @Test
+    void get_ShouldExpire_AfterDurata() {
+        AtomicLong ora = new AtomicLong(0);
+        ClassificaService service = new ClassificaService(ora::get);
+        service.carica(1, righe(new Object[]{1, "a", 5, 0L}));
+
+        ora.set(ClassificaService.DURATA_MS - 1);
+        assertNotNull(service.get(1));
+
+        ora.set(ClassificaService.DURATA_MS);
+        assertNull(service.get(1));
+        assertEquals(0, service.size());
+    }
+
+    @Test
+    void carica_ShouldClear_WhenFull() {
+        ClassificaService service = new ClassificaService();
+        for (int quiz = 1; quiz <= ClassificaService.MAX_QUIZ; quiz++) {
+            service.carica(quiz, righe());
+        }
+
+        service.carica(ClassificaService.MAX_QUIZ + 1, righe());
+
+        assertEquals(1, service.size());
+    }
+
+    @Test
+    void invalida_ShouldDropQuiz() {
+        ClassificaService service = new ClassificaService();
+        service.carica(1, righe(new Object[]{1, "a", 5, 0L}));
+
+        service.invalida(1);
+
+        assertNull(service.get(1));
+    }
+
+    @Test
+    void getMetriche_ShouldCountQuizAndAttempts() {
+        ClassificaService service = new ClassificaService();
+        service.carica(1, righe(new Object[]{1, "a", 5, 0L}, new Object[]{2, "b", 7, 0L}));
+        service.carica(2, righe(new Object[]{1, "a", 3, 0L}));
+
+        assertEquals(2, service.getMetriche().get("quiz"));
+        assertEquals(3L, service.getMetriche().get("tentativi"));
+    }
+
+    @Test
+    void metodi_ShouldThrowEmptyFild_WhenIdsAreInvalid() {
+        ClassificaService service = new ClassificaService();
+
+        assertThrows(EmptyFild.class, () -> service.get(0));
+        assertThrows(EmptyFild.class, () -> service.carica(-1, righe()));
+        assertThrows(EmptyFild.class, () -> service.registra(1, 0, "a", 1, 0L));
+    }
+}
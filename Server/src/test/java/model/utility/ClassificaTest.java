@@ -0,0 +1,90 @@
+package model.utility;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClassificaTest {
+
+    @Test
+    void primi_ShouldOrderByScoreDescending_ThenByArrival() {
+        Classifica classifica = new Classifica();
+        classifica.aggiungi(1, "a", 5, 0L);
+        classifica.aggiungi(2, "b", 9, 0L);
+        classifica.aggiungi(3, "c", 5, 0L);
+        classifica.aggiungi(4, "d", -2, 0L);
+
+        List<Classifica.Voce> primi = classifica.primi(10);
+
+        assertEquals(List.of(
+                new Classifica.Voce(1, "b", 9),
+                new Classifica.Voce(2, "a", 5),
+                new Classifica.Voce(3, "c", 5),
+                new Classifica.Voce(4, "d", -2)), primi);
+        assertEquals(2, classifica.primi(2).size());
+    }
+
+    @Test
+    void primi_ShouldBreakTies_ByCompletionTime_NotByInsertionOrder() {
+        Classifica classifica = new Classifica();
+        // la coda write-behind può consegnare prima chi ha finito dopo
+        classifica.aggiungi(1, "tardi", 5, 2_000L);
+        classifica.aggiungi(2, "presto", 5, 1_000L);
+        classifica.aggiungi(3, "stesso istante", 5, 2_000L);
+
+        assertEquals(List.of(
+                new Classifica.Voce(1, "presto", 5),
+                new Classifica.Voce(2, "tardi", 5),
+                new Classifica.Voce(3, "stesso istante", 5)), classifica.primi(10));
+        assertEquals(1, classifica.posizione(2).posizione());
+    }
+
+    @Test
+    void posizione_ShouldReturnRank_OrNullWhenUserHasNoAttempt() {
+        Classifica classifica = new Classifica();
+        classifica.aggiungi(1, "a", 5, 0L);
+        classifica.aggiungi(2, "b", 9, 0L);
+
+        assertEquals(new Classifica.Voce(2, "a", 5), classifica.posizione(1));
+        assertEquals(new Classifica.Voce(1, "b", 9), classifica.posizione(2));
+        assertNull(classifica.posizione(3));
+    }
+
+    @Test
+    void aggiungi_ShouldIgnoreSecondAttempt_ForSameUser() {
+        Classifica classifica = new Classifica();
+
+        assertTrue(classifica.aggiungi(1, "a", 5, 0L));
+        assertFalse(classifica.aggiungi(1, "a", 50, 0L));
+
+        assertEquals(1, classifica.size());
+        assertEquals(5, classifica.posizione(1).punteggio());
+    }
+
+    @Test
+    void posizione_ShouldMatchSortedList_ForRandomScores() {
+        Classifica classifica = new Classifica();
+        Random random = new Random(42);
+        List<int[]> attesi = new ArrayList<>();
+        for (int utente = 1; utente <= 2_000; utente++) {
+            int punteggio = random.nextInt(50) - 10;
+            classifica.aggiungi(utente, "u" + utente, punteggio, 0L);
+            attesi.add(new int[]{utente, punteggio});
+        }
+        // ordinamento stabile: a parità di punteggio resta l'ordine di arrivo
+        attesi.sort(Comparator.comparingInt((int[] r) -> r[1]).reversed());
+
+        for (int i = 0; i < attesi.size(); i += 97) {
+            assertEquals(i + 1, classifica.posizione(attesi.get(i)[0]).posizione());
+        }
+        List<Classifica.Voce> primi = classifica.primi(100);
+        for (int i = 0; i < primi.size(); i++) {
+            assertEquals("u" + attesi.get(i)[0], primi.get(i).username());
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package model.utility;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import jakarta.persistence.Persistence;
+import jakarta.persistence.PersistenceException;
+import model.dao.FaDAO;
+import model.entity.*;
+import model.exception.AppException;
+import model.exception.CodaPienaException;
+import model.exception.RegisterFailed;
+import model.exception.TentativoRifiutatoException;
+import org.hibernate.exception.JDBCConnectionException;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.lang.reflect.Field;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class CodaTentativiTest {
+
+    CodaTentativi coda;
+
+    // =========================
+    // ===== UNIT TESTS ========
+    // =========================
+    @Nested
+    @Tag("unit")
+    class UnitTests {
+        @Mock
+        FaDAO daoMock;
+
+        @Mock
+        EntityManager emMock;
+
+        @Test
+        void accoda_ShouldThrowAppException_WhenModeIsDisabled() {
+            coda = new CodaTentativi(false, 10);
+            coda.avvia(mock(EntityManagerFactory.class));
+
+            assertFalse(coda.isAttiva());
+            assertThrows(AppException.class, () -> coda.accoda(new Fa(), new ArrayList<>()));
+            assertDoesNotThrow(() -> coda.ferma());
+        }
+
+        @Test
+        void accoda_ShouldRejectWithCodaPiena_WhenQueueIsFull() throws Exception {
+            CountDownLatch sblocca = new CountDownLatch(1);
+            EntityManagerFactory emf = mock(EntityManagerFactory.class);
+            EntityManager em = mock(EntityManager.class);
+            lenient().when(em.getTransaction()).thenReturn(mock(EntityTransaction.class));
+            // lo scrittore resta fermo finché il test non ha riempito la coda
+            when(emf.createEntityManager()).thenAnswer(inv -> {
+                sblocca.await(5, TimeUnit.SECONDS);
+                return em;
+            });
+
+            coda = new CodaTentativi(true, 1);
+            coda.avvia(emf);
+
+            coda.accoda(new Fa(), new ArrayList<>());
+            assertThrows(CodaPienaException.class, () -> coda.accoda(new Fa(), new ArrayList<>()));
+            assertEquals(1L, coda.getMetriche().get("rifiutati"));
+            assertEquals(1, coda.getProfondita());
+
+            sblocca.countDown();
+            coda.ferma();
+            assertFalse(coda.isAttiva());
+        }
+
+        @Test
+        void accoda_ShouldLinkRisposteToTentativo() {
+            coda = new CodaTentativi(false, 10);
+            Fa fa = new Fa();
+            Risponde r = new Risponde();
+
+            assertThrows(AppException.class, () -> coda.accoda(fa, List.of(r)));
+            assertSame(fa, r.getTentativo());
+            assertEquals(1, fa.getRisposteDate().size());
+        }
+
+        @Test
+        void scrivi_ShouldWriteWholeBatch_WithOneGroupCommit() {
+            coda = new CodaTentativi(false, 10);
+            List<Fa> batch = List.of(new Fa(), new Fa(), new Fa());
+
+            coda.scrivi(daoMock, emMock, batch);
+
+            verify(daoMock, times(1)).insertTentativi(batch);
+            Map<String, Object> metriche = coda.getMetriche();
+            assertEquals(3L, metriche.get("scritti"));
+            assertEquals(1L, metriche.get("flush"));
+        }
+
+        @Test
+        void scrivi_ShouldRetryOneByOne_WhenGroupCommitIsRejected() {
+            coda = new CodaTentativi(false, 10);
+            Fa buono = new Fa();
+            buono.setId(5);
+            Fa cattivo = new Fa();
+            List<Fa> batch = List.of(buono, cattivo);
+
+            doAnswer(inv -> {
+                List<Fa> gruppo = inv.getArgument(0);
+                if (gruppo.size() > 1 || gruppo.get(0) == cattivo) throw new TentativoRifiutatoException("vincolo");
+                return null;
+            }).when(daoMock).insertTentativi(anyList());
+
+            List<Fa> daRiprovare = coda.scrivi(daoMock, emMock, batch);
+
+            assertTrue(daRiprovare.isEmpty());
+            verify(daoMock).insertTentativi(argThat(l -> l.size() == 1 && l.get(0) == buono));
+            assertNull(buono.getId());
+            Map<String, Object> metriche = coda.getMetriche();
+            assertEquals(1L, metriche.get("scritti"));
+            assertEquals(1L, metriche.get("scartati"));
+            verify(emMock, atLeastOnce()).clear();
+        }
+
+        @Test
+        void scrivi_ShouldKeepWholeBatch_WhenDatabaseIsUnreachable() {
+            coda = new CodaTentativi(false, 10);
+            Fa primo = new Fa();
+            primo.setId(7);
+            Fa secondo = new Fa();
+            List<Fa> batch = List.of(primo, secondo);
+
+            doThrow(new RegisterFailed("connessione")).when(daoMock).insertTentativi(anyList());
+
+            List<Fa> daRiprovare = coda.scrivi(daoMock, emMock, batch);
+
+            assertEquals(batch, daRiprovare);
+            assertNull(primo.getId());
+            // nessun tentativo uno alla volta: fallirebbero tutti allo stesso modo
+            verify(daoMock, times(1)).insertTentativi(anyList());
+            Map<String, Object> metriche = coda.getMetriche();
+            assertEquals(0L, metriche.get("scartati"));
+            assertEquals(2L, metriche.get("riprovati"));
+        }
+
+        @Test
+        void scrivi_ShouldStopOneByOne_WhenConnectionDropsMidway() {
+            coda = new CodaTentativi(false, 10);
+            Fa rifiutato = new Fa();
+            Fa primo = new Fa();
+            Fa secondo = new Fa();
+            List<Fa> batch = List.of(rifiutato, primo, secondo);
+
+            doAnswer(inv -> {
+                List<Fa> gruppo = inv.getArgument(0);
+                if (gruppo.size() > 1 || gruppo.get(0) == rifiutato) throw new TentativoRifiutatoException("vincolo");
+                throw new RegisterFailed("connessione");
+            }).when(daoMock).insertTentativi(anyList());
+
+            List<Fa> daRiprovare = coda.scrivi(daoMock, emMock, batch);
+
+            assertEquals(List.of(primo, secondo), daRiprovare);
+            verify(daoMock, never()).insertTentativi(argThat(l -> l.size() == 1 && l.get(0) == secondo));
+            assertEquals(1L, coda.getMetriche().get("scartati"));
+        }
+
+        @Test
+        void ciclo_ShouldRetryWithBackoff_UntilDatabaseIsBack() throws Exception {
+            EntityManagerFactory emf = mock(EntityManagerFactory.class);
+            EntityManager em = mock(EntityManager.class);
+            EntityTransaction tx = mock(EntityTransaction.class);
+            when(emf.createEntityManager()).thenReturn(em);
+            when(em.getTransaction()).thenReturn(tx);
+            CountDownLatch scritto = new CountDownLatch(1);
+            // i primi due commit trovano il database giù
+            doThrow(new PersistenceException(new JDBCConnectionException("giù", new SQLException("giù", "08S01"))))
+                    .doThrow(new PersistenceException(new JDBCConnectionException("giù", new SQLException("giù", "08S01"))))
+                    .doAnswer(inv -> {
+                        scritto.countDown();
+                        return null;
+                    })
+                    .when(tx).commit();
+
+            coda = new CodaTentativi(true, 10);
+            coda.avvia(emf);
+            coda.accoda(tentativoValido(), new ArrayList<>(List.of(rispostaValida())));
+
+            assertTrue(scritto.await(5, TimeUnit.SECONDS));
+            coda.ferma();
+
+            Map<String, Object> metriche = coda.getMetriche();
+            assertEquals(1L, metriche.get("scritti"));
+            assertEquals(0L, metriche.get("scartati"));
+            assertEquals(2L, metriche.get("riprovati"));
+            assertEquals(0L, metriche.get("persi"));
+        }
+
+        @Test
+        void ferma_ShouldRetryPendingAttempts_BeforeGivingUp() {
+            EntityManagerFactory emf = mock(EntityManagerFactory.class);
+            EntityManager em = mock(EntityManager.class);
+            EntityTransaction tx = mock(EntityTransaction.class);
+            when(emf.createEntityManager()).thenReturn(em);
+            when(em.getTransaction()).thenReturn(tx);
+            doThrow(new PersistenceException(new JDBCConnectionException("giù", new SQLException("giù", "08S01"))))
+                    .when(tx).commit();
+
+            coda = new CodaTentativi(true, 10);
+            coda.avvia(emf);
+            coda.accoda(tentativoValido(), new ArrayList<>(List.of(rispostaValida())));
+
+            long inizio = System.currentTimeMillis();
+            coda.ferma();
+
+            // non scartato al primo errore: riprovato durante la chiusura, poi registrato come perso
+            assertTrue(System.currentTimeMillis() - inizio >= CodaTentativi.ATTESA_RIPROVA_MS);
+            verify(tx, atLeast(2)).commit();
+            Map<String, Object> metriche = coda.getMetriche();
+            assertEquals(0L, metriche.get("scartati"));
+            assertEquals(1L, metriche.get("persi"));
+            assertEquals(0, metriche.get("inRiprova"));
+        }
+
+        @Test
+        void scrivi_ShouldUndoInMemoryEffects_OfRejectedAttempt() throws Exception {
+            coda = new CodaTentativi(false, 10);
+            Servizi servizi = servizi(coda);
+            Fa rifiutato = tentativoValido();
+            doThrow(new TentativoRifiutatoException("vincolo")).when(daoMock).insertTentativi(anyList());
+
+            coda.scrivi(daoMock, emMock, List.of(rifiutato));
+
+            // può essere un doppione già scritto da un altro nodo: l'utente si ricarica dal database
+            assertNull(servizi.completati().isCompletato(1, 1));
+            assertNull(servizi.classifiche().get(1));
+            assertNull(servizi.statistiche().get(1));
+        }
+
+        @Test
+        void ferma_ShouldUndoInMemoryEffects_OfLostAttempt() throws Exception {
+            EntityManagerFactory emf = mock(EntityManagerFactory.class);
+            EntityManager em = mock(EntityManager.class);
+            EntityTransaction tx = mock(EntityTransaction.class);
+            when(emf.createEntityManager()).thenReturn(em);
+            when(em.getTransaction()).thenReturn(tx);
+            doThrow(new PersistenceException(new JDBCConnectionException("giù", new SQLException("giù", "08S01"))))
+                    .when(tx).commit();
+
+            coda = new CodaTentativi(true, 10);
+            Servizi servizi = servizi(coda);
+            servizi.completati().carica(1, List.of(1, 2));
+            coda.avvia(emf);
+            coda.accoda(tentativoValido(), new ArrayList<>(List.of(rispostaValida())));
+
+            coda.ferma();
+
+            assertEquals(1L, coda.getMetriche().get("persi"));
+            assertFalse(servizi.completati().isCompletato(1, 1));
+            assertTrue(servizi.completati().isCompletato(1, 2));
+            assertNull(servizi.classifiche().get(1));
+            assertNull(servizi.statistiche().get(1));
+        }
+
+        private record Servizi(CompletatiLog completati, ClassificaService classifiche, StatisticheService statistiche) {
+        }
+
+        // completamento già registrato in memoria da completaQuiz: utente 1, quiz 1
+        private Servizi servizi(CodaTentativi coda) throws Exception {
+            Servizi servizi = new Servizi(new CompletatiLog(), new ClassificaService(), new StatisticheService());
+            servizi.completati().carica(1, List.of(1));
+            servizi.classifiche().carica(1, List.<Object[]>of(new Object[]{1, "mario", 1, 0L}));
+            servizi.statistiche().ricostruisci(1, 1, List.of(), scorri -> {}, 0, 0);
+            inject(coda, "completati", servizi.completati());
+            inject(coda, "classifiche", servizi.classifiche());
+            inject(coda, "statistiche", servizi.statistiche());
+            return servizi;
+        }
+
+        private Fa tentativoValido() {
+            Utente u = new Utente();
+            u.setId(1);
+            Quiz q = new Quiz();
+            q.setId(1);
+            return new Fa(u, q, 1);
+        }
+
+        private Risponde rispostaValida() {
+            Utente u = new Utente();
+            u.setId(1);
+            return new Risponde(new Risposta(), u, "quiz", null);
+        }
+    }
+
+    // =========================
+    // === INTEGRATION TESTS ===
+    // =========================
+    @Nested
+    @Tag("integration")
+    class IntegrationTests {
+        EntityManagerFactory emf;
+        EntityManager em;
+        Utente utente;
+        Quiz quiz;
+        Risposta risposta;
+
+        @BeforeEach
+        void setup() {
+            emf = Persistence.createEntityManagerFactory("testPU");
+            em = emf.createEntityManager();
+
+            utente = new Utente();
+            utente.setNome("Mario");
+            utente.setCognome("Rossi");
+            utente.setUsername("mrossi");
+            utente.setPasswordHash("hash");
+
+            quiz = new Quiz();
+            quiz.setUtente(utente);
+            quiz.setTitolo("Quiz");
+            quiz.setDescrizione("Descrizione");
+            quiz.setTempo("10");
+            quiz.setDifficolta("facile");
+            quiz.setNumeroDomande(1);
+
+            Domanda d = new Domanda();
+            d.setQuiz(quiz);
+            d.setQuesito("domanda");
+            d.setPuntiRispostaCorretta(1);
+            d.setPuntiRispostaSbagliata(0);
+            risposta = new Risposta("giusta", true, d);
+
+            em.getTransaction().begin();
+            em.persist(utente);
+            em.persist(quiz);
+            em.persist(d);
+            em.persist(risposta);
+            em.getTransaction().commit();
+            em.clear();
+        }
+
+        @AfterEach
+        void tearDown() {
+            if (em.isOpen()) em.close();
+            if (emf.isOpen()) emf.close();
+        }
+
+        @Test
+        void ferma_ShouldFlushEveryQueuedAttempt() {
+            coda = new CodaTentativi(true, 100);
+            coda.avvia(emf);
+            assertTrue(coda.isAttiva());
+
+            // un tentativo per utente: (id_utente, id_quiz) è unico in fa
+            for (int i = 0; i < 20; i++) {
+                Utente compilatore = compilatore("u" + i);
+                Risposta scelta = new Risposta();
+                scelta.setId(risposta.getId());
+                List<Risponde> risposte = new ArrayList<>();
+                risposte.add(new Risponde(scelta, compilatore, "Quiz", null));
+                coda.accoda(new Fa(compilatore, quiz, 1), risposte);
+            }
+
+            coda.ferma();
+
+            Long fa = em.createQuery("SELECT COUNT(f) FROM Fa f", Long.class).getSingleResult();
+            Long collegate = em.createQuery("SELECT COUNT(r) FROM Risponde r WHERE r.tentativo IS NOT NULL", Long.class).getSingleResult();
+            assertEquals(20L, fa);
+            assertEquals(20L, collegate);
+            assertEquals(0, coda.getProfondita());
+            assertEquals(20L, coda.getMetriche().get("scritti"));
+            assertThrows(AppException.class, () -> coda.accoda(new Fa(utente, quiz, 1), new ArrayList<>()));
+        }
+
+        @Test
+        void ferma_ShouldDiscardSecondAttempt_ForSameUserAndQuiz() {
+            coda = new CodaTentativi(true, 100);
+            coda.avvia(emf);
+
+            for (int i = 0; i < 2; i++) {
+                Risposta scelta = new Risposta();
+                scelta.setId(risposta.getId());
+                List<Risponde> risposte = new ArrayList<>();
+                risposte.add(new Risponde(scelta, utente, "Quiz", null));
+                coda.accoda(new Fa(utente, quiz, i), risposte);
+            }
+            coda.ferma();
+
+            Long fa = em.createQuery("SELECT COUNT(f) FROM Fa f", Long.class).getSingleResult();
+            assertEquals(1L, fa);
+            assertEquals(1L, coda.getMetriche().get("scritti"));
+            assertEquals(1L, coda.getMetriche().get("scartati"));
+        }
+
+        private Utente compilatore(String username) {
+            Utente u = new Utente();
+            u.setNome("Nome");
+            u.setCognome("Cognome");
+            u.setUsername(username);
+            u.setPasswordHash("hash");
+            em.getTransaction().begin();
+            em.persist(u);
+            em.getTransaction().commit();
+            em.clear();
+            return u;
+        }
+    }
+
+    private static void inject(Object target, String campo, Object valore) throws Exception {
+        Field f = target.getClass().getDeclaredField(campo);
+        f.setAccessible(true);
+        f.set(target, valore);
+    }
+}
@@ -0,0 +1,178 @@
+package model.utility;
+
+import model.exception.EmptyFild;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompletatiLogTest {
+
+    @Test
+    void isCompletato_ShouldReturnNull_WhenUserIsNotLoaded() {
+        CompletatiLog log = new CompletatiLog();
+
+        assertNull(log.isCompletato(1, 1));
+        assertEquals(1L, log.getMetriche().get("miss"));
+    }
+
+    @Test
+    void isCompletato_ShouldAnswerFromBitmap_AfterCarica() {
+        CompletatiLog log = new CompletatiLog();
+
+        log.carica(1, List.of(2, 64, 1000));
+
+        assertTrue(log.isCompletato(1, 64));
+        assertTrue(log.isCompletato(1, 1000));
+        assertFalse(log.isCompletato(1, 3));
+        assertEquals(3L, log.getMetriche().get("hit"));
+    }
+
+    @Test
+    void segna_ShouldMarkQuiz_OnlyWhenUserIsLoaded() {
+        CompletatiLog log = new CompletatiLog();
+
+        log.segna(1, 5);
+        assertNull(log.isCompletato(1, 5));
+
+        log.carica(1, List.of());
+        log.segna(1, 5);
+        assertTrue(log.isCompletato(1, 5));
+    }
+
+    @Test
+    void carica_ShouldKeepMarkedQuizzes_WhenAttemptIsStillQueued() {
+        CompletatiLog log = new CompletatiLog();
+        log.carica(1, List.of(1));
+        log.segna(1, 7);
+
+        // il tentativo 7 non è ancora stato scritto, il database restituisce solo 1
+        log.carica(1, List.of(1));
+
+        assertTrue(log.isCompletato(1, 7));
+    }
+
+    @Test
+    void isCompletato_ShouldExpire_AfterDurata() {
+        AtomicLong ora = new AtomicLong(0);
+        CompletatiLog log = new CompletatiLog(ora::get);
+        log.carica(1, List.of(1));
+
+        ora.set(CompletatiLog.DURATA_MS - 1);
+        assertTrue(log.isCompletato(1, 1));
+
+        ora.set(CompletatiLog.DURATA_MS);
+        assertNull(log.isCompletato(1, 1));
+        assertEquals(0, log.size());
+    }
+
+    @Test
+    void carica_ShouldDropOldBits_WhenEntryIsExpired() {
+        AtomicLong ora = new AtomicLong(0);
+        CompletatiLog log = new CompletatiLog(ora::get);
+        log.carica(1, List.of(1, 2));
+
+        ora.set(CompletatiLog.DURATA_MS);
+        log.carica(1, List.of(1));
+
+        assertFalse(log.isCompletato(1, 2));
+    }
+
+    @Test
+    void carica_ShouldClear_WhenFull() {
+        CompletatiLog log = new CompletatiLog();
+        for (int i = 1; i <= CompletatiLog.MAX_UTENTI; i++) {
+            log.carica(i, List.of());
+        }
+        assertEquals(CompletatiLog.MAX_UTENTI, log.size());
+
+        log.carica(CompletatiLog.MAX_UTENTI + 1, List.of(1));
+
+        assertEquals(1, log.size());
+        assertTrue(log.isCompletato(CompletatiLog.MAX_UTENTI + 1, 1));
+    }
+
+    @Test
+    void getCompletati_ShouldReturnSortedCopy_WithoutDuplicates() {
+        CompletatiLog log = new CompletatiLog();
+        assertNull(log.getCompletati(1));
+
+        log.carica(1, List.of(40, 4, 40, 7));
+        int[] copia = log.getCompletati(1);
+        copia[0] = 9;
+
+        assertArrayEquals(new int[]{4, 7, 40}, log.getCompletati(1));
+        assertFalse(log.isCompletato(1, 9));
+    }
+
+    @Test
+    void carica_ShouldMergeWithMarkedQuizzes_InOrder() {
+        CompletatiLog log = new CompletatiLog();
+        log.carica(1, List.of(10));
+        log.segna(1, 3);
+
+        log.carica(1, List.of(10, 20));
+
+        assertArrayEquals(new int[]{3, 10, 20}, log.getCompletati(1));
+    }
+
+    @Test
+    void prenota_ShouldLetOnlyFirstCompletionThrough() {
+        CompletatiLog log = new CompletatiLog();
+        assertNull(log.prenota(1, 5));
+
+        log.carica(1, List.of(2, 9));
+
+        assertTrue(log.prenota(1, 5));
+        assertFalse(log.prenota(1, 5));
+        assertFalse(log.prenota(1, 9));
+        assertArrayEquals(new int[]{2, 5, 9}, log.getCompletati(1));
+    }
+
+    @Test
+    void annulla_ShouldRemoveReservation() {
+        CompletatiLog log = new CompletatiLog();
+        log.carica(1, List.of(2, 9));
+        log.prenota(1, 5);
+
+        log.annulla(1, 5);
+        log.annulla(1, 7);
+
+        assertArrayEquals(new int[]{2, 9}, log.getCompletati(1));
+        assertTrue(log.prenota(1, 5));
+    }
+
+    @Test
+    void contaDopo_ShouldCountIdsAfterCursor() {
+        int[] quiz = {2, 5, 9};
+
+        assertEquals(3, CompletatiLog.contaDopo(quiz, 0));
+        assertEquals(2, CompletatiLog.contaDopo(quiz, 2));
+        assertEquals(1, CompletatiLog.contaDopo(quiz, 6));
+        assertEquals(0, CompletatiLog.contaDopo(quiz, 9));
+        assertEquals(0, CompletatiLog.contaDopo(new int[0], 0));
+    }
+
+    @Test
+    void rimuovi_ShouldForgetUser() {
+        CompletatiLog log = new CompletatiLog();
+        log.carica(1, List.of(1));
+
+        log.rimuovi(1);
+
+        assertNull(log.isCompletato(1, 1));
+    }
+
+    @Test
+    void metodi_ShouldThrowEmptyFild_WhenIdsAreInvalid() {
+        CompletatiLog log = new CompletatiLog();
+
+        assertThrows(EmptyFild.class, () -> log.carica(0, List.of()));
+        assertThrows(EmptyFild.class, () -> log.isCompletato(1, 0));
+        assertThrows(EmptyFild.class, () -> log.segna(-1, 1));
+        assertThrows(EmptyFild.class, () -> log.prenota(1, 0));
+        assertThrows(EmptyFild.class, () -> log.annulla(0, 1));
+    }
+}
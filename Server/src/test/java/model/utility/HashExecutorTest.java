@@ -0,0 +1,139 @@
+package model.utility;
+
+import jakarta.enterprise.context.control.RequestContextController;
+import jakarta.enterprise.inject.Instance;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.core.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class HashExecutorTest {
+
+    HashExecutor hash;
+
+    @AfterEach
+    void tearDown() {
+        if (hash != null) hash.ferma();
+    }
+
+    //test esegui
+    @Test
+    void esegui_ShouldResumeWithResponse_WhenPoolIsFree() {
+        hash = new HashExecutor(1, 4);
+        AsyncResponse async = mock(AsyncResponse.class);
+
+        hash.esegui(async, () -> Response.ok().build());
+
+        ArgumentCaptor<Response> captor = ArgumentCaptor.forClass(Response.class);
+        verify(async, timeout(2000)).resume(captor.capture());
+        assertEquals(200, captor.getValue().getStatus());
+    }
+
+    @Test
+    void esegui_ShouldResumeWithException_WhenWorkThrows() {
+        hash = new HashExecutor(1, 4);
+        AsyncResponse async = mock(AsyncResponse.class);
+        IllegalStateException errore = new IllegalStateException("errore");
+
+        hash.esegui(async, () -> { throw errore; });
+
+        verify(async, timeout(2000)).resume(errore);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void esegui_ShouldCarryResolvedPrincipal_IntoPoolRequestContext() throws Exception {
+        hash = new HashExecutor(1, 4);
+        SessionPrincipal principal = new SessionPrincipal();
+        principal.resolve("token", 7, "compilatore", null, null);
+        Instance<RequestContextController> contesti = mock(Instance.class);
+        RequestContextController contesto = mock(RequestContextController.class);
+        when(contesti.get()).thenReturn(contesto);
+        // un contesto appena attivato ha un principal vuoto
+        when(contesto.activate()).thenAnswer(inv -> {
+            principal.clear();
+            return true;
+        });
+        inject(hash, "contesti", contesti);
+        inject(hash, "principal", principal);
+        AsyncResponse async = mock(AsyncResponse.class);
+
+        hash.esegui(async, () -> principal.isResolved("token") && principal.getUserId() == 7
+                ? Response.ok().build()
+                : Response.status(Response.Status.UNAUTHORIZED).build());
+
+        ArgumentCaptor<Response> captor = ArgumentCaptor.forClass(Response.class);
+        verify(async, timeout(2000)).resume(captor.capture());
+        assertEquals(200, captor.getValue().getStatus());
+        verify(contesto, timeout(2000)).deactivate();
+    }
+
+    @Test
+    void esegui_ShouldReject503_WhenQueueIsFull() throws Exception {
+        hash = new HashExecutor(1, 1);
+        CountDownLatch inCorso = new CountDownLatch(1);
+        CountDownLatch sblocca = new CountDownLatch(1);
+        AsyncResponse primo = mock(AsyncResponse.class);
+        AsyncResponse secondo = mock(AsyncResponse.class);
+        AsyncResponse terzo = mock(AsyncResponse.class);
+
+        // il primo occupa l'unico thread, il secondo riempie la coda
+        hash.esegui(primo, () -> {
+            inCorso.countDown();
+            try {
+                sblocca.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Response.ok().build();
+        });
+        assertTrue(inCorso.await(2, TimeUnit.SECONDS));
+        hash.esegui(secondo, () -> Response.ok().build());
+        assertEquals(1, hash.getProfondita());
+
+        hash.esegui(terzo, () -> Response.ok().build());
+
+        ArgumentCaptor<Response> captor = ArgumentCaptor.forClass(Response.class);
+        verify(terzo).resume(captor.capture());
+        assertEquals(503, captor.getValue().getStatus());
+        assertEquals("1", captor.getValue().getHeaderString("Retry-After"));
+        assertEquals(1L, hash.getMetriche().get("rifiutati"));
+
+        sblocca.countDown();
+        verify(primo, timeout(2000)).resume(any(Response.class));
+        verify(secondo, timeout(2000)).resume(any(Response.class));
+    }
+
+    //test getMetriche
+    @Test
+    void getMetriche_ShouldExposeQueueAndLatency() {
+        hash = new HashExecutor(2, 8);
+        AsyncResponse async = mock(AsyncResponse.class);
+
+        hash.esegui(async, () -> Response.ok().build());
+        verify(async, timeout(2000)).resume(any(Response.class));
+
+        Map<String, Object> metriche = hash.getMetriche();
+        assertEquals(2, metriche.get("thread"));
+        assertEquals(8, metriche.get("capacita"));
+        assertEquals(0, metriche.get("profondita"));
+    }
+
+    private static void inject(Object target, String campo, Object valore) throws Exception {
+        Field f = target.getClass().getDeclaredField(campo);
+        f.setAccessible(true);
+        f.set(target, valore);
+    }
+}
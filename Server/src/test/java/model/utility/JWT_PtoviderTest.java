@@ -12,7 +12,9 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import javax.crypto.SecretKey;
+import java.lang.reflect.Field;
 import java.util.Date;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -274,4 +276,105 @@ public class JWT_PtoviderTest {
     void getRoleFromToken_ShouldThrowAppException_WhenTokenIsMalformatted() {
         assertThrows(AppException.class, () -> jwtProvider.getRoleFromToken("token.non.valido"));
     }
+
+    //test cache dei claims
+    @Test
+    void claimsCache_ShouldParseTokenOnlyOnce_WhenTokenIsReused() throws Exception {
+        Utente test = new Utente();
+        test.setId(7);
+        String token = jwtProvider.generateToken(test, "compilatore");
+
+        jwtProvider.validateToken(token);
+        Map<String, ?> cache = getClaimsCache();
+        Object cached = cache.get(token);
+
+        assertNotNull(cached);
+        assertEquals("compilatore", jwtProvider.getRoleFromToken(token));
+        assertEquals(7, jwtProvider.getIdFromToken(token));
+        assertSame(cached, cache.get(token));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void claimsCache_ShouldNotCacheToken_WhenSignatureIsInvalid() throws Exception {
+        final SecretKey wrongKey = Keys.hmacShaKeyFor("chiave_completamente_diversa_e_molto_lunga".getBytes());
+
+        String invalidToken = Jwts.builder()
+                .claim("id", 1)
+                .signWith(wrongKey)
+                .compact();
+
+        assertThrows(InvalidToken.class, () -> jwtProvider.validateToken(invalidToken));
+        assertFalse(getClaimsCache().containsKey(invalidToken));
+    }
+
+    @Test
+    void claimsCache_ShouldThrowTokenExpiredException_WhenCachedTokenExpires() throws Exception {
+        final String SECRET_STRING = "z2p7W8p5v9B8R3M1x8C4k7J2q5N0t3Z9";
+        final SecretKey key = Keys.hmacShaKeyFor(SECRET_STRING.getBytes());
+
+        // scaduto da 10 secondi: valido per validateToken (tolleranza 60s) ma non per getIdFromToken
+        String token = Jwts.builder()
+                .claim("id", 1)
+                .expiration(new Date(System.currentTimeMillis() - 10000))
+                .signWith(key)
+                .compact();
+
+        assertDoesNotThrow(() -> jwtProvider.validateToken(token));
+        assertTrue(getClaimsCache().containsKey(token));
+        assertThrows(TokenExpiredException.class, () -> jwtProvider.getIdFromToken(token));
+    }
+
+    //test claim per la modalità stateless
+    @Test
+    void getUtenteFromToken_ShouldRebuildIdUsernameAndRoleFlags() throws AppException {
+        Utente test = new Utente();
+        test.setId(42);
+        test.setUsername("mrossi");
+        test.setIsCreatore(true);
+        test.setIsCompilatore(true);
+        test.setIsManager(null);
+
+        Utente daiClaim = jwtProvider.getUtenteFromToken(jwtProvider.generateToken(test, "creatore"));
+
+        assertEquals(42, daiClaim.getId());
+        assertEquals("mrossi", daiClaim.getUsername());
+        assertTrue(daiClaim.getIsCreatore());
+        assertTrue(daiClaim.getIsCompilatore());
+        assertFalse(daiClaim.getIsManager());
+        assertNull(daiClaim.getPasswordHash());
+    }
+
+    @Test
+    void getJtiFromToken_ShouldBeUniquePerToken() throws AppException {
+        Utente test = new Utente();
+        test.setId(42);
+
+        String primo = jwtProvider.generateToken(test, "compilatore");
+        String secondo = jwtProvider.generateToken(test, "compilatore");
+
+        assertNotNull(jwtProvider.getJtiFromToken(primo));
+        assertNotEquals(jwtProvider.getJtiFromToken(primo), jwtProvider.getJtiFromToken(secondo));
+    }
+
+    @Test
+    void getJtiFromToken_ShouldFallBackToSignature_WhenTokenHasNoJti() throws AppException {
+        final String SECRET_STRING = "z2p7W8p5v9B8R3M1x8C4k7J2q5N0t3Z9";
+        final SecretKey key = Keys.hmacShaKeyFor(SECRET_STRING.getBytes());
+
+        String token = Jwts.builder()
+                .claim("id", 1)
+                .expiration(new Date(System.currentTimeMillis() + 10000))
+                .signWith(key)
+                .compact();
+
+        assertEquals(token.substring(token.lastIndexOf('.') + 1), jwtProvider.getJtiFromToken(token));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, ?> getClaimsCache() throws Exception {
+        Field f = JWT_Provider.class.getDeclaredField("claimsCache");
+        f.setAccessible(true);
+        return (Map<String, ?>) f.get(jwtProvider);
+    }
 }
@@ -0,0 +1,230 @@
+package model.utility;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import model.entity.Utente;
+import model.exception.AppException;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+public class JdbcSessionStoreTest {
+
+    EntityManagerFactory emf;
+    EntityManager em;
+    AtomicLong ora;
+    JdbcSessionStore store;
+    Utente utente;
+
+    // sessioni su H2 con lo stesso schema di produzione
+    @Nested
+    @Tag("integration")
+    class IntegrationTests {
+
+        @BeforeEach
+        void setup() {
+            emf = Persistence.createEntityManagerFactory("testPU");
+            em = emf.createEntityManager();
+            ora = new AtomicLong(1_000_000L);
+            store = new JdbcSessionStore(emf, ora::get);
+            utente = nuovoUtente("mario_store");
+        }
+
+        @AfterEach
+        void tearDown() {
+            if (em.isOpen()) em.close();
+            if (emf.isOpen()) emf.close();
+        }
+
+        Utente nuovoUtente(String username) {
+            Utente u = new Utente();
+            u.setNome("Mario");
+            u.setCognome("Rossi");
+            u.setUsername(username);
+            u.setPasswordHash("hash123");
+            em.getTransaction().begin();
+            em.persist(u);
+            em.getTransaction().commit();
+            em.clear();
+            return u;
+        }
+
+        @Test
+        void inserisci_ShouldPersistSession_VisibleToAnotherStore() throws AppException {
+            assertNull(store.inserisci("token-1", utente, ora.get() + 60_000));
+
+            // un secondo nodo sulla stessa base dati
+            JdbcSessionStore altroNodo = new JdbcSessionStore(emf, ora::get);
+            Utente trovato = altroNodo.trova("token-1");
+            assertNotNull(trovato);
+            assertEquals("mario_store", trovato.getUsername());
+            assertEquals("token-1", altroNodo.tokenDi(utente.getId()));
+            assertEquals(1, altroNodo.size());
+        }
+
+        @Test
+        void inserisci_ShouldReturnExistingToken_WhenUserAlreadyHasASession() throws AppException {
+            store.inserisci("token-1", utente, ora.get() + 60_000);
+
+            assertEquals("token-1", store.inserisci("token-2", utente, ora.get() + 60_000));
+            assertFalse(store.contiene("token-2"));
+        }
+
+        @Test
+        void inserisci_ShouldKeepOneSessionPerUser_WhenNodesRace() throws Exception {
+            int nodi = 8;
+            CountDownLatch via = new CountDownLatch(1);
+            AtomicInteger inserite = new AtomicInteger();
+            List<Thread> thread = new ArrayList<>();
+            for (int i = 0; i < nodi; i++) {
+                String token = "token-" + i;
+                JdbcSessionStore nodo = new JdbcSessionStore(emf, ora::get);
+                Thread t = new Thread(() -> {
+                    try {
+                        via.await();
+                        if (nodo.inserisci(token, utente, ora.get() + 60_000) == null) {
+                            inserite.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        // il perdente riceve il token del vincitore o un errore, mai una seconda sessione
+                    }
+                });
+                thread.add(t);
+                t.start();
+            }
+            via.countDown();
+            for (Thread t : thread) t.join(10_000);
+
+            assertEquals(1, inserite.get());
+            assertEquals(1, store.size());
+        }
+
+        @Test
+        void trova_ShouldServeFromNearCache_UntilTtlExpires() throws AppException {
+            store.inserisci("token-1", utente, ora.get() + 60_000);
+            JdbcSessionStore altroNodo = new JdbcSessionStore(emf, ora::get);
+
+            assertNotNull(store.trova("token-1"));
+            assertNotNull(store.trova("token-1"));
+            assertEquals(2L, store.getMetriche().get("hit"));
+
+            // logout su un altro nodo: qui resta visibile solo fino al TTL della cache vicina
+            assertTrue(altroNodo.rimuovi("token-1"));
+            assertNotNull(store.trova("token-1"));
+            ora.addAndGet(JdbcSessionStore.TTL_VICINA_MS);
+            assertNull(store.trova("token-1"));
+        }
+
+        @Test
+        void pulisci_ShouldDeleteExpiredRows() throws AppException {
+            Utente altro = nuovoUtente("luigi_store");
+            store.inserisci("breve", utente, ora.get() + 1_000);
+            store.inserisci("lunga", altro, ora.get() + 60_000);
+
+            assertEquals(1, store.pulisci(ora.get() + 1_000));
+            assertNull(store.tokenDi(utente.getId()));
+            assertEquals("lunga", store.tokenDi(altro.getId()));
+            assertEquals(1, store.size());
+        }
+
+        @Test
+        void sostituisci_ShouldSwapTokenOnce_AcrossNodes() throws AppException {
+            store.inserisci("token-1", utente, ora.get() + 60_000);
+            JdbcSessionStore altroNodo = new JdbcSessionStore(emf, ora::get);
+
+            assertTrue(store.sostituisci("token-1", "token-2", ora.get() + 60_000));
+            assertFalse(altroNodo.sostituisci("token-1", "token-3", ora.get() + 60_000));
+
+            assertEquals("token-2", altroNodo.tokenDi(utente.getId()));
+            assertNull(altroNodo.trova("token-1"));
+            assertEquals("mario_store", altroNodo.trova("token-2").getUsername());
+            assertEquals(1, store.size());
+        }
+
+        @Test
+        void aggiorna_ShouldReturnFalse_WhenSessionIsGone() throws AppException {
+            store.inserisci("token-1", utente, ora.get() + 60_000);
+            utente.setNome("Nuovo");
+
+            assertTrue(store.aggiorna("token-1", utente));
+            assertEquals("Nuovo", store.trova("token-1").getNome());
+
+            store.rimuovi("token-1");
+            assertFalse(store.aggiorna("token-1", utente));
+        }
+    }
+
+    // SessionLog con lo store su db: stesse regole della versione in memoria
+    @Nested
+    @Tag("integration")
+    class SessionLogIntegrationTests {
+        @Mock
+        JWT_Provider jwtProvider;
+
+        SessionLog sessionLog;
+
+        @BeforeEach
+        void setup() throws Exception {
+            emf = Persistence.createEntityManagerFactory("testPU");
+            em = emf.createEntityManager();
+            ora = new AtomicLong(1_000_000L);
+            store = new JdbcSessionStore(emf, ora::get);
+
+            sessionLog = nuovoLog(store);
+
+            utente = new Utente();
+            utente.setNome("Mario");
+            utente.setCognome("Rossi");
+            utente.setUsername("mario_log");
+            utente.setPasswordHash("hash123");
+            em.getTransaction().begin();
+            em.persist(utente);
+            em.getTransaction().commit();
+            em.clear();
+        }
+
+        @AfterEach
+        void tearDown() {
+            if (em.isOpen()) em.close();
+            if (emf.isOpen()) emf.close();
+        }
+
+        SessionLog nuovoLog(SessionStore store) throws Exception {
+            SessionLog log = new SessionLog(ora::get);
+            log.usa(store);
+            Field f = SessionLog.class.getDeclaredField("jwtProvider");
+            f.setAccessible(true);
+            f.set(log, jwtProvider);
+            return log;
+        }
+
+        @Test
+        void aggiungi_ShouldSurviveRestart_AndRejectSecondLogin() throws Exception {
+            sessionLog.aggiungi("token-1", utente);
+
+            // nuovo SessionLog sulla stessa tabella, come dopo un riavvio
+            SessionLog riavviato = nuovoLog(new JdbcSessionStore(emf, ora::get));
+
+            assertTrue(riavviato.isAlive("token-1"));
+            assertEquals("mario_log", riavviato.getUtente("token-1").getUsername());
+            assertThrows(AppException.class, () -> riavviato.aggiungi("token-2", utente));
+
+            riavviato.rimuovi("token-1");
+            assertEquals(0, sessionLog.size());
+            ora.addAndGet(JdbcSessionStore.TTL_VICINA_MS);
+            assertFalse(sessionLog.isAlive("token-1"));
+        }
+    }
+}
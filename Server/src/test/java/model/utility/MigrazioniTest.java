@@ -0,0 +1,227 @@
+package model.utility;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import model.entity.Fa;
+import model.entity.Quiz;
+import model.entity.Risponde;
+import model.entity.Risposta;
+import model.entity.Utente;
+import org.flywaydb.core.api.FlywayException;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MigrazioniTest {
+
+    private static JdbcDataSource database(String nome) {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:" + nome + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        ds.setUser("sa");
+        ds.setPassword("");
+        return ds;
+    }
+
+    private static void esegui(JdbcDataSource ds, String... sql) throws SQLException {
+        try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+            for (String s : sql) {
+                st.execute(s);
+            }
+        }
+    }
+
+    private static long conta(JdbcDataSource ds, String sql) throws SQLException {
+        try (Connection c = ds.getConnection(); Statement st = c.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private static String explain(JdbcDataSource ds, String sql) throws SQLException {
+        try (Connection c = ds.getConnection(); Statement st = c.createStatement(); ResultSet rs = st.executeQuery("EXPLAIN " + sql)) {
+            rs.next();
+            return rs.getString(1).toLowerCase();
+        }
+    }
+
+    // lo schema come lo lasciano gli script di docker-entrypoint-initdb.d, senza storia delle migrazioni
+    private static void schemaIniziale(JdbcDataSource ds) throws SQLException, IOException {
+        try (InputStream in = MigrazioniTest.class.getResourceAsStream("/db/migrazioni/V1__schema_iniziale.sql")) {
+            assertNotNull(in);
+            esegui(ds, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void applica_ShouldDoNothing_WhenDisabledOrWithoutDataSource() throws SQLException {
+        JdbcDataSource ds = database("migrazioni_spente");
+
+        assertEquals(0, new Migrazioni(false).applica(ds));
+        assertEquals(0, new Migrazioni(true).applica(null));
+        assertEquals(0, conta(ds, "SELECT COUNT(*) FROM information_schema.tables WHERE table_name = 'schema_versione'"));
+    }
+
+    @Test
+    void applica_ShouldCreateSchema_WhenDatabaseIsEmpty() throws SQLException {
+        JdbcDataSource ds = database("migrazioni_vuoto");
+
+        assertEquals(5, new Migrazioni(true).applica(ds));
+
+        assertEquals(5, conta(ds, "SELECT COUNT(*) FROM schema_versione WHERE version IN ('1', '2', '3', '4', '5') AND success = TRUE"));
+        assertEquals(0, conta(ds, "SELECT COUNT(*) FROM fa"));
+        assertEquals(0, new Migrazioni(true).applica(ds));
+    }
+
+    // il database ds visto da un DataSource che rifiuta le prime connessioni, come MySQL ancora in avvio
+    private static DataSource inAvvio(JdbcDataSource ds, int connessioniRifiutate) {
+        AtomicInteger rifiutate = new AtomicInteger();
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[]{DataSource.class},
+                (proxy, metodo, argomenti) -> {
+                    if (metodo.getName().equals("getConnection") && rifiutate.getAndIncrement() < connessioniRifiutate) {
+                        throw new SQLTransientConnectionException("database in avvio");
+                    }
+                    try {
+                        return metodo.invoke(ds, argomenti);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    @Test
+    void applica_ShouldRetryConnection_WhileDatabaseIsStarting() throws SQLException {
+        JdbcDataSource ds = database("migrazioni_in_avvio");
+
+        assertEquals(5, new Migrazioni(true, 3, 1).applica(inAvvio(ds, 2)));
+        assertEquals(0, conta(ds, "SELECT COUNT(*) FROM fa"));
+    }
+
+    @Test
+    void applica_ShouldFail_WhenDatabaseNeverComesUp() {
+        DataSource ds = inAvvio(database("migrazioni_mai_pronto"), Integer.MAX_VALUE);
+
+        assertThrows(FlywayException.class, () -> new Migrazioni(true, 0, 1).applica(ds));
+    }
+
+    @Test
+    void applica_ShouldBaselineExistingSchema_AndRunOnlyLaterVersions() throws SQLException, IOException {
+        JdbcDataSource ds = database("migrazioni_esistente");
+        schemaIniziale(ds);
+
+        assertEquals(4, new Migrazioni(true).applica(ds));
+
+        assertEquals(1, conta(ds, "SELECT COUNT(*) FROM schema_versione WHERE version = '1' AND type = 'BASELINE'"));
+        assertEquals(4, conta(ds, "SELECT COUNT(*) FROM schema_versione WHERE version IN ('2', '3', '4', '5') AND success = TRUE"));
+    }
+
+    @Test
+    void applica_ShouldMergeDuplicateAttempts_BeforeAddingUniqueConstraint() throws SQLException, IOException {
+        JdbcDataSource ds = database("migrazioni_doppioni");
+        schemaIniziale(ds);
+        esegui(ds,
+                "INSERT INTO utente (id_utente, nome, cognome, username, password_hash) VALUES (1, 'n', 'c', 'u', 'h')",
+                "INSERT INTO quiz (id_utente, id_quiz, tempo, difficolta, titolo, descrizione) VALUES (1, 1, '10', 'facile', 't', 'd')",
+                "INSERT INTO domanda (id_domanda, id_quiz, quesito, punti_risposta_corretta, punti_risposta_sbagliata) VALUES (1, 1, 'q', 1, 0)",
+                "INSERT INTO risposta (id_risposta, id_domanda, affermazione) VALUES (1, 1, 'a')",
+                "INSERT INTO fa (id_fa, id_utente, id_quiz, punteggio) VALUES (1, 1, 1, 5), (2, 1, 1, 7)",
+                "INSERT INTO risponde (id_utente, id_risposta, quiz, id_fa) VALUES (1, 1, 't', 1), (1, 1, 't', 2)");
+
+        new Migrazioni(true).applica(ds);
+
+        assertEquals(1, conta(ds, "SELECT COUNT(*) FROM fa"));
+        assertEquals(1, conta(ds, "SELECT MIN(id_fa) FROM fa"));
+        assertEquals(2, conta(ds, "SELECT COUNT(*) FROM risponde WHERE id_fa = 1"));
+        // i tentativi già presenti non hanno un istante: restano a 0 e tra loro decide id_fa
+        assertEquals(0, conta(ds, "SELECT completato_il FROM fa"));
+        assertThrows(SQLException.class,
+                () -> esegui(ds, "INSERT INTO fa (id_fa, id_utente, id_quiz, punteggio) VALUES (3, 1, 1, 9)"));
+    }
+
+    @Test
+    void applica_ShouldSeedIdGenerators_FromExistingRows() throws SQLException, IOException {
+        JdbcDataSource ds = database("migrazioni_generatori");
+        schemaIniziale(ds);
+        esegui(ds,
+                "DROP TABLE id_generatori",
+                "INSERT INTO utente (id_utente, nome, cognome, username, password_hash) VALUES (1, 'n', 'c', 'u', 'h'), (2, 'n', 'c', 'v', 'h')",
+                "INSERT INTO quiz (id_utente, id_quiz, tempo, difficolta, titolo, descrizione) VALUES (1, 1, '10', 'facile', 't', 'd')",
+                "INSERT INTO domanda (id_domanda, id_quiz, quesito, punti_risposta_corretta, punti_risposta_sbagliata) VALUES (1, 1, 'q', 1, 0)",
+                "INSERT INTO risposta (id_risposta, id_domanda, affermazione) VALUES (1, 1, 'a')",
+                "INSERT INTO fa (id_fa, id_utente, id_quiz, punteggio) VALUES (120, 1, 1, 5)",
+                "INSERT INTO risponde (id_risponde, id_utente, id_risposta, quiz, id_fa) VALUES (7, 1, 1, 't', 120)");
+
+        new Migrazioni(true).applica(ds);
+
+        assertEquals(169, conta(ds, "SELECT prossimo_id FROM id_generatori WHERE entita = 'fa'"));
+        assertEquals(56, conta(ds, "SELECT prossimo_id FROM id_generatori WHERE entita = 'risponde'"));
+
+        // il primo id dato da Hibernate è quello subito dopo l'ultima riga
+        EntityManagerFactory emf = Persistence.createEntityManagerFactory("testPU", Map.of(
+                "jakarta.persistence.jdbc.url", "jdbc:h2:mem:migrazioni_generatori;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                "hibernate.hbm2ddl.auto", "none"));
+        try {
+            EntityManager em = emf.createEntityManager();
+            em.getTransaction().begin();
+            Utente utente = em.find(Utente.class, 2);
+            Fa fa = new Fa(utente, em.find(Quiz.class, 1), 3);
+            em.persist(fa);
+            Risponde risponde = new Risponde(em.find(Risposta.class, 1), utente, "t", null);
+            em.persist(risponde);
+            em.getTransaction().commit();
+            em.close();
+
+            assertEquals(121, fa.getId());
+            assertEquals(8, risponde.getId());
+        } finally {
+            emf.close();
+        }
+    }
+
+    // regressione sui piani: se un indice sparisce o smette di essere scelto il test lo segnala
+    @Test
+    void explain_ShouldUseIndexes_ForHotLookups() throws SQLException {
+        JdbcDataSource ds = database("migrazioni_explain");
+        new Migrazioni(true).applica(ds);
+
+        // Fa.findByUserAndQuiz
+        assertTrue(explain(ds, "SELECT id_fa, punteggio FROM fa WHERE id_utente = 1 AND id_quiz = 2")
+                .contains("uk_fa_utente_quiz"));
+
+        // Fa.findAllByUtente e Risponde.faindAllByUtente: nessuna scansione della tabella
+        String fa = explain(ds, "SELECT * FROM fa WHERE id_utente = 1 ORDER BY id_fa LIMIT 20 OFFSET 0");
+        assertTrue(fa.contains("id_utente = 1 */"), fa);
+        assertFalse(fa.contains("table scan"), fa);
+
+        String risponde = explain(ds, "SELECT * FROM risponde WHERE id_utente = 1 ORDER BY id_risponde LIMIT 20 OFFSET 0");
+        assertTrue(risponde.contains("idx_risponde_utente"), risponde);
+        assertFalse(risponde.contains("table scan"), risponde);
+
+        // Quiz.findAllByUtente e findAllByUtenteAfter; H2 riconosce l'ordine dell'indice solo se l'ORDER BY
+        // parte dalla sua prima colonna, con id_utente fisso è la stessa query
+        String quiz = explain(ds, "SELECT id_quiz, titolo FROM quiz WHERE id_utente = 1 AND id_quiz > 10 ORDER BY id_utente, id_quiz LIMIT 20");
+        assertTrue(quiz.contains("idx_quiz_utente_id"), quiz);
+        assertTrue(quiz.contains("index sorted"), quiz);
+
+        // catalogo (Quiz.findAll, findAllAfter): scorrimento della chiave primaria
+        String catalogo = explain(ds, "SELECT id_quiz, titolo FROM quiz WHERE id_quiz > 10 ORDER BY id_quiz LIMIT 20");
+        assertTrue(catalogo.contains("primary_key"), catalogo);
+        assertTrue(catalogo.contains("index sorted"), catalogo);
+    }
+}
@@ -0,0 +1,97 @@
+package model.utility;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class MonitorPinningTest {
+
+    MonitorPinning monitor;
+
+    @AfterEach
+    void tearDown() {
+        if (monitor != null) monitor.ferma();
+    }
+
+    @Test
+    void avvia_ShouldNotStart_WhenDisabled() {
+        monitor = new MonitorPinning(false);
+
+        assertFalse(monitor.avvia());
+        assertFalse(monitor.isAttivo());
+        assertEquals(false, monitor.getMetriche().get("richiesti"));
+    }
+
+    @Test
+    void avvia_ShouldNotStart_WhenJdkHasNoVirtualThreads() {
+        assumeTrue(!MonitorPinning.supportata());
+        monitor = new MonitorPinning(true);
+
+        assertFalse(monitor.avvia());
+        assertEquals(true, monitor.getMetriche().get("richiesti"));
+        assertEquals(false, monitor.getMetriche().get("monitor"));
+    }
+
+    @Test
+    void avvia_ShouldStartOnce_WhenJdkHasVirtualThreads() {
+        assumeTrue(MonitorPinning.supportata());
+        monitor = new MonitorPinning(true);
+
+        assertTrue(monitor.avvia());
+        assertTrue(monitor.avvia());
+        assertTrue(monitor.isAttivo());
+
+        monitor.ferma();
+        assertFalse(monitor.isAttivo());
+    }
+
+    @Test
+    void virtuale_ShouldBeFalse_ForPlatformThreads() {
+        assertFalse(MonitorPinning.virtuale(Thread.currentThread()));
+    }
+
+    @Test
+    void delJdk_ShouldSkipOnlyJdkFrames() {
+        assertTrue(MonitorPinning.delJdk("java.lang.Object"));
+        assertTrue(MonitorPinning.delJdk("jdk.internal.misc.Unsafe"));
+        assertTrue(MonitorPinning.delJdk("sun.nio.ch.NioSocketImpl"));
+        assertFalse(MonitorPinning.delJdk("com.mysql.cj.protocol.a.NativeProtocol"));
+        assertFalse(MonitorPinning.delJdk("model.utility.QuizLog"));
+    }
+
+    @Test
+    void getMetriche_ShouldAggregateEventsPerPoint() {
+        monitor = new MonitorPinning(true);
+
+        monitor.registra("model.A.lento:10", 30_000_000);
+        monitor.registra("model.A.lento:10", 50_000_000);
+        monitor.registra("model.B.raro:5", 25_000_000);
+
+        Map<String, Object> metriche = monitor.getMetriche();
+        assertEquals(3L, metriche.get("eventi"));
+        Map<String, Object> punti = (Map<String, Object>) metriche.get("punti");
+        assertEquals("model.A.lento:10", punti.keySet().iterator().next());
+        Map<String, Object> lento = (Map<String, Object>) punti.get("model.A.lento:10");
+        assertEquals(2L, lento.get("eventi"));
+        assertEquals(80L, lento.get("totaleMs"));
+        assertEquals(50L, lento.get("maxMs"));
+    }
+
+    @Test
+    void registra_ShouldCountOverflow_WhenTooManyPoints() {
+        monitor = new MonitorPinning(true);
+
+        for (int i = 0; i < MonitorPinning.MAX_PUNTI + 5; i++) {
+            monitor.registra("punto" + i, 1_000_000);
+        }
+        monitor.registra("punto0", 1_000_000);
+
+        Map<String, Object> metriche = monitor.getMetriche();
+        assertEquals((long) MonitorPinning.MAX_PUNTI + 6, metriche.get("eventi"));
+        assertEquals(5L, metriche.get("fuoriLimite"));
+    }
+}
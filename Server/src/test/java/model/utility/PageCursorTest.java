@@ -0,0 +1,71 @@
+package model.utility;
+
+import model.dto.QuizDTO;
+import model.exception.AppException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PageCursorTest {
+
+    //test encode/decode
+    @Test
+    void decode_ShouldReturnSameId_WhenCursorWasEncoded() {
+        String cursor = PageCursor.encode(42);
+
+        assertNotEquals("42", cursor);
+        assertEquals(42, PageCursor.decode(cursor));
+    }
+
+    @Test
+    void decode_ShouldReturnZero_WhenCursorIsNullOrBlank() {
+        assertEquals(0, PageCursor.decode(null));
+        assertEquals(0, PageCursor.decode(""));
+        assertEquals(0, PageCursor.decode("   "));
+    }
+
+    @Test
+    void decode_ShouldThrowAppException_WhenCursorIsNotValid() {
+        String senzaPrefisso = Base64.getUrlEncoder().encodeToString("42".getBytes(StandardCharsets.UTF_8));
+        String idNegativo = Base64.getUrlEncoder().encodeToString("q:-3".getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(AppException.class, () -> PageCursor.decode("%%%"));
+        assertThrows(AppException.class, () -> PageCursor.decode(senzaPrefisso));
+        assertThrows(AppException.class, () -> PageCursor.decode(idNegativo));
+    }
+
+    @Test
+    void encode_ShouldThrowAppException_WhenIdIsNotValid() {
+        assertThrows(AppException.class, () -> PageCursor.encode(0));
+    }
+
+    //test next
+    @Test
+    void next_ShouldReturnCursorOfLastQuiz_WhenPageIsFull() {
+        List<QuizDTO> pagina = new ArrayList<>();
+        for (int i = 1; i <= PageCursor.DIMENSIONE_PAGINA; i++) {
+            QuizDTO q = new QuizDTO();
+            q.setId(i * 3);
+            pagina.add(q);
+        }
+
+        String next = PageCursor.next(pagina);
+
+        assertEquals(PageCursor.DIMENSIONE_PAGINA * 3, PageCursor.decode(next));
+    }
+
+    @Test
+    void next_ShouldReturnNull_WhenPageIsIncomplete() {
+        QuizDTO q = new QuizDTO();
+        q.setId(1);
+
+        assertNull(PageCursor.next(List.of(q)));
+        assertNull(PageCursor.next(List.of()));
+        assertNull(PageCursor.next(null));
+    }
+}
@@ -6,6 +6,8 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mindrot.jbcrypt.BCrypt;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.Map;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -78,4 +80,78 @@ public class PassCryptTest {
     void verificaPassword_ShouldThrowEmptyFild_WhenHashDalDatabaseIsEmpty() {
         assertThrows(EmptyFild.class, () -> crypt.verificaPassword("password", null));
     }
+
+    //test getMetriche
+    @Test
+    void getMetriche_ShouldCountHashesAndVerifications() {
+        String hash = crypt.hashPassword("password");
+        crypt.verificaPassword("password", hash);
+
+        Map<String, Object> metriche = crypt.getMetriche();
+
+        assertEquals(2L, metriche.get("eseguiti"));
+        assertTrue((double) metriche.get("hashMedioMs") > 0.0);
+    }
+
+    @Test
+    void getMetriche_ShouldNotCount_WhenInputIsRejected() {
+        assertThrows(EmptyFild.class, () -> crypt.hashPassword(""));
+
+        assertEquals(0L, crypt.getMetriche().get("eseguiti"));
+    }
+
+    //test costo configurabile
+    @Test
+    void hashPassword_ShouldUseConfiguredCost() {
+        PassCrypt veloce = new PassCrypt(4);
+
+        String hash = veloce.hashPassword("password");
+
+        assertTrue(hash.startsWith("$2a$04$"));
+        assertEquals(4, veloce.getCosto());
+    }
+
+    @Test
+    void constructor_ShouldRejectCostOutsideBCryptRange() {
+        assertThrows(IllegalArgumentException.class, () -> new PassCrypt(3));
+        assertThrows(IllegalArgumentException.class, () -> new PassCrypt(32));
+    }
+
+    //test richiedeRehash
+    @Test
+    void richiedeRehash_ShouldBeTrue_WhenStoredCostIsLower() {
+        String hash = BCrypt.hashpw("password", BCrypt.gensalt(4));
+
+        assertTrue(crypt.richiedeRehash(hash));
+        assertFalse(new PassCrypt(4).richiedeRehash(hash));
+    }
+
+    @Test
+    void richiedeRehash_ShouldBeFalse_WhenStoredCostIsHigher() {
+        String hash = BCrypt.hashpw("password", BCrypt.gensalt(5));
+
+        assertFalse(new PassCrypt(4).richiedeRehash(hash));
+    }
+
+    @Test
+    void richiedeRehash_ShouldBeFalse_WhenHashIsMalformed() {
+        assertFalse(crypt.richiedeRehash(null));
+        assertFalse(crypt.richiedeRehash("password"));
+        assertFalse(crypt.richiedeRehash("$2a$xx$abc"));
+    }
+
+    //test suggerisciCosto
+    @Test
+    void suggerisciCosto_ShouldStayWithinSuggestedRange() {
+        int basso = crypt.suggerisciCosto(0);
+        int alto = crypt.suggerisciCosto(Long.MAX_VALUE);
+
+        assertEquals(10, basso);
+        assertEquals(16, alto);
+    }
+
+    @Test
+    void suggerisciCosto_ShouldGrowWithTarget() {
+        assertTrue(crypt.suggerisciCosto(2_000) >= crypt.suggerisciCosto(50));
+    }
 }
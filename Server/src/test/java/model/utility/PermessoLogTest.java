@@ -0,0 +1,146 @@
+package model.utility;
+
+import model.exception.EmptyFild;
+import model.exception.TroppiTentativiException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PermessoLogTest {
+
+    AtomicLong ora;
+    PermessoLog log;
+
+    @BeforeEach
+    void setup() {
+        ora = new AtomicLong(1_000_000L);
+        log = new PermessoLog(ora::get);
+    }
+
+    //test concedi
+    @Test
+    void concedi_ShouldGrantAccess_UntilExpiry() {
+        log.concedi(1, 5, log.getEpoca());
+
+        assertTrue(log.isConcesso(1, 5));
+        assertFalse(log.isConcesso(2, 5));
+        assertFalse(log.isConcesso(1, 6));
+
+        ora.addAndGet(PermessoLog.DURATA_PERMESSO_MS);
+        assertFalse(log.isConcesso(1, 5));
+        assertEquals(0, log.size());
+    }
+
+    @Test
+    void concedi_ShouldDiscardGrant_WhenInvalidatedWhileVerifying() {
+        long epoca = log.getEpoca();
+        log.invalida(5);
+
+        log.concedi(1, 5, epoca);
+
+        assertFalse(log.isConcesso(1, 5));
+    }
+
+    @Test
+    void concedi_ShouldResetFailedAttempts() {
+        for (int i = 0; i < PermessoLog.MAX_ERRORI; i++) {
+            log.tentativo(1, 5);
+        }
+
+        log.concedi(1, 5, log.getEpoca());
+
+        assertDoesNotThrow(() -> log.tentativo(1, 5));
+    }
+
+    @Test
+    void concedi_ShouldStopCaching_WhenFull() {
+        for (int i = 1; i <= PermessoLog.MAX_PERMESSI; i++) {
+            log.concedi(i, 1, log.getEpoca());
+        }
+
+        log.concedi(1, 2, log.getEpoca());
+
+        assertEquals(PermessoLog.MAX_PERMESSI, log.size());
+        assertFalse(log.isConcesso(1, 2));
+    }
+
+    @Test
+    void concedi_ShouldMakeRoom_WhenExpiredGrantsExist() {
+        for (int i = 1; i <= PermessoLog.MAX_PERMESSI; i++) {
+            log.concedi(i, 1, log.getEpoca());
+        }
+        ora.addAndGet(PermessoLog.DURATA_PERMESSO_MS);
+
+        log.concedi(1, 2, log.getEpoca());
+
+        assertTrue(log.isConcesso(1, 2));
+        assertEquals(1, log.size());
+    }
+
+    //test tentativo
+    @Test
+    void tentativo_ShouldThrottle_AfterTooManyAttempts() {
+        for (int i = 0; i < PermessoLog.MAX_ERRORI; i++) {
+            log.tentativo(1, 5);
+        }
+
+        TroppiTentativiException e = assertThrows(TroppiTentativiException.class, () -> log.tentativo(1, 5));
+        assertEquals(PermessoLog.FINESTRA_ERRORI_MS / 1000, e.getAttesaSecondi());
+        // gli altri utenti e gli altri quiz non sono toccati
+        assertDoesNotThrow(() -> log.tentativo(2, 5));
+        assertDoesNotThrow(() -> log.tentativo(1, 6));
+    }
+
+    @Test
+    void tentativo_ShouldAllowAgain_AfterWindowExpires() {
+        for (int i = 0; i < PermessoLog.MAX_ERRORI; i++) {
+            log.tentativo(1, 5);
+        }
+        assertThrows(TroppiTentativiException.class, () -> log.tentativo(1, 5));
+
+        ora.addAndGet(PermessoLog.FINESTRA_ERRORI_MS);
+
+        assertDoesNotThrow(() -> log.tentativo(1, 5));
+    }
+
+    @Test
+    void tentativo_ShouldRefuseNewPairs_WhenFullOfOpenWindows() {
+        for (int i = 1; i <= PermessoLog.MAX_PERMESSI; i++) {
+            log.tentativo(i, 1);
+        }
+        ora.addAndGet(60_000L);
+
+        TroppiTentativiException e = assertThrows(TroppiTentativiException.class, () -> log.tentativo(1, 2));
+        assertEquals((PermessoLog.FINESTRA_ERRORI_MS - 60_000L) / 1000, e.getAttesaSecondi());
+        // chi ha già una finestra aperta continua a essere contato
+        assertDoesNotThrow(() -> log.tentativo(1, 1));
+
+        ora.addAndGet(PermessoLog.FINESTRA_ERRORI_MS);
+        assertDoesNotThrow(() -> log.tentativo(1, 2));
+    }
+
+    //test invalida
+    @Test
+    void invalida_ShouldRemoveEveryGrantOfTheQuiz() {
+        log.concedi(1, 5, log.getEpoca());
+        log.concedi(2, 5, log.getEpoca());
+        log.concedi(1, 6, log.getEpoca());
+
+        log.invalida(5);
+
+        assertFalse(log.isConcesso(1, 5));
+        assertFalse(log.isConcesso(2, 5));
+        assertTrue(log.isConcesso(1, 6));
+    }
+
+    @Test
+    void methods_ShouldThrowEmptyFild_WhenIdsAreInvalid() {
+        assertThrows(EmptyFild.class, () -> log.isConcesso(0, 5));
+        assertThrows(EmptyFild.class, () -> log.tentativo(1, -1));
+        assertThrows(EmptyFild.class, () -> log.concedi(0, 0, 0));
+        assertThrows(EmptyFild.class, () -> log.invalida(null));
+    }
+}
@@ -0,0 +1,81 @@
+package model.utility;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PoolConnessioniTest {
+
+    PoolConnessioni pool;
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) pool.chiudi();
+    }
+
+    @Test
+    void avvia_ShouldReturnNull_WhenUrlIsMissing() {
+        pool = new PoolConnessioni(null, "sa", "", 2, 250);
+
+        assertNull(pool.avvia());
+        assertFalse(pool.isAttivo());
+        assertEquals(false, pool.getMetriche().get("attivo"));
+        assertEquals(0, pool.getMetriche().get("attive"));
+    }
+
+    @Test
+    void avvia_ShouldReuseTheSameDataSource() {
+        pool = new PoolConnessioni("jdbc:h2:mem:pool_stesso", "sa", "", 2, 250);
+
+        DataSource primo = pool.avvia();
+
+        assertNotNull(primo);
+        assertSame(primo, pool.avvia());
+        assertTrue(pool.isAttivo());
+    }
+
+    @Test
+    void getMetriche_ShouldCountActiveConnections() throws SQLException {
+        pool = new PoolConnessioni("jdbc:h2:mem:pool_metriche", "sa", "", 2, 250);
+        DataSource ds = pool.avvia();
+
+        try (Connection c = ds.getConnection()) {
+            assertFalse(c.getAutoCommit());
+            Map<String, Object> metriche = pool.getMetriche();
+            assertEquals(1, metriche.get("attive"));
+            assertEquals(2, metriche.get("massimo"));
+            assertEquals(0, metriche.get("inAttesa"));
+        }
+        assertEquals(0, pool.getMetriche().get("attive"));
+    }
+
+    @Test
+    void getConnection_ShouldFailFast_WhenPoolIsExhausted() throws SQLException {
+        pool = new PoolConnessioni("jdbc:h2:mem:pool_pieno", "sa", "", 1, 250);
+        DataSource ds = pool.avvia();
+
+        try (Connection occupata = ds.getConnection()) {
+            long inizio = System.nanoTime();
+            assertThrows(SQLException.class, ds::getConnection);
+            long attesaMs = (System.nanoTime() - inizio) / 1_000_000;
+            assertTrue(attesaMs < 2_000, "attesa oltre il timeout: " + attesaMs + "ms");
+        }
+    }
+
+    @Test
+    void chiudi_ShouldStopThePool() {
+        pool = new PoolConnessioni("jdbc:h2:mem:pool_chiuso", "sa", "", 1, 250);
+        pool.avvia();
+
+        pool.chiudi();
+
+        assertFalse(pool.isAttivo());
+        assertEquals(0, pool.getMetriche().get("totali"));
+    }
+}
@@ -17,7 +17,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import java.lang.reflect.Field;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.NavigableSet;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.AdditionalAnswers.returnsFirstArg;
@@ -109,13 +109,61 @@ public class QuizLogTest {
 
             log.aggiungi(u, q);
 
-            Field field = QuizLog.class.getDeclaredField("logQuizBible");
-            field.setAccessible(true);
-            Map<Utente, Map<Integer, Quiz>> internalMap = (Map<Utente, Map<Integer, Quiz>>) field.get(log);
+            assertTrue(getViste(log).get(1).contains(q.getId()));
+            assertEquals(q, getCatalogo(log).get(q.getId()));
+        }
+
+        @Test
+        void aggiungi_ShouldThrowAppException_WhenQuizAlreadyPresentForUtente() {
+            Utente u = new Utente();
+            u.setId(1);
+            Quiz q = new Quiz();
+            q.setId(10);
+
+            log.aggiungi(u, q);
 
-            assertTrue(internalMap.containsKey(u));
-            assertTrue(internalMap.get(u).containsKey(q.getId()));
-            assertEquals(q, internalMap.get(u).get(q.getId()));
+            assertThrows(AppException.class, () -> log.aggiungi(u, q));
+        }
+
+        @Test
+        void aggiungi_ShouldShareSingleCopy_WhenMoreUtentiLoadSameQuiz() throws Exception {
+            Utente u1 = new Utente();
+            u1.setId(1);
+            Utente u2 = new Utente();
+            u2.setId(2);
+            Quiz q = new Quiz();
+            q.setId(10);
+            Quiz stessoQuiz = new Quiz();
+            stessoQuiz.setId(10);
+
+            log.aggiungi(u1, q);
+            log.aggiungi(u2, stessoQuiz);
+
+            Map<Integer, Quiz> catalogo = getCatalogo(log);
+            assertEquals(1, catalogo.size());
+            assertTrue(getViste(log).get(1).contains(10));
+            assertTrue(getViste(log).get(2).contains(10));
+        }
+
+        @Test
+        void aggiungi_ShouldEvictLeastRecentlyUsedQuiz_WhenCatalogoIsFull() throws Exception {
+            Utente u = new Utente();
+            u.setId(1);
+
+            Field max = QuizLog.class.getDeclaredField("MAX_QUIZ_IN_CATALOGO");
+            max.setAccessible(true);
+            int limite = max.getInt(null);
+
+            for (int i = 1; i <= limite + 1; i++) {
+                Quiz q = new Quiz();
+                q.setId(i);
+                log.aggiungi(u, q);
+            }
+
+            Map<Integer, Quiz> catalogo = getCatalogo(log);
+            assertEquals(limite, catalogo.size());
+            assertFalse(catalogo.containsKey(1));
+            assertTrue(catalogo.containsKey(limite + 1));
         }
 
         //test getQuiz
@@ -141,17 +189,11 @@ public class QuizLogTest {
             Quiz q2 = new Quiz();
             q2.setId(102);
 
-            Map<Integer, Quiz> fakeQuizzes = new java.util.concurrent.ConcurrentHashMap<>();
-            fakeQuizzes.put(101, q1);
-            fakeQuizzes.put(102, q2);
-
-            Field field = QuizLog.class.getDeclaredField("logQuizBible");
-            field.setAccessible(true);
-            Map<Utente, Map<Integer, Quiz>> internalMap = (Map<Utente, Map<Integer, Quiz>>) field.get(log);
-            internalMap.put(u, fakeQuizzes);
+            log.aggiungi(u, q1);
+            log.aggiungi(u, q2);
 
-            Mockito.when(refresherMocked.reattach(q1)).thenReturn(q1);
-            Mockito.when(refresherMocked.reattach(q2)).thenReturn(q2);
+            Mockito.when(refresherMocked.perLettura(q1)).thenReturn(q1);
+            Mockito.when(refresherMocked.perLettura(q2)).thenReturn(q2);
 
             List<Quiz> result = log.getQuiz(u);
 
@@ -159,41 +201,8 @@ public class QuizLogTest {
             assertEquals(2, result.size());
             assertTrue(result.contains(q1));
             assertTrue(result.contains(q2));
-            Mockito.verify(refresherMocked, Mockito.times(1)).reattach(q1);
-            Mockito.verify(refresherMocked, Mockito.times(1)).reattach(q2);
-        }
-
-        //test clearQuiz
-        @Test
-        void clearQuiz_ShouldReturnEmptyFild_whenUtenteIsNull() {
-            assertThrows(EmptyFild.class, () -> log.clearQuiz(null));
-        }
-
-        @Test
-        void clearQuiz_ShouldNotFail_WhenUtenteIsNotInLog() {
-            Utente u = new Utente();
-            u.setId(99);
-
-            assertDoesNotThrow(() -> log.clearQuiz(u));
-        }
-
-        @Test
-        void clearQuiz_ShouldRemoveEntry_WithoutUsingAggiungi() throws Exception {
-            Utente u = new Utente();
-            u.setId(1);
-            Map<Integer, Quiz> fakeQuizzes = new java.util.concurrent.ConcurrentHashMap<>();
-            fakeQuizzes.put(10, new Quiz());
-
-            Field field = QuizLog.class.getDeclaredField("logQuizBible");
-            field.setAccessible(true);
-            Map<Utente, Map<Integer, Quiz>> internalMap = (Map<Utente, Map<Integer, Quiz>>) field.get(log);
-
-            internalMap.put(u, fakeQuizzes);
-            assertTrue(internalMap.containsKey(u), "Il setup manuale della mappa è fallito");
-
-            log.clearQuiz(u);
-
-            assertFalse(internalMap.containsKey(u));
+            Mockito.verify(refresherMocked, Mockito.times(1)).perLettura(q1);
+            Mockito.verify(refresherMocked, Mockito.times(1)).perLettura(q2);
         }
 
         //test getQuiz(Utente, int)
@@ -214,177 +223,89 @@ public class QuizLogTest {
             Quiz q = new Quiz();
             q.setId(101);
 
-            Map<Integer, Quiz> fakeQuizzes = new java.util.concurrent.ConcurrentHashMap<>();
-            fakeQuizzes.put(101, q);
-
-            Field field = QuizLog.class.getDeclaredField("logQuizBible");
-            field.setAccessible(true);
-            Map<Utente, Map<Integer, Quiz>> internalMap = (Map<Utente, Map<Integer, Quiz>>) field.get(log);
-            internalMap.put(u, fakeQuizzes);
+            log.aggiungi(u, q);
 
-            Mockito.when(refresherMocked.reattach(q)).thenReturn(q);
+            Mockito.when(refresherMocked.perLettura(q)).thenReturn(q);
 
             Quiz result = log.getQuiz(u, 101);
 
             assertNotNull(result);
             assertEquals(101, result.getId());
-            Mockito.verify(refresherMocked, Mockito.times(1)).reattach(q);
+            Mockito.verify(refresherMocked, Mockito.times(1)).perLettura(q);
         }
 
-        //getQuizPaginati test
         @Test
-        void getQuizPaginati_ShouldReturnFirstPage_WhenDataExists() throws Exception {
-            Utente u = new Utente();
-            u.setId(1);
-
-            // Creazione di 5 quiz per testare la paginazione
-            Quiz q1 = new Quiz(); q1.setId(10);
-            Quiz q2 = new Quiz(); q2.setId(20);
-            Quiz q3 = new Quiz(); q3.setId(30);
-            Quiz q4 = new Quiz(); q4.setId(40);
-            Quiz q5 = new Quiz(); q5.setId(50);
-
-            Map<Integer, Quiz> fakeQuizzes = new java.util.concurrent.ConcurrentHashMap<>();
-            fakeQuizzes.put(10, q1);
-            fakeQuizzes.put(20, q2);
-            fakeQuizzes.put(30, q3);
-            fakeQuizzes.put(40, q4);
-            fakeQuizzes.put(50, q5);
-
-            Field field = QuizLog.class.getDeclaredField("logQuizBible");
-            field.setAccessible(true);
-            Map<Utente, Map<Integer, Quiz>> internalMap = (Map<Utente, Map<Integer, Quiz>>) field.get(log);
-            internalMap.put(u, fakeQuizzes);
-
-            Mockito.doAnswer(returnsFirstArg()).when(refresherMocked).reattach(any(Quiz.class));
-
-            List<Quiz> result = log.getQuizPaginati(u, 1, 2);
-
-            assertNotNull(result);
-            assertEquals(2, result.size());
-            assertEquals(10, result.get(0).getId());
-            assertEquals(20, result.get(1).getId());
-
-            Mockito.verify(refresherMocked).reattach(q1);
-            Mockito.verify(refresherMocked).reattach(q2);
-            Mockito.verify(refresherMocked, Mockito.never()).reattach(q3);
-        }
-
-        @Test
-        void getQuizPaginati_ShouldReturnEmptyList_WhenUserHasNoQuizzes() {
-            Utente u = new Utente();
-            u.setId(1);
-
-            assertDoesNotThrow(() -> {
-                List<Quiz> result = log.getQuizPaginati(u, 1, 10);
-                assertTrue(result.isEmpty());
-            });
-        }
-
-        @Test
-        void getQuizPaginati_ShouldThrowAppException_WhenPaginationIsInvalid() {
-            Utente u = new Utente();
-            u.setId(1);
-
-            assertThrows(AppException.class, () -> log.getQuizPaginati(u, -1, 10));
-            assertThrows(AppException.class, () -> log.getQuizPaginati(u, 0, 0));
-        }
+        void getQuiz_Single_ShouldReturnNull_WhenQuizNotInVistaOfUtente() {
+            Utente u1 = new Utente();
+            u1.setId(1);
+            Utente u2 = new Utente();
+            u2.setId(2);
+            Quiz q = new Quiz();
+            q.setId(101);
+            log.aggiungi(u1, q);
 
-        @Test
-        void getQuizPaginati_ShouldThrowEmptyFild_WhenUtenteIsNull() {
-            assertThrows(EmptyFild.class, () -> log.getQuizPaginati(null, 0, 10));
+            assertNull(log.getQuiz(u2, 101));
+            Mockito.verifyNoInteractions(refresherMocked);
         }
 
         @Test
-        void getQuizPaginati_ShouldHandleOffsetCorrectly() throws Exception {
-            // 1. Setup dati
+        void getQuiz_Single_ShouldReturnNull_WhenQuizWasEvictedFromCatalogo() throws Exception {
             Utente u = new Utente();
             u.setId(1);
-            Quiz q1 = new Quiz(); q1.setId(10);
-            Quiz q2 = new Quiz(); q2.setId(20);
-
-            Map<Integer, Quiz> fakeQuizzes = new ConcurrentHashMap<>();
-            fakeQuizzes.put(10, q1);
-            fakeQuizzes.put(20, q2);
-
-            Field field = QuizLog.class.getDeclaredField("logQuizBible");
-            field.setAccessible(true);
-            ((Map<Utente, Map<Integer, Quiz>>) field.get(log)).put(u, fakeQuizzes);
-
-            Mockito.doAnswer(invocation -> invocation.getArgument(0))
-                    .when(refresherMocked).reattach(any(Quiz.class));
-
-            List<Quiz> result = log.getQuizPaginati(u, 1, 1);
-
-            assertNotNull(result);
-            assertEquals(1, result.size());
-            assertEquals(10, result.get(0).getId());
+            Quiz q = new Quiz();
+            q.setId(101);
+            log.aggiungi(u, q);
+            getCatalogo(log).remove(101);
 
-            List<Quiz> resultPage2 = log.getQuizPaginati(u, 2, 1);
-            assertEquals(20, resultPage2.get(0).getId());
+            assertNull(log.getQuiz(u, 101));
+            assertFalse(getViste(log).get(1).contains(101));
         }
 
-        //test rimuoviSingoloQuiz
+        //test viste per utente
         @Test
-        void rimuoviSingoloQuiz_ShouldRemoveQuiz_WhenDataIsValid() throws Exception {
+        void aggiungi_ShouldDropLeastRecentView_WhenTooManyUsers() throws Exception {
+            Quiz q = new Quiz();
+            q.setId(10);
+            for (int id = 1; id <= QuizLog.MAX_UTENTI_CON_VISTA; id++) {
+                Utente u = new Utente();
+                u.setId(id);
+                log.aggiungi(u, q);
+            }
+            Utente primo = new Utente();
+            primo.setId(1);
+            // l'utente 1 legge di nuovo: esce la vista del 2
+            log.getQuiz(primo, 10);
+
+            Utente nuovo = new Utente();
+            nuovo.setId(QuizLog.MAX_UTENTI_CON_VISTA + 1);
+            log.aggiungi(nuovo, q);
+
+            Map<Integer, NavigableSet<Integer>> viste = getViste(log);
+            assertEquals(QuizLog.MAX_UTENTI_CON_VISTA, viste.size());
+            assertTrue(viste.containsKey(1));
+            assertFalse(viste.containsKey(2));
+            assertTrue(getCatalogo(log).containsKey(10));
+        }
+
+        //test invalida
+        @Test
+        void invalida_ShouldRemoveQuizFromCatalogo_EvenIfNotInCallerView() throws Exception {
             Utente u = new Utente();
             u.setId(1);
             Quiz q = new Quiz();
             q.setId(100);
+            log.aggiungi(u, q);
 
-            Map<Integer, Quiz> fakeQuizzes = new java.util.concurrent.ConcurrentHashMap<>();
-            fakeQuizzes.put(100, q);
-
-            Field field = QuizLog.class.getDeclaredField("logQuizBible");
-            field.setAccessible(true);
-            Map<Utente, Map<Integer, Quiz>> internalMap = (Map<Utente, Map<Integer, Quiz>>) field.get(log);
-            internalMap.put(u, fakeQuizzes);
-
-            assertDoesNotThrow(() -> log.rimuoviSingoloQuiz(u, 100));
-            assertFalse(internalMap.get(u).containsKey(100));
-        }
-
-        @Test
-        void rimuoviSingoloQuiz_ShouldThrowAppException_WhenQuizNotFound() throws Exception {
-            Utente u = new Utente();
-            u.setId(1);
-            Map<Integer, Quiz> emptyQuizzes = new java.util.concurrent.ConcurrentHashMap<>();
-
-            Field field = QuizLog.class.getDeclaredField("logQuizBible");
-            field.setAccessible(true);
-            ((Map<Utente, Map<Integer, Quiz>>) field.get(log)).put(u, emptyQuizzes);
-
-            assertThrows(AppException.class, () -> log.rimuoviSingoloQuiz(u, 999));
-        }
-
-        @Test
-        void rimuoviSingoloQuiz_ShouldThrowAppException_WhenUserIsNotInLog() {
-            Utente u = new Utente();
-            u.setId(1);
-
-            assertThrows(AppException.class, () -> log.rimuoviSingoloQuiz(u, 100));
-        }
-
-        @Test
-        void rimuoviSingoloQuiz_ShouldThrowEmptyFild_WhenIdIsInvalid() {
-            Utente u = new Utente();
-            u.setId(1);
+            log.invalida(100);
 
-            assertThrows(EmptyFild.class, () -> log.rimuoviSingoloQuiz(u, null));
-            assertThrows(EmptyFild.class, () -> log.rimuoviSingoloQuiz(u, 0));
-            assertThrows(EmptyFild.class, () -> log.rimuoviSingoloQuiz(u, -1));
+            assertFalse(getCatalogo(log).containsKey(100));
+            assertThrows(AppException.class, () -> log.getQuiz(u));
         }
 
         @Test
-        void rimuoviSingoloQuiz_ShouldThrowEmptyFild_WhenUtenteIsInvalid() {
-            assertThrows(EmptyFild.class, () -> log.rimuoviSingoloQuiz(null, 100));
-
-            Utente u = new Utente();
-            u.setId(null);
-            assertThrows(EmptyFild.class, () -> log.rimuoviSingoloQuiz(u, 100));
-
-            u.setId(0);
-            assertThrows(EmptyFild.class, () -> log.rimuoviSingoloQuiz(u, 100));
+        void invalida_ShouldThrowEmptyFild_WhenIdIsInvalid() {
+            assertThrows(EmptyFild.class, () -> log.invalida(null));
+            assertThrows(EmptyFild.class, () -> log.invalida(0));
         }
 
         //test aggiornaSingoloQuiz
@@ -400,16 +321,10 @@ public class QuizLogTest {
             qNuovo.setId(100);
             qNuovo.setTitolo("Nuovo");
 
-            Map<Integer, Quiz> fakeQuizzes = new java.util.concurrent.ConcurrentHashMap<>();
-            fakeQuizzes.put(100, qVecchio);
-
-            Field field = QuizLog.class.getDeclaredField("logQuizBible");
-            field.setAccessible(true);
-            Map<Utente, Map<Integer, Quiz>> internalMap = (Map<Utente, Map<Integer, Quiz>>) field.get(log);
-            internalMap.put(u, fakeQuizzes);
+            log.aggiungi(u, qVecchio);
 
             assertDoesNotThrow(() -> log.aggiornaSingoloQuiz(u, qNuovo));
-            assertEquals("Nuovo", internalMap.get(u).get(100).getTitolo());
+            assertEquals("Nuovo", getCatalogo(log).get(100).getTitolo());
         }
 
         @Test
@@ -419,11 +334,9 @@ public class QuizLogTest {
             Quiz qNuovo = new Quiz();
             qNuovo.setId(999);
 
-            Map<Integer, Quiz> fakeQuizzes = new java.util.concurrent.ConcurrentHashMap<>();
-
-            Field field = QuizLog.class.getDeclaredField("logQuizBible");
-            field.setAccessible(true);
-            ((Map<Utente, Map<Integer, Quiz>>) field.get(log)).put(u, fakeQuizzes);
+            Quiz q = new Quiz();
+            q.setId(100);
+            log.aggiungi(u, q);
 
             assertThrows(AppException.class, () -> log.aggiornaSingoloQuiz(u, qNuovo));
         }
@@ -522,12 +435,6 @@ public class QuizLogTest {
             log.aggiungi(test1, quiz3);
         }
 
-        @AfterEach
-        void tearDown(){
-            log.clearQuiz(test);
-            log.clearQuiz(test1);
-        }
-
         @Test
         void getQuiz_Integratio() throws Exception {
             EntityManager em = emf.createEntityManager();
@@ -539,9 +446,10 @@ public class QuizLogTest {
             assertEquals("matematica", result.get(0).getTitolo());
             assertEquals("matematica1", result.get(1).getTitolo());
 
-            // Verifica che siano Managed
-            assertTrue(em.contains(result.get(0)), "Il quiz 1 deve essere managed");
-            assertTrue(em.contains(result.get(1)), "Il quiz 2 deve essere managed");
+            // la lettura dalla cache non deve fare merge
+            assertFalse(em.contains(result.get(0)), "Il quiz 1 deve restare detached");
+            assertFalse(em.contains(result.get(1)), "Il quiz 2 deve restare detached");
+            assertEquals(2, refresher.getMergeEvitati());
 
             em.close();
         }
@@ -556,29 +464,12 @@ public class QuizLogTest {
             assertNotNull(result);
             assertEquals("matematica", result.getTitolo());
 
-            // Verifica che sia Managed
-            assertTrue(em.contains(result), "Il quiz deve essere managed");
-
-            em.close();
-        }
-
-        @Test
-        void getQuizPaginati_Integration_Success() throws AppException {
-
-            List<Quiz> pagina1 = log.getQuizPaginati(test, 1, 1);
-            List<Quiz> pagina2 = log.getQuizPaginati(test, 2, 1);
-
-            assertEquals(1, pagina1.size());
-            assertEquals(1, pagina1.get(0).getId());
-            assertTrue(em.contains(pagina1.get(0)), "Il quiz della pagina 1 deve essere managed");
-
-            assertEquals(1, pagina2.size());
-            assertEquals(2, pagina2.get(0).getId());
-            assertTrue(em.contains(pagina2.get(0)), "Il quiz della pagina 2 deve essere managed");
+            // la lettura dalla cache non deve fare merge
+            assertFalse(em.contains(result), "Il quiz deve restare detached");
+            assertEquals(1, refresher.getMergeEvitati());
 
             em.close();
         }
-
     }
 
     // =========================
@@ -593,6 +484,20 @@ public class QuizLogTest {
         f.set(log, provider);
     }
 
+    @SuppressWarnings("unchecked")
+    private Map<Integer, Quiz> getCatalogo(QuizLog log) throws Exception {
+        Field f = QuizLog.class.getDeclaredField("catalogo");
+        f.setAccessible(true);
+        return (Map<Integer, Quiz>) f.get(log);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Integer, NavigableSet<Integer>> getViste(QuizLog log) throws Exception {
+        Field f = QuizLog.class.getDeclaredField("vistePerUtente");
+        f.setAccessible(true);
+        return (Map<Integer, NavigableSet<Integer>>) f.get(log);
+    }
+
     private void injectEntityManager(EntityRefresher refresher, EntityManager em) throws Exception {
         Field f = refresher.getClass().getDeclaredField("em");
         f.setAccessible(true);
@@ -0,0 +1,54 @@
+package model.utility;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RevocaLogTest {
+
+    AtomicLong ora;
+    RevocaLog log;
+
+    @BeforeEach
+    void setup() {
+        ora = new AtomicLong(1_000_000L);
+        log = new RevocaLog(ora::get);
+    }
+
+    //test revoca
+    @Test
+    void revoca_ShouldRevokeToken_UntilItsExpiry() {
+        assertTrue(log.revoca("jti-1", ora.get() + 1_000));
+
+        assertTrue(log.isRevocato("jti-1"));
+        assertFalse(log.isRevocato("jti-2"));
+
+        ora.addAndGet(1_000);
+        assertFalse(log.isRevocato("jti-1"));
+    }
+
+    @Test
+    void revoca_ShouldReturnFalse_WhenAlreadyRevokedOrExpired() {
+        assertTrue(log.revoca("jti-1", ora.get() + 1_000));
+        assertFalse(log.revoca("jti-1", ora.get() + 1_000));
+        assertFalse(log.revoca("jti-2", ora.get()));
+        assertFalse(log.revoca(null, ora.get() + 1_000));
+        assertEquals(1, log.size());
+    }
+
+    //test pulisci
+    @Test
+    void pulisci_ShouldDropOnlyExpiredEntries() {
+        log.revoca("breve", ora.get() + 1_000);
+        log.revoca("lunga", ora.get() + 60_000);
+
+        assertEquals(1, log.pulisci(ora.get() + 1_000));
+        assertEquals(1, log.size());
+        assertTrue(log.isRevocato("lunga"));
+        assertEquals(1L, log.getMetriche().get("scadute"));
+        assertEquals(2L, log.getMetriche().get("revoche"));
+    }
+}
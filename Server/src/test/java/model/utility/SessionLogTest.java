@@ -14,7 +14,12 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.lang.reflect.Field;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -90,13 +95,11 @@ public class SessionLogTest {
             String tokenVecchio = "token.vecchio";
             String tokenNuovo = "token.nuovo";
 
-            Field f = SessionLog.class.getDeclaredField("userIdToToken");
-            f.setAccessible(true);
-            ((Map<Integer, String>) f.get(sessionLog)).put(u.getId(), tokenVecchio);
-
+            sessionLog.aggiungi(tokenVecchio, u);
             doNothing().when(jwtProvider).validateToken(tokenVecchio);
 
             assertThrows(AppException.class, () -> sessionLog.aggiungi(tokenNuovo, u));
+            assertEquals(tokenVecchio, sessionLog.tokenDi(1));
         }
 
         @Test
@@ -106,15 +109,12 @@ public class SessionLogTest {
             String tokenVecchio = "token.scaduto";
             String tokenNuovo = "token.nuovo";
 
-            Field f = SessionLog.class.getDeclaredField("userIdToToken");
-            f.setAccessible(true);
-            Map<Integer, String> userIdToToken = (Map<Integer, String>) f.get(sessionLog);
-            userIdToToken.put(u.getId(), tokenVecchio);
-
+            sessionLog.aggiungi(tokenVecchio, u);
             doThrow(new TokenExpiredException("logOut Forzato")).when(jwtProvider).validateToken(tokenVecchio);
 
             assertThrows(TokenExpiredException.class, () -> sessionLog.aggiungi(tokenNuovo, u));
-            assertFalse(userIdToToken.containsKey(u.getId()));
+            assertNull(sessionLog.tokenDi(1));
+            assertEquals(0, sessionLog.size());
         }
 
         @Test
@@ -125,16 +125,149 @@ public class SessionLogTest {
 
             sessionLog.aggiungi(token, u);
 
-            Field f1 = SessionLog.class.getDeclaredField("userIdToToken");
-            f1.setAccessible(true);
-            Map<Integer, String> userIdToToken = (Map<Integer, String>) f1.get(sessionLog);
+            assertEquals(token, sessionLog.tokenDi(1));
+            assertEquals(u, sessionLog.getUtente(token));
+            assertEquals(1, sessionLog.size());
+        }
+
+        @Test
+        void aggiungi_ShouldCreateOneSession_WhenSameUserLogsInConcurrently() throws Exception {
+            Utente u = new Utente();
+            u.setId(1);
+            int thread = 8;
+            CountDownLatch via = new CountDownLatch(1);
+            AtomicInteger riuscite = new AtomicInteger();
+            List<Thread> avviati = new ArrayList<>();
+
+            for (int i = 0; i < thread; i++) {
+                String token = "token." + i;
+                Thread t = new Thread(() -> {
+                    try {
+                        via.await();
+                        sessionLog.aggiungi(token, u);
+                        riuscite.incrementAndGet();
+                    } catch (AppException | InterruptedException e) {
+                        // sessione già presente
+                    }
+                });
+                avviati.add(t);
+                t.start();
+            }
+            via.countDown();
+            for (Thread t : avviati) {
+                t.join(5_000);
+            }
+
+            assertEquals(1, riuscite.get());
+            assertEquals(1, sessionLog.size());
+        }
+
+        //test sostituisci
+        @Test
+        void sostituisci_ShouldMoveSessionToNewToken_KeepingTheSameUtente() throws Exception {
+            Utente u = new Utente();
+            u.setId(1);
+            sessionLog.aggiungi("token.compilatore", u);
 
-            Field f2 = SessionLog.class.getDeclaredField("logBible");
-            f2.setAccessible(true);
-            Map<String, Utente> logBible = (Map<String, Utente>) f2.get(sessionLog);
+            sessionLog.sostituisci("token.compilatore", "token.creatore");
 
-            assertEquals(token, userIdToToken.get(u.getId()));
-            assertEquals(u, logBible.get(token));
+            assertSame(u, sessionLog.getUtente("token.creatore"));
+            assertNull(sessionLog.getUtente("token.compilatore"));
+            assertEquals("token.creatore", sessionLog.tokenDi(1));
+            assertEquals(1, sessionLog.size());
+        }
+
+        @Test
+        void sostituisci_ShouldLetOnlyOneSwitchWin_WhenCalledConcurrently() throws Exception {
+            Utente u = new Utente();
+            u.setId(1);
+            sessionLog.aggiungi("token.vecchio", u);
+            int thread = 8;
+            CountDownLatch via = new CountDownLatch(1);
+            AtomicInteger riuscite = new AtomicInteger();
+            List<Thread> avviati = new ArrayList<>();
+
+            for (int i = 0; i < thread; i++) {
+                String nuovo = "token.nuovo." + i;
+                Thread t = new Thread(() -> {
+                    try {
+                        via.await();
+                        sessionLog.sostituisci("token.vecchio", nuovo);
+                        riuscite.incrementAndGet();
+                    } catch (AppException | InterruptedException e) {
+                        // un altro cambio è arrivato prima
+                    }
+                });
+                avviati.add(t);
+                t.start();
+            }
+            via.countDown();
+            for (Thread t : avviati) {
+                t.join(5_000);
+            }
+
+            assertEquals(1, riuscite.get());
+            assertEquals(1, sessionLog.size());
+            String vincitore = sessionLog.tokenDi(1);
+            assertTrue(vincitore.startsWith("token.nuovo."));
+            assertSame(u, sessionLog.getUtente(vincitore));
+        }
+
+        @Test
+        void aggiungi_ShouldRejectNewSessions_WhenCapacityIsReached() throws Exception {
+            for (int i = 1; i <= MemorySessionStore.MAX_SESSIONI; i++) {
+                Utente u = new Utente();
+                u.setId(i);
+                sessionLog.aggiungi("token." + i, u);
+            }
+            Utente oltre = new Utente();
+            oltre.setId(MemorySessionStore.MAX_SESSIONI + 1);
+
+            assertThrows(AppException.class, () -> sessionLog.aggiungi("token.oltre", oltre));
+            assertEquals(MemorySessionStore.MAX_SESSIONI, sessionLog.size());
+            assertEquals(1L, sessionLog.getMetriche().get("rifiutate"));
+        }
+
+        //test pulisci
+        @Test
+        void pulisci_ShouldRemoveSessions_WhenJwtExpirationIsPassed() throws Exception {
+            AtomicLong ora = new AtomicLong(1_000L);
+            sessionLog = new SessionLog(ora::get);
+            injectProvider(sessionLog, jwtProvider);
+            Utente breve = new Utente();
+            breve.setId(1);
+            Utente lunga = new Utente();
+            lunga.setId(2);
+            when(jwtProvider.getExpirationFromToken("token.breve")).thenReturn(new Date(5_000L));
+            when(jwtProvider.getExpirationFromToken("token.lungo")).thenReturn(new Date(50_000L));
+
+            sessionLog.aggiungi("token.breve", breve);
+            sessionLog.aggiungi("token.lungo", lunga);
+
+            assertEquals(0, sessionLog.pulisci(4_999L));
+            assertEquals(1, sessionLog.pulisci(5_000L));
+            assertNull(sessionLog.tokenDi(1));
+            assertEquals("token.lungo", sessionLog.tokenDi(2));
+            assertEquals(1L, sessionLog.getMetriche().get("scadute"));
+        }
+
+        @Test
+        void aggiungi_ShouldSweepExpiredSessions_BeforeCheckingCapacity() throws Exception {
+            AtomicLong ora = new AtomicLong(1_000L);
+            sessionLog = new SessionLog(ora::get);
+            injectProvider(sessionLog, jwtProvider);
+            Utente u = new Utente();
+            u.setId(1);
+            when(jwtProvider.getExpirationFromToken("token.vecchio")).thenReturn(new Date(2_000L));
+            sessionLog.aggiungi("token.vecchio", u);
+
+            ora.set(3_000L);
+            Utente altro = new Utente();
+            altro.setId(2);
+            sessionLog.aggiungi("token.nuovo", altro);
+
+            assertEquals(1, sessionLog.size());
+            assertNull(sessionLog.tokenDi(1));
         }
 
         //test getUtente
@@ -150,17 +283,14 @@ public class SessionLogTest {
 
         @Test
         void rimuovi_ShouldNotRemoveFromUserIdToToken_WhenUtenteNotFound() throws Exception {
-            String tokenInesistente = "token.non.valido";
-
-            // Esecuzione
-            sessionLog.rimuovi(tokenInesistente);
+            Utente u = new Utente();
+            u.setId(1);
+            sessionLog.aggiungi("token.altro", u);
 
-            // Verifica che logBible sia stato comunque toccato (remove viene chiamato)
-            Field f2 = SessionLog.class.getDeclaredField("logBible");
-            f2.setAccessible(true);
-            Map<String, Utente> logBible = (Map<String, Utente>) f2.get(sessionLog);
+            sessionLog.rimuovi("token.non.valido");
 
-            assertFalse(logBible.containsKey(tokenInesistente));
+            assertEquals("token.altro", sessionLog.tokenDi(1));
+            assertEquals(1, sessionLog.size());
         }
 
         @Test
@@ -168,24 +298,13 @@ public class SessionLogTest {
             Utente u = new Utente();
             u.setId(1);
             String token = "token.da.rimuovere";
+            sessionLog.aggiungi(token, u);
 
-            // Setup: Popolamento manuale delle mappe
-            Field f1 = SessionLog.class.getDeclaredField("userIdToToken");
-            f1.setAccessible(true);
-            Map<Integer, String> userIdToToken = (Map<Integer, String>) f1.get(sessionLog);
-            userIdToToken.put(u.getId(), token);
-
-            Field f2 = SessionLog.class.getDeclaredField("logBible");
-            f2.setAccessible(true);
-            Map<String, Utente> logBible = (Map<String, Utente>) f2.get(sessionLog);
-            logBible.put(token, u);
-
-            // Esecuzione
             sessionLog.rimuovi(token);
 
-            // Verifica
-            assertFalse(userIdToToken.containsKey(u.getId()));
-            assertFalse(logBible.containsKey(token));
+            assertNull(sessionLog.tokenDi(1));
+            assertNull(sessionLog.getUtente(token));
+            assertEquals(0, sessionLog.size());
         }
 
         //test IsAllive
@@ -202,56 +321,37 @@ public class SessionLogTest {
         @Test
         void isAlive_TokenScaduto_LanciaExceptionERimuove() throws Exception {
             String token = "token.scaduto";
-            Integer userId = 1;
-
-            Field f1 = SessionLog.class.getDeclaredField("userIdToToken");
-            f1.setAccessible(true);
-            Map<Integer, String> userIdToToken = (Map<Integer, String>) f1.get(sessionLog);
-            userIdToToken.put(userId, token);
-
-            Field f2 = SessionLog.class.getDeclaredField("logBible");
-            f2.setAccessible(true);
-            Map<String, Utente> logBible = (Map<String, Utente>) f2.get(sessionLog);
-            logBible.put(token, new Utente());
+            Utente u = new Utente();
+            u.setId(1);
+            sessionLog.aggiungi(token, u);
 
             doThrow(new TokenExpiredException("expired")).when(jwtProviderMocked).validateToken(token);
-            when(jwtProviderMocked.getIdFromToken(token)).thenReturn(userId);
 
             assertThrows(TokenExpiredException.class, () -> sessionLog.isAlive(token));
-            assertFalse(userIdToToken.containsKey(userId));
-            assertFalse(logBible.containsKey(token));
+            assertNull(sessionLog.tokenDi(1));
+            assertEquals(0, sessionLog.size());
         }
 
         @Test
         void isAlive_TokenInvalido_LanciaAppExceptionERimuove() throws Exception {
             String token = "token.invalido";
-            Integer userId = 2;
-
-            Field f1 = SessionLog.class.getDeclaredField("userIdToToken");
-            f1.setAccessible(true);
-            Map<Integer, String> userIdToToken = (Map<Integer, String>) f1.get(sessionLog);
-            userIdToToken.put(userId, token);
-
-            Field f2 = SessionLog.class.getDeclaredField("logBible");
-            f2.setAccessible(true);
-            Map<String, Utente> logBible = (Map<String, Utente>) f2.get(sessionLog);
-            logBible.put(token, new Utente());
+            Utente u = new Utente();
+            u.setId(2);
+            sessionLog.aggiungi(token, u);
 
             doThrow(new InvalidToken("invalid")).when(jwtProviderMocked).validateToken(token);
-            when(jwtProviderMocked.getIdFromToken(token)).thenReturn(userId);
 
             assertThrows(AppException.class, () -> sessionLog.isAlive(token));
-            assertFalse(userIdToToken.containsKey(userId));
-            assertFalse(logBible.containsKey(token));
+            assertNull(sessionLog.tokenDi(2));
+            assertEquals(0, sessionLog.size());
         }
 
         @Test
         void isAlive_Successo_RitornaTrue() throws Exception {
             String token = "token.valido";
-
-            Field f2 = SessionLog.class.getDeclaredField("logBible");
-            f2.setAccessible(true);
-            ((Map<String, Utente>) f2.get(sessionLog)).put(token, new Utente());
+            Utente u = new Utente();
+            u.setId(1);
+            sessionLog.aggiungi(token, u);
 
             doNothing().when(jwtProviderMocked).validateToken(token);
 
@@ -297,17 +397,14 @@ public class SessionLogTest {
             nuovo.setId(1);
             nuovo.setNome("Nuovo");
 
-            Field f = SessionLog.class.getDeclaredField("logBible");
-            f.setAccessible(true);
-            Map<String, Utente> logBible = (Map<String, Utente>) f.get(sessionLog);
-            logBible.put(token, vecchio);
+            sessionLog.aggiungi(token, vecchio);
 
             doNothing().when(jwtProviderMocked).validateToken(token);
 
             sessionLog.update(token, nuovo);
 
-            assertEquals("Nuovo", logBible.get(token).getNome());
-            assertEquals(nuovo, logBible.get(token));
+            assertEquals("Nuovo", sessionLog.getUtente(token).getNome());
+            assertEquals(nuovo, sessionLog.getUtente(token));
         }
     }
 
@@ -382,6 +479,20 @@ public class SessionLogTest {
             assertNull(sessionLog.getUtente(token));
         }
 
+        @Test
+        void integration_scadenzaDalJwt_RimossaSoloDopoExp() throws Exception {
+            Utente u = new Utente();
+            u.setId(1);
+            String token = jwtProvider.generateToken(u, "compilatore");
+            long exp = jwtProvider.getExpirationFromToken(token).getTime();
+
+            sessionLog.aggiungi(token, u);
+
+            assertEquals(0, sessionLog.pulisci(exp - 1));
+            assertEquals(1, sessionLog.pulisci(exp));
+            assertEquals(0, sessionLog.size());
+        }
+
     }
 
     // =========================
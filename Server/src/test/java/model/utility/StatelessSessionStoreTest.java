@@ -0,0 +1,182 @@
+package model.utility;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import model.entity.Utente;
+import model.exception.AppException;
+import model.exception.TokenExpiredException;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StatelessSessionStoreTest {
+
+    JWT_Provider jwtProvider;
+    RevocaLog revoche;
+    StatelessSessionStore store;
+    SessionLog sessionLog;
+    Utente utente;
+
+    @BeforeEach
+    void setup() throws Exception {
+        jwtProvider = new JWT_Provider();
+        revoche = new RevocaLog();
+        store = new StatelessSessionStore(jwtProvider, revoche);
+
+        sessionLog = new SessionLog();
+        sessionLog.usa(store);
+        iniettaProvider(sessionLog);
+
+        utente = new Utente();
+        utente.setId(7);
+        utente.setUsername("mrossi");
+        utente.setPasswordHash("hash");
+        utente.setIsCreatore(true);
+        utente.setIsCompilatore(true);
+        utente.setIsManager(false);
+    }
+
+    @Test
+    void getUtente_ShouldComeFromClaims_WithoutServerState() throws AppException {
+        String token = jwtProvider.generateToken(utente, "compilatore");
+        sessionLog.aggiungi(token, utente);
+
+        // un altro nodo, senza nessuna sessione registrata, autentica lo stesso token
+        SessionLog altroNodo = new SessionLog();
+        altroNodo.usa(new StatelessSessionStore(jwtProvider, new RevocaLog()));
+        iniettaProvider(altroNodo);
+
+        assertTrue(altroNodo.isAlive(token));
+        Utente daiClaim = altroNodo.getUtente(token);
+        assertEquals(7, daiClaim.getId());
+        // serve alle classifiche, che mostrano lo username di chi completa il quiz
+        assertEquals("mrossi", daiClaim.getUsername());
+        assertTrue(daiClaim.getIsCreatore());
+        assertNull(daiClaim.getPasswordHash());
+        assertEquals(0, sessionLog.size());
+    }
+
+    @Test
+    void rimuovi_ShouldRevokeOnlyThatToken() throws AppException {
+        String primo = jwtProvider.generateToken(utente, "compilatore");
+        String secondo = jwtProvider.generateToken(utente, "creatore");
+
+        sessionLog.rimuovi(primo);
+
+        assertFalse(sessionLog.isAlive(primo));
+        assertNull(sessionLog.getUtente(primo));
+        assertTrue(sessionLog.isAlive(secondo));
+        assertThrows(AppException.class, () -> sessionLog.update(primo, utente));
+        assertEquals(1, sessionLog.getMetriche().get("revocati"));
+    }
+
+    @Test
+    void sostituisci_ShouldRevokeOldToken_OnlyOnce() throws AppException {
+        String vecchio = jwtProvider.generateToken(utente, "compilatore");
+        String creatore = jwtProvider.generateToken(utente, "creatore");
+        String altro = jwtProvider.generateToken(utente, "creatore");
+
+        sessionLog.sostituisci(vecchio, creatore);
+
+        assertThrows(AppException.class, () -> sessionLog.sostituisci(vecchio, altro));
+        assertFalse(sessionLog.isAlive(vecchio));
+        assertTrue(sessionLog.isAlive(creatore));
+    }
+
+    @Test
+    void rimuovi_ShouldIgnoreExpiredToken() {
+        String scaduto = Jwts.builder()
+                .id("scaduto")
+                .claim("id", 7)
+                .expiration(new Date(System.currentTimeMillis() - 120_000))
+                .signWith(Keys.hmacShaKeyFor("z2p7W8p5v9B8R3M1x8C4k7J2q5N0t3Z9".getBytes()))
+                .compact();
+
+        assertFalse(store.rimuovi(scaduto));
+        assertThrows(TokenExpiredException.class, () -> sessionLog.isAlive(scaduto));
+        assertEquals(0, revoche.size());
+    }
+
+    @Test
+    void getMetriche_ShouldSayRevocationsAreLocal_WithoutFactory() {
+        assertEquals(false, store.getMetriche().get("condivise"));
+    }
+
+    // due nodi con la stessa tabella revoca, ognuno con la sua RevocaLog
+    @Nested
+    @Tag("integration")
+    class NodiCondivisi {
+        EntityManagerFactory emf;
+        AtomicLong ora;
+        StatelessSessionStore nodoA;
+        StatelessSessionStore nodoB;
+
+        @BeforeEach
+        void setupNodi() {
+            emf = Persistence.createEntityManagerFactory("testPU");
+            ora = new AtomicLong(System.currentTimeMillis());
+            nodoA = new StatelessSessionStore(jwtProvider, new RevocaLog(ora::get), emf, ora::get);
+            nodoB = new StatelessSessionStore(jwtProvider, new RevocaLog(ora::get), emf, ora::get);
+        }
+
+        @AfterEach
+        void tearDownNodi() {
+            if (emf.isOpen()) emf.close();
+        }
+
+        @Test
+        void rimuovi_ShouldReachOtherNodes_WithinReadInterval() {
+            String token = jwtProvider.generateToken(utente, "creatore");
+            assertTrue(nodoB.contiene(token));
+
+            assertTrue(nodoA.rimuovi(token));
+
+            assertFalse(nodoA.contiene(token));
+            // nodoB ha appena letto: vede la revoca al prossimo intervallo
+            ora.addAndGet(StatelessSessionStore.INTERVALLO_LETTURA_MS);
+            assertFalse(nodoB.contiene(token));
+            assertNull(nodoB.trova(token));
+        }
+
+        @Test
+        void nuovoNodo_ShouldLoadRevocationsMadeBeforeItStarted() {
+            String token = jwtProvider.generateToken(utente, "compilatore");
+            nodoA.rimuovi(token);
+
+            StatelessSessionStore nodoC = new StatelessSessionStore(jwtProvider, new RevocaLog(ora::get), emf, ora::get);
+
+            assertFalse(nodoC.contiene(token));
+        }
+
+        @Test
+        void sostituisci_ShouldSucceedOnlyOnce_AcrossNodes() {
+            String vecchio = jwtProvider.generateToken(utente, "compilatore");
+            String nuovo = jwtProvider.generateToken(utente, "creatore");
+
+            assertTrue(nodoA.sostituisci(vecchio, nuovo, ora.get() + 60_000));
+            // nodoB non ha ancora letto la revoca, ma l'insert sulla stessa chiave fallisce
+            assertFalse(nodoB.sostituisci(vecchio, nuovo, ora.get() + 60_000));
+            assertEquals(true, nodoA.getMetriche().get("condivise"));
+        }
+    }
+
+    private void iniettaProvider(SessionLog log) {
+        try {
+            Field f = SessionLog.class.getDeclaredField("jwtProvider");
+            f.setAccessible(true);
+            f.set(log, jwtProvider);
+        } catch (ReflectiveOperationException e) {
+            fail(e);
+        }
+    }
+}
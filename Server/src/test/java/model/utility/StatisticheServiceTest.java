@@ -0,0 +1,117 @@
+package model.utility;
+
+import model.entity.Risposta;
+import model.exception.EmptyFild;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StatisticheServiceTest {
+
+    // due domande: la 10 (risposte 1 giusta e 3 sbagliata, 2 punti / -1) e la 20 (risposta 2 giusta, 1 punto)
+    private static List<Object[]> chiave() {
+        return List.of(
+                new Object[]{1, 10, true, 2, -1, "quiz"},
+                new Object[]{2, 20, true, 1, 0, "quiz"},
+                new Object[]{3, 10, false, 2, -1, "quiz"});
+    }
+
+    private static Consumer<IntConsumer> scelte(int... ids) {
+        return consumatore -> {
+            for (int id : ids) consumatore.accept(id);
+        };
+    }
+
+    private static Risposta risposta(int id) {
+        Risposta r = new Risposta();
+        r.setId(id);
+        return r;
+    }
+
+    @Test
+    void ricostruisci_ShouldCountChoicesPerAnswerAndQuestion() {
+        StatisticheService service = new StatisticheService();
+
+        StatisticheService.Riepilogo riepilogo = service.ricostruisci(7, 5, chiave(), scelte(1, 3, 3, 2, 99), 3, 4)
+                .riepilogo();
+
+        assertEquals(3, riepilogo.completamenti());
+        assertEquals(1.33, riepilogo.punteggioMedio());
+        StatisticheService.StatDomanda prima = riepilogo.domande().get(0);
+        assertEquals(10, prima.domandaId());
+        assertEquals(3, prima.risposte());
+        assertEquals(0.0, prima.punteggioMedio());
+        assertEquals(new StatisticheService.StatRisposta(1, 1, 33.33), prima.scelte().get(0));
+        assertEquals(new StatisticheService.StatRisposta(3, 2, 66.67), prima.scelte().get(1));
+        assertEquals(new StatisticheService.StatRisposta(2, 1, 100.0), riepilogo.domande().get(1).scelte().get(0));
+        assertEquals(5L, service.getMetriche().get("righeScorse"));
+    }
+
+    @Test
+    void registra_ShouldUpdateLoadedQuiz_AndRefreshSnapshot() {
+        StatisticheService service = new StatisticheService();
+        StatisticheService.Contatori contatori = service.ricostruisci(7, 5, chiave(), scelte(), 0, 0);
+        StatisticheService.Riepilogo vuoto = contatori.riepilogo();
+        assertSame(vuoto, contatori.riepilogo());
+
+        service.registra(7, 3, List.of(risposta(1), risposta(2)));
+        service.registra(8, 3, List.of(risposta(1)));
+
+        StatisticheService.Riepilogo aggiornato = contatori.riepilogo();
+        assertNotSame(vuoto, aggiornato);
+        assertEquals(1, aggiornato.completamenti());
+        assertEquals(3.0, aggiornato.punteggioMedio());
+        assertEquals(100.0, aggiornato.domande().get(0).scelte().get(0).percentuale());
+        assertNull(service.get(8));
+    }
+
+    @Test
+    void get_ShouldExpire_AfterDurata() {
+        AtomicLong ora = new AtomicLong(0);
+        StatisticheService service = new StatisticheService(ora::get);
+        service.ricostruisci(7, 5, chiave(), scelte(), 0, 0);
+
+        ora.set(StatisticheService.DURATA_MS - 1);
+        assertNotNull(service.get(7));
+
+        ora.set(StatisticheService.DURATA_MS);
+        assertNull(service.get(7));
+        assertEquals(0, service.size());
+    }
+
+    @Test
+    void ricostruisci_ShouldClear_WhenFull() {
+        StatisticheService service = new StatisticheService();
+        for (int quiz = 1; quiz <= StatisticheService.MAX_QUIZ; quiz++) {
+            service.ricostruisci(quiz, 5, List.of(), scelte(), 0, 0);
+        }
+
+        service.ricostruisci(StatisticheService.MAX_QUIZ + 1, 5, List.of(), scelte(), 0, 0);
+
+        assertEquals(1, service.size());
+    }
+
+    @Test
+    void invalida_ShouldDropQuiz() {
+        StatisticheService service = new StatisticheService();
+        service.ricostruisci(7, 5, chiave(), scelte(), 0, 0);
+
+        service.invalida(7);
+
+        assertNull(service.get(7));
+    }
+
+    @Test
+    void metodi_ShouldThrowEmptyFild_WhenIdsAreInvalid() {
+        StatisticheService service = new StatisticheService();
+
+        assertThrows(EmptyFild.class, () -> service.get(0));
+        assertThrows(EmptyFild.class, () -> service.ricostruisci(-1, 5, chiave(), scelte(), 0, 0));
+        assertThrows(EmptyFild.class, () -> service.registra(0, 1, List.of()));
+    }
+}